@@ -35,14 +35,25 @@ import io.minio.errors.ServerException;
 import io.minio.errors.XmlParserException;
 import io.minio.messages.Item;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 import lombok.AllArgsConstructor;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
@@ -54,10 +65,53 @@ public class S3Source extends AbstractAgentCode implements AgentSource {
     private final Set<String> objectsToCommit = ConcurrentHashMap.newKeySet();
     private int idleTime;
 
+    /**
+     * The objects of at least this size (in bytes) are not read in memory, the value of the record
+     * is a Supplier that opens a new InputStream on the object. 0 to always read the objects.
+     */
+    private long streamingMinSize;
+
+    /** Maximum number of records returned by a read. */
+    private int maxRecordsPerRead;
+
+    /** The records of a read stop when their size reaches this, the first is always returned. */
+    private long maxBytesPerRead;
+
+    /**
+     * Number of objects downloaded ahead of the reads. The downloads ahead also stop when their
+     * size reaches maxBytesPerRead, so that at most one more object is kept in memory.
+     */
+    private int prefetch;
+
+    private ExecutorService downloadExecutor;
+
+    /**
+     * The listing of the bucket, kept between the reads: the listing is paginated, the next page is
+     * requested with the continuation token when the iterator reaches the end of the current one. A
+     * new listing starts when it is over.
+     */
+    private Iterator<Result<Item>> listing;
+
+    /** The objects being downloaded, in the order of the listing. */
+    private final Deque<PendingObject> pending = new ArrayDeque<>();
+
+    /** The size of the pending objects that are read in memory. */
+    private long pendingBytes;
+
+    private record PendingObject(
+            String name, long size, CompletableFuture<S3SourceRecord> record) {}
+
     public static final String ALL_FILES = "*";
     public static final String DEFAULT_EXTENSIONS_FILTER = "pdf,docx,html,htm,md,txt";
     private Set<String> extensions = Set.of();
 
+    public S3Source() {}
+
+    /** Reads the objects with the given client instead of the one of the configuration. */
+    S3Source(MinioClient minioClient) {
+        this.minioClient = minioClient;
+    }
+
     @Override
     public void init(Map<String, Object> configuration) throws Exception {
         bucketName = configuration.getOrDefault("bucketName", "langstream-source").toString();
@@ -69,6 +123,19 @@ public class S3Source extends AbstractAgentCode implements AgentSource {
         String password = configuration.getOrDefault("secret-key", "minioadmin").toString();
         String region = configuration.getOrDefault("region", "").toString();
         idleTime = Integer.parseInt(configuration.getOrDefault("idle-time", 5).toString());
+        streamingMinSize =
+                Long.parseLong(configuration.getOrDefault("streaming-min-size", 0).toString());
+        maxRecordsPerRead =
+                Integer.parseInt(configuration.getOrDefault("max-records-per-read", 1).toString());
+        maxBytesPerRead =
+                Long.parseLong(
+                        configuration
+                                .getOrDefault("max-bytes-per-read", 64 * 1024 * 1024)
+                                .toString());
+        prefetch =
+                Math.max(
+                        maxRecordsPerRead,
+                        Integer.parseInt(configuration.getOrDefault("prefetch", 4).toString()));
         extensions =
                 Set.of(
                         configuration
@@ -83,14 +150,24 @@ public class S3Source extends AbstractAgentCode implements AgentSource {
                 username);
         log.info("Getting files with extensions {} (use '*' to no filter)", extensions);
 
-        MinioClient.Builder builder =
-                MinioClient.builder().endpoint(endpoint).credentials(username, password);
-        if (!region.isBlank()) {
-            builder.region(region);
+        if (minioClient == null) {
+            MinioClient.Builder builder =
+                    MinioClient.builder().endpoint(endpoint).credentials(username, password);
+            if (!region.isBlank()) {
+                builder.region(region);
+            }
+            minioClient = builder.build();
         }
-        minioClient = builder.build();
 
         makeBucketIfNotExists(bucketName);
+        downloadExecutor =
+                Executors.newFixedThreadPool(
+                        prefetch,
+                        r -> {
+                            Thread thread = new Thread(r, "s3-source-download");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
     }
 
     private void makeBucketIfNotExists(String bucketName)
@@ -113,17 +190,70 @@ public class S3Source extends AbstractAgentCode implements AgentSource {
 
     @Override
     public List<Record> read() throws Exception {
+        boolean newListing = listing == null;
+        prefetch();
+        if (pending.isEmpty() && !newListing) {
+            // the previous listing was over, look for the new objects
+            prefetch();
+        }
+        if (pending.isEmpty()) {
+            log.info("Nothing found, sleeping for {} seconds", idleTime);
+            Thread.sleep(idleTime * 1000L);
+            return List.of();
+        }
         List<Record> records = new ArrayList<>();
-        Iterable<Result<Item>> results;
-        try {
-            results = minioClient.listObjects(ListObjectsArgs.builder().bucket(bucketName).build());
-        } catch (Exception e) {
-            log.error("Error listing objects on bucket {}", bucketName, e);
-            throw e;
+        long bytes = 0;
+        // wait for the first object, then take the ones that are already downloaded
+        while (!pending.isEmpty()
+                && records.size() < maxRecordsPerRead
+                && bytes < maxBytesPerRead
+                && (records.isEmpty() || pending.peekFirst().record().isDone())) {
+            PendingObject object = pending.peekFirst();
+            try {
+                records.add(object.record().get());
+            } catch (ExecutionException e) {
+                if (!records.isEmpty()) {
+                    // return the objects already read, the error is raised by the next read
+                    break;
+                }
+                pending.pollFirst();
+                pendingBytes -= object.size();
+                log.error("Error reading object {}", object.name(), e.getCause());
+                objectsToCommit.remove(object.name());
+                if (e.getCause() instanceof Exception cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+            pending.pollFirst();
+            pendingBytes -= object.size();
+            bytes += object.size();
         }
-        boolean somethingFound = false;
-        for (Result<Item> object : results) {
-            Item item = object.get();
+        // keep downloading while the records are processed
+        prefetch();
+        processed(0, records.size());
+        return records;
+    }
+
+    /** Starts the downloads of the next objects of the listing, up to the prefetch limit. */
+    private void prefetch() throws Exception {
+        if (listing == null) {
+            try {
+                listing =
+                        minioClient
+                                .listObjects(ListObjectsArgs.builder().bucket(bucketName).build())
+                                .iterator();
+            } catch (Exception e) {
+                log.error("Error listing objects on bucket {}", bucketName, e);
+                throw e;
+            }
+        }
+        while (pending.size() < prefetch && (pending.isEmpty() || pendingBytes < maxBytesPerRead)) {
+            if (!listing.hasNext()) {
+                listing = null;
+                return;
+            }
+            Item item = listing.next().get();
             String name = item.objectName();
             if (item.isDir()) {
                 log.debug("Skipping directory {}", name);
@@ -134,35 +264,55 @@ public class S3Source extends AbstractAgentCode implements AgentSource {
                 log.debug("Skipping file with bad extension {}", name);
                 continue;
             }
-            if (!objectsToCommit.contains(name)) {
-                log.info("Found new object {}, size {} KB", item.objectName(), item.size() / 1024);
-                try {
-                    GetObjectResponse objectResponse =
-                            minioClient.getObject(
-                                    GetObjectArgs.builder()
-                                            .bucket(bucketName)
-                                            .object(name)
-                                            .build());
-                    objectsToCommit.add(name);
-                    byte[] read = objectResponse.readAllBytes();
-                    records.add(new S3SourceRecord(read, name));
-                    somethingFound = true;
-                } catch (Exception e) {
-                    log.error("Error reading object {}", name, e);
-                    throw e;
-                }
-                break;
-            } else {
+            if (!objectsToCommit.add(name)) {
                 log.info("Skipping already processed object {}", name);
+                continue;
+            }
+            log.info("Found new object {}, size {} KB", name, item.size() / 1024);
+            if (streamingMinSize > 0 && item.size() >= streamingMinSize) {
+                // the stream is not read now, it does not count in the bytes of the read
+                pending.add(
+                        new PendingObject(
+                                name,
+                                0,
+                                CompletableFuture.completedFuture(
+                                        new S3SourceRecord(streamObject(name), name))));
+            } else {
+                pendingBytes += item.size();
+                pending.add(
+                        new PendingObject(
+                                name,
+                                item.size(),
+                                CompletableFuture.supplyAsync(
+                                        () -> download(name), downloadExecutor)));
             }
         }
-        if (!somethingFound) {
-            log.info("Nothing found, sleeping for {} seconds", idleTime);
-            Thread.sleep(idleTime * 1000L);
-        } else {
-            processed(0, 1);
+    }
+
+    private S3SourceRecord download(String name) {
+        try (GetObjectResponse objectResponse =
+                minioClient.getObject(
+                        GetObjectArgs.builder().bucket(bucketName).object(name).build())) {
+            return new S3SourceRecord(objectResponse.readAllBytes(), name);
+        } catch (Exception e) {
+            throw new CompletionException(e);
         }
-        return records;
+    }
+
+    /**
+     * The object is downloaded by the agent that reads the stream, a new stream is opened for each
+     * call so that the record can be processed again in case of error.
+     */
+    private Supplier<InputStream> streamObject(String name) {
+        return () -> {
+            try {
+                log.info("Streaming object {}", name);
+                return minioClient.getObject(
+                        GetObjectArgs.builder().bucket(bucketName).object(name).build());
+            } catch (Exception e) {
+                throw new UncheckedIOException(new IOException("Cannot read object " + name, e));
+            }
+        };
     }
 
     static boolean isExtensionAllowed(String name, Set<String> extensions) {
@@ -184,6 +334,13 @@ public class S3Source extends AbstractAgentCode implements AgentSource {
         return Map.of("bucketName", bucketName);
     }
 
+    @Override
+    public void close() throws Exception {
+        if (downloadExecutor != null) {
+            downloadExecutor.shutdownNow();
+        }
+    }
+
     @Override
     public void commit(List<Record> records) throws Exception {
         for (Record record : records) {
@@ -197,10 +354,10 @@ public class S3Source extends AbstractAgentCode implements AgentSource {
     }
 
     private static class S3SourceRecord implements Record {
-        private final byte[] read;
+        private final Object read;
         private final String name;
 
-        public S3SourceRecord(byte[] read, String name) {
+        public S3SourceRecord(Object read, String name) {
             this.read = read;
             this.name = name;
         }
@@ -0,0 +1,140 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.s3;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import ai.langstream.api.runner.code.Record;
+import io.minio.GetObjectArgs;
+import io.minio.GetObjectResponse;
+import io.minio.MinioClient;
+import io.minio.RemoveObjectArgs;
+import io.minio.Result;
+import io.minio.messages.Item;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import okhttp3.Headers;
+import org.junit.jupiter.api.Test;
+
+/** Tests the reads of the source on a client that serves the objects from memory. */
+class S3SourceReadTest {
+
+    private final List<String> objects = new CopyOnWriteArrayList<>();
+    private final Set<String> failures = ConcurrentHashMap.newKeySet();
+    private final MinioClient client = mock(MinioClient.class);
+
+    S3SourceReadTest() throws Exception {
+        when(client.bucketExists(any())).thenReturn(true);
+        when(client.listObjects(any()))
+                .thenAnswer(
+                        invocation -> {
+                            List<Result<Item>> items = new ArrayList<>();
+                            for (String name : objects) {
+                                Item item = mock(Item.class);
+                                when(item.objectName()).thenReturn(name);
+                                when(item.size()).thenReturn(10L);
+                                items.add(new Result<>(item));
+                            }
+                            return items;
+                        });
+        when(client.getObject(any()))
+                .thenAnswer(
+                        invocation -> {
+                            String name = invocation.getArgument(0, GetObjectArgs.class).object();
+                            if (failures.remove(name)) {
+                                throw new IOException("Cannot download " + name);
+                            }
+                            return new GetObjectResponse(
+                                    Headers.of(),
+                                    "bucket",
+                                    "",
+                                    name,
+                                    new ByteArrayInputStream(name.getBytes()));
+                        });
+        doAnswer(
+                        invocation -> {
+                            objects.remove(
+                                    invocation.getArgument(0, RemoveObjectArgs.class).object());
+                            return null;
+                        })
+                .when(client)
+                .removeObject(any());
+    }
+
+    private S3Source createSource(Map<String, Object> configuration) throws Exception {
+        S3Source source = new S3Source(client);
+        source.init(configuration);
+        source.start();
+        return source;
+    }
+
+    @Test
+    void testFailedObjectDoesNotLoseTheOthers() throws Exception {
+        objects.addAll(List.of("a.txt", "b.txt", "c.txt", "d.txt"));
+        failures.add("c.txt");
+        S3Source source =
+                createSource(Map.of("max-records-per-read", 10, "prefetch", 10, "idle-time", 0));
+
+        List<String> read = new ArrayList<>();
+        int errors = 0;
+        for (int i = 0; i < 20 && read.size() < 4; i++) {
+            try {
+                List<Record> records = source.read();
+                records.forEach(record -> read.add((String) record.key()));
+                source.commit(records);
+            } catch (IOException e) {
+                errors++;
+            }
+        }
+        source.close();
+
+        assertEquals(1, errors);
+        assertEquals(4, read.size());
+        assertEquals(Set.of("a.txt", "b.txt", "c.txt", "d.txt"), Set.copyOf(read));
+        assertTrue(objects.isEmpty());
+    }
+
+    @Test
+    void testPrefetchBoundedByBytes() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            objects.add("object-" + i + ".txt");
+        }
+        S3Source source =
+                createSource(
+                        Map.of(
+                                "max-records-per-read", 1,
+                                "max-bytes-per-read", 25,
+                                "prefetch", 10));
+
+        assertEquals(1, source.read().size());
+        // three objects of 10 bytes reach the budget, the read one is replaced
+        verify(client, after(200).times(4)).getObject(any());
+        source.close();
+    }
+}
@@ -167,13 +167,78 @@ public class S3SourceTest {
         agentSource.commit(read);
     }
 
+    @Test
+    void testReadMultipleObjects() throws Exception {
+        String bucket = "langstream-test-" + UUID.randomUUID();
+        AgentSource agentSource =
+                buildAgentSource(bucket, Map.of("max-records-per-read", 5, "prefetch", 5));
+        for (int i = 0; i < 10; i++) {
+            String s = "test-content-" + i;
+            minioClient.putObject(
+                    PutObjectArgs.builder().bucket(bucket).object("test-" + i + ".txt").stream(
+                                    new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8)),
+                                    s.length(),
+                                    -1)
+                            .build());
+        }
+
+        List<Record> all = new ArrayList<>();
+        while (all.size() < 10) {
+            List<Record> read = agentSource.read();
+            assertFalse(read.isEmpty());
+            assertTrue(read.size() <= 5);
+            all.addAll(read);
+        }
+        // the objects are returned in the order of the listing
+        for (int i = 0; i < 10; i++) {
+            assertArrayEquals(
+                    ("test-content-" + i).getBytes(StandardCharsets.UTF_8),
+                    (byte[]) all.get(i).value());
+        }
+        agentSource.commit(all);
+        assertTrue(agentSource.read().isEmpty());
+        agentSource.close();
+    }
+
+    @Test
+    void testReadByteBudget() throws Exception {
+        String bucket = "langstream-test-" + UUID.randomUUID();
+        AgentSource agentSource =
+                buildAgentSource(
+                        bucket,
+                        Map.of("max-records-per-read", 5, "prefetch", 5, "max-bytes-per-read", 1));
+        for (int i = 0; i < 3; i++) {
+            minioClient.putObject(
+                    PutObjectArgs.builder().bucket(bucket).object("test-" + i + ".txt").stream(
+                                    new ByteArrayInputStream(
+                                            "content".getBytes(StandardCharsets.UTF_8)),
+                                    7,
+                                    -1)
+                            .build());
+        }
+        // the first object already exceeds the budget
+        for (int i = 0; i < 3; i++) {
+            List<Record> read = agentSource.read();
+            assertEquals(1, read.size());
+            assertEquals("test-" + i + ".txt", read.get(0).key());
+            agentSource.commit(read);
+        }
+        agentSource.close();
+    }
+
     private AgentSource buildAgentSource(String bucket) throws Exception {
+        return buildAgentSource(bucket, Map.of());
+    }
+
+    private AgentSource buildAgentSource(String bucket, Map<String, Object> additionalConfigs)
+            throws Exception {
         AgentSource agentSource =
                 (AgentSource) AGENT_CODE_REGISTRY.getAgentCode("s3-source").agentCode();
         Map<String, Object> configs = new HashMap<>();
         String endpoint = localstack.getEndpointOverride(S3).toString();
         configs.put("endpoint", endpoint);
         configs.put("bucketName", bucket);
+        configs.putAll(additionalConfigs);
         agentSource.init(configs);
         agentSource.start();
         return agentSource;
@@ -0,0 +1,160 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.text;
+
+import ai.langstream.api.runner.code.Header;
+import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.SimpleRecord;
+import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import ai.langstream.api.util.ConfigurationUtils;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Detects the chunks that are near duplicates of the chunks seen before, like the boilerplate of
+ * crawled pages, before the expensive steps like the computation of the embeddings. The similarity
+ * is estimated with a {@link MinHashIndex} over the text of the value. The chunks are identified by
+ * the key of the record and the "chunk_id" property set by the text splitter: a chunk delivered
+ * again with the same identity replaces its previous version instead of being dropped as its
+ * duplicate. The configuration is:
+ *
+ * <ul>
+ *   <li>action: "drop" (the default) to drop the duplicates, "mark" to set the property
+ *       "langstream-duplicate" so that the next steps can skip them with a "when" condition
+ *   <li>threshold: the similarity of the duplicates, 0.8 by default
+ *   <li>num-hashes: the size of the signatures, 64 by default
+ *   <li>shingle-size: the number of words of the shingles, 3 by default
+ *   <li>max-entries: the number of chunks remembered, 100000 by default
+ *   <li>directory: where the index is saved, it is only kept in memory if not set
+ *   <li>snapshot-interval-seconds: how often the index is saved, 60 by default
+ * </ul>
+ */
+@Slf4j
+public class DedupeChunksAgent extends SingleRecordAgentProcessor {
+
+    static final String DUPLICATE_PROPERTY = "langstream-duplicate";
+    static final String CHUNK_ID_PROPERTY = "chunk_id";
+
+    private MinHashIndex index;
+    private boolean drop;
+    private int snapshotIntervalSeconds;
+    private ScheduledExecutorService snapshotExecutor;
+    private final AtomicLong duplicateCount = new AtomicLong();
+
+    @Override
+    public void init(Map<String, Object> configuration) throws Exception {
+        String action = ConfigurationUtils.getString("action", "drop", configuration);
+        drop =
+                switch (action) {
+                    case "drop" -> true;
+                    case "mark" -> false;
+                    default -> throw new IllegalArgumentException(
+                            "Unsupported action " + action + ", only drop and mark are supported");
+                };
+        double threshold =
+                Double.parseDouble(configuration.getOrDefault("threshold", 0.8).toString());
+        String directory = ConfigurationUtils.getString("directory", null, configuration);
+        index =
+                new MinHashIndex(
+                        ConfigurationUtils.getInt("num-hashes", 64, configuration),
+                        threshold,
+                        ConfigurationUtils.getInt("shingle-size", 3, configuration),
+                        ConfigurationUtils.getInt("max-entries", 100_000, configuration),
+                        directory == null || directory.isBlank() ? null : Path.of(directory));
+        snapshotIntervalSeconds =
+                directory == null || directory.isBlank()
+                        ? 0
+                        : ConfigurationUtils.getInt("snapshot-interval-seconds", 60, configuration);
+    }
+
+    @Override
+    public void start() {
+        if (snapshotIntervalSeconds > 0) {
+            snapshotExecutor = Executors.newSingleThreadScheduledExecutor();
+            snapshotExecutor.scheduleWithFixedDelay(
+                    () -> {
+                        try {
+                            index.save();
+                        } catch (Exception e) {
+                            log.error("Cannot save the MinHash index", e);
+                        }
+                    },
+                    snapshotIntervalSeconds,
+                    snapshotIntervalSeconds,
+                    TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public List<Record> processRecord(Record record) throws Exception {
+        String text = Utils.toText(record.value());
+        int[] signature = text == null ? null : index.signature(text);
+        if (signature == null) {
+            return List.of(record);
+        }
+        MinHashIndex.Match match = index.addIfAbsent(chunkIdentity(record), signature);
+        if (!match.duplicate()) {
+            return List.of(record);
+        }
+        duplicateCount.incrementAndGet();
+        if (log.isDebugEnabled()) {
+            log.debug("Chunk {} is a duplicate, similarity {}", record.key(), match.similarity());
+        }
+        if (drop) {
+            return List.of();
+        }
+        List<Header> headers = new ArrayList<>(record.headers());
+        headers.add(SimpleRecord.SimpleHeader.of(DUPLICATE_PROPERTY, "true"));
+        return List.of(SimpleRecord.copyFrom(record).headers(headers).build());
+    }
+
+    /** The key of the record and the id of the chunk, if any, null if the record has no key. */
+    static String chunkIdentity(Record record) {
+        String key = Utils.toText(record.key());
+        if (key == null) {
+            return null;
+        }
+        Header chunkId = record.getHeader(CHUNK_ID_PROPERTY);
+        return chunkId == null ? key : key + "#" + chunkId.valueAsString();
+    }
+
+    @Override
+    protected Map<String, Object> buildAdditionalInfo() {
+        Map<String, Object> info = new HashMap<>(super.buildAdditionalInfo());
+        info.put("duplicate-records", duplicateCount.get());
+        info.put("indexed-chunks", index.size());
+        return info;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (snapshotExecutor != null) {
+            snapshotExecutor.shutdown();
+            snapshotExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        if (index != null) {
+            index.save();
+        }
+    }
+}
@@ -15,13 +15,17 @@
  */
 package ai.langstream.agents.text;
 
+import ai.langstream.api.runner.code.Header;
 import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.runner.code.SimpleRecord;
 import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.tika.langdetect.tika.LanguageIdentifier;
 
 @Slf4j
 public class LanguageDetectorAgent extends SingleRecordAgentProcessor {
@@ -29,6 +33,26 @@ public class LanguageDetectorAgent extends SingleRecordAgentProcessor {
     private String property = "language";
     private List<String> allowedLanguages;
 
+    /** Number of characters of the text that are profiled, 0 to profile the whole text. */
+    private int sampleSize = 2048;
+
+    /** Number of windows the sample is taken from, spread over the text. */
+    private int windows = 4;
+
+    /**
+     * Profile the windows one at a time, and stop as soon as the closest language is clearly ahead
+     * of the others, typically to filter the allowedLanguages quickly.
+     */
+    private boolean shortCircuit;
+
+    /** Confidence of the closest language that stops the short-circuit detection. */
+    private double shortCircuitConfidence = 0.1;
+
+    /** Header to set with the confidence of the detected language, none if null. */
+    private String confidenceProperty;
+
+    private final LanguageDetectorEngine engine = LanguageDetectorEngine.get();
+
     @Override
     public void init(Map<String, Object> configuration) {
         if (configuration.containsKey("property")) {
@@ -39,6 +63,18 @@ public class LanguageDetectorAgent extends SingleRecordAgentProcessor {
         } else {
             allowedLanguages = List.of();
         }
+        sampleSize =
+                Integer.parseInt(configuration.getOrDefault("sampleSize", sampleSize).toString());
+        windows = Integer.parseInt(configuration.getOrDefault("windows", windows).toString());
+        shortCircuit =
+                Boolean.parseBoolean(
+                        configuration.getOrDefault("shortCircuit", shortCircuit).toString());
+        shortCircuitConfidence =
+                Double.parseDouble(
+                        configuration
+                                .getOrDefault("shortCircuitConfidence", shortCircuitConfidence)
+                                .toString());
+        confidenceProperty = (String) configuration.get("confidenceProperty");
         log.info(
                 "Configuring Language Detectors with field {} and allowed languages {}",
                 property,
@@ -50,10 +86,23 @@ public class LanguageDetectorAgent extends SingleRecordAgentProcessor {
         if (record == null) {
             return List.of();
         }
-        String inputText = Utils.toText(record.value());
+        Object value = record.value();
+        List<CharSequence> sample;
+        if (value instanceof byte[] array) {
+            // only the sampled windows are decoded
+            sample = LanguageDetectorEngine.sample(array, sampleSize, windows);
+        } else if (Utils.isStreamed(value)) {
+            // the length of a streamed value isn't known, only its beginning is read
+            sample = List.of(readSample(value));
+        } else {
+            String inputText = Utils.toText(value);
+            sample =
+                    LanguageDetectorEngine.sample(
+                            inputText == null ? "" : inputText, sampleSize, windows);
+        }
 
-        LanguageIdentifier identifier = new LanguageIdentifier(inputText);
-        String language = identifier.getLanguage();
+        LanguageDetectorEngine.Detection detection = detect(sample);
+        String language = detection.language();
 
         if (!allowedLanguages.isEmpty() && !allowedLanguages.contains(language)) {
             log.info(
@@ -63,14 +112,52 @@ public class LanguageDetectorAgent extends SingleRecordAgentProcessor {
             return List.of();
         }
 
-        Record result =
-                SimpleRecord.copyFrom(record)
-                        .headers(
-                                Utils.addHeader(
-                                        record.headers(),
-                                        SimpleRecord.SimpleHeader.of(property, language)))
-                        .build();
+        List<Header> headers =
+                Utils.addHeader(record.headers(), SimpleRecord.SimpleHeader.of(property, language));
+        if (confidenceProperty != null) {
+            headers =
+                    Utils.addHeader(
+                            headers,
+                            SimpleRecord.SimpleHeader.of(
+                                    confidenceProperty, String.valueOf(detection.confidence())));
+        }
+        Record result = SimpleRecord.copyFrom(record).headers(headers).build();
 
         return List.of(result);
     }
+
+    private String readSample(Object value) {
+        try (Reader reader = Utils.toReader(value)) {
+            if (sampleSize <= 0) {
+                StringWriter writer = new StringWriter();
+                reader.transferTo(writer);
+                return writer.toString();
+            }
+            char[] buffer = new char[sampleSize];
+            int length = 0;
+            int read;
+            while (length < sampleSize
+                    && (read = reader.read(buffer, length, sampleSize - length)) != -1) {
+                length += read;
+            }
+            return new String(buffer, 0, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private LanguageDetectorEngine.Detection detect(List<CharSequence> sample) {
+        LanguageDetectorEngine.Profile profile = new LanguageDetectorEngine.Profile();
+        if (shortCircuit) {
+            for (CharSequence window : sample) {
+                LanguageDetectorEngine.Detection detection = engine.detect(profile.add(window));
+                if (detection.confidence() >= shortCircuitConfidence) {
+                    return detection;
+                }
+            }
+        } else {
+            sample.forEach(profile::add);
+        }
+        return engine.detect(profile);
+    }
 }
@@ -0,0 +1,261 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.text;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.tika.langdetect.tika.LanguageIdentifier;
+
+/**
+ * Detects the language of a text with the 3-gram profiles of Tika's {@link LanguageIdentifier}.
+ *
+ * <p>The profiles are loaded once in an index from each n-gram to its frequency in every language,
+ * so a text is compared with all the languages in a single pass over its own n-grams. The distance
+ * is the same as Tika's: the euclidean distance between the n-gram frequencies. Only a bounded
+ * sample of the text is profiled, a few windows spread over the document, so that the cost does not
+ * depend on the size of the document.
+ */
+public final class LanguageDetectorEngine {
+
+    private static final class Holder {
+        private static final LanguageDetectorEngine INSTANCE = new LanguageDetectorEngine();
+    }
+
+    private record Frequencies(int[] languages, double[] frequencies) {}
+
+    private final String[] languages;
+
+    /** Sum of the squared frequencies of each language. */
+    private final double[] squaredNorms;
+
+    private final Map<String, Frequencies> index;
+
+    public static LanguageDetectorEngine get() {
+        return Holder.INSTANCE;
+    }
+
+    private LanguageDetectorEngine() {
+        Properties properties = new Properties();
+        try (InputStream stream =
+                LanguageIdentifier.class.getResourceAsStream("tika.language.properties")) {
+            properties.load(stream);
+            languages = properties.getProperty("languages").split(",");
+            squaredNorms = new double[languages.length];
+            Map<String, List<double[]>> entries = new HashMap<>();
+            for (int i = 0; i < languages.length; i++) {
+                languages[i] = languages[i].trim();
+                Map<String, Long> counts = loadProfile(languages[i]);
+                double total = Math.max(counts.values().stream().mapToLong(c -> c).sum(), 1.0);
+                for (Map.Entry<String, Long> count : counts.entrySet()) {
+                    double frequency = count.getValue() / total;
+                    squaredNorms[i] += frequency * frequency;
+                    entries.computeIfAbsent(count.getKey(), k -> new ArrayList<>())
+                            .add(new double[] {i, frequency});
+                }
+            }
+            Map<String, Frequencies> newIndex = new HashMap<>();
+            entries.forEach(
+                    (ngram, list) -> {
+                        int[] ids = new int[list.size()];
+                        double[] frequencies = new double[list.size()];
+                        for (int j = 0; j < ids.length; j++) {
+                            ids[j] = (int) list.get(j)[0];
+                            frequencies[j] = list.get(j)[1];
+                        }
+                        newIndex.put(ngram, new Frequencies(ids, frequencies));
+                    });
+            index = newIndex;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Map<String, Long> loadProfile(String language) throws IOException {
+        Map<String, Long> counts = new HashMap<>();
+        try (InputStream stream = LanguageIdentifier.class.getResourceAsStream(language + ".ngp");
+                BufferedReader reader =
+                        new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    int space = line.indexOf(' ');
+                    counts.merge(
+                            line.substring(0, space),
+                            Long.parseLong(line.substring(space + 1)),
+                            Long::sum);
+                }
+            }
+        }
+        return counts;
+    }
+
+    public List<String> getSupportedLanguages() {
+        return List.of(languages);
+    }
+
+    /**
+     * @param language the closest language, "unknown" if the sample has no letters
+     * @param score 1 - the distance to the closest language, as Tika's raw score
+     * @param confidence how much closer the language is than the second closest one, from 0 (as
+     *     close) to 1
+     */
+    public record Detection(String language, double score, double confidence) {}
+
+    /** The n-grams of a text, built as Tika's ProfilingWriter does. */
+    public static final class Profile {
+        private final Map<String, int[]> counts = new HashMap<>();
+        private final char[] buffer = {0, 0, '_'};
+        private int letters = 1;
+        private long total;
+
+        public Profile add(CharSequence text) {
+            for (int i = 0; i < text.length(); i++) {
+                char c = Character.toLowerCase(text.charAt(i));
+                if (Character.isLetter(c)) {
+                    addLetter(c);
+                } else {
+                    addSeparator();
+                }
+            }
+            addSeparator();
+            return this;
+        }
+
+        private void addLetter(char c) {
+            buffer[0] = buffer[1];
+            buffer[1] = buffer[2];
+            buffer[2] = c;
+            if (++letters >= buffer.length) {
+                counts.computeIfAbsent(new String(buffer), k -> new int[1])[0]++;
+                total++;
+            }
+        }
+
+        private void addSeparator() {
+            addLetter('_');
+            letters = 1;
+        }
+    }
+
+    /**
+     * Detect the language of a profile.
+     *
+     * @param profile the n-grams of the text
+     * @return the detection
+     */
+    public Detection detect(Profile profile) {
+        double total = Math.max(profile.total, 1.0);
+        double squaredNorm = 0;
+        double[] dotProducts = new double[languages.length];
+        for (Map.Entry<String, int[]> count : profile.counts.entrySet()) {
+            double frequency = count.getValue()[0] / total;
+            squaredNorm += frequency * frequency;
+            Frequencies frequencies = index.get(count.getKey());
+            if (frequencies != null) {
+                for (int j = 0; j < frequencies.languages.length; j++) {
+                    dotProducts[frequencies.languages[j]] += frequency * frequencies.frequencies[j];
+                }
+            }
+        }
+
+        String best = "unknown";
+        double minDistance = 1.0;
+        double secondDistance = 1.0;
+        for (int i = 0; i < languages.length; i++) {
+            double distance =
+                    Math.sqrt(Math.max(0, squaredNorm + squaredNorms[i] - 2 * dotProducts[i]));
+            if (distance < minDistance) {
+                secondDistance = minDistance;
+                minDistance = distance;
+                best = languages[i];
+            } else if (distance < secondDistance) {
+                secondDistance = distance;
+            }
+        }
+        double confidence =
+                secondDistance > 0 ? (secondDistance - minDistance) / secondDistance : 0;
+        return new Detection(best, 1.0 - minDistance, confidence);
+    }
+
+    public Detection detect(CharSequence text) {
+        return detect(new Profile().add(text));
+    }
+
+    /**
+     * Take at most sampleSize characters of the text, in the given number of windows evenly spread
+     * over the text. The windows start after a whitespace, in order not to profile partial words.
+     */
+    public static List<CharSequence> sample(CharSequence text, int sampleSize, int windows) {
+        int length = text.length();
+        if (sampleSize <= 0 || length <= sampleSize) {
+            return List.of(text);
+        }
+        windows = Math.max(1, windows);
+        int windowSize = sampleSize / windows;
+        int stride = (length - windowSize) / Math.max(1, windows - 1);
+        List<CharSequence> sample = new ArrayList<>(windows);
+        for (int i = 0; i < windows; i++) {
+            int start = i * stride;
+            int end = Math.min(length, start + windowSize);
+            if (i > 0) {
+                while (start < end && !Character.isWhitespace(text.charAt(start))) {
+                    start++;
+                }
+            }
+            sample.add(text.subSequence(start, end));
+        }
+        return sample;
+    }
+
+    /**
+     * Same as {@link #sample(CharSequence, int, int)} on an UTF-8 document, only the windows are
+     * decoded. The windows are sized in bytes.
+     */
+    public static List<CharSequence> sample(byte[] utf8, int sampleSize, int windows) {
+        if (sampleSize <= 0 || utf8.length <= sampleSize) {
+            return List.of(new String(utf8, StandardCharsets.UTF_8));
+        }
+        windows = Math.max(1, windows);
+        int windowSize = sampleSize / windows;
+        int stride = (utf8.length - windowSize) / Math.max(1, windows - 1);
+        List<CharSequence> sample = new ArrayList<>(windows);
+        for (int i = 0; i < windows; i++) {
+            int start = i * stride;
+            int end = Math.min(utf8.length, start + windowSize);
+            if (i > 0) {
+                // skip the rest of the word, a multi-byte character is never cut at the start
+                while (start < end && utf8[start] != ' ' && utf8[start] != '\n') {
+                    start++;
+                }
+            }
+            // nor at the end
+            while (end > start && end < utf8.length && (utf8[end] & 0xC0) == 0x80) {
+                end--;
+            }
+            sample.add(new String(utf8, start, end - start, StandardCharsets.UTF_8));
+        }
+        return sample;
+    }
+}
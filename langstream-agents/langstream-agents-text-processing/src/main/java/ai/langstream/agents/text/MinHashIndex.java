@@ -0,0 +1,371 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.text;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Finds the texts that are near duplicates of the texts seen before, by the Jaccard similarity of
+ * their word shingles.
+ *
+ * <p>Each text is summarized by a MinHash signature, the signatures are split in bands and indexed
+ * by the hash of each band (locality-sensitive hashing): two texts that share a band are compared,
+ * and are duplicates if the estimated similarity reaches the threshold. The index keeps the most
+ * recent maxEntries signatures in memory, they are saved to a single file of the directory, if any.
+ *
+ * <p>The signatures can be identified by a key, like the id of the chunk: a text added again with
+ * the same key replaces the previous one instead of being its duplicate, so that the records
+ * delivered again or the documents ingested again are not dropped.
+ */
+@Slf4j
+public final class MinHashIndex {
+
+    static final String FILE = "minhash-index.bin";
+
+    private static final int MAGIC = 0x4D484958;
+    private static final int VERSION = 2;
+    private static final long SEED = 0x5DEECE66DL;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Whether the text is a duplicate, and the similarity with the closest text. */
+    public record Match(boolean duplicate, double similarity) {}
+
+    private record Entry(String key, int[] signature) {}
+
+    private final int numHashes;
+    private final int rows;
+    private final int bands;
+    private final double threshold;
+    private final int shingleSize;
+    private final int maxEntries;
+    private final Path directory;
+    private final long[] seeds;
+
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>();
+    private final Map<String, Long> idsByKey = new HashMap<>();
+    private final List<Map<Long, List<Long>>> buckets = new ArrayList<>();
+    private long nextId;
+    private boolean dirty;
+
+    /**
+     * @param numHashes the size of the signatures
+     * @param threshold the similarity of the duplicates, from 0 to 1
+     * @param shingleSize the number of words of each shingle
+     * @param maxEntries the maximum number of signatures kept, the oldest are evicted first
+     * @param directory the directory of the snapshots, or null to keep the index in memory only
+     */
+    public MinHashIndex(
+            int numHashes, double threshold, int shingleSize, int maxEntries, Path directory)
+            throws IOException {
+        if (numHashes <= 0 || threshold <= 0 || threshold > 1 || shingleSize <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid MinHash configuration: "
+                            + numHashes
+                            + " hashes, threshold "
+                            + threshold
+                            + ", shingles of "
+                            + shingleSize
+                            + " words");
+        }
+        this.numHashes = numHashes;
+        this.threshold = threshold;
+        this.shingleSize = shingleSize;
+        this.maxEntries = maxEntries;
+        this.directory = directory;
+        this.rows = rowsPerBand(numHashes, threshold);
+        this.bands = numHashes / rows;
+        for (int i = 0; i < bands; i++) {
+            buckets.add(new HashMap<>());
+        }
+        SplittableRandom random = new SplittableRandom(SEED);
+        seeds = new long[numHashes];
+        for (int i = 0; i < numHashes; i++) {
+            seeds[i] = random.nextLong();
+        }
+        if (directory != null) {
+            Files.createDirectories(directory);
+            if (Files.exists(directory.resolve(FILE))) {
+                load();
+            }
+        }
+    }
+
+    /**
+     * The number of rows of each band, the texts share a band with a probability of 1/2 around
+     * (1/bands)^(1/rows): the largest number of rows that keeps it below the threshold is chosen,
+     * so that the duplicates are rarely missed.
+     */
+    static int rowsPerBand(int numHashes, double threshold) {
+        int best = 1;
+        for (int rows = 1; rows <= numHashes; rows++) {
+            if (numHashes % rows != 0) {
+                continue;
+            }
+            double candidateThreshold = Math.pow(1.0 / (numHashes / rows), 1.0 / rows);
+            if (candidateThreshold <= threshold) {
+                best = rows;
+            }
+        }
+        return best;
+    }
+
+    int getBands() {
+        return bands;
+    }
+
+    /** The MinHash signature of the text, null if it has no words. */
+    public int[] signature(CharSequence text) {
+        List<Long> words = new ArrayList<>();
+        long hash = FNV_OFFSET;
+        boolean inWord = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                hash = (hash ^ Character.toLowerCase(c)) * FNV_PRIME;
+                inWord = true;
+            } else if (inWord) {
+                words.add(hash);
+                hash = FNV_OFFSET;
+                inWord = false;
+            }
+        }
+        if (inWord) {
+            words.add(hash);
+        }
+        if (words.isEmpty()) {
+            return null;
+        }
+        int[] signature = new int[numHashes];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        int shingles = Math.max(1, words.size() - shingleSize + 1);
+        for (int start = 0; start < shingles; start++) {
+            long shingle = 0;
+            for (int i = start; i < Math.min(words.size(), start + shingleSize); i++) {
+                shingle = mix(shingle * 31 + words.get(i));
+            }
+            for (int i = 0; i < numHashes; i++) {
+                int value = (int) (mix(shingle ^ seeds[i]) >>> 33);
+                if (value < signature[i]) {
+                    signature[i] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    public static double similarity(int[] a, int[] b) {
+        int equal = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / a.length;
+    }
+
+    /** Looks for the near duplicates of a signature, and adds it to the index if there are none. */
+    public Match addIfAbsent(int[] signature) {
+        return addIfAbsent(null, signature);
+    }
+
+    /**
+     * Looks for the near duplicates of a signature, and adds it to the index if there are none. The
+     * signature previously added with the same key, if any, is removed first.
+     *
+     * @param key the identity of the text, or null if it has none
+     */
+    public synchronized Match addIfAbsent(String key, int[] signature) {
+        if (key != null) {
+            Long previous = idsByKey.get(key);
+            if (previous != null) {
+                remove(previous);
+            }
+        }
+        long[] keys = new long[bands];
+        double best = 0;
+        for (int band = 0; band < bands; band++) {
+            keys[band] = bandKey(signature, band);
+            List<Long> candidates = buckets.get(band).get(keys[band]);
+            if (candidates == null) {
+                continue;
+            }
+            for (Long id : candidates) {
+                best = Math.max(best, similarity(signature, entries.get(id).signature()));
+            }
+            if (best >= threshold) {
+                return new Match(true, best);
+            }
+        }
+        add(key, signature, keys);
+        return new Match(false, best);
+    }
+
+    private void add(String key, int[] signature, long[] keys) {
+        long id = nextId++;
+        entries.put(id, new Entry(key, signature));
+        if (key != null) {
+            idsByKey.put(key, id);
+        }
+        for (int band = 0; band < bands; band++) {
+            buckets.get(band).computeIfAbsent(keys[band], k -> new ArrayList<>(1)).add(id);
+        }
+        if (maxEntries > 0 && entries.size() > maxEntries) {
+            Iterator<Long> eldest = entries.keySet().iterator();
+            remove(eldest.next());
+        }
+        dirty = true;
+    }
+
+    private void remove(long id) {
+        Entry entry = entries.remove(id);
+        if (entry.key() != null) {
+            idsByKey.remove(entry.key());
+        }
+        for (int band = 0; band < bands; band++) {
+            long key = bandKey(entry.signature(), band);
+            List<Long> bucket = buckets.get(band).get(key);
+            bucket.remove(id);
+            if (bucket.isEmpty()) {
+                buckets.get(band).remove(key);
+            }
+        }
+        dirty = true;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private long bandKey(int[] signature, int band) {
+        long key = band;
+        for (int i = band * rows; i < (band + 1) * rows; i++) {
+            key = mix(key * 31 + signature[i]);
+        }
+        return key;
+    }
+
+    /** The finalizer of SplitMix64. */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Writes the signatures to the directory if they changed since the last save. The entries are
+     * copied under the lock and written outside it, the lookups are not blocked by the I/O.
+     */
+    public void save() throws IOException {
+        if (directory == null) {
+            return;
+        }
+        List<Entry> snapshot;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            snapshot = new ArrayList<>(entries.values());
+            dirty = false;
+        }
+        try {
+            write(snapshot);
+        } catch (IOException | RuntimeException e) {
+            // the next save retries
+            markDirty();
+            throw e;
+        }
+        log.info("Saved {} MinHash signatures to {}", snapshot.size(), directory);
+    }
+
+    private synchronized void markDirty() {
+        dirty = true;
+    }
+
+    private void write(List<Entry> snapshot) throws IOException {
+        Path temporary = directory.resolve(FILE + ".tmp");
+        try (DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(numHashes);
+            out.writeInt(shingleSize);
+            out.writeInt(snapshot.size());
+            for (Entry entry : snapshot) {
+                out.writeBoolean(entry.key() != null);
+                if (entry.key() != null) {
+                    out.writeUTF(entry.key());
+                }
+                for (int value : entry.signature()) {
+                    out.writeInt(value);
+                }
+            }
+        }
+        Files.move(
+                temporary,
+                directory.resolve(FILE),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in =
+                new DataInputStream(
+                        new BufferedInputStream(Files.newInputStream(directory.resolve(FILE))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unsupported MinHash index file in " + directory);
+            }
+            if (in.readInt() != numHashes || in.readInt() != shingleSize) {
+                // the signatures cannot be compared, the index starts empty
+                log.warn(
+                        "The MinHash index in {} has another configuration, ignoring it",
+                        directory);
+                return;
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String key = in.readBoolean() ? in.readUTF() : null;
+                int[] signature = new int[numHashes];
+                for (int j = 0; j < numHashes; j++) {
+                    signature[j] = in.readInt();
+                }
+                long[] keys = new long[bands];
+                for (int band = 0; band < bands; band++) {
+                    keys[band] = bandKey(signature, band);
+                }
+                add(key, signature, keys);
+            }
+        }
+        dirty = false;
+        log.info("Loaded {} MinHash signatures from {}", entries.size(), directory);
+    }
+}
@@ -15,11 +15,14 @@
  */
 package ai.langstream.agents.text;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.regex.Pattern;
+import java.util.regex.Matcher;
 
 public class RecursiveCharacterTextSplitter extends TextSplitter {
     private final List<String> separators;
@@ -44,22 +47,28 @@ public class RecursiveCharacterTextSplitter extends TextSplitter {
                 separator = s;
                 break;
             }
-            if (Pattern.compile(s).matcher(text).find()) {
+            if (pattern(s).matcher(text).find()) {
                 separator = s;
                 newSeparators = separators.subList(i + 1, separators.size());
                 break;
             }
         }
-        List<String> splits = splitTextWithRegex(text, separator, keepSeparator);
+        List<String> splits =
+                splitTextWithRegex(
+                        text, separator.isEmpty() ? null : pattern(separator), keepSeparator);
         List<String> goodSplits = new ArrayList<>();
+        // the length of each split is computed only once
+        int[] goodLengths = new int[splits.size()];
         String separatorToUse = keepSeparator ? "" : separator;
 
         for (String s : splits) {
-            if (lengthFunction.apply(s) < chunkSize) {
+            int length = lengthFunction.apply(s);
+            if (length < chunkSize) {
+                goodLengths[goodSplits.size()] = length;
                 goodSplits.add(s);
             } else {
                 if (!goodSplits.isEmpty()) {
-                    List<String> mergedText = mergeSplits(goodSplits, separatorToUse);
+                    List<String> mergedText = mergeSplits(goodSplits, goodLengths, separatorToUse);
                     finalChunks.addAll(mergedText);
                     goodSplits.clear();
                 }
@@ -73,7 +82,7 @@ public class RecursiveCharacterTextSplitter extends TextSplitter {
         }
 
         if (!goodSplits.isEmpty()) {
-            List<String> mergedText = mergeSplits(goodSplits, separatorToUse);
+            List<String> mergedText = mergeSplits(goodSplits, goodLengths, separatorToUse);
             finalChunks.addAll(mergedText);
         }
 
@@ -83,4 +92,69 @@ public class RecursiveCharacterTextSplitter extends TextSplitter {
     public List<String> splitText(String text) {
         return splitText(text, separators);
     }
+
+    /**
+     * Split a document without reading it entirely in memory: at most bufferSize characters are
+     * read at a time, they are cut at the last occurrence of the first separator found, and the
+     * remainder is carried over to the next buffer. The last chunk of each buffer is carried over
+     * too, so that it is merged and overlapped with the text that follows the cut.
+     */
+    public List<String> splitText(Reader reader, int bufferSize) throws IOException {
+        List<String> finalChunks = new ArrayList<>();
+        splitText(reader, bufferSize, finalChunks::add);
+        return finalChunks;
+    }
+
+    /**
+     * Split a document like {@link #splitText(Reader, int)}, passing each chunk when it is ready.
+     */
+    public void splitText(Reader reader, int bufferSize, Consumer<String> consumer)
+            throws IOException {
+        StringBuilder buffer = new StringBuilder();
+        char[] read = new char[Math.min(bufferSize, 8192)];
+        boolean eof = false;
+        while (true) {
+            while (!eof && buffer.length() < bufferSize) {
+                int count =
+                        reader.read(read, 0, Math.min(read.length, bufferSize - buffer.length()));
+                if (count < 0) {
+                    eof = true;
+                } else {
+                    buffer.append(read, 0, count);
+                }
+            }
+            if (buffer.isEmpty()) {
+                return;
+            }
+            if (eof) {
+                splitText(buffer.toString(), separators).forEach(consumer);
+                return;
+            }
+            int cut = cutIndex(buffer);
+            List<String> chunks = splitText(buffer.substring(0, cut), separators);
+            buffer.delete(0, cut);
+            if (chunks.size() > 1) {
+                // the last chunk is shorter than the text before the cut, so the buffer progresses
+                buffer.insert(0, chunks.remove(chunks.size() - 1));
+            }
+            chunks.forEach(consumer);
+        }
+    }
+
+    private int cutIndex(CharSequence buffer) {
+        for (String separator : separators) {
+            if (separator.isEmpty()) {
+                break;
+            }
+            Matcher matcher = pattern(separator).matcher(buffer);
+            int last = -1;
+            while (matcher.find()) {
+                last = matcher.start();
+            }
+            if (last > 0) {
+                return last;
+            }
+        }
+        return buffer.length();
+    }
 }
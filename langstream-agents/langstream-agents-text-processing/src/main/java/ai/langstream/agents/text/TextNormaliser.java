@@ -0,0 +1,266 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.text;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Normalises a text in a single pass: the rules are applied to each code point while the text is
+ * copied once into a reused buffer. Not thread safe, each agent has its own instance.
+ */
+public final class TextNormaliser {
+
+    /** How the whitespace of the text is rewritten. */
+    public enum Whitespace {
+        /** The whitespace is kept as is. */
+        KEEP,
+        /**
+         * The rules of the trim-spaces option: the tabs and the spaces are collapsed, the repeated
+         * newlines are reduced and the spaces around them are removed, the text is trimmed.
+         */
+        TRIM,
+        /**
+         * Each run of whitespace, including the carriage returns and the no-break spaces, becomes a
+         * paragraph break if it contains two or more newlines, even with spaces between them (a
+         * blank line), a newline if it contains one, a single space otherwise. The text is trimmed.
+         */
+        COLLAPSE
+    }
+
+    private static final int NO_GAP = 0;
+    private static final int SPACE = 1;
+    private static final int LINE = 2;
+    private static final int PARAGRAPH = 3;
+
+    /** Unicode normalization form applied first, null for none. */
+    private final Normalizer.Form unicodeForm;
+
+    private final boolean stripControlChars;
+
+    private final Whitespace whitespace;
+
+    private final boolean lowercase;
+
+    private final StringBuilder buffer = new StringBuilder();
+
+    /** The newline groups of the current run of whitespace, with the TRIM rules. */
+    private int[] newlineGroups = new int[8];
+
+    public TextNormaliser(
+            Normalizer.Form unicodeForm,
+            boolean stripControlChars,
+            Whitespace whitespace,
+            boolean lowercase) {
+        this.unicodeForm = unicodeForm;
+        this.stripControlChars = stripControlChars;
+        this.whitespace = whitespace;
+        this.lowercase = lowercase;
+    }
+
+    public String normalise(CharSequence text) {
+        if (unicodeForm != null && !Normalizer.isNormalized(text, unicodeForm)) {
+            text = Normalizer.normalize(text, unicodeForm);
+        }
+        if (!stripControlChars && whitespace == Whitespace.KEEP && !lowercase) {
+            return text.toString();
+        }
+        buffer.setLength(0);
+        buffer.ensureCapacity(text.length());
+        boolean specialCasing =
+                whitespace == Whitespace.TRIM ? normaliseTrim(text) : normaliseCollapse(text);
+        String result = whitespace == Whitespace.TRIM ? trim(buffer) : buffer.toString();
+        // the few characters that depend on their context are lowercased like
+        // String.toLowerCase(Locale.ENGLISH) does
+        return specialCasing ? result.toLowerCase(Locale.ENGLISH) : result;
+    }
+
+    private boolean normaliseCollapse(CharSequence text) {
+        // also used when the whitespace is kept
+        boolean collapse = whitespace == Whitespace.COLLAPSE;
+        boolean specialCasing = false;
+        int gap = NO_GAP;
+        int newlines = 0;
+        int length = text.length();
+        for (int i = 0; i < length; ) {
+            int codePoint = Character.codePointAt(text, i);
+            i += Character.charCount(codePoint);
+            if (collapse && isWhitespace(codePoint)) {
+                // the newlines are counted over the whole run, a line of spaces is still blank
+                if (codePoint == '\n') {
+                    newlines++;
+                    gap = Math.max(gap, newlines >= 2 ? PARAGRAPH : LINE);
+                } else if (codePoint != '\r') {
+                    gap = Math.max(gap, SPACE);
+                }
+                continue;
+            }
+            if (stripControlChars && isStrippedControl(codePoint)) {
+                continue;
+            }
+            if (gap != NO_GAP) {
+                // the whitespace at the start of the text is dropped
+                if (!buffer.isEmpty()) {
+                    switch (gap) {
+                        case SPACE -> buffer.append(' ');
+                        case LINE -> buffer.append('\n');
+                        default -> buffer.append("\n\n");
+                    }
+                }
+                gap = NO_GAP;
+                newlines = 0;
+            }
+            specialCasing |= appendCodePoint(codePoint);
+        }
+        return specialCasing;
+    }
+
+    /**
+     * Produces the same text as the regular expressions that the trim-spaces option used to apply
+     * one after the other, that only touch the runs of spaces, tabs and newlines:
+     *
+     * <pre>
+     * "\t+" -> " ", " +" -> " ", "\n\n\n" -> "\n\n", "( \n\n)+" -> " \n\n", "( \n)+" -> "\n",
+     * "\n " -> "\n", then trim()
+     * </pre>
+     */
+    private boolean normaliseTrim(CharSequence text) {
+        boolean specialCasing = false;
+        boolean inRun = false;
+        boolean leadingSpace = false;
+        int groups = 0;
+        int newlines = 0;
+        int length = text.length();
+        for (int i = 0; i < length; ) {
+            int codePoint = Character.codePointAt(text, i);
+            i += Character.charCount(codePoint);
+            if (codePoint == ' ' || codePoint == '\t') {
+                if (newlines > 0) {
+                    groups = addNewlineGroup(groups, newlines);
+                    newlines = 0;
+                } else if (!inRun) {
+                    leadingSpace = true;
+                }
+                inRun = true;
+                continue;
+            }
+            if (codePoint == '\n') {
+                newlines++;
+                inRun = true;
+                continue;
+            }
+            if (stripControlChars && isStrippedControl(codePoint)) {
+                continue;
+            }
+            if (inRun) {
+                if (newlines > 0) {
+                    groups = addNewlineGroup(groups, newlines);
+                }
+                appendTrimmedRun(leadingSpace, groups);
+                inRun = false;
+                leadingSpace = false;
+                groups = 0;
+                newlines = 0;
+            }
+            specialCasing |= appendCodePoint(codePoint);
+        }
+        if (inRun) {
+            if (newlines > 0) {
+                groups = addNewlineGroup(groups, newlines);
+            }
+            appendTrimmedRun(leadingSpace, groups);
+        }
+        return specialCasing;
+    }
+
+    private int addNewlineGroup(int groups, int newlines) {
+        if (groups == newlineGroups.length) {
+            newlineGroups = Arrays.copyOf(newlineGroups, groups * 2);
+        }
+        // "\n\n\n" -> "\n\n", applied from the left
+        newlineGroups[groups] = 2 * (newlines / 3) + newlines % 3;
+        return groups + 1;
+    }
+
+    /**
+     * Appends a run of whitespace rewritten by the trim-spaces rules. The run is made of newline
+     * groups separated by a single space, with an optional space before the first group.
+     */
+    private void appendTrimmedRun(boolean leadingSpace, int groups) {
+        if (groups == 0) {
+            buffer.append(' ');
+            return;
+        }
+        int total = 0;
+        for (int i = 0; i < groups - 1; i++) {
+            int group = newlineGroups[i];
+            boolean spaceBefore = i > 0 || leadingSpace;
+            // "( \n\n)+" -> " \n\n" keeps only the last group of a chain of " \n\n"
+            if (group == 2 && newlineGroups[i + 1] >= 2 && spaceBefore) {
+                continue;
+            }
+            // "( \n)+" -> "\n" keeps only the last group of a chain of " \n"
+            if (group == 1 && spaceBefore) {
+                continue;
+            }
+            total += group;
+        }
+        // the spaces are all removed, the last group is always kept whole
+        total += newlineGroups[groups - 1];
+        for (int i = 0; i < total; i++) {
+            buffer.append('\n');
+        }
+    }
+
+    private boolean appendCodePoint(int codePoint) {
+        if (!lowercase) {
+            buffer.appendCodePoint(codePoint);
+            return false;
+        }
+        if (codePoint == '\u0130' || codePoint == '\u03A3') {
+            // lowercased with the whole text
+            buffer.appendCodePoint(codePoint);
+            return true;
+        }
+        buffer.appendCodePoint(Character.toLowerCase(codePoint));
+        return false;
+    }
+
+    /** Same as String.trim(), without copying the text twice. */
+    private static String trim(StringBuilder text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return text.substring(start, end);
+    }
+
+    private static boolean isWhitespace(int codePoint) {
+        return Character.isWhitespace(codePoint) || Character.isSpaceChar(codePoint);
+    }
+
+    private static boolean isStrippedControl(int codePoint) {
+        return Character.getType(codePoint) == Character.CONTROL
+                && codePoint != '\n'
+                && codePoint != '\t'
+                && codePoint != '\r';
+    }
+}
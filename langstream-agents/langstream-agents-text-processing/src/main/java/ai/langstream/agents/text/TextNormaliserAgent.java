@@ -18,6 +18,7 @@ package ai.langstream.agents.text;
 import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.runner.code.SimpleRecord;
 import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import java.text.Normalizer;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -26,16 +27,36 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class TextNormaliserAgent extends SingleRecordAgentProcessor {
 
-    private boolean makeLowercase = true;
-    private boolean trimSpaces = true;
+    private TextNormaliser normaliser =
+            new TextNormaliser(null, false, TextNormaliser.Whitespace.TRIM, true);
 
     @Override
     public void init(Map<String, Object> configuration) {
-        makeLowercase =
+        boolean makeLowercase =
                 Boolean.parseBoolean(
                         configuration.getOrDefault("make-lowercase", "true").toString());
-        trimSpaces =
+        boolean trimSpaces =
                 Boolean.parseBoolean(configuration.getOrDefault("trim-spaces", "true").toString());
+        // the blank lines become paragraph breaks, a different output than trim-spaces
+        boolean collapseWhitespace =
+                Boolean.parseBoolean(
+                        configuration.getOrDefault("collapse-whitespace", "false").toString());
+        boolean stripControlChars =
+                Boolean.parseBoolean(
+                        configuration.getOrDefault("strip-control-chars", "false").toString());
+        String unicodeNormalization =
+                configuration.getOrDefault("unicode-normalization", "none").toString();
+        Normalizer.Form unicodeForm =
+                unicodeNormalization.equalsIgnoreCase("none")
+                        ? null
+                        : Normalizer.Form.valueOf(unicodeNormalization.toUpperCase(Locale.ROOT));
+        TextNormaliser.Whitespace whitespace =
+                collapseWhitespace
+                        ? TextNormaliser.Whitespace.COLLAPSE
+                        : trimSpaces
+                                ? TextNormaliser.Whitespace.TRIM
+                                : TextNormaliser.Whitespace.KEEP;
+        normaliser = new TextNormaliser(unicodeForm, stripControlChars, whitespace, makeLowercase);
     }
 
     @Override
@@ -45,24 +66,14 @@ public class TextNormaliserAgent extends SingleRecordAgentProcessor {
         }
         Object value = record.value();
         String stream = Utils.toText(value);
-
-        if (trimSpaces) {
-            stream = trimSpaces(stream);
-        }
-        if (makeLowercase) {
-            stream = stream.toLowerCase(Locale.ENGLISH);
+        if (stream == null) {
+            return List.of(record);
         }
-        return List.of(SimpleRecord.copyFrom(record).value(stream).build());
+        return List.of(SimpleRecord.copyFrom(record).value(normaliser.normalise(stream)).build());
     }
 
     static String trimSpaces(String stream) {
-        return stream.replaceAll("\t+", " ") // convert tabs to spaces
-                .replaceAll(" +", " ") // remove multiple spaces
-                .replaceAll("\n\n\n", "\n\n") // remove repeated newlines (3 or more)
-                .replaceAll(
-                        "( \n\n)+", " \n\n") // remove repeated sequences of space + double newlines
-                .replaceAll("( \n)+", "\n") // remove repeated sequences of space + newlines
-                .replaceAll("\n ", "\n") // remove repeated sequences of newlines + space
-                .trim();
+        return new TextNormaliser(null, false, TextNormaliser.Whitespace.TRIM, false)
+                .normalise(stream);
     }
 }
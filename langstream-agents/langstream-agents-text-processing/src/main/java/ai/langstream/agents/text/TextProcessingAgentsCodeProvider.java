@@ -28,7 +28,8 @@ public class TextProcessingAgentsCodeProvider implements AgentCodeProvider {
                     "language-detector", LanguageDetectorAgent::new,
                     "text-splitter", TextSplitterAgent::new,
                     "text-normaliser", TextNormaliserAgent::new,
-                    "document-to-json", DocumentToJsonAgent::new);
+                    "document-to-json", DocumentToJsonAgent::new,
+                    "dedupe-chunks", DedupeChunksAgent::new);
 
     @Override
     public boolean supports(String agentType) {
@@ -20,6 +20,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import lombok.extern.slf4j.Slf4j;
@@ -90,22 +91,44 @@ public abstract class TextSplitter {
         return text.isEmpty() ? null : text;
     }
 
+    /** The separators are compiled once, they are the same for all the documents. */
+    private final Map<String, Pattern> patterns = new ConcurrentHashMap<>();
+
+    private final Map<String, Integer> separatorLengths = new ConcurrentHashMap<>();
+
+    protected Pattern pattern(String separator) {
+        return patterns.computeIfAbsent(separator, Pattern::compile);
+    }
+
     protected List<String> mergeSplits(List<String> splits, String separator) {
+        int[] lengths = new int[splits.size()];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = lengthFunction.apply(splits.get(i));
+        }
+        return mergeSplits(splits, lengths, separator);
+    }
+
+    /**
+     * Merges the splits into chunks of at most chunkSize, with an overlap of at most chunkOverlap.
+     * The lengths of the splits are computed by the caller, the current chunk is the window of
+     * splits from start to i.
+     */
+    protected List<String> mergeSplits(List<String> splits, int[] lengths, String separator) {
         List<String> docs = new ArrayList<>();
-        List<String> currentDoc = new ArrayList<>();
+        int start = 0;
         int total = 0;
-        int separatorLen = lengthFunction.apply(separator);
+        int separatorLen = separatorLengths.computeIfAbsent(separator, lengthFunction);
 
-        for (String d : splits) {
-            int len = lengthFunction.apply(d);
-            if (total + len + (currentDoc.size() > 0 ? separatorLen : 0) > chunkSize) {
+        for (int i = 0; i < splits.size(); i++) {
+            int len = lengths[i];
+            if (total + len + (i > start ? separatorLen : 0) > chunkSize) {
                 if (total > chunkSize) {
                     log.warn(
                             "Created a chunk of size %d, which is longer than the specified %d"
                                     .formatted(total, chunkSize));
                 }
-                if (!currentDoc.isEmpty()) {
-                    String doc = joinDocs(currentDoc, separator);
+                if (i > start) {
+                    String doc = joinDocs(splits.subList(start, i), separator);
                     if (doc != null) {
                         docs.add(doc);
                     }
@@ -113,20 +136,17 @@ public abstract class TextSplitter {
                     // - we have a larger chunk than in the chunk overlap
                     // - or if we still have any chunks and the length is long
                     while (total > chunkOverlap
-                            || (total + len + (currentDoc.size() > 0 ? separatorLen : 0) > chunkSize
+                            || (total + len + (i > start ? separatorLen : 0) > chunkSize
                                     && total > 0)) {
-                        total -=
-                                lengthFunction.apply(currentDoc.get(0))
-                                        + (currentDoc.size() > 1 ? separatorLen : 0);
-                        currentDoc.remove(0);
+                        total -= lengths[start] + (i - start > 1 ? separatorLen : 0);
+                        start++;
                     }
                 }
             }
-            currentDoc.add(d);
-            total += len + (currentDoc.size() > 1 ? separatorLen : 0);
+            total += len + (i > start ? separatorLen : 0);
         }
 
-        String doc = joinDocs(currentDoc, separator);
+        String doc = joinDocs(splits.subList(start, splits.size()), separator);
         if (doc != null) {
             docs.add(doc);
         }
@@ -136,11 +156,18 @@ public abstract class TextSplitter {
 
     public static List<String> splitTextWithRegex(
             String text, String separator, boolean keepSeparator) {
+        return splitTextWithRegex(
+                text,
+                separator != null && !separator.isEmpty() ? Pattern.compile(separator) : null,
+                keepSeparator);
+    }
+
+    public static List<String> splitTextWithRegex(
+            String text, Pattern separator, boolean keepSeparator) {
         List<String> splits = new ArrayList<>();
-        if (separator != null && !separator.isEmpty()) {
+        if (separator != null) {
             if (keepSeparator) {
-                Pattern pattern = Pattern.compile("(" + separator + ")");
-                Matcher matcher = pattern.matcher(text);
+                Matcher matcher = separator.matcher(text);
                 if (matcher.find()) {
                     if (matcher.start() != 0) {
                         splits.add(text.substring(0, matcher.start()));
@@ -157,7 +184,7 @@ public abstract class TextSplitter {
                     splits.add(text);
                 }
             } else {
-                splits.addAll(Arrays.asList(text.split(separator)));
+                splits.addAll(Arrays.asList(separator.split(text)));
             }
         } else {
             // If separator is empty, split the text into individual characters
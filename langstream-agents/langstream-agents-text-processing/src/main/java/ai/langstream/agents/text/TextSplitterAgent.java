@@ -19,6 +19,8 @@ import ai.langstream.api.runner.code.Header;
 import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.runner.code.SimpleRecord;
 import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -33,9 +35,14 @@ public class TextSplitterAgent extends SingleRecordAgentProcessor {
 
     private LengthFunction lengthFunction;
 
+    /** Number of characters read at a time from a streamed document. */
+    private int bufferSize;
+
     @Override
     public void init(Map<String, Object> configuration) {
         initTextSplitter(configuration);
+        bufferSize =
+                Integer.parseInt(configuration.getOrDefault("buffer_size", "1000000").toString());
     }
 
     private void initTextSplitter(Map<String, Object> configuration) {
@@ -88,36 +95,46 @@ public class TextSplitterAgent extends SingleRecordAgentProcessor {
     }
 
     @Override
-    public List<Record> processRecord(Record record) {
+    public List<Record> processRecord(Record record) throws IOException {
         if (record == null) {
             return List.of();
         }
         Object value = record.value();
-        String text = Utils.toText(value);
-        List<String> chunks = textSplitter.splitText(text);
-        int chunkId = 0;
         List<Record> result = new ArrayList<>();
-        for (String chunk : chunks) {
-            List<Header> chunkHeaders = new ArrayList<>(record.headers());
-            chunkHeaders.add(new SimpleRecord.SimpleHeader("chunk_id", String.valueOf(chunkId++)));
-            chunkHeaders.add(
-                    new SimpleRecord.SimpleHeader(
-                            "chunk_text_length", String.valueOf(chunk.length())));
-            int numTokens = lengthFunction.length(chunk);
-            chunkHeaders.add(
-                    new SimpleRecord.SimpleHeader("chunk_num_tokens", String.valueOf(numTokens)));
-
-            // here we are setting as key the original key
-            // this is to ensure that all the chunks will be processed in order downstream
-            // it is important to not enable compaction on this topic
-            SimpleRecord chunkRecord =
-                    SimpleRecord.copyFrom(record)
-                            .key(record.key())
-                            .value(chunk)
-                            .headers(chunkHeaders)
-                            .build();
-            result.add(chunkRecord);
+        if (Utils.isStreamed(value)
+                && textSplitter instanceof RecursiveCharacterTextSplitter splitter) {
+            // the chunks are built while the document is read, only a buffer of its text is kept
+            try (Reader reader = Utils.toReader(value)) {
+                splitter.splitText(
+                        reader,
+                        bufferSize,
+                        chunk -> result.add(chunkRecord(record, chunk, result.size())));
+            }
+        } else {
+            String text = Utils.toText(value);
+            for (String chunk : textSplitter.splitText(text)) {
+                result.add(chunkRecord(record, chunk, result.size()));
+            }
         }
         return result;
     }
+
+    private Record chunkRecord(Record record, String chunk, int chunkId) {
+        List<Header> chunkHeaders = new ArrayList<>(record.headers());
+        chunkHeaders.add(new SimpleRecord.SimpleHeader("chunk_id", String.valueOf(chunkId)));
+        chunkHeaders.add(
+                new SimpleRecord.SimpleHeader("chunk_text_length", String.valueOf(chunk.length())));
+        int numTokens = lengthFunction.length(chunk);
+        chunkHeaders.add(
+                new SimpleRecord.SimpleHeader("chunk_num_tokens", String.valueOf(numTokens)));
+
+        // here we are setting as key the original key
+        // this is to ensure that all the chunks will be processed in order downstream
+        // it is important to not enable compaction on this topic
+        return SimpleRecord.copyFrom(record)
+                .key(record.key())
+                .value(chunk)
+                .headers(chunkHeaders)
+                .build();
+    }
 }
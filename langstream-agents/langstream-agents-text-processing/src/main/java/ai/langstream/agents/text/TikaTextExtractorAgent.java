@@ -16,40 +16,177 @@
 package ai.langstream.agents.text;
 
 import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.RecordSink;
 import ai.langstream.api.runner.code.SimpleRecord;
 import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
-import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.exception.WriteLimitReachedException;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.AutoDetectParser;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.parser.ParsingReader;
+import org.apache.tika.sax.BodyContentHandler;
 
 @Slf4j
 public class TikaTextExtractorAgent extends SingleRecordAgentProcessor {
+
+    /** The parsers are thread safe, loading them is expensive so they are shared. */
+    private final AutoDetectParser parser = new AutoDetectParser();
+
+    /** Number of documents extracted concurrently, 0 to extract them on the runner thread. */
+    private int workers;
+
+    /** Maximum time to extract a document, 0 for no limit. */
+    private long timeoutMillis = TimeUnit.SECONDS.toMillis(120);
+
+    /** Maximum size of a document in bytes, 0 for no limit. */
+    private long maxSize;
+
+    /** The text is truncated after this number of characters, -1 for no limit. */
+    private int maxCharacters = -1;
+
+    private ExecutorService executor;
+
+    /** Runs the extractions of the streamed documents, while the next agent reads them. */
+    private final ExecutorService parsing =
+            Executors.newCachedThreadPool(
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "text-extractor-parsing");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+
+    private ScheduledExecutorService watchdog;
+    private Semaphore pending;
+
+    @Override
+    public void init(Map<String, Object> configuration) {
+        workers =
+                Integer.parseInt(
+                        configuration
+                                .getOrDefault("workers", Runtime.getRuntime().availableProcessors())
+                                .toString());
+        timeoutMillis =
+                TimeUnit.SECONDS.toMillis(
+                        Long.parseLong(
+                                configuration.getOrDefault("timeout_seconds", "120").toString()));
+        maxSize = Long.parseLong(configuration.getOrDefault("max_size", "0").toString());
+        maxCharacters =
+                Integer.parseInt(configuration.getOrDefault("max_characters", "-1").toString());
+        log.info(
+                "Configuring text extraction with {} workers, timeout {} ms, max size {} bytes, max characters {}",
+                workers,
+                timeoutMillis,
+                maxSize,
+                maxCharacters);
+    }
+
+    @Override
+    public void start() {
+        if (workers > 0) {
+            executor = Executors.newFixedThreadPool(workers);
+            // the documents waiting for a worker are bounded, the runner blocks when they are
+            // all busy
+            pending = new Semaphore(workers * 2);
+        }
+        if (timeoutMillis > 0) {
+            watchdog = Executors.newSingleThreadScheduledExecutor();
+        }
+    }
+
+    @Override
+    public void process(List<Record> records, RecordSink recordSink) {
+        if (executor == null) {
+            super.process(records, recordSink);
+            return;
+        }
+        if (records == null || records.isEmpty()) {
+            throw new IllegalStateException("Records cannot be null or empty");
+        }
+        for (Record record : records) {
+            pending.acquireUninterruptibly();
+            executor.execute(
+                    () -> {
+                        try {
+                            processAndEmit(record, recordSink);
+                        } finally {
+                            pending.release();
+                        }
+                    });
+        }
+    }
+
     @Override
     public List<Record> processRecord(Record record) throws Exception {
         if (record == null) {
             return List.of();
         }
-        AutoDetectParser parser = new AutoDetectParser();
         Object value = record.value();
-        final InputStream stream = Utils.toStream(value);
+        if (value instanceof byte[] array && maxSize > 0 && array.length > maxSize) {
+            throw new IllegalArgumentException(
+                    "Document " + record.key() + " is larger than " + maxSize + " bytes");
+        }
+        if (Utils.isStreamed(value)) {
+            // the document is extracted while the next agent reads it: nothing is opened until
+            // then, and each call starts a new extraction so that the record can be processed
+            // again. The reader that closes the ParsingReader stops the extraction and the input
+            Supplier<Reader> reader = () -> openStreamedText(record, value);
+            return List.of(SimpleRecord.copyFrom(record).value(reader).build());
+        }
+
+        final InputStream stream =
+                value instanceof byte[] ? Utils.toStream(value) : limit(Utils.toStream(value));
         Metadata metadata = new Metadata();
         ParseContext parseContext = new ParseContext();
-        StringWriter valueAsString;
 
-        // ParsingReader starts new threads, so we need to make sure they are cleaned up
-        try (Reader reader = new ParsingReader(parser, stream, metadata, parseContext)) {
-            valueAsString = new StringWriter();
-            reader.transferTo(valueAsString);
+        BodyContentHandler handler = new BodyContentHandler(maxCharacters);
+        Extraction extraction = new Extraction(Thread.currentThread(), stream);
+        ScheduledFuture<?> timeout =
+                watchdog != null
+                        ? watchdog.schedule(
+                                extraction::timeout, timeoutMillis, TimeUnit.MILLISECONDS)
+                        : null;
+        try (stream) {
+            parser.parse(stream, handler, metadata, parseContext);
+        } catch (Exception e) {
+            if (extraction.timedOut()) {
+                throw new TimeoutException(
+                        "Extraction of "
+                                + record.key()
+                                + " took more than "
+                                + timeoutMillis
+                                + " ms");
+            }
+            if (!WriteLimitReachedException.isWriteLimitReached(e)) {
+                throw e;
+            }
+            log.warn("Text of {} truncated to {} characters", record.key(), maxCharacters);
+        } finally {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            extraction.done();
         }
+        String valueAsString = handler.toString();
 
         String[] names = metadata.names();
         if (log.isDebugEnabled()) {
@@ -58,6 +195,287 @@ public class TikaTextExtractorAgent extends SingleRecordAgentProcessor {
                     Stream.of(names).collect(Collectors.toMap(Function.identity(), metadata::get)),
                     valueAsString);
         }
-        return List.of(SimpleRecord.copyFrom(record).value(valueAsString.toString()).build());
+        return List.of(SimpleRecord.copyFrom(record).value(valueAsString).build());
+    }
+
+    private Reader openStreamedText(Record record, Object value) {
+        InputStream stream = limit(Utils.toStream(value));
+        Extraction extraction = new Extraction(null, stream);
+        StreamedText text = new StreamedText(record.key(), extraction);
+        if (watchdog != null) {
+            // the ParsingReader waits for the beginning of the text when it is created
+            text.timeout = watchdog.schedule(text::timeout, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        try {
+            text.open(
+                    () ->
+                            new ParsingReader(
+                                    parser,
+                                    stream,
+                                    new Metadata(),
+                                    new ParseContext(),
+                                    command -> parsing.execute(() -> extraction.run(command))));
+        } catch (IOException e) {
+            text.cancelTimeout();
+            throw new UncheckedIOException(e);
+        }
+        return text;
+    }
+
+    private interface IOSupplier<T> {
+        T get() throws IOException;
+    }
+
+    /**
+     * The text of a streamed document, that is stopped like the other documents when it takes
+     * longer than the timeout to be read, and is truncated after the max characters.
+     */
+    private class StreamedText extends FilterReader {
+        private final Object key;
+        private final Extraction extraction;
+        private volatile ScheduledFuture<?> timeout;
+        private Thread reading;
+        private long characters;
+        private boolean truncated;
+
+        StreamedText(Object key, Extraction extraction) {
+            super(Reader.nullReader());
+            this.key = key;
+            this.extraction = extraction;
+        }
+
+        void open(IOSupplier<Reader> reader) throws IOException {
+            Reader opened = guarded(reader);
+            synchronized (this) {
+                in = opened;
+            }
+            if (extraction.timedOut()) {
+                opened.close();
+                throw timedOut();
+            }
+        }
+
+        void timeout() {
+            extraction.timeout();
+            Reader reader;
+            synchronized (this) {
+                // the pipe of the ParsingReader doesn't notice that it is closed while it waits
+                if (reading != null) {
+                    reading.interrupt();
+                }
+                reader = in;
+            }
+            try {
+                reader.close();
+            } catch (IOException ignore) {
+                // the extraction is already stopping
+            }
+        }
+
+        void cancelTimeout() {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            char[] c = new char[1];
+            return read(c, 0, 1) == -1 ? -1 : c[0];
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return guarded(
+                    () -> {
+                        int n = readLimited(buffer, offset, length);
+                        if (n == -1 && extraction.timedOut()) {
+                            // the extraction was stopped, the end of the text is missing
+                            throw timedOut();
+                        }
+                        return n;
+                    });
+        }
+
+        /** Runs an operation that the watchdog interrupts when the extraction times out. */
+        private <T> T guarded(IOSupplier<T> operation) throws IOException {
+            synchronized (this) {
+                if (extraction.timedOut()) {
+                    throw timedOut();
+                }
+                reading = Thread.currentThread();
+            }
+            try {
+                return operation.get();
+            } catch (IOException e) {
+                if (extraction.timedOut()) {
+                    throw timedOut();
+                }
+                throw e;
+            } finally {
+                synchronized (this) {
+                    reading = null;
+                    if (extraction.timedOut()) {
+                        Thread.interrupted();
+                    }
+                }
+            }
+        }
+
+        private IOException timedOut() {
+            return new IOException(
+                    "Extraction of " + key + " took more than " + timeoutMillis + " ms",
+                    new TimeoutException());
+        }
+
+        private int readLimited(char[] buffer, int offset, int length) throws IOException {
+            if (maxCharacters >= 0) {
+                if (characters >= maxCharacters) {
+                    if (!truncated) {
+                        truncated = true;
+                        if (in.read() != -1) {
+                            log.warn("Text of {} truncated to {} characters", key, maxCharacters);
+                        }
+                    }
+                    return -1;
+                }
+                length = (int) Math.min(length, maxCharacters - characters);
+            }
+            int n = in.read(buffer, offset, length);
+            if (n > 0) {
+                characters += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            char[] skipped = new char[(int) Math.min(n, 8192)];
+            int read = read(skipped, 0, skipped.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            cancelTimeout();
+            super.close();
+        }
+    }
+
+    private InputStream limit(InputStream stream) {
+        if (maxSize <= 0) {
+            return stream;
+        }
+        return new FilterInputStream(stream) {
+            private long read;
+
+            @Override
+            public boolean markSupported() {
+                // the bytes read again after a reset would be counted twice
+                return false;
+            }
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    count(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    count(n);
+                }
+                return n;
+            }
+
+            private void count(int n) throws IOException {
+                read += n;
+                if (read > maxSize) {
+                    throw new IOException("Document is larger than " + maxSize + " bytes");
+                }
+            }
+        };
+    }
+
+    /**
+     * A document that takes too long is stopped by interrupting the worker and closing its input,
+     * the parsers that do not react to it keep their thread until they complete.
+     */
+    private static class Extraction {
+        private Thread worker;
+        private final InputStream stream;
+        private boolean done;
+        private boolean timedOut;
+
+        Extraction(Thread worker, InputStream stream) {
+            this.worker = worker;
+            this.stream = stream;
+        }
+
+        /** Runs a streamed extraction on a thread of the parsing pool. */
+        void run(Runnable command) {
+            synchronized (this) {
+                if (timedOut) {
+                    return;
+                }
+                worker = Thread.currentThread();
+            }
+            try {
+                command.run();
+            } finally {
+                done();
+            }
+        }
+
+        synchronized void timeout() {
+            timedOut = true;
+            if (done) {
+                return;
+            }
+            if (worker != null) {
+                worker.interrupt();
+            }
+            try {
+                stream.close();
+            } catch (IOException ignore) {
+                // the worker is already stopping
+            }
+        }
+
+        synchronized boolean timedOut() {
+            return timedOut;
+        }
+
+        synchronized void done() {
+            done = true;
+            if (timedOut) {
+                // clear the interrupt before the worker takes the next document
+                Thread.interrupted();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (executor != null) {
+            executor.shutdown();
+            if (!executor.awaitTermination(timeoutMillis + 10_000, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        }
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+        parsing.shutdownNow();
     }
 }
@@ -17,20 +17,28 @@ package ai.langstream.agents.text;
 
 import ai.langstream.api.runner.code.Header;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Supplier;
 
 public class Utils {
     public static InputStream toStream(Object value) {
         final InputStream stream;
         if (value instanceof byte[] array) {
             stream = new ByteArrayInputStream(array);
+        } else if (value instanceof InputStream inputStream) {
+            stream = inputStream;
+        } else if (isStreamed(value)) {
+            stream = (InputStream) ((Supplier<?>) value).get();
         } else {
             stream = new ByteArrayInputStream(value.toString().getBytes(StandardCharsets.UTF_8));
         }
@@ -43,11 +51,28 @@ public class Utils {
         }
         if (value instanceof byte[] array) {
             return new InputStreamReader(new ByteArrayInputStream(array), StandardCharsets.UTF_8);
+        } else if (value instanceof Reader reader) {
+            return reader;
+        } else if (isStreamed(value)) {
+            Object opened = ((Supplier<?>) value).get();
+            if (opened instanceof Reader reader) {
+                return reader;
+            }
+            return new InputStreamReader((InputStream) opened, StandardCharsets.UTF_8);
         } else {
             return new StringReader(value.toString());
         }
     }
 
+    /**
+     * Large documents may be passed between the agents of the same pod as a Supplier of InputStream
+     * (see the S3 source) or of Reader (see the text extractor), instead of being read in memory.
+     * Each call opens a new stream, that is closed by the agent that reads it.
+     */
+    public static boolean isStreamed(Object value) {
+        return value instanceof Supplier<?>;
+    }
+
     public static String toText(Object value) {
 
         if (value == null) {
@@ -55,6 +80,14 @@ public class Utils {
         }
         if (value instanceof byte[] array) {
             return new String(array, StandardCharsets.UTF_8);
+        } else if (isStreamed(value)) {
+            try (Reader reader = toReader(value)) {
+                StringWriter writer = new StringWriter();
+                reader.transferTo(writer);
+                return writer.toString();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
         } else {
             return value.toString();
         }
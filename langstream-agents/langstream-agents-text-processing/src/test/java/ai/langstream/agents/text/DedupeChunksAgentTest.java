@@ -0,0 +1,143 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.text;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.SimpleRecord;
+import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DedupeChunksAgentTest {
+
+    private static final String CHUNK =
+            "LangStream is a framework to build and run Gen AI applications. "
+                    + "It is designed for event driven architectures and it runs on Kubernetes. "
+                    + "The applications are made of pipelines of agents that read and write topics.";
+
+    private static SingleRecordAgentProcessor createAgent(Map<String, Object> configuration)
+            throws Exception {
+        TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
+        SingleRecordAgentProcessor instance = provider.createInstance("dedupe-chunks");
+        instance.init(configuration);
+        instance.start();
+        return instance;
+    }
+
+    @Test
+    void testDropDuplicates() throws Exception {
+        SingleRecordAgentProcessor instance = createAgent(Map.of());
+
+        assertEquals(1, instance.processRecord(SimpleRecord.of("1", CHUNK)).size());
+        // the same text with a different footer is a near duplicate
+        String nearDuplicate = CHUNK.replace("topics.", "topics. Copyright 2023.");
+        assertTrue(instance.processRecord(SimpleRecord.of("2", nearDuplicate)).isEmpty());
+        assertTrue(instance.processRecord(SimpleRecord.of("3", CHUNK.toUpperCase())).isEmpty());
+
+        String other =
+                "The vector database stores the embeddings of the chunks of the documents, "
+                        + "so that the chatbot can find the most relevant ones for a question.";
+        assertEquals(1, instance.processRecord(SimpleRecord.of("4", other)).size());
+        // no words, nothing to compare
+        assertEquals(1, instance.processRecord(SimpleRecord.of("5", "   ")).size());
+        instance.close();
+    }
+
+    @Test
+    void testMarkDuplicates() throws Exception {
+        SingleRecordAgentProcessor instance = createAgent(Map.of("action", "mark"));
+
+        Record first = instance.processRecord(SimpleRecord.of("1", CHUNK)).get(0);
+        assertNull(first.getHeader(DedupeChunksAgent.DUPLICATE_PROPERTY));
+        Record second = instance.processRecord(SimpleRecord.of("2", CHUNK)).get(0);
+        assertEquals(
+                "true", second.getHeader(DedupeChunksAgent.DUPLICATE_PROPERTY).valueAsString());
+        instance.close();
+    }
+
+    @Test
+    void testSameRecordTwice(@TempDir Path directory) throws Exception {
+        Map<String, Object> configuration = Map.of("directory", directory.toString());
+        SingleRecordAgentProcessor instance = createAgent(configuration);
+        Record record =
+                SimpleRecord.builder()
+                        .key("doc.pdf")
+                        .value(CHUNK)
+                        .headers(List.of(SimpleRecord.SimpleHeader.of("chunk_id", "0")))
+                        .build();
+        // a record delivered again replaces itself
+        assertEquals(1, instance.processRecord(record).size());
+        assertEquals(1, instance.processRecord(record).size());
+        assertEquals(1, instance.processRecord(record).size());
+        // another chunk of the same document is still a duplicate
+        Record otherChunk =
+                SimpleRecord.copyFrom(record)
+                        .headers(List.of(SimpleRecord.SimpleHeader.of("chunk_id", "1")))
+                        .build();
+        assertTrue(instance.processRecord(otherChunk).isEmpty());
+        instance.close();
+
+        // the identities are kept in the snapshot
+        SingleRecordAgentProcessor reopened = createAgent(configuration);
+        assertEquals(1, reopened.processRecord(record).size());
+        reopened.close();
+    }
+
+    @Test
+    void testSnapshot(@TempDir Path directory) throws Exception {
+        Map<String, Object> configuration = Map.of("directory", directory.toString());
+        SingleRecordAgentProcessor instance = createAgent(configuration);
+        assertEquals(1, instance.processRecord(SimpleRecord.of("1", CHUNK)).size());
+        instance.close();
+        assertTrue(Files.exists(directory.resolve(MinHashIndex.FILE)));
+
+        SingleRecordAgentProcessor reopened = createAgent(configuration);
+        assertTrue(reopened.processRecord(SimpleRecord.of("2", CHUNK)).isEmpty());
+        reopened.close();
+    }
+
+    @Test
+    void testBoundedIndex() throws Exception {
+        MinHashIndex index = new MinHashIndex(64, 0.8, 3, 2, null);
+        List<String> texts =
+                List.of(
+                        "the first text is about the weather in the mountains",
+                        "the second text is about the recipes of the grandmother",
+                        "the third text is about the history of the old castle");
+        for (String text : texts) {
+            assertFalse(index.addIfAbsent(index.signature(text)).duplicate());
+        }
+        assertEquals(2, index.size());
+        // the first text was evicted
+        assertFalse(index.addIfAbsent(index.signature(texts.get(0))).duplicate());
+        assertTrue(index.addIfAbsent(index.signature(texts.get(2))).duplicate());
+    }
+
+    @Test
+    void testBands() {
+        assertEquals(8, MinHashIndex.rowsPerBand(64, 0.8));
+        assertEquals(4, MinHashIndex.rowsPerBand(64, 0.6));
+    }
+}
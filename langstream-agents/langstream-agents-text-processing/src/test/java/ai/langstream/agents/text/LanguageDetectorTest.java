@@ -16,12 +16,19 @@
 package ai.langstream.agents.text;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.runner.code.SimpleRecord;
 import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import java.io.Reader;
+import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Test;
 
@@ -39,6 +46,87 @@ public class LanguageDetectorTest {
         assertEquals("fr", detectLanguage(instance, "Parlez-vous français?"));
     }
 
+    @Test
+    public void textDetectLargeDocument() throws Exception {
+        TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
+        SingleRecordAgentProcessor instance = provider.createInstance("language-detector");
+        instance.init(
+                Map.of(
+                        "property",
+                        "detected-language",
+                        "sampleSize",
+                        256,
+                        "confidenceProperty",
+                        "confidence"));
+
+        String english = "The quick brown fox jumps over the lazy dog, again and again. ";
+        String italian = "Il veloce cane marrone salta sopra la volpe pigra, ancora una volta. ";
+        // the windows are spread over the whole document, not only its beginning
+        String text = english.repeat(10) + italian.repeat(10_000);
+        assertEquals("it", detectLanguage(instance, text));
+        Record result = instance.processRecord(SimpleRecord.of(null, text)).get(0);
+        double confidence = Double.parseDouble(result.getHeader("confidence").valueAsString());
+        assertTrue(confidence > 0 && confidence <= 1, "confidence " + confidence);
+        // the value is not modified
+        assertEquals(text, result.value());
+    }
+
+    @Test
+    public void textDetectShortCircuit() throws Exception {
+        TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
+        SingleRecordAgentProcessor instance = provider.createInstance("language-detector");
+        instance.init(
+                Map.of(
+                        "property",
+                        "detected-language",
+                        "allowedLanguages",
+                        List.of("en", "fr"),
+                        "sampleSize",
+                        1024,
+                        "shortCircuit",
+                        true));
+
+        String english =
+                "The committee met on Tuesday to discuss the budget for the next year. "
+                        + "Most of the members agreed that the new library should be built "
+                        + "before the end of the summer, and that the old building could be "
+                        + "used as a community centre for the children of the neighbourhood. ";
+        String french =
+                "Le comité s'est réuni mardi pour discuter du budget de l'année prochaine. "
+                        + "La plupart des membres ont convenu que la nouvelle bibliothèque "
+                        + "devait être construite avant la fin de l'été, et que l'ancien "
+                        + "bâtiment pourrait servir de centre pour les enfants du quartier. ";
+        String italian =
+                "Il comitato si è riunito martedì per discutere il bilancio dell'anno "
+                        + "prossimo. La maggior parte dei membri ha convenuto che la nuova "
+                        + "biblioteca dovrebbe essere costruita prima della fine dell'estate, "
+                        + "e che il vecchio edificio potrebbe servire ai bambini del quartiere. ";
+        assertEquals("en", detectLanguage(instance, english.repeat(100)));
+        assertEquals("fr", detectLanguage(instance, french.repeat(100)));
+        // the record is dropped
+        assertTrue(instance.processRecord(SimpleRecord.of(null, italian.repeat(100))).isEmpty());
+    }
+
+    @Test
+    public void textDetectStreamed() throws Exception {
+        TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
+        SingleRecordAgentProcessor instance = provider.createInstance("language-detector");
+        instance.init(Map.of("property", "detected-language", "sampleSize", 256));
+
+        String text = "Il veloce cane marrone salta sopra la volpe pigra. ".repeat(10_000);
+        AtomicInteger opened = new AtomicInteger();
+        Supplier<Reader> value =
+                () -> {
+                    opened.incrementAndGet();
+                    return new StringReader(text);
+                };
+        Record result = instance.processRecord(SimpleRecord.of(null, value)).get(0);
+        assertEquals("it", result.getHeader("detected-language").valueAsString());
+        // the value is still streamed, and can be read by the next agent
+        assertSame(value, result.value());
+        assertEquals(1, opened.get());
+    }
+
     private static String detectLanguage(SingleRecordAgentProcessor instance, String text)
             throws Exception {
         Record fromSource =
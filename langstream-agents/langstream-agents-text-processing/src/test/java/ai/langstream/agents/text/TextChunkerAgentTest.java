@@ -20,9 +20,13 @@ import static org.junit.jupiter.api.Assertions.*;
 import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.runner.code.SimpleRecord;
 import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Test;
@@ -168,4 +172,68 @@ class TextChunkerAgentTest {
             assertEquals(expectedChunk, chunks.get(i++));
         }
     }
+
+    @Test
+    public void testChunksStreamedDocument() throws Exception {
+        TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
+        SingleRecordAgentProcessor extractor = provider.createInstance("text-extractor");
+        extractor.init(Map.of());
+        SingleRecordAgentProcessor splitter = provider.createInstance("text-splitter");
+        Map<String, Object> configuration =
+                Map.of(
+                        "chunk_size",
+                        15,
+                        "chunk_overlap",
+                        5,
+                        "length_function",
+                        "length",
+                        "buffer_size",
+                        40);
+        splitter.init(configuration);
+
+        String text = "Hello world. This is a great day\n\nThe sun is shining on the sea";
+        Supplier<InputStream> document =
+                () -> new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+        Record fromSource =
+                SimpleRecord.builder()
+                        .key("filename.txt")
+                        .value(document)
+                        .origin("origin")
+                        .timestamp(System.currentTimeMillis())
+                        .build();
+
+        Record extracted = extractor.processRecord(fromSource).get(0);
+        assertInstanceOf(Supplier.class, extracted.value());
+        List<String> chunks =
+                splitter.processRecord(extracted).stream().map(r -> r.value().toString()).toList();
+
+        // the buffer is cut at the paragraph, so the chunks are the same as the in-memory split
+        SingleRecordAgentProcessor inMemory = provider.createInstance("text-splitter");
+        inMemory.init(configuration);
+        assertEquals(doChunking(inMemory, text.trim()), chunks);
+
+        // the document is extracted again when the record is processed again
+        assertEquals(
+                chunks,
+                splitter.processRecord(extracted).stream().map(r -> r.value().toString()).toList());
+    }
+
+    @Test
+    public void testChunksOverlapAcrossBuffers() throws Exception {
+        RecursiveCharacterTextSplitter splitter =
+                new RecursiveCharacterTextSplitter(
+                        List.of("\n\n", "\n", " ", ""), false, 20, 10, String::length);
+        String text =
+                "one two three four five six seven eight nine ten "
+                        + "eleven twelve thirteen fourteen fifteen sixteen";
+
+        // the buffers are cut in the middle of the text, the chunks still overlap
+        List<String> chunks = splitter.splitText(new StringReader(text), 50);
+        assertEquals(splitter.splitText(text), chunks);
+        for (int i = 1; i < chunks.size(); i++) {
+            String previous = chunks.get(i - 1);
+            String first = chunks.get(i).split(" ")[0];
+            assertTrue(previous.contains(first), previous + " / " + chunks.get(i));
+        }
+    }
 }
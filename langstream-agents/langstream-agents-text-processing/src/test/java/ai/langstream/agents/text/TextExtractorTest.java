@@ -16,13 +16,31 @@
 package ai.langstream.agents.text;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import ai.langstream.api.runner.code.AgentProcessor;
 import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.runner.code.SimpleRecord;
 import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Test;
 
@@ -88,4 +106,135 @@ public class TextExtractorTest {
 
         assertEquals("This is a very simple Word Document", result.value().toString().trim());
     }
+
+    @Test
+    public void textExtractInParallel() throws Exception {
+        TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
+        SingleRecordAgentProcessor instance = provider.createInstance("text-extractor");
+        instance.init(Map.of("workers", 4));
+        instance.start();
+
+        byte[] content = Files.readAllBytes(Paths.get("src/test/resources/simple.pdf"));
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            records.add(
+                    SimpleRecord.builder()
+                            .key("filename" + i + ".pdf")
+                            .value(content)
+                            .origin("origin")
+                            .timestamp(System.currentTimeMillis())
+                            .build());
+        }
+        List<AgentProcessor.SourceRecordAndResult> results = new CopyOnWriteArrayList<>();
+        instance.process(records, results::add);
+        // closing the agent waits for the pending documents
+        instance.close();
+
+        assertEquals(10, results.size());
+        for (AgentProcessor.SourceRecordAndResult result : results) {
+            assertNull(result.error());
+            assertEquals(
+                    "This is a very simple PDF",
+                    result.resultRecords().get(0).value().toString().trim());
+        }
+    }
+
+    @Test
+    public void textExtractLimits() throws Exception {
+        TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
+        SingleRecordAgentProcessor instance = provider.createInstance("text-extractor");
+        instance.init(Map.of("workers", 0, "max_size", 10, "max_characters", 4));
+        instance.start();
+
+        Record tooLarge =
+                SimpleRecord.builder()
+                        .key("filename.txt")
+                        .value("This is a test".getBytes(StandardCharsets.UTF_8))
+                        .build();
+        assertThrows(IllegalArgumentException.class, () -> instance.processRecord(tooLarge));
+
+        Record truncated =
+                SimpleRecord.builder()
+                        .key("filename.txt")
+                        .value("Hello".getBytes(StandardCharsets.UTF_8))
+                        .build();
+        assertEquals("Hell", instance.processRecord(truncated).get(0).value());
+        instance.close();
+    }
+
+    @Test
+    public void textExtractTimeout() throws Exception {
+        TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
+        SingleRecordAgentProcessor instance = provider.createInstance("text-extractor");
+        instance.init(Map.of("workers", 0, "timeout_seconds", 1));
+        instance.start();
+
+        // a document that never ends
+        InputStream stuck =
+                new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        try {
+                            Thread.sleep(60_000);
+                        } catch (InterruptedException e) {
+                            throw new InterruptedIOException();
+                        }
+                        return -1;
+                    }
+                };
+        Record fromSource = SimpleRecord.builder().key("filename.txt").value(stuck).build();
+        assertThrows(TimeoutException.class, () -> instance.processRecord(fromSource));
+        assertFalse(Thread.currentThread().isInterrupted());
+        instance.close();
+    }
+
+    @Test
+    public void textExtractStreamedLimits() throws Exception {
+        TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
+        SingleRecordAgentProcessor instance = provider.createInstance("text-extractor");
+        instance.init(Map.of("workers", 0, "max_characters", 4));
+        instance.start();
+
+        Supplier<InputStream> document =
+                () -> new ByteArrayInputStream("Hello".getBytes(StandardCharsets.UTF_8));
+        Record fromSource = SimpleRecord.builder().key("filename.txt").value(document).build();
+        Object text = instance.processRecord(fromSource).get(0).value();
+        try (Reader reader = Utils.toReader(text)) {
+            StringWriter writer = new StringWriter();
+            reader.transferTo(writer);
+            assertEquals("Hell", writer.toString());
+        }
+        instance.close();
+    }
+
+    @Test
+    public void textExtractStreamedTimeout() throws Exception {
+        TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
+        SingleRecordAgentProcessor instance = provider.createInstance("text-extractor");
+        instance.init(Map.of("workers", 0, "timeout_seconds", 1));
+        instance.start();
+
+        // a document that never ends
+        Supplier<InputStream> document =
+                () ->
+                        new InputStream() {
+                            @Override
+                            public int read() throws IOException {
+                                try {
+                                    Thread.sleep(60_000);
+                                } catch (InterruptedException e) {
+                                    throw new InterruptedIOException();
+                                }
+                                return -1;
+                            }
+                        };
+        Record fromSource = SimpleRecord.builder().key("filename.txt").value(document).build();
+        Object text = instance.processRecord(fromSource).get(0).value();
+        // the next agent fails when it opens the text, the beginning of the text never comes
+        UncheckedIOException error =
+                assertThrows(UncheckedIOException.class, () -> Utils.toText(text));
+        assertInstanceOf(TimeoutException.class, error.getCause().getCause());
+        assertFalse(Thread.currentThread().isInterrupted());
+        instance.close();
+    }
 }
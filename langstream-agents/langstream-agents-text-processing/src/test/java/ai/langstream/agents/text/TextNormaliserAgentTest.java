@@ -17,6 +17,12 @@ package ai.langstream.agents.text;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.SimpleRecord;
+import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
 import org.junit.jupiter.api.Test;
 
 class TextNormaliserAgentTest {
@@ -38,4 +44,58 @@ class TextNormaliserAgentTest {
                         end""",
                 result);
     }
+
+    @Test
+    void testTrimSpacesLikeRegularExpressions() {
+        TextNormaliser normaliser =
+                new TextNormaliser(null, false, TextNormaliser.Whitespace.TRIM, true);
+        String alphabet = "  \t\n\n\raAx\u00A0\u0001\u0130\u03A3";
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(24);
+            for (int j = 0; j < length; j++) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String expected =
+                    text.toString()
+                            .replaceAll("\t+", " ")
+                            .replaceAll(" +", " ")
+                            .replaceAll("\n\n\n", "\n\n")
+                            .replaceAll("( \n\n)+", " \n\n")
+                            .replaceAll("( \n)+", "\n")
+                            .replaceAll("\n ", "\n")
+                            .trim()
+                            .toLowerCase(Locale.ENGLISH);
+            assertEquals(expected, normaliser.normalise(text), text.toString());
+        }
+    }
+
+    @Test
+    void testNormalise() throws Exception {
+        TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
+        SingleRecordAgentProcessor instance = provider.createInstance("text-normaliser");
+        instance.init(
+                Map.of(
+                        "unicode-normalization",
+                        "NFKC",
+                        "strip-control-chars",
+                        true,
+                        "collapse-whitespace",
+                        true));
+
+        // the ligature and the full width letters are decomposed by NFKC
+        String text = "\uFB01rst\u0000 \u00A0 ＡＢＣ\u0007\r\n\r\nNext  PARAGRAPH\n";
+        Record result = instance.processRecord(SimpleRecord.of("key", text)).get(0);
+        assertEquals("first abc\n\nnext paragraph", result.value());
+
+        TextNormaliser collapse =
+                new TextNormaliser(null, false, TextNormaliser.Whitespace.COLLAPSE, false);
+        // three or more newlines are always collapsed
+        assertEquals("a\n\nb", collapse.normalise("a\n\n\n\n\nb"));
+        // a line with only spaces is blank, the newlines around it are a paragraph break
+        assertEquals("word\n\nnext", collapse.normalise("word\n  \nnext"));
+        assertEquals("word\n\nnext", collapse.normalise("word \r\n\t\r\n next"));
+        assertEquals("word\nnext", collapse.normalise("word  \n  next"));
+    }
 }
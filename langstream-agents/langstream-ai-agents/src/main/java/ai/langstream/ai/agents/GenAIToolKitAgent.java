@@ -49,6 +49,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -117,8 +118,13 @@ public class GenAIToolKitAgent extends AbstractAgentCode implements AgentProcess
         return handle.thenApply(
                 ___ -> {
                     try {
+                        // the next agent of a composite pipeline takes the structured key and
+                        // value, the serialization errors are reported with this record
+                        Object structuredKey = context.getKeyObject();
+                        Object structuredValue = context.getValueObject();
                         context.convertMapToStringOrBytes();
-                        Optional<Record> recordResult = transformContextToRecord(context);
+                        Optional<Record> recordResult =
+                                transformContextToRecord(context, structuredKey, structuredValue);
                         if (log.isDebugEnabled()) {
                             log.debug("Result {}", recordResult);
                         }
@@ -174,6 +180,16 @@ public class GenAIToolKitAgent extends AbstractAgentCode implements AgentProcess
         step.getTransformStep().start();
     }
 
+    @Override
+    protected Map<String, Object> buildAdditionalInfo() {
+        if (step == null) {
+            return super.buildAdditionalInfo();
+        }
+        Map<String, Object> info = new HashMap<>(super.buildAdditionalInfo());
+        info.putAll(step.getTransformStep().buildAdditionalInfo());
+        return info;
+    }
+
     @Override
     public void close() throws Exception {
         if (dataSource != null) {
@@ -190,18 +206,35 @@ public class GenAIToolKitAgent extends AbstractAgentCode implements AgentProcess
     public static TransformContext recordToTransformContext(
             Record record, boolean attemptJsonConversion) {
         TransformContext context = new TransformContext();
-        context.setKeyObject(record.key());
-        context.setKeySchemaType(
-                record.key() == null ? null : getSchemaType(record.key().getClass()));
+        Object key;
+        Object value;
+        if (attemptJsonConversion && record instanceof TransformRecord transformRecord) {
+            // the record comes from another agent of the same pipeline, its key and value are
+            // taken as they were before the serialization, so that they are not parsed again. The
+            // steps add the fields at the top level, so a shallow copy is enough to keep the record
+            // of the previous agent unchanged.
+            TransformContext previous = transformRecord.context;
+            key = copyIfMap(transformRecord.structuredKey);
+            value = copyIfMap(transformRecord.structuredValue);
+            context.setKeySchemaType(
+                    key instanceof Map ? previous.getKeySchemaType() : getSchemaType(key));
+            context.setValueSchemaType(
+                    value instanceof Map ? previous.getValueSchemaType() : getSchemaType(value));
+        } else {
+            key = record.key();
+            value = record.value();
+            context.setKeySchemaType(getSchemaType(key));
+            context.setValueSchemaType(getSchemaType(value));
+        }
+        context.setKeyObject(key);
         // TODO: temporary hack. We should be able to get the schema from the record
-        if (record.key() instanceof GenericRecord) {
-            context.setKeyNativeSchema(((GenericRecord) record.key()).getSchema());
+        if (key instanceof GenericRecord) {
+            context.setKeyNativeSchema(((GenericRecord) key).getSchema());
         }
-        context.setValueObject(record.value());
-        context.setValueSchemaType(getSchemaType(record.value().getClass()));
+        context.setValueObject(value);
         // TODO: temporary hack. We should be able to get the schema from the record
-        if (record.value() instanceof GenericRecord) {
-            context.setKeyNativeSchema(((GenericRecord) record.value()).getSchema());
+        if (value instanceof GenericRecord) {
+            context.setKeyNativeSchema(((GenericRecord) value).getSchema());
         }
         context.setInputTopic(record.origin());
         context.setEventTime(record.timestamp());
@@ -234,6 +267,11 @@ public class GenAIToolKitAgent extends AbstractAgentCode implements AgentProcess
     }
 
     public static Optional<Record> transformContextToRecord(TransformContext context) {
+        return transformContextToRecord(context, context.getKeyObject(), context.getValueObject());
+    }
+
+    private static Optional<Record> transformContextToRecord(
+            TransformContext context, Object structuredKey, Object structuredValue) {
         if (context.isDropCurrentRecord()) {
             return Optional.empty();
         }
@@ -245,13 +283,27 @@ public class GenAIToolKitAgent extends AbstractAgentCode implements AgentProcess
                                     new SimpleRecord.SimpleHeader(key, value);
                             headers.add(header);
                         });
-        return Optional.of(new TransformRecord(context, headers));
+        return Optional.of(new TransformRecord(context, structuredKey, structuredValue, headers));
     }
 
-    private record TransformRecord(TransformContext context, Collection<Header> headers)
-            implements Record {
-        private TransformRecord(TransformContext context, Collection<Header> headers) {
+    /**
+     * A record that also holds the key and value computed by the agent before they were serialized,
+     * the next agent of a composite pipeline reads them as they are.
+     */
+    private static final class TransformRecord implements Record {
+        private final TransformContext context;
+        private final Object structuredKey;
+        private final Object structuredValue;
+        private final Collection<Header> headers;
+
+        private TransformRecord(
+                TransformContext context,
+                Object structuredKey,
+                Object structuredValue,
+                Collection<Header> headers) {
             this.context = context;
+            this.structuredKey = structuredKey;
+            this.structuredValue = structuredValue;
             this.headers = new ArrayList<>(headers);
         }
 
@@ -274,6 +326,24 @@ public class GenAIToolKitAgent extends AbstractAgentCode implements AgentProcess
         public Long timestamp() {
             return context.getEventTime();
         }
+
+        @Override
+        public Collection<Header> headers() {
+            return headers;
+        }
+
+        @Override
+        public String toString() {
+            return "TransformRecord[context=" + context + ", headers=" + headers + "]";
+        }
+    }
+
+    private static Object copyIfMap(Object object) {
+        return object instanceof Map<?, ?> map ? new LinkedHashMap<>(map) : object;
+    }
+
+    private static TransformSchemaType getSchemaType(Object object) {
+        return object == null ? null : getSchemaType(object.getClass());
     }
 
     private static TransformSchemaType getSchemaType(Class<?> javaType) {
@@ -367,20 +437,22 @@ public class GenAIToolKitAgent extends AbstractAgentCode implements AgentProcess
         }
 
         @Override
-        public void streamAnswerChunk(
+        public CompletableFuture<?> streamAnswerChunk(
                 int index, String message, boolean last, TransformContext outputMessage) {
             Optional<Record> record = transformContextToRecord(outputMessage);
-            if (record.isPresent()) {
-                if (log.isDebugEnabled()) {
-                    log.debug(
-                            "index: {}, message: {}, last: {}: record {}",
-                            index,
-                            message,
-                            last,
-                            record);
-                }
-                topicProducer.write(record.get()).join();
+            if (record.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if (log.isDebugEnabled()) {
+                log.debug(
+                        "index: {}, message: {}, last: {}: record {}",
+                        index,
+                        message,
+                        last,
+                        record);
             }
+            // do not wait for the write to complete, the next chunk can be sent immediately
+            return topicProducer.write(record.get());
         }
 
         @Override
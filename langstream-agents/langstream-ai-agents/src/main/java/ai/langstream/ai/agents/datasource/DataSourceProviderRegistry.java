@@ -15,6 +15,7 @@
  */
 package ai.langstream.ai.agents.datasource;
 
+import com.datastax.oss.streaming.ai.datasource.CachingQueryStepDataSource;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
 import java.util.Map;
 import java.util.ServiceLoader;
@@ -41,6 +42,8 @@ public class DataSourceProviderRegistry {
                                                 "No DataSource found for resource "
                                                         + dataSourceConfig));
 
-        return provider.get().createDataSourceImplementation(dataSourceConfig);
+        QueryStepDataSource dataSource =
+                provider.get().createDataSourceImplementation(dataSourceConfig);
+        return CachingQueryStepDataSource.wrap(dataSource, dataSourceConfig);
     }
 }
@@ -0,0 +1,201 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.ai.agents.datasource.impl;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A minimal pool of JDBC connections.
+ *
+ * <p>Each connection is used by one thread at a time and it keeps a LRU cache of its prepared
+ * statements. The connections that have been idle for a while are validated before being reused,
+ * and a query that fails because the connection is broken is retried once on a new connection.
+ */
+@Slf4j
+class JdbcConnectionPool implements AutoCloseable {
+
+    static final long VALIDATION_INTERVAL_MILLIS = 30_000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    @FunctionalInterface
+    interface Work<T> {
+        T execute(PooledConnection connection) throws SQLException;
+    }
+
+    private final String url;
+    private final Properties properties;
+    private final int statementCacheSize;
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private volatile boolean closed;
+
+    JdbcConnectionPool(String url, Properties properties, int poolSize, int statementCacheSize) {
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("pool-size must be greater than 0");
+        }
+        if (statementCacheSize <= 0) {
+            throw new IllegalArgumentException("statement-cache-size must be greater than 0");
+        }
+        this.url = url;
+        this.properties = properties;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(poolSize, true);
+    }
+
+    <T> T execute(Work<T> work) throws SQLException, InterruptedException {
+        permits.acquire();
+        try {
+            PooledConnection connection = borrow();
+            try {
+                T result = work.execute(connection);
+                release(connection);
+                return result;
+            } catch (SQLException error) {
+                if (connection.isValid()) {
+                    release(connection);
+                    throw error;
+                }
+                log.info("The JDBC connection is broken, retrying on a new connection", error);
+                connection.close();
+            } catch (RuntimeException error) {
+                release(connection);
+                throw error;
+            }
+            PooledConnection newConnection = connect();
+            try {
+                T result = work.execute(newConnection);
+                release(newConnection);
+                return result;
+            } catch (SQLException | RuntimeException error) {
+                newConnection.close();
+                throw error;
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private PooledConnection borrow() throws SQLException {
+        PooledConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            if (System.currentTimeMillis() - connection.lastUsed < VALIDATION_INTERVAL_MILLIS
+                    || connection.isValid()) {
+                return connection;
+            }
+            log.info("Discarding a stale JDBC connection");
+            connection.close();
+        }
+        return connect();
+    }
+
+    private void release(PooledConnection connection) {
+        if (closed) {
+            connection.close();
+            return;
+        }
+        connection.lastUsed = System.currentTimeMillis();
+        // LIFO, so the connections that are not needed become stale and are closed
+        idle.offerFirst(connection);
+    }
+
+    private PooledConnection connect() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, properties);
+        connection.setAutoCommit(true);
+        return new PooledConnection(connection, statementCacheSize);
+    }
+
+    int getIdleConnections() {
+        return idle.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            connection.close();
+        }
+    }
+
+    static final class PooledConnection {
+        private final Connection connection;
+        private final LinkedHashMap<String, PreparedStatement> statements;
+        private long lastUsed;
+
+        PooledConnection(Connection connection, int statementCacheSize) {
+            this.connection = connection;
+            this.statements =
+                    new LinkedHashMap<>(16, 0.75f, true) {
+                        @Override
+                        protected boolean removeEldestEntry(
+                                Map.Entry<String, PreparedStatement> eldest) {
+                            if (size() > statementCacheSize) {
+                                closeQuietly(eldest.getValue());
+                                return true;
+                            }
+                            return false;
+                        }
+                    };
+        }
+
+        /** Returns a prepared statement for the query, the statement must not be closed. */
+        PreparedStatement prepareStatement(String query) throws SQLException {
+            PreparedStatement statement = statements.get(query);
+            if (statement == null || statement.isClosed()) {
+                statement = connection.prepareStatement(query);
+                statements.put(query, statement);
+            } else {
+                statement.clearParameters();
+            }
+            return statement;
+        }
+
+        boolean isValid() {
+            try {
+                return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        void close() {
+            statements.values().forEach(PooledConnection::closeQuietly);
+            statements.clear();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.error("Error closing connection", e);
+            }
+        }
+
+        private static void closeQuietly(PreparedStatement statement) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                log.debug("Error closing statement", e);
+            }
+        }
+    }
+}
@@ -16,7 +16,9 @@
 package ai.langstream.ai.agents.datasource.impl;
 
 import ai.langstream.ai.agents.datasource.DataSourceProvider;
+import com.datastax.oss.streaming.ai.datasource.QueryResult;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.DriverManager;
@@ -26,11 +28,16 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
@@ -52,11 +59,23 @@ public class JdbcDataSourceProvider implements DataSourceProvider {
 
     private static class DataSourceImpl implements QueryStepDataSource {
 
-        Connection connection;
+        private final JdbcConnectionPool pool;
+        private final int poolSize;
+
+        /**
+         * JDBC has no non-blocking API: the queries run on dedicated threads, so they don't block
+         * the agent. There is one thread for each connection of the pool.
+         */
+        private final ExecutorService executor;
 
         public DataSourceImpl(Map<String, Object> dataSourceConfig) throws Exception {
             Properties properties = new Properties();
             properties.putAll(dataSourceConfig);
+            // these are not JDBC driver properties
+            poolSize = removeInteger(properties, "pool-size", 4);
+            int statementCacheSize = removeInteger(properties, "statement-cache-size", 32);
+            // the result cache is configured in the datasource too, see CachingQueryStepDataSource
+            properties.keySet().removeIf(key -> key.toString().startsWith("cache-"));
             String driverClass = properties.getProperty("driverClass", "");
             log.info("Connecting to {}, config {}", properties.getProperty("url"), properties);
             if (!driverClass.isEmpty()) {
@@ -72,18 +91,43 @@ public class JdbcDataSourceProvider implements DataSourceProvider {
                 // https://www.kfu.com/~nsayer/Java/dyn-jdbc.html
                 DriverManager.registerDriver(new DriverShim(driver));
             }
-            connection = DriverManager.getConnection((String) properties.get("url"), properties);
-            connection.setAutoCommit(true);
+            pool =
+                    new JdbcConnectionPool(
+                            (String) properties.get("url"),
+                            properties,
+                            poolSize,
+                            statementCacheSize);
+            // fail fast if the database is not reachable
+            pool.execute(connection -> null);
+            AtomicInteger threadCount = new AtomicInteger();
+            executor =
+                    Executors.newFixedThreadPool(
+                            poolSize,
+                            r -> {
+                                Thread thread =
+                                        new Thread(
+                                                r,
+                                                "jdbc-datasource-" + threadCount.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            });
+        }
+
+        private static int removeInteger(Properties properties, String key, int defaultValue) {
+            Object value = properties.remove(key);
+            return value == null ? defaultValue : Integer.parseInt(value.toString());
         }
 
         @Override
         @SneakyThrows
         public List<Map<String, String>> fetchData(String query, List<Object> params) {
-            PreparedStatement ps = connection.prepareStatement(query);
-            for (int i = 0; i < params.size(); i++) {
-                ps.setObject(i + 1, params.get(i));
-            }
-            try (ResultSet resultSet = ps.executeQuery()) {
+            return pool.execute(connection -> executeQuery(connection, query, params));
+        }
+
+        private static List<Map<String, String>> executeQuery(
+                JdbcConnectionPool.PooledConnection connection, String query, List<Object> params)
+                throws SQLException {
+            try (ResultSet resultSet = executeStatement(connection, query, params)) {
                 ResultSetMetaData metaData = resultSet.getMetaData();
                 int numColumns = metaData.getColumnCount();
                 List<Map<String, String>> results = new ArrayList<>();
@@ -101,15 +145,164 @@ public class JdbcDataSourceProvider implements DataSourceProvider {
         }
 
         @Override
-        public void close() {
-            if (connection != null) {
-                try {
-                    connection.close();
-                } catch (Exception e) {
-                    log.error("Error closing connection", e);
+        public CompletableFuture<List<Map<String, String>>> fetchDataAsync(
+                String query, List<Object> params) {
+            return CompletableFuture.supplyAsync(() -> fetchData(query, params), executor);
+        }
+
+        @Override
+        public CompletableFuture<QueryResult> fetchResultAsync(String query, List<Object> params) {
+            return CompletableFuture.supplyAsync(() -> fetchResult(query, params), executor);
+        }
+
+        /**
+         * The queries of a batch are split in one slice per connection of the pool, the slices run
+         * in parallel and each one reuses the prepared statement of its connection. JDBC batches
+         * (addBatch) only return update counts, they can't run queries.
+         */
+        @Override
+        public CompletableFuture<List<List<Map<String, String>>>> fetchDataBatchAsync(
+                String query, List<List<Object>> params) {
+            return executeBatch(query, params, DataSourceImpl::executeQuery);
+        }
+
+        @Override
+        public CompletableFuture<List<QueryResult>> fetchResultBatchAsync(
+                String query, List<List<Object>> params) {
+            return executeBatch(query, params, DataSourceImpl::executeTypedQuery);
+        }
+
+        @FunctionalInterface
+        private interface QueryExecutor<T> {
+            T execute(
+                    JdbcConnectionPool.PooledConnection connection,
+                    String query,
+                    List<Object> params)
+                    throws SQLException;
+        }
+
+        private <T> CompletableFuture<List<T>> executeBatch(
+                String query, List<List<Object>> params, QueryExecutor<T> queryExecutor) {
+            if (params.isEmpty()) {
+                return CompletableFuture.completedFuture(List.of());
+            }
+            int slices = Math.min(poolSize, params.size());
+            int sliceSize = (params.size() + slices - 1) / slices;
+            List<CompletableFuture<List<T>>> handles = new ArrayList<>();
+            for (int from = 0; from < params.size(); from += sliceSize) {
+                List<List<Object>> slice =
+                        params.subList(from, Math.min(from + sliceSize, params.size()));
+                handles.add(
+                        CompletableFuture.supplyAsync(
+                                () -> executeSlice(query, slice, queryExecutor), executor));
+            }
+            return CompletableFuture.allOf(handles.toArray(new CompletableFuture<?>[0]))
+                    .thenApply(
+                            ___ -> {
+                                List<T> results = new ArrayList<>(params.size());
+                                handles.forEach(handle -> results.addAll(handle.join()));
+                                return results;
+                            });
+        }
+
+        @SneakyThrows
+        private <T> List<T> executeSlice(
+                String query, List<List<Object>> params, QueryExecutor<T> queryExecutor) {
+            return pool.execute(
+                    connection -> {
+                        List<T> results = new ArrayList<>(params.size());
+                        for (List<Object> p : params) {
+                            results.add(queryExecutor.execute(connection, query, p));
+                        }
+                        return results;
+                    });
+        }
+
+        @SneakyThrows
+        private QueryResult fetchResult(String query, List<Object> params) {
+            return pool.execute(connection -> executeTypedQuery(connection, query, params));
+        }
+
+        private static QueryResult executeTypedQuery(
+                JdbcConnectionPool.PooledConnection connection, String query, List<Object> params)
+                throws SQLException {
+            try (ResultSet resultSet = executeStatement(connection, query, params)) {
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                int numColumns = metaData.getColumnCount();
+                QueryResult.Builder builder = QueryResult.builder();
+                QueryResult.ColumnType[] types = new QueryResult.ColumnType[numColumns];
+                for (int i = 1; i <= numColumns; i++) {
+                    types[i - 1] = toColumnType(metaData, i);
+                    builder.column(metaData.getColumnName(i), types[i - 1]);
                 }
+                while (resultSet.next()) {
+                    Object[] values = new Object[numColumns];
+                    for (int i = 1; i <= numColumns; i++) {
+                        Object value = resultSet.getObject(i);
+                        if (value instanceof Array array
+                                && types[i - 1] == QueryResult.ColumnType.FLOAT_VECTOR) {
+                            value = array.getArray();
+                        }
+                        values[i - 1] = value;
+                    }
+                    builder.addRow(values);
+                }
+                return builder.build();
             }
         }
+
+        private static QueryResult.ColumnType toColumnType(ResultSetMetaData metaData, int column)
+                throws SQLException {
+            return switch (metaData.getColumnType(column)) {
+                case Types.CHAR,
+                        Types.VARCHAR,
+                        Types.LONGVARCHAR,
+                        Types.NCHAR,
+                        Types.NVARCHAR,
+                        Types.LONGNVARCHAR -> QueryResult.ColumnType.STRING;
+                case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT -> QueryResult
+                        .ColumnType.LONG;
+                case Types.NUMERIC, Types.DECIMAL -> metaData.getScale(column) == 0
+                                && metaData.getPrecision(column) > 0
+                                && metaData.getPrecision(column) < 19
+                        ? QueryResult.ColumnType.LONG
+                        : QueryResult.ColumnType.DOUBLE;
+                case Types.REAL, Types.FLOAT, Types.DOUBLE -> QueryResult.ColumnType.DOUBLE;
+                case Types.BOOLEAN, Types.BIT -> QueryResult.ColumnType.BOOLEAN;
+                    // float arrays, and the pgvector extension type
+                case Types.ARRAY -> isFloatArray(metaData.getColumnTypeName(column))
+                        ? QueryResult.ColumnType.FLOAT_VECTOR
+                        : QueryResult.ColumnType.OBJECT;
+                case Types.OTHER -> "vector".equalsIgnoreCase(metaData.getColumnTypeName(column))
+                        ? QueryResult.ColumnType.FLOAT_VECTOR
+                        : QueryResult.ColumnType.OBJECT;
+                default -> QueryResult.ColumnType.OBJECT;
+            };
+        }
+
+        private static boolean isFloatArray(String typeName) {
+            String name = typeName == null ? "" : typeName.toLowerCase();
+            return name.startsWith("_float")
+                    || name.startsWith("float")
+                    || name.startsWith("real")
+                    || name.startsWith("double");
+        }
+
+        private static ResultSet executeStatement(
+                JdbcConnectionPool.PooledConnection connection, String query, List<Object> params)
+                throws SQLException {
+            PreparedStatement ps = connection.prepareStatement(query);
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            return ps.executeQuery();
+        }
+
+        @Override
+        public void close() {
+            executor.shutdown();
+            pool.close();
+        }
     }
 
     static class DriverShim implements Driver {
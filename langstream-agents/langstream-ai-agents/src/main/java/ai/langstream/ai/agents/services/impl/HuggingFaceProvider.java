@@ -16,6 +16,7 @@
 package ai.langstream.ai.agents.services.impl;
 
 import ai.langstream.ai.agents.services.ServiceProviderProvider;
+import ai.langstream.api.util.ConfigurationUtils;
 import com.datastax.oss.streaming.ai.completions.ChatChoice;
 import com.datastax.oss.streaming.ai.completions.ChatCompletions;
 import com.datastax.oss.streaming.ai.completions.ChatMessage;
@@ -24,6 +25,7 @@ import com.datastax.oss.streaming.ai.embeddings.AbstractHuggingFaceEmbeddingServ
 import com.datastax.oss.streaming.ai.embeddings.EmbeddingsService;
 import com.datastax.oss.streaming.ai.embeddings.HuggingFaceEmbeddingService;
 import com.datastax.oss.streaming.ai.embeddings.HuggingFaceRestEmbeddingService;
+import com.datastax.oss.streaming.ai.embeddings.OnnxEmbeddingService;
 import com.datastax.oss.streaming.ai.model.config.ComputeProvider;
 import com.datastax.oss.streaming.ai.model.config.TransformStepConfig;
 import com.datastax.oss.streaming.ai.services.ServiceProvider;
@@ -105,6 +107,23 @@ public class HuggingFaceProvider implements ServiceProviderProvider {
                                     AbstractHuggingFaceEmbeddingService.HuggingFaceConfig.builder()
                                             .options(options)
                                             .arguments(arguments);
+                    AbstractHuggingFaceEmbeddingService.HuggingFaceConfig defaults =
+                            builder.build();
+                    builder.predictorPoolSize(
+                                    ConfigurationUtils.getInt(
+                                            "predictor-pool-size",
+                                            defaults.getPredictorPoolSize(),
+                                            providerConfiguration))
+                            .maxBatchSize(
+                                    ConfigurationUtils.getInt(
+                                            "max-batch-size",
+                                            defaults.getMaxBatchSize(),
+                                            providerConfiguration))
+                            .maxBatchLatencyMillis(
+                                    ConfigurationUtils.getLong(
+                                            "max-batch-latency-ms",
+                                            defaults.getMaxBatchLatencyMillis(),
+                                            providerConfiguration));
                     if (model != null && !model.isEmpty()) {
                         builder.modelName(model);
                         if (modelUrl == null || modelUrl.isEmpty()) {
@@ -115,6 +134,47 @@ public class HuggingFaceProvider implements ServiceProviderProvider {
                     builder.modelUrl(modelUrl);
                     return new HuggingFaceEmbeddingService(builder.build());
                 }
+                case "ONNX" -> {
+                    Objects.requireNonNull(modelUrl, "model url is required");
+                    OnnxEmbeddingService.OnnxConfig.OnnxConfigBuilder builder =
+                            OnnxEmbeddingService.OnnxConfig.builder()
+                                    .modelUrl(modelUrl)
+                                    .options(options)
+                                    .arguments(arguments);
+                    OnnxEmbeddingService.OnnxConfig defaults = builder.build();
+                    builder.quantized(
+                                    ConfigurationUtils.getBoolean(
+                                            "quantized", false, providerConfiguration))
+                            .modelFile(
+                                    ConfigurationUtils.getString(
+                                            "model-file", null, providerConfiguration))
+                            .intraOpThreads(
+                                    ConfigurationUtils.getInt(
+                                            "intra-op-threads",
+                                            defaults.getIntraOpThreads(),
+                                            providerConfiguration))
+                            .interOpThreads(
+                                    ConfigurationUtils.getInt(
+                                            "inter-op-threads",
+                                            defaults.getInterOpThreads(),
+                                            providerConfiguration))
+                            .predictorPoolSize(
+                                    ConfigurationUtils.getInt(
+                                            "predictor-pool-size",
+                                            defaults.getPredictorPoolSize(),
+                                            providerConfiguration))
+                            .maxBatchSize(
+                                    ConfigurationUtils.getInt(
+                                            "max-batch-size",
+                                            defaults.getMaxBatchSize(),
+                                            providerConfiguration))
+                            .maxBatchLatencyMillis(
+                                    ConfigurationUtils.getLong(
+                                            "max-batch-latency-ms",
+                                            defaults.getMaxBatchLatencyMillis(),
+                                            providerConfiguration));
+                    return new OnnxEmbeddingService(builder.build());
+                }
                 case "API" -> {
                     Objects.requireNonNull(model, "model name is required");
                     HuggingFaceRestEmbeddingService.HuggingFaceApiConfig.HuggingFaceApiConfigBuilder
@@ -20,15 +20,17 @@ import static com.datastax.oss.streaming.ai.util.TransformFunctionUtil.convertTo
 import com.azure.ai.openai.models.ChatCompletionsOptions;
 import com.datastax.oss.streaming.ai.completions.ChatChoice;
 import com.datastax.oss.streaming.ai.completions.ChatCompletions;
+import com.datastax.oss.streaming.ai.completions.ChatCompletionsCache;
 import com.datastax.oss.streaming.ai.completions.ChatMessage;
 import com.datastax.oss.streaming.ai.completions.CompletionsService;
-import com.datastax.oss.streaming.ai.model.JsonRecord;
 import com.datastax.oss.streaming.ai.model.config.ChatCompletionsConfig;
-import com.samskivert.mustache.Mustache;
+import com.datastax.oss.streaming.ai.util.TransformContextCollector;
 import com.samskivert.mustache.Template;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
@@ -51,12 +53,18 @@ public class ChatCompletionsStep implements TransformStep {
 
     private StreamingAnswersConsumer streamingAnswersConsumer;
 
+    private final ChatCompletionsCache cache;
+
     public interface StreamingAnswersConsumerFactory {
         StreamingAnswersConsumer create(String topicName);
     }
 
     public interface StreamingAnswersConsumer {
-        void streamAnswerChunk(
+        /**
+         * Publish a chunk of a streamed answer. Implementations must not block, the returned future
+         * is completed when the chunk has been written.
+         */
+        CompletableFuture<?> streamAnswerChunk(
                 int index, String message, boolean last, TransformContext outputMessage);
 
         default void close() {}
@@ -70,12 +78,13 @@ public class ChatCompletionsStep implements TransformStep {
                 (topicName) -> {
                     return new StreamingAnswersConsumer() {
                         @Override
-                        public void streamAnswerChunk(
+                        public CompletableFuture<?> streamAnswerChunk(
                                 int index,
                                 String message,
                                 boolean last,
                                 TransformContext outputMessage) {
                             log.info("index: {}, message: {}, last: {}", index, message, last);
+                            return CompletableFuture.completedFuture(null);
                         }
                     };
                 },
@@ -86,16 +95,25 @@ public class ChatCompletionsStep implements TransformStep {
             CompletionsService completionsService,
             StreamingAnswersConsumerFactory streamingAnswersConsumerFactory,
             ChatCompletionsConfig config) {
+        this(completionsService, streamingAnswersConsumerFactory, config, null);
+    }
+
+    public ChatCompletionsStep(
+            CompletionsService completionsService,
+            StreamingAnswersConsumerFactory streamingAnswersConsumerFactory,
+            ChatCompletionsConfig config,
+            ChatCompletionsCache cache) {
         this.streamingAnswersConsumerFactory = streamingAnswersConsumerFactory;
         this.completionsService = completionsService;
         this.config = config;
-        this.streamingAnswersConsumer = (index, message, last, record) -> {};
+        this.cache = cache;
         config.getMessages()
                 .forEach(
                         chatMessage ->
                                 messageTemplates.put(
                                         chatMessage,
-                                        Mustache.compiler().compile(chatMessage.getContent())));
+                                        TransformContextCollector.compile(
+                                                chatMessage.getContent())));
     }
 
     @Override
@@ -112,12 +130,13 @@ public class ChatCompletionsStep implements TransformStep {
         if (this.streamingAnswersConsumer != null) {
             this.streamingAnswersConsumer.close();
         }
+        if (this.cache != null) {
+            this.cache.close();
+        }
     }
 
     @Override
     public CompletableFuture<?> processAsync(TransformContext transformContext) {
-        JsonRecord jsonRecord = transformContext.toJsonRecord();
-
         List<ChatMessage> messages =
                 config.getMessages().stream()
                         .map(
@@ -126,7 +145,7 @@ public class ChatCompletionsStep implements TransformStep {
                                                 .setContent(
                                                         messageTemplates
                                                                 .get(message)
-                                                                .execute(jsonRecord)))
+                                                                .execute(transformContext)))
                         .collect(Collectors.toList());
 
         ChatCompletionsOptions chatCompletionsOptions =
@@ -145,29 +164,48 @@ public class ChatCompletionsStep implements TransformStep {
         options.put("min-chunks-per-message", config.getMinChunksPerMessage());
         options.remove("messages");
 
-        CompletableFuture<ChatCompletions> chatCompletionsHandle =
-                completionsService.getChatCompletions(
-                        messages,
-                        new CompletionsService.StreamingChunksConsumer() {
-                            @Override
-                            public void consumeChunk(
-                                    String answerId, int index, ChatChoice chunk, boolean last) {
-
-                                // we must copy the context because the same context is used for all
-                                // chunks
-                                // and also for the final answer
-                                TransformContext copy = transformContext.copy();
-
-                                copy.getProperties().put("stream-id", answerId);
-                                copy.getProperties().put("stream-index", index + "");
-                                copy.getProperties().put("stream-last-message", last + "");
-
-                                applyResultFieldToContext(copy, chunk, true);
-                                streamingAnswersConsumer.streamAnswerChunk(
-                                        index, chunk.getMessage().getContent(), last, copy);
-                            }
-                        },
-                        options);
+        StreamingAnswer streamingAnswer =
+                streamingAnswersConsumer != null ? new StreamingAnswer(transformContext) : null;
+        CompletableFuture<ChatCompletions> chatCompletionsHandle;
+        if (cache == null) {
+            chatCompletionsHandle = getChatCompletions(messages, options, streamingAnswer);
+        } else {
+            chatCompletionsHandle =
+                    cache.lookup(messages, options)
+                            .thenCompose(
+                                    lookup -> {
+                                        if (lookup.isHit()) {
+                                            return replayCachedAnswer(
+                                                    lookup.getAnswer(), streamingAnswer);
+                                        }
+                                        return getChatCompletions(
+                                                        messages, options, streamingAnswer)
+                                                .thenApply(
+                                                        chatCompletions -> {
+                                                            cache.put(
+                                                                    lookup,
+                                                                    chatCompletions
+                                                                            .getChoices()
+                                                                            .get(0)
+                                                                            .getMessage(),
+                                                                    streamingAnswer != null
+                                                                            ? streamingAnswer
+                                                                                    .getChunks()
+                                                                            : List.of());
+                                                            return chatCompletions;
+                                                        });
+                                    });
+        }
+
+        if (streamingAnswer != null) {
+            // do not acknowledge the record until all the chunks have been written
+            chatCompletionsHandle =
+                    chatCompletionsHandle.thenCompose(
+                            chatCompletions ->
+                                    streamingAnswer
+                                            .allChunksWritten()
+                                            .thenApply(___ -> chatCompletions));
+        }
 
         return chatCompletionsHandle.thenApply(
                 chatCompletions -> {
@@ -191,18 +229,107 @@ public class ChatCompletionsStep implements TransformStep {
                 });
     }
 
+    private CompletableFuture<ChatCompletions> getChatCompletions(
+            List<ChatMessage> messages,
+            Map<String, Object> options,
+            StreamingAnswer streamingAnswer) {
+        return completionsService.getChatCompletions(
+                messages,
+                streamingAnswer != null ? streamingAnswer : (answerId, index, chunk, last) -> {},
+                options);
+    }
+
+    private CompletableFuture<ChatCompletions> replayCachedAnswer(
+            ChatCompletionsCache.CachedAnswer cachedAnswer, StreamingAnswer streamingAnswer) {
+        ChatMessage message = cachedAnswer.message();
+        if (streamingAnswer != null) {
+            // replay the answer as it was streamed the first time
+            List<String> chunks =
+                    cachedAnswer.chunks().isEmpty()
+                            ? List.of(message.getContent())
+                            : cachedAnswer.chunks();
+            String answerId = UUID.randomUUID().toString();
+            for (int i = 0; i < chunks.size(); i++) {
+                streamingAnswer.consumeChunk(
+                        answerId,
+                        i + 1,
+                        new ChatChoice(new ChatMessage(message.getRole(), chunks.get(i))),
+                        i == chunks.size() - 1);
+            }
+        }
+        ChatCompletions result = new ChatCompletions();
+        result.setChoices(
+                List.of(new ChatChoice(new ChatMessage(message.getRole(), message.getContent()))));
+        return CompletableFuture.completedFuture(result);
+    }
+
+    private String getStreamingAnswerFieldName() {
+        String fieldName = config.getFieldName();
+        if (config.getStreamResponseCompletionField() != null
+                && !config.getStreamResponseCompletionField().isEmpty()) {
+            fieldName = config.getStreamResponseCompletionField();
+        }
+        return fieldName;
+    }
+
+    /**
+     * Publishes the chunks of one answer. The chunks are written without waiting for the previous
+     * write to complete, the order is preserved by the producer and by the "stream-index" sequence.
+     */
+    private class StreamingAnswer implements CompletionsService.StreamingChunksConsumer {
+        private final TransformContext transformContext;
+        private final boolean deepCopyPerChunk;
+        private final List<String> chunks = new ArrayList<>();
+        private TransformContext snapshot;
+        private CompletableFuture<?> lastChunkWritten = CompletableFuture.completedFuture(null);
+
+        StreamingAnswer(TransformContext transformContext) {
+            this.transformContext = transformContext;
+            String fieldName = getStreamingAnswerFieldName();
+            // writing into a field of the key or of the value modifies the structure in place
+            this.deepCopyPerChunk =
+                    fieldName != null
+                            && (fieldName.startsWith("value.") || fieldName.startsWith("key."));
+        }
+
+        @Override
+        public synchronized void consumeChunk(
+                String answerId, int index, ChatChoice chunk, boolean last) {
+            // the same context is used for the final answer, so we take a copy once
+            // and then each chunk only needs a shallow copy of it
+            if (snapshot == null) {
+                snapshot = transformContext.copy();
+            }
+            TransformContext chunkContext =
+                    deepCopyPerChunk ? snapshot.copy() : snapshot.shallowCopy();
+
+            chunks.add(chunk.getMessage().getContent());
+            chunkContext.setProperty("stream-id", answerId);
+            chunkContext.setProperty("stream-index", index + "");
+            chunkContext.setProperty("stream-last-message", last + "");
+
+            applyResultFieldToContext(chunkContext, chunk, true);
+            CompletableFuture<?> written =
+                    streamingAnswersConsumer.streamAnswerChunk(
+                            index, chunk.getMessage().getContent(), last, chunkContext);
+            lastChunkWritten = lastChunkWritten.thenCombine(written, (a, b) -> null);
+        }
+
+        synchronized CompletableFuture<?> allChunksWritten() {
+            return lastChunkWritten;
+        }
+
+        synchronized List<String> getChunks() {
+            return new ArrayList<>(chunks);
+        }
+    }
+
     private void applyResultFieldToContext(
             TransformContext transformContext, ChatChoice chatChoice, boolean streamingAnswer) {
         String content = chatChoice.getMessage().getContent();
-        String fieldName = config.getFieldName();
-
         // maybe we want a different field in the streaming answer
         // typically you want to directly stream the answer as the whole "value"
-        if (streamingAnswer
-                && config.getStreamResponseCompletionField() != null
-                && !config.getStreamResponseCompletionField().isEmpty()) {
-            fieldName = config.getStreamResponseCompletionField();
-        }
+        String fieldName = streamingAnswer ? getStreamingAnswerFieldName() : config.getFieldName();
         transformContext.setResultField(
                 content,
                 fieldName,
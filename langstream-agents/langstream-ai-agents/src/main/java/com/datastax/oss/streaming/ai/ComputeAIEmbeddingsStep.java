@@ -16,9 +16,8 @@
 package com.datastax.oss.streaming.ai;
 
 import com.datastax.oss.streaming.ai.embeddings.EmbeddingsService;
-import com.datastax.oss.streaming.ai.model.JsonRecord;
+import com.datastax.oss.streaming.ai.util.TransformContextCollector;
 import com.datastax.oss.streaming.ai.util.TransformFunctionUtil;
-import com.samskivert.mustache.Mustache;
 import com.samskivert.mustache.Template;
 import java.util.ArrayList;
 import java.util.List;
@@ -54,7 +53,7 @@ public class ComputeAIEmbeddingsStep implements TransformStep {
             int batchSize,
             long flushInterval,
             EmbeddingsService embeddingsService) {
-        this.template = Mustache.compiler().compile(text);
+        this.template = TransformContextCollector.compile(text);
         this.embeddingsFieldName = embeddingsFieldName;
         this.embeddingsService = embeddingsService;
         this.executorService =
@@ -75,8 +74,7 @@ public class ComputeAIEmbeddingsStep implements TransformStep {
         List<String> texts = new ArrayList<>();
         for (RecordHolder holder : records) {
             TransformContext transformContext = holder.transformContext();
-            JsonRecord jsonRecord = transformContext.toJsonRecord();
-            String text = template.execute(jsonRecord);
+            String text = template.execute(transformContext);
             texts.add(text);
         }
 
@@ -108,6 +106,12 @@ public class ComputeAIEmbeddingsStep implements TransformStep {
                 });
     }
 
+    @Override
+    public Map<String, Object> buildAdditionalInfo() {
+        Map<String, Object> metrics = embeddingsService.getMetrics();
+        return metrics.isEmpty() ? Map.of() : Map.of("embeddings", metrics);
+    }
+
     @Override
     public void close() throws Exception {
         if (executorService != null) {
@@ -20,6 +20,8 @@ import com.datastax.oss.streaming.ai.model.ComputeField;
 import com.datastax.oss.streaming.ai.model.ComputeFieldType;
 import com.datastax.oss.streaming.ai.model.TransformSchemaType;
 import com.datastax.oss.streaming.ai.util.AvroUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.math.BigDecimal;
 import java.nio.ByteBuffer;
 import java.sql.Time;
@@ -28,154 +30,182 @@ import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 import lombok.Builder;
+import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.LogicalType;
 import org.apache.avro.LogicalTypes;
 import org.apache.avro.Schema;
 import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericArray;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
 
-/** Computes a field dynamically based on JSTL expressions and adds it to the key or the value . */
-@Builder
+/**
+ * Computes a field dynamically based on JSTL expressions and adds it to the key or the value .
+ *
+ * <p>The fields are grouped by scope when the step is built. The Avro schemas of the computed
+ * fields are created once when the type is declared, and the schema of the output record is cached
+ * for each input schema, so that the computed fields are written with a single pass on the record.
+ */
 public class ComputeStep implements TransformStep {
     public static final long MILLIS_PER_DAY = TimeUnit.DAYS.toMillis(1);
-    @Builder.Default private final List<ComputeField> fields = new ArrayList<>();
-    private final Map<org.apache.avro.Schema, org.apache.avro.Schema> keySchemaCache =
-            new ConcurrentHashMap<>();
-    private final Map<org.apache.avro.Schema, org.apache.avro.Schema> valueSchemaCache =
-            new ConcurrentHashMap<>();
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    // the decimal schemas depend on the precision and the scale of each value, so the number of
+    // output schemas isn't bounded by the number of input schemas
+    static final int MAX_CACHED_SCHEMAS = 256;
+    private final CompiledField primitiveKeyField;
+    private final CompiledField primitiveValueField;
+    private final List<CompiledField> keyFields;
+    private final List<CompiledField> valueFields;
+    private final List<ComputeField> headerFields;
+    private final List<ComputeField> headerPropertiesFields;
+    private final Map<RecordLayoutKey, RecordLayout> recordLayoutCache = lruCache();
+    private final Map<RecordLayoutKey, Schema> jsonSchemaCache = lruCache();
     private final Map<ComputeFieldType, org.apache.avro.Schema> fieldTypeToAvroSchemaCache =
             new ConcurrentHashMap<>();
 
-    @Override
-    public void process(TransformContext transformContext) {
-        computePrimitiveField(
-                fields.stream()
-                        .filter(f -> "primitive".equals(f.getScope()))
-                        .collect(Collectors.toList()),
-                transformContext);
-        computeKeyFields(
-                fields.stream()
-                        .filter(f -> "key".equals(f.getScope()))
-                        .collect(Collectors.toList()),
-                transformContext);
-        computeValueFields(
-                fields.stream()
-                        .filter(f -> "value".equals(f.getScope()))
-                        .collect(Collectors.toList()),
-                transformContext);
-        computeHeaderFields(
+    @Builder
+    private ComputeStep(List<ComputeField> fields) {
+        if (fields == null) {
+            fields = List.of();
+        }
+        this.primitiveKeyField =
                 fields.stream()
-                        .filter(f -> "header".equals(f.getScope()))
-                        .collect(Collectors.toList()),
-                transformContext);
-        computeHeaderPropertiesFields(
+                        .filter(f -> "primitive".equals(f.getScope()) && "key".equals(f.getName()))
+                        .findFirst()
+                        .map(CompiledField::new)
+                        .orElse(null);
+        this.primitiveValueField =
                 fields.stream()
-                        .filter(f -> "header.properties".equals(f.getScope()))
-                        .collect(Collectors.toList()),
-                transformContext);
+                        .filter(
+                                f ->
+                                        "primitive".equals(f.getScope())
+                                                && "value".equals(f.getName()))
+                        .findFirst()
+                        .map(CompiledField::new)
+                        .orElse(null);
+        this.keyFields = compile(fields, "key");
+        this.valueFields = compile(fields, "value");
+        this.headerFields = filterByScope(fields, "header");
+        this.headerPropertiesFields = filterByScope(fields, "header.properties");
     }
 
-    public void computeValueFields(List<ComputeField> fields, TransformContext context) {
+    private static List<ComputeField> filterByScope(List<ComputeField> fields, String scope) {
+        return fields.stream().filter(f -> scope.equals(f.getScope())).toList();
+    }
+
+    private List<CompiledField> compile(List<ComputeField> fields, String scope) {
+        return filterByScope(fields, scope).stream().map(CompiledField::new).toList();
+    }
+
+    @Override
+    public void process(TransformContext transformContext) {
+        computePrimitiveFields(transformContext);
+        computeKeyFields(transformContext);
+        computeValueFields(transformContext);
+        computeHeaderFields(transformContext);
+        computeHeaderPropertiesFields(transformContext);
+    }
+
+    private void computeValueFields(TransformContext context) {
+        if (valueFields.isEmpty()) {
+            return;
+        }
+        Object valueObject = context.getValueObject();
+        if (valueObject instanceof Map) {
+            EvaluatedFields evaluatedFields = evaluate(valueFields, context);
+            evaluatedFields.putAll((Map) valueObject);
+            return;
+        }
         TransformSchemaType schemaType = context.getValueSchemaType();
-        if (context.getValueObject() instanceof Map) {
-            getEvaluatedFields(fields, context)
-                    .forEach(
-                            (field, value) ->
-                                    ((Map) context.getValueObject()).put(field.name(), value));
-        } else if (schemaType == TransformSchemaType.AVRO
-                || schemaType == TransformSchemaType.JSON) {
-            Map<Schema.Field, Object> evaluatedFields = getEvaluatedFields(fields, context);
-            context.addOrReplaceValueFields(evaluatedFields, valueSchemaCache);
-        }
-    }
-
-    public void computePrimitiveField(List<ComputeField> fields, TransformContext context) {
-        fields.stream()
-                .filter(f -> "key".equals(f.getName()))
-                .findFirst()
-                .ifPresent(
-                        field -> {
-                            if (context.getKeySchemaType() != null
-                                    && context.getKeySchemaType().isPrimitive()) {
-                                Object newKey = field.getEvaluator().evaluate(context);
-                                TransformSchemaType newSchema;
-                                if (field.getType() != null) {
-                                    newSchema = getPrimitiveSchema(field.getType());
-                                } else {
-                                    newSchema = getPrimitiveSchema(newKey);
-                                }
-                                context.setKeyObject(newKey);
-                                context.setKeySchemaType(newSchema);
-                            }
-                        });
-
-        fields.stream()
-                .filter(f -> "value".equals(f.getName()))
-                .findFirst()
-                .ifPresent(
-                        field -> {
-                            if (context.getValueSchemaType().isPrimitive()) {
-                                Object newValue = field.getEvaluator().evaluate(context);
-                                TransformSchemaType newSchema;
-                                if (field.getType() != null) {
-                                    newSchema = getPrimitiveSchema(field.getType());
-                                } else {
-                                    newSchema = getPrimitiveSchema(newValue);
-                                }
-                                context.setValueObject(newValue);
-                                context.setValueSchemaType(newSchema);
-                            }
-                        });
-    }
-
-    public void computeKeyFields(List<ComputeField> fields, TransformContext context) {
+        if (schemaType == TransformSchemaType.AVRO) {
+            GenericRecord newRecord =
+                    addOrReplaceAvroFields(
+                            (GenericRecord) valueObject, evaluate(valueFields, context));
+            context.setValueNativeSchema(newRecord.getSchema());
+            context.setValueObject(newRecord);
+        } else if (schemaType == TransformSchemaType.JSON) {
+            EvaluatedFields evaluatedFields = evaluate(valueFields, context);
+            if (context.getValueNativeSchema() != null) {
+                context.setValueNativeSchema(
+                        getJsonSchema((Schema) context.getValueNativeSchema(), evaluatedFields));
+            }
+            evaluatedFields.setAll((ObjectNode) valueObject);
+        }
+    }
+
+    private void computePrimitiveFields(TransformContext context) {
+        if (primitiveKeyField != null
+                && context.getKeySchemaType() != null
+                && context.getKeySchemaType().isPrimitive()) {
+            Object newKey = primitiveKeyField.field.getEvaluator().evaluate(context);
+            context.setKeyObject(newKey);
+            context.setKeySchemaType(primitiveKeyField.getPrimitiveSchema(newKey));
+        }
+        if (primitiveValueField != null && context.getValueSchemaType().isPrimitive()) {
+            Object newValue = primitiveValueField.field.getEvaluator().evaluate(context);
+            context.setValueObject(newValue);
+            context.setValueSchemaType(primitiveValueField.getPrimitiveSchema(newValue));
+        }
+    }
+
+    private void computeKeyFields(TransformContext context) {
         Object keyObject = context.getKeyObject();
-        if (keyObject != null) {
-            if (keyObject instanceof Map) {
-                getEvaluatedFields(fields, context)
-                        .forEach((field, value) -> ((Map) keyObject).put(field.name(), value));
-            } else {
-                TransformSchemaType schemaType = context.getKeySchemaType();
-                if (schemaType == TransformSchemaType.AVRO
-                        || schemaType == TransformSchemaType.JSON) {
-                    Map<Schema.Field, Object> evaluatedFields = getEvaluatedFields(fields, context);
-                    context.addOrReplaceKeyFields(evaluatedFields, keySchemaCache);
-                }
+        if (keyFields.isEmpty() || keyObject == null) {
+            return;
+        }
+        if (keyObject instanceof Map) {
+            evaluate(keyFields, context).putAll((Map) keyObject);
+            return;
+        }
+        TransformSchemaType schemaType = context.getKeySchemaType();
+        if (schemaType == TransformSchemaType.AVRO) {
+            GenericRecord newRecord =
+                    addOrReplaceAvroFields((GenericRecord) keyObject, evaluate(keyFields, context));
+            context.setKeyNativeSchema(newRecord.getSchema());
+            context.setKeyObject(newRecord);
+        } else if (schemaType == TransformSchemaType.JSON) {
+            EvaluatedFields evaluatedFields = evaluate(keyFields, context);
+            if (context.getKeyNativeSchema() != null) {
+                context.setKeyNativeSchema(
+                        getJsonSchema((Schema) context.getKeyNativeSchema(), evaluatedFields));
             }
+            evaluatedFields.setAll((ObjectNode) keyObject);
         }
     }
 
-    public void computeHeaderFields(List<ComputeField> fields, TransformContext context) {
-        fields.forEach(
-                field -> {
-                    switch (field.getName()) {
-                        case "destinationTopic":
-                            String topic = validateAndGetString(field, context);
-                            context.setOutputTopic(topic);
-                            break;
-                        case "messageKey":
-                            String key = validateAndGetString(field, context);
-                            context.setKey(key);
-                            break;
-                        default:
-                            throw new IllegalArgumentException(
-                                    "Invalid compute field name: " + field.getName());
-                    }
-                });
+    private void computeHeaderFields(TransformContext context) {
+        for (ComputeField field : headerFields) {
+            switch (field.getName()) {
+                case "destinationTopic":
+                    String topic = validateAndGetString(field, context);
+                    context.setOutputTopic(topic);
+                    break;
+                case "messageKey":
+                    String key = validateAndGetString(field, context);
+                    context.setKey(key);
+                    break;
+                default:
+                    throw new IllegalArgumentException(
+                            "Invalid compute field name: " + field.getName());
+            }
+        }
     }
 
-    public void computeHeaderPropertiesFields(List<ComputeField> fields, TransformContext context) {
-        fields.forEach(
-                field ->
-                        context.setProperty(field.getName(), validateAndGetString(field, context)));
+    private void computeHeaderPropertiesFields(TransformContext context) {
+        for (ComputeField field : headerPropertiesFields) {
+            context.setProperty(field.getName(), validateAndGetString(field, context));
+        }
     }
 
     private String validateAndGetString(ComputeField field, TransformContext context) {
@@ -192,17 +222,181 @@ public class ComputeStep implements TransformStep {
                         "String"));
     }
 
-    private Map<Schema.Field, Object> getEvaluatedFields(
-            List<ComputeField> fields, TransformContext context) {
-        Map<Schema.Field, Object> evaluatedFields =
-                new LinkedHashMap<>(); // preserves the insertion order of keys
-        for (ComputeField field : fields) {
-            Object value = field.getEvaluator().evaluate(context);
+    private EvaluatedFields evaluate(List<CompiledField> fields, TransformContext context) {
+        Schema.Field[] avroFields = new Schema.Field[fields.size()];
+        Object[] values = new Object[fields.size()];
+        for (int i = 0; i < avroFields.length; i++) {
+            CompiledField field = fields.get(i);
+            Object value = field.field.getEvaluator().evaluate(context);
+            avroFields[i] = field.getAvroField(value);
+            values[i] = getAvroValue(avroFields[i].schema(), value);
+        }
+        return new EvaluatedFields(avroFields, values);
+    }
+
+    /** The computed fields of a record, in the order of the configuration. */
+    private record EvaluatedFields(Schema.Field[] avroFields, Object[] values) {
+
+        void putAll(Map<String, Object> map) {
+            for (int i = 0; i < avroFields.length; i++) {
+                map.put(avroFields[i].name(), values[i]);
+            }
+        }
+
+        void setAll(ObjectNode json) {
+            for (int i = 0; i < avroFields.length; i++) {
+                json.set(avroFields[i].name(), OBJECT_MAPPER.valueToTree(values[i]));
+            }
+        }
+    }
+
+    /**
+     * The key of the cached output schemas. The schemas of the computed fields are part of the key
+     * because they may depend on the computed values when the type is not declared.
+     */
+    private record RecordLayoutKey(Schema inputSchema, List<Schema.Field> computedFields) {}
+
+    /**
+     * The schema of the output record, and where each output field is read from.
+     *
+     * @param sources the position of the field in the input record, or -(i + 1) for the i-th
+     *     computed field
+     * @param acceptsNull whether the field accepts null values
+     */
+    private record RecordLayout(Schema schema, int[] sources, boolean[] acceptsNull) {}
+
+    private static <K, V> Map<K, V> lruCache() {
+        return Collections.synchronizedMap(
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                        return size() > MAX_CACHED_SCHEMAS;
+                    }
+                });
+    }
+
+    int cachedSchemas() {
+        return recordLayoutCache.size() + jsonSchemaCache.size();
+    }
+
+    private static RecordLayoutKey layoutKey(Schema inputSchema, EvaluatedFields evaluatedFields) {
+        return new RecordLayoutKey(inputSchema, Arrays.asList(evaluatedFields.avroFields()));
+    }
+
+    private Schema getJsonSchema(Schema inputSchema, EvaluatedFields evaluatedFields) {
+        return jsonSchemaCache.computeIfAbsent(
+                layoutKey(inputSchema, evaluatedFields),
+                key -> createOutputSchema(key.computedFields(), inputSchema));
+    }
+
+    private static Schema createOutputSchema(List<Schema.Field> computedFields, Schema input) {
+        // a field can't be shared by multiple schemas
+        List<Schema.Field> fields =
+                computedFields.stream().map(f -> new Schema.Field(f, f.schema())).toList();
+        return AvroUtil.addOrReplaceAvroSchemaFields(input, fields);
+    }
+
+    private GenericRecord addOrReplaceAvroFields(
+            GenericRecord record, EvaluatedFields evaluatedFields) {
+        RecordLayout layout =
+                recordLayoutCache.computeIfAbsent(
+                        layoutKey(record.getSchema(), evaluatedFields),
+                        key -> createRecordLayout(key.inputSchema(), key.computedFields()));
+        List<Schema.Field> outputFields = layout.schema().getFields();
+        GenericData.Record newRecord = new GenericData.Record(layout.schema());
+        Object[] values = evaluatedFields.values();
+        for (int i = 0; i < layout.sources().length; i++) {
+            int source = layout.sources()[i];
+            Object value;
+            if (source >= 0) {
+                value = record.get(source);
+            } else {
+                value = values[-source - 1];
+                if ((value instanceof Collection) && !(value instanceof GenericArray)) {
+                    value =
+                            new GenericData.Array<>(
+                                    outputFields.get(i).schema(), (Collection<Object>) value);
+                }
+            }
+            if (value == null && !layout.acceptsNull()[i]) {
+                throw new AvroRuntimeException(
+                        "Field " + outputFields.get(i) + " does not accept null values");
+            }
+            newRecord.put(i, value);
+        }
+        return newRecord;
+    }
+
+    private static RecordLayout createRecordLayout(
+            Schema inputSchema, List<Schema.Field> computedFields) {
+        Schema outputSchema = createOutputSchema(computedFields, inputSchema);
+        // the last computed field with a given name wins
+        Map<String, Integer> computedFieldsByName = new HashMap<>();
+        for (int i = 0; i < computedFields.size(); i++) {
+            computedFieldsByName.put(computedFields.get(i).name(), i);
+        }
+        List<Schema.Field> outputFields = outputSchema.getFields();
+        int[] sources = new int[outputFields.size()];
+        boolean[] acceptsNull = new boolean[outputFields.size()];
+        for (int i = 0; i < sources.length; i++) {
+            Schema.Field field = outputFields.get(i);
+            Integer computed = computedFieldsByName.get(field.name());
+            sources[i] =
+                    computed != null ? -computed - 1 : inputSchema.getField(field.name()).pos();
+            acceptsNull[i] = field.defaultVal() != null || acceptsNull(field.schema());
+        }
+        return new RecordLayout(outputSchema, sources, acceptsNull);
+    }
+
+    private static boolean acceptsNull(Schema schema) {
+        if (schema.getType() == Schema.Type.NULL) {
+            return true;
+        }
+        return schema.getType() == Schema.Type.UNION
+                && schema.getTypes().stream().anyMatch(s -> s.getType() == Schema.Type.NULL);
+    }
+
+    /** A compute field and the schemas that can be derived from its configuration. */
+    private class CompiledField {
+        private final ComputeField field;
+        private final TransformSchemaType declaredPrimitiveSchema;
+        private final Map<ComputeFieldType, Schema.Field> avroFields = new ConcurrentHashMap<>();
+
+        CompiledField(ComputeField field) {
+            this.field = field;
+            this.declaredPrimitiveSchema = declaredPrimitiveSchema(field);
+        }
+
+        private static TransformSchemaType declaredPrimitiveSchema(ComputeField field) {
+            if (!"primitive".equals(field.getScope()) || field.getType() == null) {
+                return null;
+            }
+            try {
+                return ComputeStep.getPrimitiveSchema(field.getType());
+            } catch (UnsupportedOperationException e) {
+                // reported when a primitive record is processed
+                return null;
+            }
+        }
+
+        Schema.Field getAvroField(Object value) {
             ComputeFieldType type = field.getType() == null ? getFieldType(value) : field.getType();
-            Schema.Field avroField = createAvroField(field, type, value);
-            evaluatedFields.put(avroField, getAvroValue(avroField.schema(), value));
+            if (type == ComputeFieldType.DECIMAL) {
+                // the decimal schemas depend on the precision and the scale of the values
+                return createAvroField(field, type, value);
+            }
+            return avroFields.computeIfAbsent(type, t -> createAvroField(field, t, value));
+        }
+
+        TransformSchemaType getPrimitiveSchema(Object value) {
+            if (declaredPrimitiveSchema != null) {
+                return declaredPrimitiveSchema;
+            }
+            if (field.getType() != null) {
+                return ComputeStep.getPrimitiveSchema(field.getType());
+            }
+            return ComputeStep.getPrimitiveSchema(value);
         }
-        return evaluatedFields;
     }
 
     private Object getAvroValue(Schema schema, Object value) {
@@ -363,7 +557,7 @@ public class ComputeStep implements TransformStep {
                 });
     }
 
-    private TransformSchemaType getPrimitiveSchema(ComputeFieldType type) {
+    private static TransformSchemaType getPrimitiveSchema(ComputeFieldType type) {
         switch (type) {
             case STRING:
                 return TransformSchemaType.STRING;
@@ -403,7 +597,7 @@ public class ComputeStep implements TransformStep {
         }
     }
 
-    private TransformSchemaType getPrimitiveSchema(Object value) {
+    private static TransformSchemaType getPrimitiveSchema(Object value) {
         if (value == null) {
             throw new UnsupportedOperationException("Cannot get schema from null value");
         }
@@ -15,13 +15,21 @@
  */
 package com.datastax.oss.streaming.ai;
 
+import com.datastax.oss.streaming.ai.datasource.QueryResult;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
 import com.datastax.oss.streaming.ai.model.TransformSchemaType;
+import com.datastax.oss.streaming.ai.util.TransformFunctionUtil;
 import com.fasterxml.jackson.databind.JsonNode;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BiConsumer;
 import lombok.Builder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.avro.Schema;
@@ -31,20 +39,191 @@ import org.apache.avro.generic.GenericRecord;
  * Compute AI Embeddings for one or more records fields and put the value into a new or existing
  * field.
  */
-@Builder
 @Slf4j
 public class QueryStep implements TransformStep {
 
-    @Builder.Default private final List<String> fields = new ArrayList<>();
+    private static final Schema STRING_ROW_SCHEMA =
+            Schema.createMap(Schema.create(Schema.Type.STRING));
+
+    private static final Schema TYPED_ROW_SCHEMA =
+            Schema.createMap(
+                    Schema.createUnion(
+                            Schema.create(Schema.Type.NULL),
+                            Schema.create(Schema.Type.STRING),
+                            Schema.create(Schema.Type.LONG),
+                            Schema.create(Schema.Type.DOUBLE),
+                            Schema.create(Schema.Type.BOOLEAN),
+                            Schema.createArray(Schema.create(Schema.Type.FLOAT))));
+
+    private final List<String> fields;
     private final String outputFieldName;
     private final String query;
     private final boolean onlyFirst;
+
+    /**
+     * Output the typed values of the columns (numbers, booleans, vectors as arrays of floats)
+     * instead of converting everything to strings.
+     */
+    private final boolean typedResults;
+
     private final QueryStepDataSource dataSource;
     private final Map<Schema, Schema> avroValueSchemaCache = new ConcurrentHashMap<>();
     private final Map<Schema, Schema> avroKeySchemaCache = new ConcurrentHashMap<>();
 
+    private final TransformFunctionUtil.BatchExecutor<RecordHolder> batchExecutor;
+    private final ScheduledExecutorService executorService;
+
+    /**
+     * @param batchSize the max number of records whose queries are sent together to the data source
+     * @param flushInterval the max time in milliseconds to wait for a batch to fill up, batching is
+     *     disabled if 0
+     */
+    @Builder
+    public QueryStep(
+            List<String> fields,
+            String outputFieldName,
+            String query,
+            boolean onlyFirst,
+            boolean typedResults,
+            QueryStepDataSource dataSource,
+            int batchSize,
+            long flushInterval) {
+        this.fields = fields != null ? fields : new ArrayList<>();
+        this.outputFieldName = outputFieldName;
+        this.query = query;
+        this.onlyFirst = onlyFirst;
+        this.typedResults = typedResults;
+        this.dataSource = dataSource;
+        boolean batching = batchSize > 1 && flushInterval > 0;
+        // processBatch may block on the data source, so each step flushes on its own thread
+        this.executorService = batching ? Executors.newSingleThreadScheduledExecutor() : null;
+        this.batchExecutor =
+                new TransformFunctionUtil.BatchExecutor<>(
+                        batching ? batchSize : 1,
+                        this::processBatch,
+                        batching ? flushInterval : 0,
+                        executorService);
+    }
+
+    record RecordHolder(TransformContext transformContext, CompletableFuture<?> handle) {}
+
+    @Override
+    public void start() throws Exception {
+        batchExecutor.start();
+    }
+
     @Override
-    public void process(TransformContext transformContext) {
+    public void close() throws Exception {
+        batchExecutor.stop();
+        if (executorService != null) {
+            executorService.shutdown();
+        }
+    }
+
+    @Override
+    public Map<String, Object> buildAdditionalInfo() {
+        Map<String, Object> metrics = dataSource.getMetrics();
+        return metrics.isEmpty() ? Map.of() : Map.of("query-cache", metrics);
+    }
+
+    @Override
+    public CompletableFuture<?> processAsync(TransformContext transformContext) {
+        CompletableFuture<?> handle = new CompletableFuture<>();
+        batchExecutor.add(new RecordHolder(transformContext, handle));
+        return handle;
+    }
+
+    @Override
+    public void process(TransformContext transformContext) throws Exception {
+        // the records processed one at a time are not batched, so they don't wait for the flush
+        CompletableFuture<?> handle = new CompletableFuture<>();
+        processBatch(List.of(new RecordHolder(transformContext, handle)));
+        try {
+            handle.get();
+        } catch (ExecutionException err) {
+            if (err.getCause() instanceof Exception) {
+                throw (Exception) err.getCause();
+            } else {
+                throw err;
+            }
+        }
+    }
+
+    private void processBatch(List<RecordHolder> records) {
+        List<RecordHolder> holders = new ArrayList<>(records.size());
+        List<List<Object>> params = new ArrayList<>(records.size());
+        for (RecordHolder holder : records) {
+            try {
+                params.add(getParams(holder.transformContext()));
+                holders.add(holder);
+            } catch (Throwable error) {
+                holder.handle().completeExceptionally(error);
+            }
+        }
+        if (holders.isEmpty()) {
+            return;
+        }
+        if (typedResults) {
+            complete(holders, fetchResults(params), this::setTypedResult);
+        } else {
+            complete(
+                    holders,
+                    fetchData(params),
+                    (context, results) -> setResult(context, results, STRING_ROW_SCHEMA));
+        }
+    }
+
+    private CompletableFuture<List<List<Map<String, String>>>> fetchData(
+            List<List<Object>> params) {
+        try {
+            if (params.size() == 1) {
+                return dataSource
+                        .fetchDataAsync(query, params.get(0))
+                        .thenApply(Collections::singletonList);
+            }
+            return dataSource.fetchDataBatchAsync(query, params);
+        } catch (Throwable error) {
+            return CompletableFuture.failedFuture(error);
+        }
+    }
+
+    private CompletableFuture<List<QueryResult>> fetchResults(List<List<Object>> params) {
+        try {
+            if (params.size() == 1) {
+                return dataSource
+                        .fetchResultAsync(query, params.get(0))
+                        .thenApply(Collections::singletonList);
+            }
+            return dataSource.fetchResultBatchAsync(query, params);
+        } catch (Throwable error) {
+            return CompletableFuture.failedFuture(error);
+        }
+    }
+
+    /** Sets the results of each record, in the same order as the records. */
+    private static <T> void complete(
+            List<RecordHolder> holders,
+            CompletableFuture<List<T>> results,
+            BiConsumer<TransformContext, T> setResult) {
+        results.whenComplete(
+                (values, error) -> {
+                    for (int i = 0; i < holders.size(); i++) {
+                        RecordHolder holder = holders.get(i);
+                        if (error != null) {
+                            holder.handle().completeExceptionally(error);
+                            continue;
+                        }
+                        try {
+                            setResult.accept(holder.transformContext(), values.get(i));
+                            holder.handle().complete(null);
+                        } catch (Throwable e) {
+                            holder.handle().completeExceptionally(e);
+                        }
+                    }
+                });
+    }
+
+    private List<Object> getParams(TransformContext transformContext) {
         List<Object> params = new ArrayList<>();
         fields.forEach(
                 field -> {
@@ -79,22 +258,53 @@ public class QueryStep implements TransformStep {
                                         transformContext.getKeyObject()));
                     }
                 });
+        return params;
+    }
+
+    private void setTypedResult(TransformContext transformContext, QueryResult result) {
+        List<Map<String, Object>> rows = result == null ? List.of() : result.toMaps();
+        for (Map<String, Object> row : rows) {
+            row.replaceAll((column, value) -> toTypedValue(value));
+        }
+        setResult(transformContext, rows, TYPED_ROW_SCHEMA);
+    }
+
+    private static Object toTypedValue(Object value) {
+        if (value == null
+                || value instanceof String
+                || value instanceof Long
+                || value instanceof Double
+                || value instanceof Boolean) {
+            return value;
+        }
+        if (value instanceof float[] vector) {
+            List<Float> list = new ArrayList<>(vector.length);
+            for (float v : vector) {
+                list.add(v);
+            }
+            return list;
+        }
+        return value.toString();
+    }
 
-        List<Map<String, String>> results = dataSource.fetchData(query, params);
+    private void setResult(
+            TransformContext transformContext,
+            List<? extends Map<String, ?>> results,
+            Schema rowSchema) {
         if (results == null) {
             results = List.of();
         }
         Object finalResult = results;
         Schema schema;
         if (onlyFirst) {
-            schema = Schema.createMap(Schema.create(Schema.Type.STRING));
+            schema = rowSchema;
             if (results.isEmpty()) {
                 finalResult = Map.of();
             } else {
                 finalResult = results.get(0);
             }
         } else {
-            schema = Schema.createArray(Schema.createMap(Schema.create(Schema.Type.STRING)));
+            schema = Schema.createArray(rowSchema);
         }
 
         transformContext.setResultField(
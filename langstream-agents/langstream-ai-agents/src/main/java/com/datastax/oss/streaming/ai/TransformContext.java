@@ -90,6 +90,29 @@ public class TransformContext {
         return copy;
     }
 
+    /**
+     * Copy the context sharing the key and the value with the original context. This is safe only
+     * if the key and the value are not modified in place.
+     */
+    public TransformContext shallowCopy() {
+        TransformContext copy = new TransformContext();
+        copy.keyObject = keyObject;
+        copy.valueObject = valueObject;
+        copy.properties = properties != null ? new HashMap<>(properties) : null;
+        copy.customContext = new HashMap<>(customContext);
+        copy.key = key;
+        copy.keySchemaType = keySchemaType;
+        copy.valueSchemaType = valueSchemaType;
+        copy.keyNativeSchema = keyNativeSchema;
+        copy.valueNativeSchema = valueNativeSchema;
+        copy.inputTopic = inputTopic;
+        copy.outputTopic = outputTopic;
+        copy.eventTime = eventTime;
+        copy.dropCurrentRecord = dropCurrentRecord;
+        copy.recordObject = recordObject;
+        return copy;
+    }
+
     public void convertMapToStringOrBytes() throws JsonProcessingException {
         if (valueObject instanceof Map) {
             if (valueSchemaType == TransformSchemaType.STRING) {
@@ -15,6 +15,7 @@
  */
 package com.datastax.oss.streaming.ai;
 
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
@@ -23,6 +24,11 @@ public interface TransformStep extends AutoCloseable {
 
     default void start() throws Exception {}
 
+    /** Additional information about the step, reported in the status of the agent. */
+    default Map<String, Object> buildAdditionalInfo() {
+        return Map.of();
+    }
+
     default void process(TransformContext transformContext) throws Exception {
         try {
             processAsync(transformContext).get();
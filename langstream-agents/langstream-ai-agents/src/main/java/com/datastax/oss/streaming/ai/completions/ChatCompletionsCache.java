@@ -0,0 +1,320 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.completions;
+
+import com.datastax.oss.streaming.ai.embeddings.EmbeddingsService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A bounded cache of chat completions answers.
+ *
+ * <p>The answers are looked up by exact match on the model, the options and the rendered messages.
+ * If an {@link EmbeddingsService} is configured, a miss falls back to a semantic lookup: the answer
+ * of the cached question (the last message) that is the most similar to the current one is reused
+ * if the cosine similarity of the embeddings is at least the threshold. The semantic lookup only
+ * considers answers computed with the same model and options, and with the same previous messages
+ * (the system prompt and the history of the conversation). The answers are indexed by these, so
+ * that a lookup only compares the embeddings of its own partition, without holding the lock.
+ *
+ * <p>Entries expire after the TTL, and the least recently used entries are evicted when the cache
+ * is full.
+ */
+@Slf4j
+public class ChatCompletionsCache implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER =
+            new ObjectMapper().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    private final long ttlMillis;
+    private final int maxSize;
+    private final EmbeddingsService embeddingsService;
+    private final double similarityThreshold;
+    private final Clock clock;
+
+    private final LinkedHashMap<String, CachedAnswer> entries;
+
+    /** The answers with an embedding, by partition and key. */
+    private final Map<String, Map<String, CachedAnswer>> semanticIndex = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong semanticHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ChatCompletionsCache(
+            long ttlMillis,
+            int maxSize,
+            EmbeddingsService embeddingsService,
+            double similarityThreshold) {
+        this(ttlMillis, maxSize, embeddingsService, similarityThreshold, Clock.systemUTC());
+    }
+
+    public ChatCompletionsCache(
+            long ttlMillis,
+            int maxSize,
+            EmbeddingsService embeddingsService,
+            double similarityThreshold,
+            Clock clock) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("cache-max-size must be greater than 0");
+        }
+        this.ttlMillis = ttlMillis;
+        this.maxSize = maxSize;
+        this.embeddingsService = embeddingsService;
+        this.similarityThreshold = similarityThreshold;
+        this.clock = clock;
+        this.entries =
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, CachedAnswer> eldest) {
+                        if (size() <= ChatCompletionsCache.this.maxSize) {
+                            return false;
+                        }
+                        unindex(eldest.getKey(), eldest.getValue());
+                        return true;
+                    }
+                };
+    }
+
+    /** The result of a lookup, it is used to store the answer in case of a miss. */
+    @Getter
+    public static class Lookup {
+        private final String key;
+        private final String partition;
+        private final double[] embedding;
+        private final CachedAnswer answer;
+
+        private Lookup(String key, String partition, double[] embedding, CachedAnswer answer) {
+            this.key = key;
+            this.partition = partition;
+            this.embedding = embedding;
+            this.answer = answer;
+        }
+
+        public boolean isHit() {
+            return answer != null;
+        }
+    }
+
+    /**
+     * A cached answer.
+     *
+     * @param message the whole answer
+     * @param chunks the chunks of the answer as they have been streamed, empty if the answer was
+     *     not streamed
+     */
+    public record CachedAnswer(
+            ChatMessage message,
+            List<String> chunks,
+            String partition,
+            double[] embedding,
+            long expiresAt) {}
+
+    public CompletableFuture<Lookup> lookup(
+            List<ChatMessage> messages, Map<String, Object> options) {
+        String partition = partition(messages, options);
+        String key =
+                partition + toJson(messages.isEmpty() ? null : messages.get(messages.size() - 1));
+        CachedAnswer exactMatch = get(key);
+        if (exactMatch != null) {
+            hits.incrementAndGet();
+            return CompletableFuture.completedFuture(new Lookup(key, partition, null, exactMatch));
+        }
+        if (embeddingsService == null || messages.isEmpty()) {
+            misses.incrementAndGet();
+            return CompletableFuture.completedFuture(new Lookup(key, partition, null, null));
+        }
+        String question = messages.get(messages.size() - 1).getContent();
+        return embeddingsService
+                .computeEmbeddings(List.of(question == null ? "" : question))
+                .thenApply(
+                        embeddings -> {
+                            double[] embedding = toArray(embeddings.get(0));
+                            CachedAnswer similar = findSimilar(partition, embedding);
+                            if (similar != null) {
+                                semanticHits.incrementAndGet();
+                            } else {
+                                misses.incrementAndGet();
+                            }
+                            return new Lookup(key, partition, embedding, similar);
+                        });
+    }
+
+    public synchronized void put(Lookup lookup, ChatMessage message, List<String> chunks) {
+        CachedAnswer answer =
+                new CachedAnswer(
+                        message,
+                        List.copyOf(chunks),
+                        lookup.partition,
+                        lookup.embedding,
+                        clock.millis() + ttlMillis);
+        CachedAnswer previous = entries.put(lookup.key, answer);
+        if (previous != null) {
+            unindex(lookup.key, previous);
+        }
+        if (answer.embedding() != null) {
+            semanticIndex
+                    .computeIfAbsent(answer.partition(), p -> new HashMap<>())
+                    .put(lookup.key, answer);
+        }
+    }
+
+    private void unindex(String key, CachedAnswer answer) {
+        if (answer.embedding() == null) {
+            return;
+        }
+        Map<String, CachedAnswer> answers = semanticIndex.get(answer.partition());
+        if (answers != null) {
+            answers.remove(key);
+            if (answers.isEmpty()) {
+                semanticIndex.remove(answer.partition());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (embeddingsService != null) {
+            embeddingsService.close();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getSemanticHits() {
+        return semanticHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private synchronized CachedAnswer get(String key) {
+        CachedAnswer answer = entries.get(key);
+        if (answer == null) {
+            return null;
+        }
+        if (answer.expiresAt() <= clock.millis()) {
+            entries.remove(key);
+            unindex(key, answer);
+            return null;
+        }
+        return answer;
+    }
+
+    /** The answers of the partition that did not expire. */
+    private synchronized List<CachedAnswer> candidates(String partition) {
+        Map<String, CachedAnswer> answers = semanticIndex.get(partition);
+        if (answers == null) {
+            return List.of();
+        }
+        long now = clock.millis();
+        List<CachedAnswer> candidates = new ArrayList<>(answers.size());
+        Iterator<Map.Entry<String, CachedAnswer>> iterator = answers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, CachedAnswer> entry = iterator.next();
+            if (entry.getValue().expiresAt() <= now) {
+                iterator.remove();
+                entries.remove(entry.getKey());
+            } else {
+                candidates.add(entry.getValue());
+            }
+        }
+        if (answers.isEmpty()) {
+            semanticIndex.remove(partition);
+        }
+        return candidates;
+    }
+
+    private CachedAnswer findSimilar(String partition, double[] embedding) {
+        CachedAnswer best = null;
+        double bestSimilarity = similarityThreshold;
+        for (CachedAnswer answer : candidates(partition)) {
+            double similarity = cosineSimilarity(embedding, answer.embedding());
+            if (similarity >= bestSimilarity) {
+                bestSimilarity = similarity;
+                best = answer;
+            }
+        }
+        if (best != null && log.isDebugEnabled()) {
+            log.debug("Found a similar answer in the cache, similarity {}", bestSimilarity);
+        }
+        return best;
+    }
+
+    static double cosineSimilarity(double[] a, double[] b) {
+        if (a.length != b.length) {
+            return -1;
+        }
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        if (normA == 0 || normB == 0) {
+            return -1;
+        }
+        return dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    private static double[] toArray(List<Double> embedding) {
+        double[] result = new double[embedding.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = embedding.get(i);
+        }
+        return result;
+    }
+
+    /** The options and a hash of the messages before the last one. */
+    @SneakyThrows
+    private static String partition(List<ChatMessage> messages, Map<String, Object> options) {
+        List<ChatMessage> context =
+                messages.isEmpty() ? List.of() : messages.subList(0, messages.size() - 1);
+        byte[] hash =
+                MessageDigest.getInstance("SHA-256")
+                        .digest(toJson(context).getBytes(StandardCharsets.UTF_8));
+        return toJson(options) + HexFormat.of().formatHex(hash);
+    }
+
+    @SneakyThrows
+    private static String toJson(Object object) {
+        return MAPPER.writeValueAsString(object);
+    }
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.datasource;
+
+import ai.langstream.api.util.ConfigurationUtils;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Caches the results of a {@link QueryStepDataSource} by query and parameters.
+ *
+ * <p>Entries expire after the TTL. The least recently used entries are evicted when the cache holds
+ * more than the max number of entries or, if configured, more than the max (estimated) size in
+ * bytes. Empty results are only cached if negative caching is enabled. Concurrent lookups of the
+ * same query and parameters share a single call to the data source.
+ */
+@Slf4j
+public class CachingQueryStepDataSource implements QueryStepDataSource {
+
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    private final QueryStepDataSource delegate;
+    private final long ttlMillis;
+    private final int maxSize;
+    private final long maxBytes;
+    private final boolean cacheEmptyResults;
+    private final Clock clock;
+
+    private final LinkedHashMap<CacheKey, CachedResult> entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<CacheKey, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+    private long totalBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public CachingQueryStepDataSource(
+            QueryStepDataSource delegate,
+            long ttlMillis,
+            int maxSize,
+            long maxBytes,
+            boolean cacheEmptyResults) {
+        this(delegate, ttlMillis, maxSize, maxBytes, cacheEmptyResults, Clock.systemUTC());
+    }
+
+    public CachingQueryStepDataSource(
+            QueryStepDataSource delegate,
+            long ttlMillis,
+            int maxSize,
+            long maxBytes,
+            boolean cacheEmptyResults,
+            Clock clock) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("cache-max-size must be greater than 0");
+        }
+        this.delegate = delegate;
+        this.ttlMillis = ttlMillis;
+        this.maxSize = maxSize;
+        this.maxBytes = maxBytes;
+        this.cacheEmptyResults = cacheEmptyResults;
+        this.clock = clock;
+    }
+
+    /**
+     * Wraps the data source with a cache if cache-ttl-seconds is set in the configuration of the
+     * datasource resource.
+     */
+    public static QueryStepDataSource wrap(
+            QueryStepDataSource dataSource, Map<String, Object> dataSourceConfig) {
+        long ttlSeconds = ConfigurationUtils.getLong("cache-ttl-seconds", 0L, dataSourceConfig);
+        if (ttlSeconds <= 0) {
+            return dataSource;
+        }
+        int maxSize = ConfigurationUtils.getInt("cache-max-size", 1000, dataSourceConfig);
+        long maxBytes = ConfigurationUtils.getLong("cache-max-bytes", 0L, dataSourceConfig);
+        boolean cacheEmptyResults =
+                ConfigurationUtils.getBoolean("cache-empty-results", false, dataSourceConfig);
+        log.info(
+                "Caching the query results for {} seconds, max {} entries, max {} bytes, empty results {}",
+                ttlSeconds,
+                maxSize,
+                maxBytes > 0 ? maxBytes : "unlimited",
+                cacheEmptyResults);
+        return new CachingQueryStepDataSource(
+                dataSource, ttlSeconds * 1000, maxSize, maxBytes, cacheEmptyResults);
+    }
+
+    /** The string results and the typed results of the same query are cached separately. */
+    private record CacheKey(String query, List<Object> params, boolean typed) {
+        CacheKey {
+            params = Collections.unmodifiableList(new ArrayList<>(params));
+        }
+    }
+
+    private record CachedResult(Object results, long expiresAt, long bytes) {}
+
+    @Override
+    public void initialize(Map<String, Object> config) {
+        delegate.initialize(config);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Map<String, String>> fetchData(String query, List<Object> params) {
+        CacheKey key = new CacheKey(query, params, false);
+        CachedResult cached = get(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return copy((List<Map<String, String>>) cached.results());
+        }
+        misses.incrementAndGet();
+        List<Map<String, String>> results = delegate.fetchData(query, params);
+        put(key, results);
+        return results;
+    }
+
+    @Override
+    public CompletableFuture<List<Map<String, String>>> fetchDataAsync(
+            String query, List<Object> params) {
+        // every caller gets its own copy of the rows
+        return lookup(
+                        query,
+                        List.of(params),
+                        false,
+                        misses ->
+                                delegate.fetchDataAsync(query, params)
+                                        .thenApply(Collections::singletonList),
+                        CachingQueryStepDataSource::copy)
+                .thenApply(results -> results.get(0));
+    }
+
+    @Override
+    public CompletableFuture<QueryResult> fetchResultAsync(String query, List<Object> params) {
+        // the typed results are immutable, they are shared
+        return lookup(
+                        query,
+                        List.of(params),
+                        true,
+                        misses ->
+                                delegate.fetchResultAsync(query, params)
+                                        .thenApply(Collections::singletonList),
+                        UnaryOperator.identity())
+                .thenApply(results -> results.get(0));
+    }
+
+    @Override
+    public CompletableFuture<List<List<Map<String, String>>>> fetchDataBatchAsync(
+            String query, List<List<Object>> params) {
+        return lookup(
+                query,
+                params,
+                false,
+                misses -> delegate.fetchDataBatchAsync(query, misses),
+                CachingQueryStepDataSource::copy);
+    }
+
+    @Override
+    public CompletableFuture<List<QueryResult>> fetchResultBatchAsync(
+            String query, List<List<Object>> params) {
+        return lookup(
+                query,
+                params,
+                true,
+                misses -> delegate.fetchResultBatchAsync(query, misses),
+                UnaryOperator.identity());
+    }
+
+    /**
+     * Looks up the results for each set of parameters. Only the ones that are neither cached nor
+     * already being fetched are passed to the fetcher, in a single call.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<List<T>> lookup(
+            String query,
+            List<List<Object>> params,
+            boolean typed,
+            Function<List<List<Object>>, CompletableFuture<List<T>>> fetcher,
+            UnaryOperator<T> copy) {
+        List<CompletableFuture<T>> results = new ArrayList<>(params.size());
+        List<CacheKey> missingKeys = new ArrayList<>();
+        List<List<Object>> missingParams = new ArrayList<>();
+        List<CompletableFuture<T>> missingResults = new ArrayList<>();
+        for (List<Object> p : params) {
+            CacheKey key = new CacheKey(query, p, typed);
+            CachedResult cached = get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                results.add(CompletableFuture.completedFuture(copy.apply((T) cached.results())));
+                continue;
+            }
+            misses.incrementAndGet();
+            CompletableFuture<T> result = new CompletableFuture<>();
+            CompletableFuture<T> running = (CompletableFuture<T>) inFlight.putIfAbsent(key, result);
+            if (running == null) {
+                missingKeys.add(key);
+                missingParams.add(p);
+                missingResults.add(result);
+                running = result;
+            }
+            results.add(running.thenApply(copy));
+        }
+        if (!missingKeys.isEmpty()) {
+            CompletableFuture<List<T>> fetch;
+            try {
+                fetch = fetcher.apply(missingParams);
+            } catch (Throwable error) {
+                fetch = CompletableFuture.failedFuture(error);
+            }
+            fetch.whenComplete(
+                    (values, error) -> {
+                        for (int i = 0; i < missingKeys.size(); i++) {
+                            CacheKey key = missingKeys.get(i);
+                            CompletableFuture<T> result = missingResults.get(i);
+                            if (error == null) {
+                                put(key, values.get(i));
+                            }
+                            inFlight.remove(key, result);
+                            if (error != null) {
+                                result.completeExceptionally(error);
+                            } else {
+                                result.complete(values.get(i));
+                            }
+                        }
+                    });
+        }
+        return QueryStepDataSource.allOf(results);
+    }
+
+    @Override
+    public void close() {
+        if (log.isInfoEnabled()) {
+            log.info(
+                    "Query cache stats: {} hits, {} misses, hit rate {}",
+                    hits.get(),
+                    misses.get(),
+                    getHitRate());
+        }
+        delegate.close();
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("hits", getHits());
+        metrics.put("misses", getMisses());
+        metrics.put("hit-rate", getHitRate());
+        metrics.put("entries", size());
+        metrics.put("estimated-bytes", getEstimatedBytes());
+        return metrics;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getEstimatedBytes() {
+        return totalBytes;
+    }
+
+    private synchronized CachedResult get(CacheKey key) {
+        CachedResult cached = entries.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.expiresAt() <= clock.millis()) {
+            remove(key);
+            return null;
+        }
+        return cached;
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized void put(CacheKey key, Object results) {
+        if (results == null || (isEmpty(results) && !cacheEmptyResults)) {
+            return;
+        }
+        Object copy =
+                results instanceof QueryResult
+                        ? results
+                        : copy((List<Map<String, String>>) results);
+        long bytes = estimateBytes(key, copy);
+        if (maxBytes > 0 && bytes > maxBytes) {
+            return;
+        }
+        remove(key);
+        entries.put(key, new CachedResult(copy, clock.millis() + ttlMillis, bytes));
+        totalBytes += bytes;
+        Iterator<CachedResult> eldest = entries.values().iterator();
+        while (entries.size() > maxSize || (maxBytes > 0 && totalBytes > maxBytes)) {
+            totalBytes -= eldest.next().bytes();
+            eldest.remove();
+        }
+    }
+
+    private void remove(CacheKey key) {
+        CachedResult removed = entries.remove(key);
+        if (removed != null) {
+            totalBytes -= removed.bytes();
+        }
+    }
+
+    private static List<Map<String, String>> copy(List<Map<String, String>> results) {
+        if (results == null) {
+            return null;
+        }
+        List<Map<String, String>> copy = new ArrayList<>(results.size());
+        for (Map<String, String> row : results) {
+            copy.add(new HashMap<>(row));
+        }
+        return copy;
+    }
+
+    private static boolean isEmpty(Object results) {
+        return results instanceof QueryResult queryResult
+                ? queryResult.isEmpty()
+                : ((List<?>) results).isEmpty();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long estimateBytes(CacheKey key, Object results) {
+        long bytes = ENTRY_OVERHEAD_BYTES + 2L * key.query().length();
+        for (Object param : key.params()) {
+            bytes += 2L * String.valueOf(param).length();
+        }
+        if (results instanceof QueryResult queryResult) {
+            for (QueryResult.Column column : queryResult.getColumns()) {
+                bytes += 2L * column.name().length();
+            }
+            for (Object[] row : queryResult.getRows()) {
+                bytes += ENTRY_OVERHEAD_BYTES;
+                for (Object value : row) {
+                    bytes += estimateBytes(value);
+                }
+            }
+            return bytes;
+        }
+        for (Map<String, String> row : (List<Map<String, String>>) results) {
+            bytes += ENTRY_OVERHEAD_BYTES;
+            for (Map.Entry<String, String> entry : row.entrySet()) {
+                bytes += 2L * entry.getKey().length();
+                bytes += entry.getValue() == null ? 0 : 2L * entry.getValue().length();
+            }
+        }
+        return bytes;
+    }
+
+    private static long estimateBytes(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof String string) {
+            return 2L * string.length();
+        } else if (value instanceof float[] vector) {
+            return 4L * vector.length;
+        } else if (value instanceof Number || value instanceof Boolean) {
+            return 16;
+        }
+        return 2L * value.toString().length();
+    }
+}
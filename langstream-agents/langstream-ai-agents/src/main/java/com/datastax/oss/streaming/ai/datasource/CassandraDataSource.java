@@ -18,6 +18,7 @@ package com.datastax.oss.streaming.ai.datasource;
 import ai.langstream.api.util.ConfigurationUtils;
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.CqlSessionBuilder;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
 import com.datastax.oss.driver.api.core.cql.BoundStatement;
 import com.datastax.oss.driver.api.core.cql.ColumnDefinition;
 import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
@@ -42,7 +43,13 @@ import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 
@@ -54,7 +61,10 @@ public class CassandraDataSource implements QueryStepDataSource {
     String astraEnvironment;
 
     String astraDatabase;
-    Map<String, PreparedStatement> statements = new ConcurrentHashMap<>();
+    Map<String, CompletionStage<PreparedStatement>> statements = new ConcurrentHashMap<>();
+
+    /** The max number of queries of a batch that run at the same time. */
+    int maxConcurrentQueries = 16;
 
     private static final DefaultCodecRegistry CODEC_REGISTRY =
             new DefaultCodecRegistry("default-registry") {
@@ -79,6 +89,11 @@ public class CassandraDataSource implements QueryStepDataSource {
         this.astraEnvironment =
                 ConfigurationUtils.getString("environment", "PROD", dataSourceConfig);
         this.astraDatabase = ConfigurationUtils.getString("database", "", dataSourceConfig);
+        this.maxConcurrentQueries =
+                ConfigurationUtils.getInt("max-concurrent-queries", 16, dataSourceConfig);
+        if (maxConcurrentQueries <= 0) {
+            throw new IllegalArgumentException("max-concurrent-queries must be greater than 0");
+        }
         this.session = buildCqlSession(dataSourceConfig);
     }
 
@@ -91,67 +106,215 @@ public class CassandraDataSource implements QueryStepDataSource {
 
     @Override
     public List<Map<String, String>> fetchData(String query, List<Object> params) {
-        if (log.isDebugEnabled()) {
-            log.debug(
-                    "Executing query {} with params {} ({})",
-                    query,
-                    params,
-                    params.stream()
-                            .map(v -> v == null ? "null" : v.getClass().toString())
-                            .collect(Collectors.joining(",")));
+        BoundStatement bind = bind(query, params);
+        List<Row> all = session.execute(bind).all();
+        return all.stream().map(CassandraDataSource::toMap).collect(Collectors.toList());
+    }
+
+    @Override
+    public CompletableFuture<List<Map<String, String>>> fetchDataAsync(
+            String query, List<Object> params) {
+        List<Map<String, String>> results = new ArrayList<>();
+        return bindAsync(query, params)
+                .thenCompose(session::executeAsync)
+                .thenCompose(resultSet -> readAllPages(resultSet, results))
+                .toCompletableFuture();
+    }
+
+    private static CompletionStage<List<Map<String, String>>> readAllPages(
+            AsyncResultSet resultSet, List<Map<String, String>> results) {
+        for (Row row : resultSet.currentPage()) {
+            results.add(toMap(row));
+        }
+        if (resultSet.hasMorePages()) {
+            return resultSet
+                    .fetchNextPage()
+                    .thenCompose(nextPage -> readAllPages(nextPage, results));
         }
-        PreparedStatement preparedStatement =
-                statements.computeIfAbsent(query, q -> session.prepare(q));
+        return CompletableFuture.completedFuture(results);
+    }
 
-        ColumnDefinitions variableDefinitions = preparedStatement.getVariableDefinitions();
-        List<Object> adaptedParameters = new ArrayList<>();
-        for (int i = 0; i < variableDefinitions.size(); i++) {
-            Object value = params.get(i);
-            ColumnDefinition columnDefinition = variableDefinitions.get(i);
-            if (columnDefinition.getType() instanceof CqlVectorType && value instanceof List) {
-                CqlVectorType vectorType = (CqlVectorType) columnDefinition.getType();
-                if (vectorType.getSubtype() != DataTypes.FLOAT) {
-                    throw new IllegalArgumentException("Only VECTOR<FLOAT,x> is supported");
-                }
-                CqlVector.Builder<Float> builder = CqlVector.builder();
-                for (Object v : (List<Object>) value) {
-                    if (v instanceof Number) {
-                        builder.add(((Number) v).floatValue());
-                    } else {
-                        builder.add(Float.parseFloat(v + ""));
-                    }
-                }
-                value = builder.build();
-            }
-            adaptedParameters.add(value);
+    @Override
+    public CompletableFuture<QueryResult> fetchResultAsync(String query, List<Object> params) {
+        return bindAsync(query, params)
+                .thenCompose(session::executeAsync)
+                .thenCompose(
+                        resultSet -> {
+                            QueryResult.Builder builder = QueryResult.builder();
+                            for (ColumnDefinition column : resultSet.getColumnDefinitions()) {
+                                builder.column(
+                                        column.getName().toString(),
+                                        toColumnType(column.getType()));
+                            }
+                            return readAllPages(resultSet, builder);
+                        })
+                .toCompletableFuture();
+    }
+
+    @Override
+    public CompletableFuture<List<List<Map<String, String>>>> fetchDataBatchAsync(
+            String query, List<List<Object>> params) {
+        return new FanOut<>(params, p -> fetchDataAsync(query, p)).start(maxConcurrentQueries);
+    }
+
+    @Override
+    public CompletableFuture<List<QueryResult>> fetchResultBatchAsync(
+            String query, List<List<Object>> params) {
+        return new FanOut<>(params, p -> fetchResultAsync(query, p)).start(maxConcurrentQueries);
+    }
+
+    /**
+     * Runs the queries of a batch concurrently, with a max number of queries in flight: a new query
+     * is started each time one completes.
+     */
+    static final class FanOut<T> {
+        private final List<List<Object>> params;
+        private final Function<List<Object>, CompletableFuture<T>> fetch;
+        private final AtomicReferenceArray<T> results;
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private final CompletableFuture<List<T>> result = new CompletableFuture<>();
+
+        FanOut(List<List<Object>> params, Function<List<Object>, CompletableFuture<T>> fetch) {
+            this.params = params;
+            this.fetch = fetch;
+            this.results = new AtomicReferenceArray<>(params.size());
+            this.remaining = new AtomicInteger(params.size());
         }
 
-        BoundStatement bind = preparedStatement.bind(adaptedParameters.toArray(new Object[0]));
+        CompletableFuture<List<T>> start(int concurrency) {
+            if (params.isEmpty()) {
+                return CompletableFuture.completedFuture(List.of());
+            }
+            for (int i = 0; i < Math.min(concurrency, params.size()); i++) {
+                fetchNext();
+            }
+            return result;
+        }
 
-        List<Row> all = session.execute(bind).all();
-        return all.stream()
-                .map(
-                        r -> {
-                            Map<String, String> result = new HashMap<>();
-                            ColumnDefinitions columnDefinitions = r.getColumnDefinitions();
-                            for (int i = 0; i < columnDefinitions.size(); i++) {
-                                String name = columnDefinitions.get(i).getName().toString();
-                                Object object = r.getObject(i);
-                                if (log.isTraceEnabled()) {
-                                    log.trace(
-                                            "Column {} is of type {} and value {}",
-                                            name,
-                                            object != null ? object.getClass().toString() : "null",
-                                            object);
+        private void fetchNext() {
+            int index = next.getAndIncrement();
+            if (index >= params.size() || result.isDone()) {
+                return;
+            }
+            fetch.apply(params.get(index))
+                    .whenComplete(
+                            (value, error) -> {
+                                if (error != null) {
+                                    result.completeExceptionally(error);
+                                    return;
                                 }
-                                result.put(name, object != null ? object.toString() : null);
-                            }
-                            return result;
-                        })
-                .collect(Collectors.toList());
+                                results.set(index, value);
+                                if (remaining.decrementAndGet() == 0) {
+                                    List<T> values = new ArrayList<>(results.length());
+                                    for (int i = 0; i < results.length(); i++) {
+                                        values.add(results.get(i));
+                                    }
+                                    result.complete(values);
+                                } else {
+                                    fetchNext();
+                                }
+                            });
+        }
+    }
+
+    private static CompletionStage<QueryResult> readAllPages(
+            AsyncResultSet resultSet, QueryResult.Builder builder) {
+        for (Row row : resultSet.currentPage()) {
+            Object[] values = new Object[row.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = row.getObject(i);
+            }
+            builder.addRow(values);
+        }
+        if (resultSet.hasMorePages()) {
+            return resultSet
+                    .fetchNextPage()
+                    .thenCompose(nextPage -> readAllPages(nextPage, builder));
+        }
+        return CompletableFuture.completedFuture(builder.build());
+    }
+
+    private static QueryResult.ColumnType toColumnType(DataType type) {
+        if (type instanceof CqlVectorType) {
+            return QueryResult.ColumnType.FLOAT_VECTOR;
+        } else if (type.equals(DataTypes.TEXT) || type.equals(DataTypes.ASCII)) {
+            return QueryResult.ColumnType.STRING;
+        } else if (type.equals(DataTypes.INT)
+                || type.equals(DataTypes.BIGINT)
+                || type.equals(DataTypes.SMALLINT)
+                || type.equals(DataTypes.TINYINT)
+                || type.equals(DataTypes.COUNTER)) {
+            return QueryResult.ColumnType.LONG;
+        } else if (type.equals(DataTypes.FLOAT)
+                || type.equals(DataTypes.DOUBLE)
+                || type.equals(DataTypes.DECIMAL)) {
+            return QueryResult.ColumnType.DOUBLE;
+        } else if (type.equals(DataTypes.BOOLEAN)) {
+            return QueryResult.ColumnType.BOOLEAN;
+        }
+        return QueryResult.ColumnType.OBJECT;
+    }
+
+    private static Map<String, String> toMap(Row r) {
+        Map<String, String> result = new HashMap<>();
+        ColumnDefinitions columnDefinitions = r.getColumnDefinitions();
+        for (int i = 0; i < columnDefinitions.size(); i++) {
+            String name = columnDefinitions.get(i).getName().toString();
+            Object object = r.getObject(i);
+            if (log.isTraceEnabled()) {
+                log.trace(
+                        "Column {} is of type {} and value {}",
+                        name,
+                        object != null ? object.getClass().toString() : "null",
+                        object);
+            }
+            result.put(name, object != null ? object.toString() : null);
+        }
+        return result;
     }
 
     public void executeStatement(String query, List<Object> params) {
+        session.execute(bind(query, params));
+    }
+
+    private BoundStatement bind(String query, List<Object> params) {
+        try {
+            return bindAsync(query, params).toCompletableFuture().join();
+        } catch (CompletionException error) {
+            if (error.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw error;
+        }
+    }
+
+    private CompletionStage<BoundStatement> bindAsync(String query, List<Object> params) {
+        try {
+            return prepare(query).thenApply(statement -> bind(statement, query, params));
+        } catch (Throwable error) {
+            return CompletableFuture.failedFuture(error);
+        }
+    }
+
+    /**
+     * Prepares each query once, without blocking: the records that need the statement while it is
+     * being prepared wait for the same stage. A failed preparation is retried by the next record.
+     */
+    private CompletionStage<PreparedStatement> prepare(String query) {
+        CompletionStage<PreparedStatement> statement =
+                statements.computeIfAbsent(query, session::prepareAsync);
+        statement.whenComplete(
+                (prepared, error) -> {
+                    if (error != null) {
+                        statements.remove(query, statement);
+                    }
+                });
+        return statement;
+    }
+
+    private static BoundStatement bind(
+            PreparedStatement preparedStatement, String query, List<Object> params) {
         if (log.isDebugEnabled()) {
             log.debug(
                     "Executing query {} with params {} ({})",
@@ -161,8 +324,6 @@ public class CassandraDataSource implements QueryStepDataSource {
                             .map(v -> v == null ? "null" : v.getClass().toString())
                             .collect(Collectors.joining(",")));
         }
-        PreparedStatement preparedStatement =
-                statements.computeIfAbsent(query, q -> session.prepare(q));
 
         ColumnDefinitions variableDefinitions = preparedStatement.getVariableDefinitions();
         List<Object> adaptedParameters = new ArrayList<>();
@@ -187,9 +348,7 @@ public class CassandraDataSource implements QueryStepDataSource {
             adaptedParameters.add(value);
         }
 
-        BoundStatement bind = preparedStatement.bind(adaptedParameters.toArray(new Object[0]));
-
-        session.execute(bind);
+        return preparedStatement.bind(adaptedParameters.toArray(new Object[0]));
     }
 
     private CqlSession buildCqlSession(Map<String, Object> dataSourceConfig) {
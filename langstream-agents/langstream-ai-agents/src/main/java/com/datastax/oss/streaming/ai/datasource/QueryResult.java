@@ -0,0 +1,268 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.datasource;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of a query: the columns and the typed values of each row.
+ *
+ * <p>Integer numbers are stored as Long, decimal numbers as Double and vectors as float[]. The
+ * values of the OBJECT columns (dates, UUIDs, nested structures...) are kept as returned by the
+ * data source. The rows are shared, they must not be modified.
+ */
+public final class QueryResult {
+
+    public enum ColumnType {
+        STRING,
+        LONG,
+        DOUBLE,
+        BOOLEAN,
+        FLOAT_VECTOR,
+        OBJECT;
+
+        /** Returns the type of the value, or null for null values. */
+        public static ColumnType of(Object value) {
+            if (value == null) {
+                return null;
+            } else if (value instanceof CharSequence) {
+                return STRING;
+            } else if (value instanceof Long
+                    || value instanceof Integer
+                    || value instanceof Short
+                    || value instanceof Byte) {
+                return LONG;
+            } else if (value instanceof Double
+                    || value instanceof Float
+                    || value instanceof BigDecimal) {
+                return DOUBLE;
+            } else if (value instanceof Boolean) {
+                return BOOLEAN;
+            } else if (value instanceof float[]) {
+                return FLOAT_VECTOR;
+            }
+            return OBJECT;
+        }
+
+        /** Converts the value to the Java type of the column. */
+        public Object convert(Object value) {
+            if (value == null) {
+                return null;
+            }
+            return switch (this) {
+                case STRING -> value.toString();
+                case LONG -> value instanceof Number number
+                        ? (Object) number.longValue()
+                        : Long.valueOf(value.toString());
+                    // parsing Float.toString keeps 0.1f as 0.1 instead of 0.10000000149
+                case DOUBLE -> value instanceof Double ? value : Double.valueOf(value.toString());
+                case BOOLEAN -> value instanceof Boolean
+                        ? value
+                        : Boolean.valueOf(value.toString());
+                case FLOAT_VECTOR -> toFloatArray(value);
+                case OBJECT -> value;
+            };
+        }
+
+        private static float[] toFloatArray(Object value) {
+            if (value instanceof float[] floats) {
+                return floats;
+            }
+            List<?> values;
+            if (value instanceof Object[] array) {
+                values = Arrays.asList(array);
+            } else if (value instanceof double[] doubles) {
+                values = Arrays.stream(doubles).boxed().toList();
+            } else if (value instanceof Iterable<?> iterable) {
+                List<Object> items = new ArrayList<>();
+                iterable.forEach(items::add);
+                values = items;
+            } else {
+                // the text form of the vector, like [0.1, 0.2] or {0.1,0.2}
+                String text = value.toString().trim();
+                if (text.length() < 2) {
+                    throw new IllegalArgumentException("Cannot convert " + text + " to a vector");
+                }
+                text = text.substring(1, text.length() - 1).trim();
+                values = text.isEmpty() ? List.of() : Arrays.asList(text.split(","));
+            }
+            float[] result = new float[values.size()];
+            for (int i = 0; i < result.length; i++) {
+                Object item = values.get(i);
+                result[i] =
+                        item instanceof Number number
+                                ? number.floatValue()
+                                : Float.parseFloat(item.toString().trim());
+            }
+            return result;
+        }
+    }
+
+    public record Column(String name, ColumnType type) {}
+
+    private static final QueryResult EMPTY = new QueryResult(List.of(), List.of());
+
+    private final List<Column> columns;
+    private final List<Object[]> rows;
+
+    private QueryResult(List<Column> columns, List<Object[]> rows) {
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    public static QueryResult empty() {
+        return EMPTY;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** Converts the results of {@link QueryStepDataSource#fetchData} to a typed result. */
+    public static QueryResult fromMaps(List<? extends Map<String, ?>> results) {
+        if (results == null || results.isEmpty()) {
+            return EMPTY;
+        }
+        Builder builder = builder();
+        results.forEach(builder::addRow);
+        return builder.build();
+    }
+
+    public List<Column> getColumns() {
+        return columns;
+    }
+
+    /** The values of each row, in the same order as the columns. */
+    public List<Object[]> getRows() {
+        return rows;
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    public boolean isEmpty() {
+        return rows.isEmpty();
+    }
+
+    /** Returns the rows as maps from the column name to the typed value. */
+    public List<Map<String, Object>> toMaps() {
+        List<Map<String, Object>> result = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (int i = 0; i < columns.size(); i++) {
+                map.put(columns.get(i).name(), row[i]);
+            }
+            result.add(map);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryResult{columns=" + columns + ", rows=" + toMaps() + "}";
+    }
+
+    /**
+     * Builds a result. The columns can be declared upfront, with their type, and filled with {@link
+     * #addRow(Object...)}. Otherwise they are added when {@link #addRow(Map)} finds a new name and
+     * their type is taken from the values: a column with values of different types is an OBJECT
+     * column.
+     */
+    public static final class Builder {
+        private final List<String> names = new ArrayList<>();
+        private final List<ColumnType> types = new ArrayList<>();
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<Object[]> rows = new ArrayList<>();
+
+        private Builder() {}
+
+        public Builder column(String name, ColumnType type) {
+            // like in the maps, a duplicate name is an alias for the last column
+            indexes.put(name, names.size());
+            names.add(name);
+            types.add(type);
+            return this;
+        }
+
+        /** Adds a row with a value for each declared column, in the same order. */
+        public Builder addRow(Object... values) {
+            if (values.length != names.size()) {
+                throw new IllegalArgumentException(
+                        "Expected " + names.size() + " values, got " + values.length);
+            }
+            rows.add(values.clone());
+            return this;
+        }
+
+        public Builder addRow(Map<String, ?> values) {
+            Object[] row = new Object[names.size() + values.size()];
+            for (Map.Entry<String, ?> entry : values.entrySet()) {
+                Object value = entry.getValue();
+                ColumnType valueType = ColumnType.of(value);
+                Integer index = indexes.get(entry.getKey());
+                if (index == null) {
+                    index = names.size();
+                    column(entry.getKey(), valueType);
+                } else if (valueType != null) {
+                    types.set(index, merge(types.get(index), valueType));
+                }
+                row[index] = value;
+            }
+            rows.add(row);
+            return this;
+        }
+
+        private static ColumnType merge(ColumnType current, ColumnType valueType) {
+            if (current == null || current == valueType) {
+                return valueType;
+            }
+            if ((current == ColumnType.LONG || current == ColumnType.DOUBLE)
+                    && (valueType == ColumnType.LONG || valueType == ColumnType.DOUBLE)) {
+                return ColumnType.DOUBLE;
+            }
+            return ColumnType.OBJECT;
+        }
+
+        public QueryResult build() {
+            if (rows.isEmpty() && names.isEmpty()) {
+                return EMPTY;
+            }
+            List<Column> columns = new ArrayList<>(names.size());
+            for (int i = 0; i < names.size(); i++) {
+                ColumnType type = types.get(i) == null ? ColumnType.STRING : types.get(i);
+                columns.add(new Column(names.get(i), type));
+            }
+            List<Object[]> result = new ArrayList<>(rows.size());
+            for (Object[] row : rows) {
+                Object[] values = Arrays.copyOf(row, columns.size());
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = columns.get(i).type().convert(values[i]);
+                }
+                result.add(values);
+            }
+            return new QueryResult(
+                    Collections.unmodifiableList(columns), Collections.unmodifiableList(result));
+        }
+    }
+}
@@ -18,6 +18,7 @@ package com.datastax.oss.streaming.ai.datasource;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface QueryStepDataSource extends AutoCloseable {
 
@@ -27,5 +28,54 @@ public interface QueryStepDataSource extends AutoCloseable {
         return Collections.emptyList();
     }
 
+    /**
+     * Fetch the data without blocking the caller. The default implementation runs {@link
+     * #fetchData(String, List)} on the calling thread, the data sources that have a non-blocking
+     * client override it.
+     */
+    default CompletableFuture<List<Map<String, String>>> fetchDataAsync(
+            String query, List<Object> params) {
+        try {
+            return CompletableFuture.completedFuture(fetchData(query, params));
+        } catch (Throwable error) {
+            return CompletableFuture.failedFuture(error);
+        }
+    }
+
+    /**
+     * Fetch the data with the columns and the typed values of the rows. The default implementation
+     * converts the result of {@link #fetchDataAsync(String, List)}, so all the values are strings.
+     */
+    default CompletableFuture<QueryResult> fetchResultAsync(String query, List<Object> params) {
+        return fetchDataAsync(query, params).thenApply(QueryResult::fromMaps);
+    }
+
+    /**
+     * Fetch the data for a batch of parameters, the results are in the same order as the
+     * parameters. The default implementation runs a query for each set of parameters with {@link
+     * #fetchDataAsync(String, List)}, the data sources that can do better, like sending all the
+     * queries in one request, override it.
+     */
+    default CompletableFuture<List<List<Map<String, String>>>> fetchDataBatchAsync(
+            String query, List<List<Object>> params) {
+        return allOf(params.stream().map(p -> fetchDataAsync(query, p)).toList());
+    }
+
+    /** Like {@link #fetchDataBatchAsync(String, List)}, but with the typed values. */
+    default CompletableFuture<List<QueryResult>> fetchResultBatchAsync(
+            String query, List<List<Object>> params) {
+        return allOf(params.stream().map(p -> fetchResultAsync(query, p)).toList());
+    }
+
+    static <T> CompletableFuture<List<T>> allOf(List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(__ -> futures.stream().map(CompletableFuture::join).toList());
+    }
+
+    /** The metrics of the data source, reported in the status of the agent. */
+    default Map<String, Object> getMetrics() {
+        return Map.of();
+    }
+
     default void close() {}
 }
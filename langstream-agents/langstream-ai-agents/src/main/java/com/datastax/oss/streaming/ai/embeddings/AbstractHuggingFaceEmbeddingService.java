@@ -29,7 +29,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import lombok.Builder;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
@@ -58,13 +58,15 @@ public abstract class AbstractHuggingFaceEmbeddingService<IN, OUT>
         return Set.of(prop.split(","));
     }
 
+    @Override
+    public Map<String, Object> getMetrics() {
+        return engine != null ? engine.getMetrics() : Map.of();
+    }
+
     @Override
     public void close() throws Exception {
-        while (!predictorList.isEmpty()) {
-            Predictor<?, ?> p = predictorList.poll();
-            if (p != null) {
-                p.close();
-            }
+        if (engine != null) {
+            engine.close();
         }
 
         if (model != null) {
@@ -84,15 +86,29 @@ public abstract class AbstractHuggingFaceEmbeddingService<IN, OUT>
         String modelUrl;
 
         String modelName;
+
+        /**
+         * The number of predictors, each one runs a batch at a time. The engines already use all
+         * the cores for a single prediction, more predictors oversubscribe the CPU.
+         */
+        @Builder.Default int predictorPoolSize = 1;
+
+        /** The max number of texts, from one or more requests, passed to the model at once. */
+        @Builder.Default int maxBatchSize = 32;
+
+        /**
+         * The max time in milliseconds a request waits for other requests to fill up the batch, 0
+         * runs the requests that are already queued without waiting.
+         */
+        @Builder.Default long maxBatchLatencyMillis = 0;
     }
 
     // thread safety:
     // http://djl.ai/docs/development/inference_performance_optimization.html#multithreading-support
     ZooModel<IN, OUT> model;
 
-    private static final ThreadLocal<Predictor<?, ?>> predictorThreadLocal = new ThreadLocal<>();
-    private static final ConcurrentLinkedQueue<Predictor<?, ?>> predictorList =
-            new ConcurrentLinkedQueue<>();
+    // the predictors are not thread safe, each one is owned by a thread of the engine
+    private LocalInferenceEngine<IN, OUT> engine;
 
     public AbstractHuggingFaceEmbeddingService(HuggingFaceConfig conf)
             throws IOException,
@@ -106,14 +122,9 @@ public abstract class AbstractHuggingFaceEmbeddingService<IN, OUT>
 
         // https://stackoverflow.com/a/1901275/2237794
         // https://github.com/deepjavalibrary/djl/blob/master/extensions/tokenizers/src/test/java/ai/djl/huggingface/tokenizers/TextEmbeddingTranslatorTest.java
-        Class<IN> inClass =
-                (Class<IN>)
-                        ((ParameterizedType) getClass().getGenericSuperclass())
-                                .getActualTypeArguments()[0];
-        Class<OUT> outClass =
-                (Class<OUT>)
-                        ((ParameterizedType) getClass().getGenericSuperclass())
-                                .getActualTypeArguments()[1];
+        ParameterizedType serviceType = getServiceType();
+        Class<IN> inClass = (Class<IN>) serviceType.getActualTypeArguments()[0];
+        Class<OUT> outClass = (Class<OUT>) serviceType.getActualTypeArguments()[1];
 
         Criteria.Builder<IN, OUT> builder = Criteria.builder().setTypes(inClass, outClass);
 
@@ -143,6 +154,45 @@ public abstract class AbstractHuggingFaceEmbeddingService<IN, OUT>
         Criteria<IN, OUT> criteria = builder.build();
 
         model = criteria.loadModel();
+
+        try {
+            engine =
+                    new LocalInferenceEngine<>(
+                            "djl-inference",
+                            conf.predictorPoolSize,
+                            conf.maxBatchSize,
+                            conf.maxBatchLatencyMillis,
+                            () -> {
+                                Predictor<IN, OUT> predictor = model.newPredictor();
+                                return new LocalInferenceEngine.BatchPredictor<IN, OUT>() {
+                                    @Override
+                                    public List<OUT> batchPredict(List<IN> inputs)
+                                            throws TranslateException {
+                                        return predictor.batchPredict(inputs);
+                                    }
+
+                                    @Override
+                                    public void close() {
+                                        predictor.close();
+                                    }
+                                };
+                            });
+        } catch (IllegalArgumentException e) {
+            model.close();
+            throw e;
+        } catch (Exception e) {
+            model.close();
+            throw new IOException("Cannot create the predictors", e);
+        }
+    }
+
+    private ParameterizedType getServiceType() {
+        // the subclasses of the concrete services don't declare the type arguments
+        Class<?> type = getClass();
+        while (type.getSuperclass() != AbstractHuggingFaceEmbeddingService.class) {
+            type = type.getSuperclass();
+        }
+        return (ParameterizedType) type.getGenericSuperclass();
     }
 
     private void checkIfUrlIsAllowed(String modelUrl) throws IllegalAccessException {
@@ -155,14 +205,17 @@ public abstract class AbstractHuggingFaceEmbeddingService<IN, OUT>
     }
 
     public List<OUT> compute(List<IN> texts) throws TranslateException {
-        Predictor<IN, OUT> predictor = (Predictor<IN, OUT>) predictorThreadLocal.get();
-        if (predictor == null) {
-            predictor = model.newPredictor();
-            predictorThreadLocal.set(predictor);
-            predictorList.add(predictor);
+        try {
+            return engine.predict(texts).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TranslateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TranslateException translateException) {
+                throw translateException;
+            }
+            throw new TranslateException(e.getCause());
         }
-
-        return predictor.batchPredict(texts);
     }
 
     abstract List<IN> convertInput(List<String> texts);
@@ -171,13 +224,15 @@ public abstract class AbstractHuggingFaceEmbeddingService<IN, OUT>
 
     @Override
     public CompletableFuture<List<List<Double>>> computeEmbeddings(List<String> texts) {
-        try {
-            List<OUT> results = compute(convertInput(texts));
-            return CompletableFuture.completedFuture(convertOutput(results));
-        } catch (TranslateException e) {
-            log.error("failed to run compute", e);
-            return CompletableFuture.failedFuture(
-                    new RuntimeException("failed to compute embeddings", e));
-        }
+        // the texts of concurrent requests are merged in the same batch by the engine
+        return engine.predict(convertInput(texts))
+                .handle(
+                        (results, error) -> {
+                            if (error != null) {
+                                log.error("failed to run compute", error);
+                                throw new RuntimeException("failed to compute embeddings", error);
+                            }
+                            return convertOutput(results);
+                        });
     }
 }
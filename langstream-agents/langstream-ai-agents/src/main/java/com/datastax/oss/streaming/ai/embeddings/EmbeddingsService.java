@@ -19,6 +19,7 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 public interface EmbeddingsService extends AutoCloseable {
@@ -33,5 +34,10 @@ public interface EmbeddingsService extends AutoCloseable {
 
     default void close() throws Exception {}
 
+    /** The metrics of the service, reported in the status of the agent. */
+    default Map<String, Object> getMetrics() {
+        return Map.of();
+    }
+
     CompletableFuture<List<List<Double>>> computeEmbeddings(List<String> texts);
 }
@@ -23,7 +23,7 @@ import java.util.List;
 
 /**
  * EmbeddingsService implementation using HuggingFace models adapted for use in the DJL. Thread safe
- * (but uses predictor per thread).
+ * (the requests are batched on a pool of predictors).
  *
  * <p>The model requested there should be trained for "sentence similarity" task. See
  * https://github.com/deepjavalibrary/djl/blob/master/extensions/tokenizers/README.md for model
@@ -0,0 +1,283 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.embeddings;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs a local model on a fixed pool of predictors, each one used by its own thread.
+ *
+ * <p>The requests are queued, and a thread that becomes free merges the queued requests in a single
+ * batch, up to the max batch size. If a latency budget is set, the thread also waits up to that
+ * time, from the moment the first request was queued, for more requests to fill up the batch. A
+ * request is never split across batches.
+ */
+@Slf4j
+public class LocalInferenceEngine<IN, OUT> implements AutoCloseable {
+
+    /** A predictor, it is only used by one thread at a time. */
+    public interface BatchPredictor<IN, OUT> extends AutoCloseable {
+        List<OUT> batchPredict(List<IN> inputs) throws Exception;
+
+        @Override
+        default void close() throws Exception {}
+    }
+
+    @FunctionalInterface
+    public interface BatchPredictorFactory<IN, OUT> {
+        BatchPredictor<IN, OUT> create() throws Exception;
+    }
+
+    private record Request<IN, OUT>(
+            List<IN> inputs, CompletableFuture<List<OUT>> result, long queuedAt) {}
+
+    private final int maxBatchSize;
+    private final long maxLatencyNanos;
+    private final LinkedBlockingDeque<Request<IN, OUT>> queue = new LinkedBlockingDeque<>();
+    private final List<Thread> workers = new ArrayList<>();
+
+    /** Guarded by the queue, so that no request is queued after the pending ones are failed. */
+    private boolean closed;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedInputs = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder queueTimeNanos = new LongAdder();
+    private final AtomicLong maxQueueTimeNanos = new AtomicLong();
+
+    public LocalInferenceEngine(
+            String name,
+            int poolSize,
+            int maxBatchSize,
+            long maxLatencyMillis,
+            BatchPredictorFactory<IN, OUT> predictorFactory)
+            throws Exception {
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("The predictor pool size must be greater than 0");
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("The max batch size must be greater than 0");
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxLatencyMillis));
+        log.info(
+                "Starting {} with {} predictors, max batch size {}, max latency {} ms",
+                name,
+                poolSize,
+                maxBatchSize,
+                maxLatencyMillis);
+        // the predictors are created upfront, so that the errors are reported to the caller
+        List<BatchPredictor<IN, OUT>> predictors = new ArrayList<>();
+        try {
+            for (int i = 0; i < poolSize; i++) {
+                predictors.add(predictorFactory.create());
+            }
+        } catch (Exception error) {
+            for (BatchPredictor<IN, OUT> predictor : predictors) {
+                closeQuietly(predictor);
+            }
+            throw error;
+        }
+        for (int i = 0; i < poolSize; i++) {
+            BatchPredictor<IN, OUT> predictor = predictors.get(i);
+            Thread worker = new Thread(() -> run(predictor), name + "-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    public CompletableFuture<List<OUT>> predict(List<IN> inputs) {
+        if (inputs.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        CompletableFuture<List<OUT>> result = new CompletableFuture<>();
+        synchronized (queue) {
+            if (!closed) {
+                queue.offerLast(new Request<>(inputs, result, System.nanoTime()));
+                return result;
+            }
+        }
+        result.completeExceptionally(new IllegalStateException("The engine is closed"));
+        return result;
+    }
+
+    private boolean isClosed() {
+        synchronized (queue) {
+            return closed;
+        }
+    }
+
+    private void run(BatchPredictor<IN, OUT> predictor) {
+        try {
+            while (!isClosed()) {
+                List<Request<IN, OUT>> batch = nextBatch();
+                if (!batch.isEmpty()) {
+                    execute(predictor, batch);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeQuietly(predictor);
+        }
+    }
+
+    private static void closeQuietly(BatchPredictor<?, ?> predictor) {
+        try {
+            predictor.close();
+        } catch (Exception e) {
+            log.error("Error closing the predictor", e);
+        }
+    }
+
+    private List<Request<IN, OUT>> nextBatch() throws InterruptedException {
+        List<Request<IN, OUT>> batch = new ArrayList<>();
+        Request<IN, OUT> first = queue.pollFirst(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return batch;
+        }
+        batch.add(first);
+        int size = first.inputs().size();
+        long deadline = first.queuedAt() + maxLatencyNanos;
+        while (size < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            Request<IN, OUT> next;
+            try {
+                next =
+                        remaining > 0
+                                ? queue.pollFirst(remaining, TimeUnit.NANOSECONDS)
+                                : queue.pollFirst();
+            } catch (InterruptedException e) {
+                // the engine is closed while the batch fills up, the requests already taken from
+                // the queue are not failed by close()
+                IllegalStateException error = new IllegalStateException("The engine is closed");
+                batch.forEach(request -> request.result().completeExceptionally(error));
+                throw e;
+            }
+            if (next == null) {
+                break;
+            }
+            if (size + next.inputs().size() > maxBatchSize) {
+                // it goes in the next batch
+                queue.offerFirst(next);
+                break;
+            }
+            batch.add(next);
+            size += next.inputs().size();
+        }
+        return batch;
+    }
+
+    private void execute(BatchPredictor<IN, OUT> predictor, List<Request<IN, OUT>> batch) {
+        long now = System.nanoTime();
+        List<IN> inputs = new ArrayList<>();
+        for (Request<IN, OUT> request : batch) {
+            long queueTime = now - request.queuedAt();
+            queueTimeNanos.add(queueTime);
+            maxQueueTimeNanos.accumulateAndGet(queueTime, Math::max);
+            inputs.addAll(request.inputs());
+        }
+        requests.add(batch.size());
+        batches.increment();
+        batchedInputs.add(inputs.size());
+        if (log.isDebugEnabled()) {
+            log.debug("Running a batch of {} inputs from {} requests", inputs.size(), batch.size());
+        }
+        List<OUT> outputs;
+        try {
+            outputs = predictor.batchPredict(inputs);
+            if (outputs.size() != inputs.size()) {
+                throw new IllegalStateException(
+                        "Expected " + inputs.size() + " outputs, got " + outputs.size());
+            }
+        } catch (Throwable error) {
+            batch.forEach(request -> request.result().completeExceptionally(error));
+            return;
+        }
+        int offset = 0;
+        for (Request<IN, OUT> request : batch) {
+            int size = request.inputs().size();
+            request.result().complete(new ArrayList<>(outputs.subList(offset, offset + size)));
+            offset += size;
+        }
+    }
+
+    private void failPending(Throwable error) {
+        Request<IN, OUT> request;
+        while ((request = queue.pollFirst()) != null) {
+            request.result().completeExceptionally(error);
+        }
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public double getAverageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) batchedInputs.sum() / count;
+    }
+
+    public double getAverageQueueTimeMillis() {
+        long count = requests.sum();
+        return count == 0 ? 0 : queueTimeNanos.sum() / 1_000_000.0 / count;
+    }
+
+    public double getMaxQueueTimeMillis() {
+        return maxQueueTimeNanos.get() / 1_000_000.0;
+    }
+
+    /** The batching metrics, reported in the status of the agent. */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("batches", getBatchCount());
+        metrics.put("average-batch-size", getAverageBatchSize());
+        metrics.put("average-queue-time-ms", getAverageQueueTimeMillis());
+        metrics.put("max-queue-time-ms", getMaxQueueTimeMillis());
+        metrics.put("queued-requests", queue.size());
+        return metrics;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        synchronized (queue) {
+            closed = true;
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        failPending(new IllegalStateException("The engine is closed"));
+        log.info(
+                "Inference stats: {} batches, average batch size {}, average queue time {} ms, max queue time {} ms",
+                getBatchCount(),
+                getAverageBatchSize(),
+                getAverageQueueTimeMillis(),
+                getMaxQueueTimeMillis());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.embeddings;
+
+import ai.djl.MalformedModelException;
+import ai.djl.engine.Engine;
+import ai.djl.repository.zoo.ModelNotFoundException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * EmbeddingsService implementation running sentence-transformers models exported to ONNX on the
+ * ONNX Runtime CPU engine of the DJL. It requires the ai.djl.onnxruntime:onnxruntime-engine
+ * dependency, see the "onnxruntime" profile.
+ *
+ * <p>The model url points to a directory or an archive with the exported model and its
+ * tokenizer.json, like the ones created by "optimum-cli export onnx". The batching works like in
+ * {@link HuggingFaceEmbeddingService}, but the default is a single predictor, because each run
+ * already uses the intra-op threads of the session.
+ */
+public class OnnxEmbeddingService extends HuggingFaceEmbeddingService {
+
+    public static final String ENGINE = "OnnxRuntime";
+
+    public OnnxEmbeddingService(OnnxConfig conf)
+            throws IOException,
+                    ModelNotFoundException,
+                    MalformedModelException,
+                    IllegalAccessException {
+        super(checkEngine(conf).toHuggingFaceConfig());
+    }
+
+    /** Whether the ONNX Runtime engine is on the classpath. */
+    public static boolean isEngineAvailable() {
+        return Engine.getAllEngines().contains(ENGINE);
+    }
+
+    private static OnnxConfig checkEngine(OnnxConfig conf) {
+        if (!isEngineAvailable()) {
+            // without this check the DJL fails later with an error about the model
+            throw new IllegalStateException(
+                    "The onnx provider requires the ONNX Runtime engine, which is not in this"
+                            + " image: build langstream-ai-agents with -Donnxruntime");
+        }
+        return conf;
+    }
+
+    @Data
+    @Builder
+    public static class OnnxConfig {
+        String modelUrl;
+
+        /** Load the int8 quantized model, model_quantized.onnx instead of model.onnx. */
+        @Builder.Default boolean quantized = false;
+
+        /** The name of the ONNX file, without the extension, it overrides the quantized flag. */
+        String modelFile;
+
+        /** The threads used to run the operators of one batch. */
+        @Builder.Default int intraOpThreads = Runtime.getRuntime().availableProcessors();
+
+        /** The threads used to run independent operators in parallel. */
+        @Builder.Default int interOpThreads = 1;
+
+        @Builder.Default int predictorPoolSize = 1;
+
+        @Builder.Default int maxBatchSize = 32;
+
+        @Builder.Default long maxBatchLatencyMillis = 0;
+
+        /** Additional options of the ONNX Runtime session, like optLevel or executionMode. */
+        @Builder.Default Map<String, String> options = Map.of();
+
+        /** The arguments of the translator, like pooling or includeTokenTypes. */
+        @Builder.Default Map<String, String> arguments = Map.of();
+
+        HuggingFaceConfig toHuggingFaceConfig() {
+            if (intraOpThreads <= 0 || interOpThreads <= 0) {
+                throw new IllegalArgumentException("The number of threads must be greater than 0");
+            }
+            Map<String, String> sessionOptions = new HashMap<>();
+            sessionOptions.put("intraOpNumThreads", String.valueOf(intraOpThreads));
+            sessionOptions.put("interOpNumThreads", String.valueOf(interOpThreads));
+            if (options != null) {
+                sessionOptions.putAll(options);
+            }
+            String fileName = modelFile;
+            if (fileName == null || fileName.isEmpty()) {
+                fileName = quantized ? "model_quantized" : "model";
+            }
+            return HuggingFaceConfig.builder()
+                    .engine(ENGINE)
+                    .modelUrl(modelUrl)
+                    // the DJL loads the <model name>.onnx file
+                    .modelName(fileName)
+                    .options(sessionOptions)
+                    .arguments(arguments != null ? arguments : Map.of())
+                    .predictorPoolSize(predictorPoolSize)
+                    .maxBatchSize(maxBatchSize)
+                    .maxBatchLatencyMillis(maxBatchLatencyMillis)
+                    .build();
+        }
+    }
+}
@@ -17,157 +17,254 @@ package com.datastax.oss.streaming.ai.jstl;
 
 import com.datastax.oss.streaming.ai.TransformContext;
 import jakarta.el.ELContext;
+import jakarta.el.ELException;
+import jakarta.el.ELResolver;
 import jakarta.el.ExpressionFactory;
+import jakarta.el.FunctionMapper;
+import jakarta.el.PropertyNotWritableException;
 import jakarta.el.ValueExpression;
+import jakarta.el.VariableMapper;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import lombok.SneakyThrows;
 import org.apache.el.ExpressionFactoryImpl;
 
 public class JstlEvaluator<T> {
 
     private static final ExpressionFactory FACTORY = new ExpressionFactoryImpl();
+
+    /** The resolvers are stateless, they are shared by all the evaluations. */
+    private static final ELResolver RESOLVER = new StandardContext(FACTORY).getELResolver();
+
+    /**
+     * The top level variables. They are bound to the expression when it is parsed and they read the
+     * current record from the {@link ELContext} of the evaluation.
+     */
+    private static final List<TransformContextVariable> VARIABLES =
+            List.of(
+                    new TransformContextVariable(
+                            "key", Object.class, JstlTransformContextAdapter::getKey),
+                    new TransformContextVariable(
+                            "value", Object.class, JstlTransformContextAdapter::adaptValue),
+                    // this is only for fn:filter
+                    new TransformContextVariable(
+                            "record", Object.class, JstlTransformContextAdapter::adaptRecord),
+                    // message headers as top level fields
+                    new TransformContextVariable(
+                            "messageKey", String.class, a -> a.getHeader().get("messageKey")),
+                    new TransformContextVariable(
+                            "topicName", String.class, a -> a.getHeader().get("topicName")),
+                    new TransformContextVariable(
+                            "destinationTopic",
+                            String.class,
+                            a -> a.getHeader().get("destinationTopic")),
+                    new TransformContextVariable(
+                            "eventTime", Long.class, a -> a.getHeader().get("eventTime")),
+                    new TransformContextVariable(
+                            "properties", Map.class, a -> a.getHeader().get("properties")));
+
+    static final Map<String, Method> FUNCTIONS = functions();
+
     private final ValueExpression valueExpression;
-    private final ELContext expressionContext;
 
+    /**
+     * The simple expressions are also compiled to direct accessors on the record. This is null if
+     * the expression is only evaluated by EL.
+     */
+    private final JstlExpressionCompiler.Node compiledExpression;
+
+    private final Class<? extends T> type;
+
+    /**
+     * The expression is parsed once. The evaluator holds no state related to the evaluations, so it
+     * is safe to use it from multiple threads.
+     */
     public JstlEvaluator(String expression, Class<? extends T> type) {
-        this.expressionContext = new StandardContext(FACTORY);
-        registerFunctions();
-        this.valueExpression = FACTORY.createValueExpression(expressionContext, expression, type);
+        ELContext parseContext = new StandardContext(FACTORY);
+        registerFunctions(parseContext);
+        VARIABLES.forEach(
+                variable ->
+                        parseContext
+                                .getVariableMapper()
+                                .setVariable(variable.getExpressionString(), variable));
+        // the EL parser also validates the expression
+        this.valueExpression = FACTORY.createValueExpression(parseContext, expression, type);
+        this.compiledExpression = JstlExpressionCompiler.compile(expression, FUNCTIONS);
+        this.type = type;
     }
 
     @SneakyThrows
-    private void registerFunctions() {
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction("fn", "toJson", JstlFunctions.class.getMethod("toJson", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn", "fromJson", JstlFunctions.class.getMethod("fromJson", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "split",
-                        JstlFunctions.class.getMethod("split", Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "unpack",
-                        JstlFunctions.class.getMethod("unpack", Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "uppercase",
-                        JstlFunctions.class.getMethod("uppercase", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "lowercase",
-                        JstlFunctions.class.getMethod("lowercase", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "contains",
-                        JstlFunctions.class.getMethod("contains", Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction("fn", "trim", JstlFunctions.class.getMethod("trim", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "concat",
-                        JstlFunctions.class.getMethod("concat", Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "coalesce",
-                        JstlFunctions.class.getMethod("coalesce", Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction("fn", "str", JstlFunctions.class.getMethod("toString", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn", "toDouble", JstlFunctions.class.getMethod("toDouble", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "filter",
-                        JstlFunctions.class.getMethod("filter", Object.class, String.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction("fn", "toInt", JstlFunctions.class.getMethod("toInt", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "replace",
-                        JstlFunctions.class.getMethod(
-                                "replace", Object.class, Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction("fn", "now", JstlFunctions.class.getMethod("now"));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "timestampAdd",
-                        JstlFunctions.class.getMethod(
-                                "timestampAdd", Object.class, Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "decimalFromUnscaled",
-                        JstlFunctions.class.getMethod("toBigDecimal", Object.class, Object.class));
-
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "decimalFromNumber",
-                        JstlFunctions.class.getMethod("toBigDecimal", Object.class));
-
+    private static Map<String, Method> functions() {
+        Map<String, Method> functions = new LinkedHashMap<>();
+        functions.put("toJson", JstlFunctions.class.getMethod("toJson", Object.class));
+        functions.put("fromJson", JstlFunctions.class.getMethod("fromJson", Object.class));
+        functions.put("split", JstlFunctions.class.getMethod("split", Object.class, Object.class));
+        functions.put(
+                "unpack", JstlFunctions.class.getMethod("unpack", Object.class, Object.class));
+        functions.put("uppercase", JstlFunctions.class.getMethod("uppercase", Object.class));
+        functions.put("lowercase", JstlFunctions.class.getMethod("lowercase", Object.class));
+        functions.put(
+                "contains", JstlFunctions.class.getMethod("contains", Object.class, Object.class));
+        functions.put("trim", JstlFunctions.class.getMethod("trim", Object.class));
+        functions.put(
+                "concat", JstlFunctions.class.getMethod("concat", Object.class, Object.class));
+        functions.put(
+                "coalesce", JstlFunctions.class.getMethod("coalesce", Object.class, Object.class));
+        functions.put("str", JstlFunctions.class.getMethod("toString", Object.class));
+        functions.put("toDouble", JstlFunctions.class.getMethod("toDouble", Object.class));
+        functions.put(
+                "filter", JstlFunctions.class.getMethod("filter", Object.class, String.class));
+        functions.put("toInt", JstlFunctions.class.getMethod("toInt", Object.class));
+        functions.put(
+                "replace",
+                JstlFunctions.class.getMethod("replace", Object.class, Object.class, Object.class));
+        functions.put("now", JstlFunctions.class.getMethod("now"));
+        functions.put(
+                "timestampAdd",
+                JstlFunctions.class.getMethod(
+                        "timestampAdd", Object.class, Object.class, Object.class));
+        functions.put(
+                "decimalFromUnscaled",
+                JstlFunctions.class.getMethod("toBigDecimal", Object.class, Object.class));
+        functions.put(
+                "decimalFromNumber", JstlFunctions.class.getMethod("toBigDecimal", Object.class));
         // Deprecated
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "dateadd",
-                        JstlFunctions.class.getMethod(
-                                "dateadd", Object.class, Object.class, Object.class));
+        functions.put(
+                "dateadd",
+                JstlFunctions.class.getMethod("dateadd", Object.class, Object.class, Object.class));
+        return Collections.unmodifiableMap(functions);
+    }
+
+    private static void registerFunctions(ELContext expressionContext) {
+        FUNCTIONS.forEach(
+                (name, method) ->
+                        expressionContext.getFunctionMapper().mapFunction("fn", name, method));
     }
 
     public T evaluate(TransformContext transformContext) {
-        JstlTransformContextAdapter adapter = new JstlTransformContextAdapter(transformContext);
-        FACTORY.createValueExpression(expressionContext, "${key}", Object.class)
-                .setValue(expressionContext, adapter.getKey());
-        FACTORY.createValueExpression(expressionContext, "${value}", Object.class)
-                .setValue(expressionContext, adapter.adaptValue());
-
-        // this is only for fn:filter
-        FACTORY.createValueExpression(expressionContext, "${record}", Object.class)
-                .setValue(expressionContext, adapter.adaptRecord());
-
-        // Register message headers as top level fields
-        FACTORY.createValueExpression(expressionContext, "${messageKey}", String.class)
-                .setValue(expressionContext, adapter.getHeader().get("messageKey"));
-        FACTORY.createValueExpression(expressionContext, "${topicName}", String.class)
-                .setValue(expressionContext, adapter.getHeader().get("topicName"));
-        FACTORY.createValueExpression(expressionContext, "${destinationTopic}", String.class)
-                .setValue(expressionContext, adapter.getHeader().get("destinationTopic"));
-        FACTORY.createValueExpression(expressionContext, "${eventTime}", Long.class)
-                .setValue(expressionContext, adapter.getHeader().get("eventTime"));
-        FACTORY.createValueExpression(expressionContext, "${properties}", Map.class)
-                .setValue(expressionContext, adapter.getHeader().get("properties"));
-        return this.valueExpression.getValue(expressionContext);
+        if (compiledExpression != null) {
+            try {
+                EvaluationContext evaluationContext = new EvaluationContext(transformContext);
+                Object result = compiledExpression.evaluate(evaluationContext);
+                return type == null
+                        ? (T) result
+                        : (T) evaluationContext.convertToType(result, type);
+            } catch (JstlExpressionCompiler.UnsupportedRecordException e) {
+                // let EL evaluate the records the compiled expression doesn't support
+            } catch (ELException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new ELException(e);
+            }
+        }
+        return (T) this.valueExpression.getValue(new EvaluationContext(transformContext));
+    }
+
+    /** A lightweight context, created for each evaluation, that carries the current record. */
+    static class EvaluationContext extends ELContext {
+
+        private final TransformContext transformContext;
+        private JstlTransformContextAdapter adapter;
+
+        EvaluationContext(TransformContext transformContext) {
+            this.transformContext = transformContext;
+        }
+
+        TransformContext getTransformContext() {
+            return transformContext;
+        }
+
+        /** The adapter is only created if the expression needs it. */
+        JstlTransformContextAdapter getAdapter() {
+            if (adapter == null) {
+                adapter = new JstlTransformContextAdapter(transformContext);
+            }
+            return adapter;
+        }
+
+        @Override
+        public ELResolver getELResolver() {
+            return RESOLVER;
+        }
+
+        @Override
+        public FunctionMapper getFunctionMapper() {
+            // functions are resolved when the expression is parsed
+            return null;
+        }
+
+        @Override
+        public VariableMapper getVariableMapper() {
+            // variables are resolved when the expression is parsed
+            return null;
+        }
+    }
+
+    /** A read-only variable that reads a part of the record being evaluated. */
+    private static class TransformContextVariable extends ValueExpression {
+        private final String name;
+        private final Class<?> type;
+        private final Function<JstlTransformContextAdapter, Object> accessor;
+
+        TransformContextVariable(
+                String name,
+                Class<?> type,
+                Function<JstlTransformContextAdapter, Object> accessor) {
+            this.name = name;
+            this.type = type;
+            this.accessor = accessor;
+        }
+
+        @Override
+        public Object getValue(ELContext context) {
+            if (!(context instanceof EvaluationContext evaluationContext)) {
+                return null;
+            }
+            return accessor.apply(evaluationContext.getAdapter());
+        }
+
+        @Override
+        public void setValue(ELContext context, Object value) {
+            throw new PropertyNotWritableException("Cannot assign a value to " + name);
+        }
+
+        @Override
+        public boolean isReadOnly(ELContext context) {
+            return true;
+        }
+
+        @Override
+        public Class<?> getType(ELContext context) {
+            return type;
+        }
+
+        @Override
+        public Class<?> getExpectedType() {
+            return type;
+        }
+
+        @Override
+        public String getExpressionString() {
+            return name;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof TransformContextVariable other && name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+
+        @Override
+        public boolean isLiteralText() {
+            return false;
+        }
     }
 }
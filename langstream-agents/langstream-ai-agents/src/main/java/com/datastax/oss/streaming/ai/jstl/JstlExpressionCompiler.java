@@ -0,0 +1,620 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.jstl;
+
+import com.datastax.oss.streaming.ai.TransformContext;
+import com.datastax.oss.streaming.ai.jstl.JstlTransformContextAdapter.GenericRecordTransformer;
+import com.datastax.oss.streaming.ai.jstl.JstlTransformContextAdapter.JsonNodeTransformer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.el.ELException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.commons.collections4.map.LazyMap;
+import org.apache.el.lang.ELSupport;
+
+/**
+ * Compiles the most common expressions to a tree of direct accessors that reads the record without
+ * building the adapted maps of the {@link JstlTransformContextAdapter}.
+ *
+ * <p>The supported expressions are made of field paths on the top level variables (<code>
+ * value.question</code>, <code>properties['lang']</code>), string, number, boolean and null
+ * literals, the comparison and the logical operators, and the <code>fn:</code> functions. The
+ * operators and the coercions are delegated to {@link ELSupport}, so the results are the same as
+ * the EL ones.
+ *
+ * <p>Anything else is not compiled and the caller must evaluate the EL expression. At runtime, the
+ * compiled expression throws an {@link UnsupportedRecordException} when the record doesn't have the
+ * shape of a map (for instance a field access on a string, that EL resolves as a bean property), in
+ * this case the caller must evaluate the EL expression. The other errors are reported like EL does,
+ * the expression is not evaluated again.
+ */
+final class JstlExpressionCompiler {
+
+    private static final Set<String> VARIABLES =
+            Set.of(
+                    "key",
+                    "value",
+                    "record",
+                    "messageKey",
+                    "topicName",
+                    "destinationTopic",
+                    "eventTime",
+                    "properties");
+
+    private static final Set<String> RESERVED_WORDS =
+            Set.of(
+                    "and",
+                    "or",
+                    "not",
+                    "eq",
+                    "ne",
+                    "lt",
+                    "gt",
+                    "le",
+                    "ge",
+                    "true",
+                    "false",
+                    "null",
+                    "empty",
+                    "div",
+                    "mod",
+                    "instanceof");
+
+    private JstlExpressionCompiler() {}
+
+    /** A compiled expression. */
+    interface Node {
+        Object evaluate(JstlEvaluator.EvaluationContext context) throws Exception;
+    }
+
+    /** Thrown when the compiled expression can't evaluate the current record. */
+    static final class UnsupportedRecordException extends RuntimeException {
+        static final UnsupportedRecordException INSTANCE = new UnsupportedRecordException();
+
+        private UnsupportedRecordException() {
+            super("Unsupported record for the compiled expression", null, false, false);
+        }
+    }
+
+    /**
+     * @return the compiled expression, or null if the expression is not supported.
+     */
+    static Node compile(String expression, Map<String, Method> functions) {
+        // the spaces around the expression are literal text for EL
+        if (!expression.startsWith("${") || !expression.endsWith("}")) {
+            return null;
+        }
+        List<Token> tokens = tokenize(expression.substring(2, expression.length() - 1));
+        if (tokens == null || tokens.isEmpty()) {
+            return null;
+        }
+        Parser parser = new Parser(tokens, functions);
+        Node node = parser.parseOr();
+        if (node == null || !parser.isAtEnd()) {
+            return null;
+        }
+        return node;
+    }
+
+    private enum TokenType {
+        IDENTIFIER,
+        STRING,
+        NUMBER,
+        SYMBOL
+    }
+
+    private record Token(TokenType type, String text, Object literal) {
+        boolean is(String symbol) {
+            return (type == TokenType.SYMBOL || type == TokenType.IDENTIFIER)
+                    && text.equals(symbol);
+        }
+    }
+
+    private static List<Token> tokenize(String body) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        int length = body.length();
+        while (i < length) {
+            char c = body.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'' || c == '"') {
+                StringBuilder literal = new StringBuilder();
+                i++;
+                boolean closed = false;
+                while (i < length) {
+                    char s = body.charAt(i);
+                    if (s == '\\' && i + 1 < length) {
+                        char escaped = body.charAt(i + 1);
+                        if (escaped != '\\' && escaped != '\'' && escaped != '"') {
+                            return null;
+                        }
+                        literal.append(escaped);
+                        i += 2;
+                    } else if (s == c) {
+                        closed = true;
+                        i++;
+                        break;
+                    } else {
+                        literal.append(s);
+                        i++;
+                    }
+                }
+                if (!closed) {
+                    return null;
+                }
+                tokens.add(new Token(TokenType.STRING, literal.toString(), literal.toString()));
+            } else if (Character.isDigit(c)) {
+                int start = i;
+                while (i < length && Character.isDigit(body.charAt(i))) {
+                    i++;
+                }
+                if (i < length
+                        && (body.charAt(i) == '.'
+                                || body.charAt(i) == 'e'
+                                || body.charAt(i) == 'E')) {
+                    // floating point literals are left to the EL parser
+                    return null;
+                }
+                String text = body.substring(start, i);
+                tokens.add(new Token(TokenType.NUMBER, text, parseInteger(text)));
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                while (i < length && Character.isJavaIdentifierPart(body.charAt(i))) {
+                    i++;
+                }
+                String text = body.substring(start, i);
+                tokens.add(new Token(TokenType.IDENTIFIER, text, null));
+            } else {
+                String two = i + 1 < length ? body.substring(i, i + 2) : "";
+                switch (two) {
+                    case "==", "!=", "<=", ">=", "&&", "||" -> {
+                        tokens.add(new Token(TokenType.SYMBOL, two, null));
+                        i += 2;
+                    }
+                    default -> {
+                        if ("<>!().,:[]".indexOf(c) < 0) {
+                            return null;
+                        }
+                        tokens.add(new Token(TokenType.SYMBOL, String.valueOf(c), null));
+                        i++;
+                    }
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static Number parseInteger(String text) {
+        // same as the EL integer literals
+        try {
+            return Long.valueOf(text);
+        } catch (NumberFormatException e) {
+            return new BigInteger(text);
+        }
+    }
+
+    /** A recursive descent parser that returns null as soon as something is not supported. */
+    private static class Parser {
+        private final List<Token> tokens;
+        private final Map<String, Method> functions;
+        private int position;
+
+        Parser(List<Token> tokens, Map<String, Method> functions) {
+            this.tokens = tokens;
+            this.functions = functions;
+        }
+
+        boolean isAtEnd() {
+            return position == tokens.size();
+        }
+
+        private Token peek() {
+            return isAtEnd() ? null : tokens.get(position);
+        }
+
+        private boolean accept(String... symbols) {
+            Token token = peek();
+            if (token == null) {
+                return false;
+            }
+            for (String symbol : symbols) {
+                if (token.is(symbol)) {
+                    position++;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        Node parseOr() {
+            Node left = parseAnd();
+            while (left != null && accept("||", "or")) {
+                Node right = parseAnd();
+                if (right == null) {
+                    return null;
+                }
+                left = or(left, right);
+            }
+            return left;
+        }
+
+        private Node parseAnd() {
+            Node left = parseEquality();
+            while (left != null && accept("&&", "and")) {
+                Node right = parseEquality();
+                if (right == null) {
+                    return null;
+                }
+                left = and(left, right);
+            }
+            return left;
+        }
+
+        private Node parseEquality() {
+            Node left = parseRelational();
+            while (left != null) {
+                boolean equal;
+                if (accept("==", "eq")) {
+                    equal = true;
+                } else if (accept("!=", "ne")) {
+                    equal = false;
+                } else {
+                    break;
+                }
+                Node right = parseRelational();
+                if (right == null) {
+                    return null;
+                }
+                left = equality(left, right, equal);
+            }
+            return left;
+        }
+
+        private Node parseRelational() {
+            Node left = parseUnary();
+            while (left != null) {
+                Token token = peek();
+                if (token == null) {
+                    break;
+                }
+                ComparisonOperator operator =
+                        switch (token.text()) {
+                            case "<", "lt" -> ComparisonOperator.LESS_THAN;
+                            case ">", "gt" -> ComparisonOperator.GREATER_THAN;
+                            case "<=", "le" -> ComparisonOperator.LESS_THAN_OR_EQUAL;
+                            case ">=", "ge" -> ComparisonOperator.GREATER_THAN_OR_EQUAL;
+                            default -> null;
+                        };
+                if (operator == null || token.type() == TokenType.STRING) {
+                    break;
+                }
+                position++;
+                Node right = parseUnary();
+                if (right == null) {
+                    return null;
+                }
+                left = comparison(left, right, operator);
+            }
+            return left;
+        }
+
+        private Node parseUnary() {
+            if (accept("!", "not")) {
+                Node operand = parseUnary();
+                return operand == null ? null : not(operand);
+            }
+            return parsePrimary();
+        }
+
+        private Node parsePrimary() {
+            Token token = peek();
+            if (token == null) {
+                return null;
+            }
+            position++;
+            switch (token.type()) {
+                case STRING:
+                case NUMBER:
+                    Object literal = token.literal();
+                    return context -> literal;
+                case SYMBOL:
+                    if (token.is("(")) {
+                        Node node = parseOr();
+                        return node != null && accept(")") ? node : null;
+                    }
+                    return null;
+                case IDENTIFIER:
+                default:
+                    break;
+            }
+            switch (token.text()) {
+                case "true":
+                    return context -> Boolean.TRUE;
+                case "false":
+                    return context -> Boolean.FALSE;
+                case "null":
+                    return context -> null;
+                case "fn":
+                    return parseFunction();
+                default:
+                    break;
+            }
+            if (!VARIABLES.contains(token.text())) {
+                return null;
+            }
+            List<String> segments = new ArrayList<>();
+            while (true) {
+                if (accept(".")) {
+                    Token segment = peek();
+                    if (segment == null
+                            || segment.type() != TokenType.IDENTIFIER
+                            || RESERVED_WORDS.contains(segment.text())) {
+                        return null;
+                    }
+                    position++;
+                    segments.add(segment.text());
+                } else if (accept("[")) {
+                    Token segment = peek();
+                    if (segment == null || segment.type() != TokenType.STRING) {
+                        return null;
+                    }
+                    position++;
+                    if (!accept("]")) {
+                        return null;
+                    }
+                    segments.add(segment.text());
+                } else {
+                    break;
+                }
+            }
+            return path(token.text(), segments.toArray(new String[0]));
+        }
+
+        private Node parseFunction() {
+            if (!accept(":")) {
+                return null;
+            }
+            Token name = peek();
+            if (name == null || name.type() != TokenType.IDENTIFIER) {
+                return null;
+            }
+            position++;
+            Method method = functions.get(name.text());
+            if (method == null || !accept("(")) {
+                return null;
+            }
+            List<Node> arguments = new ArrayList<>();
+            if (!accept(")")) {
+                do {
+                    Node argument = parseOr();
+                    if (argument == null) {
+                        return null;
+                    }
+                    arguments.add(argument);
+                } while (accept(","));
+                if (!accept(")")) {
+                    return null;
+                }
+            }
+            if (arguments.size() != method.getParameterCount()) {
+                return null;
+            }
+            return function(name.text(), method, arguments.toArray(new Node[0]));
+        }
+    }
+
+    private static Node or(Node left, Node right) {
+        return context -> {
+            if (ELSupport.coerceToBoolean(context, left.evaluate(context), true)) {
+                return Boolean.TRUE;
+            }
+            return ELSupport.coerceToBoolean(context, right.evaluate(context), true);
+        };
+    }
+
+    private static Node and(Node left, Node right) {
+        return context -> {
+            if (!ELSupport.coerceToBoolean(context, left.evaluate(context), true)) {
+                return Boolean.FALSE;
+            }
+            return ELSupport.coerceToBoolean(context, right.evaluate(context), true);
+        };
+    }
+
+    private static Node not(Node operand) {
+        return context -> !ELSupport.coerceToBoolean(context, operand.evaluate(context), true);
+    }
+
+    private static Node equality(Node left, Node right, boolean equal) {
+        return context -> {
+            Object leftValue = left.evaluate(context);
+            Object rightValue = right.evaluate(context);
+            return ELSupport.equals(context, leftValue, rightValue) == equal;
+        };
+    }
+
+    private enum ComparisonOperator {
+        LESS_THAN,
+        GREATER_THAN,
+        LESS_THAN_OR_EQUAL,
+        GREATER_THAN_OR_EQUAL;
+
+        boolean test(int comparison) {
+            return switch (this) {
+                case LESS_THAN -> comparison < 0;
+                case GREATER_THAN -> comparison > 0;
+                case LESS_THAN_OR_EQUAL -> comparison <= 0;
+                case GREATER_THAN_OR_EQUAL -> comparison >= 0;
+            };
+        }
+
+        boolean orEqual() {
+            return this == LESS_THAN_OR_EQUAL || this == GREATER_THAN_OR_EQUAL;
+        }
+    }
+
+    private static Node comparison(Node left, Node right, ComparisonOperator operator) {
+        return context -> {
+            Object leftValue = left.evaluate(context);
+            Object rightValue = right.evaluate(context);
+            // same as EL: A <= A and A >= A hold, null included, the other comparisons with null
+            // are false
+            if (leftValue == rightValue && operator.orEqual()) {
+                return Boolean.TRUE;
+            }
+            if (leftValue == null || rightValue == null) {
+                return Boolean.FALSE;
+            }
+            return operator.test(ELSupport.compare(context, leftValue, rightValue));
+        };
+    }
+
+    private static Node function(String name, Method method, Node[] arguments) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        return context -> {
+            Object[] values = new Object[arguments.length];
+            for (int i = 0; i < arguments.length; i++) {
+                values[i] =
+                        ELSupport.coerceToType(
+                                context, arguments[i].evaluate(context), parameterTypes[i]);
+            }
+            try {
+                return method.invoke(null, values);
+            } catch (InvocationTargetException e) {
+                // same as EL
+                throw new ELException("Problems calling function 'fn:" + name + "'", e.getCause());
+            }
+        };
+    }
+
+    private static Node path(String variable, String[] segments) {
+        return switch (variable) {
+            case "key" -> context -> {
+                TransformContext transformContext = context.getTransformContext();
+                Object key = transformContext.getKeyObject();
+                if (key == null) {
+                    return resolve(transformContext.getKey(), null, segments);
+                }
+                if (segments.length == 0) {
+                    return context.getAdapter().getKey();
+                }
+                return resolve(key, (Schema) transformContext.getKeyNativeSchema(), segments);
+            };
+            case "value" -> context -> {
+                TransformContext transformContext = context.getTransformContext();
+                if (segments.length == 0) {
+                    return context.getAdapter().adaptValue();
+                }
+                return resolve(
+                        transformContext.getValueObject(),
+                        (Schema) transformContext.getValueNativeSchema(),
+                        segments);
+            };
+            case "record" -> context ->
+                    resolvePlain(context.getTransformContext().getRecordObject(), segments, 0);
+            case "messageKey" -> context ->
+                    resolvePlain(context.getTransformContext().getKey(), segments, 0);
+            case "topicName" -> context ->
+                    resolvePlain(context.getTransformContext().getInputTopic(), segments, 0);
+            case "destinationTopic" -> context ->
+                    resolvePlain(context.getTransformContext().getOutputTopic(), segments, 0);
+            case "eventTime" -> context ->
+                    resolvePlain(context.getTransformContext().getEventTime(), segments, 0);
+            case "properties" -> context ->
+                    resolvePlain(context.getTransformContext().getProperties(), segments, 0);
+            default -> throw new IllegalArgumentException("Unknown variable " + variable);
+        };
+    }
+
+    /** Resolves the path on the key or the value, like the lazy maps of the adapter do. */
+    private static Object resolve(Object root, Schema jsonSchema, String[] segments)
+            throws Exception {
+        if (root instanceof GenericRecord genericRecord) {
+            return resolveRecord(genericRecord, segments);
+        }
+        if (root instanceof JsonNode jsonNode) {
+            return resolveJson(jsonNode, jsonSchema, segments);
+        }
+        return resolvePlain(root, segments, 0);
+    }
+
+    private static Object resolveRecord(GenericRecord root, String[] segments) {
+        GenericRecord current = root;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (!current.hasField(segment)) {
+                return null;
+            }
+            Object value = current.get(segment);
+            if (value instanceof GenericRecord nested) {
+                current = nested;
+            } else {
+                return resolvePlain(
+                        JstlTransformContextAdapter.adaptValue(current.getSchema(), segment, value),
+                        segments,
+                        i + 1);
+            }
+        }
+        return LazyMap.lazyMap(new HashMap<>(), new GenericRecordTransformer(current));
+    }
+
+    private static Object resolveJson(JsonNode root, Schema schema, String[] segments)
+            throws Exception {
+        JsonNode current = root;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (!current.has(segment)) {
+                return null;
+            }
+            JsonNode node = current.get(segment);
+            if (node instanceof ObjectNode) {
+                schema = schema != null ? schema.getField(segment).schema() : null;
+                current = node;
+            } else {
+                Object value = JsonNodeTransformer.OBJECT_MAPPER.treeToValue(node, Object.class);
+                return resolvePlain(
+                        JstlTransformContextAdapter.adaptValue(schema, segment, value),
+                        segments,
+                        i + 1);
+            }
+        }
+        return LazyMap.lazyMap(new HashMap<>(), new JsonNodeTransformer(current, schema));
+    }
+
+    /** Resolves the path like the EL map resolver does. */
+    private static Object resolvePlain(Object current, String[] segments, int from) {
+        for (int i = from; i < segments.length; i++) {
+            if (current == null) {
+                return null;
+            }
+            if (!(current instanceof Map<?, ?> map)) {
+                throw UnsupportedRecordException.INSTANCE;
+            }
+            current = map.get(segments[i]);
+        }
+        return current;
+    }
+}
@@ -30,6 +30,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import lombok.Setter;
@@ -43,6 +44,9 @@ public class JstlFunctions {
 
     @Setter private static Clock clock = Clock.systemUTC();
 
+    /** The predicates of fn:filter, they are parsed once per expression. */
+    private static final Map<String, JstlPredicate> FILTER_PREDICATES = new ConcurrentHashMap<>();
+
     public static String uppercase(Object input) {
         return input == null ? null : toString(input).toUpperCase();
     }
@@ -151,7 +155,7 @@ public class JstlFunctions {
                     "fn:filter cannot filter object of type " + input.getClass().getName());
         }
         List<Object> result = new ArrayList<>();
-        JstlPredicate predicate = new JstlPredicate(expression);
+        JstlPredicate predicate = FILTER_PREDICATES.computeIfAbsent(expression, JstlPredicate::new);
         for (Object o : source) {
             if (log.isDebugEnabled()) {
                 log.info("Filtering object {}", o);
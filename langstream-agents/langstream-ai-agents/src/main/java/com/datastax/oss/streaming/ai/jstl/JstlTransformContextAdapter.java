@@ -207,7 +207,7 @@ public class JstlTransformContextAdapter {
         }
     }
 
-    private static Object adaptValue(Schema schema, String key, Object value) {
+    static Object adaptValue(Schema schema, String key, Object value) {
         if (schema == null) {
             return value;
         }
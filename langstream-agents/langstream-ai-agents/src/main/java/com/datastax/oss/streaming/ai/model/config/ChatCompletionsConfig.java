@@ -71,4 +71,23 @@ public class ChatCompletionsConfig extends StepConfig {
 
     @JsonProperty(value = "frequency-penalty")
     private Double frequencyPenalty;
+
+    /** One of "none", "exact" or "semantic". */
+    @JsonProperty(value = "cache-mode")
+    private String cacheMode = "none";
+
+    @JsonProperty(value = "cache-ttl-seconds")
+    private long cacheTtlSeconds = 3600;
+
+    @JsonProperty(value = "cache-max-size")
+    private int cacheMaxSize = 1000;
+
+    @JsonProperty(value = "cache-similarity-threshold")
+    private double cacheSimilarityThreshold = 0.95;
+
+    /**
+     * The embeddings model of the semantic cache, it depends on the AI service so it is required.
+     */
+    @JsonProperty(value = "cache-embeddings-model")
+    private String cacheEmbeddingsModel;
 }
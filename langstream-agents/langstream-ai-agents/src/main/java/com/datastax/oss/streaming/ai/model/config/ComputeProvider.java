@@ -21,5 +21,7 @@ public enum ComputeProvider {
     @JsonProperty("local")
     LOCAL,
     @JsonProperty("api")
-    API
+    API,
+    @JsonProperty("onnx")
+    ONNX
 }
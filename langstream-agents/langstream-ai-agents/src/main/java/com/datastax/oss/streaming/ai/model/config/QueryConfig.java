@@ -32,4 +32,14 @@ public class QueryConfig extends StepConfig {
 
     @JsonProperty(value = "only-first", required = false)
     private boolean onlyFirst;
+
+    @JsonProperty(value = "typed-results", required = false)
+    private boolean typedResults;
+
+    @JsonProperty("batch-size")
+    private int batchSize = 1;
+
+    // like for the embeddings, batching is disabled by default in order to avoid latency spikes
+    @JsonProperty("flush-interval")
+    private int flushInterval = 0;
 }
@@ -112,6 +112,12 @@ public class AvroUtil {
             Schema avroSchema,
             Collection<Schema.Field> newFields,
             Map<Schema, Schema> schemaCache) {
+        return schemaCache.computeIfAbsent(
+                avroSchema, schema -> addOrReplaceAvroSchemaFields(schema, newFields));
+    }
+
+    public static Schema addOrReplaceAvroSchemaFields(
+            Schema avroSchema, Collection<Schema.Field> newFields) {
         Map<String, Schema.Field> newFieldsByName = new LinkedHashMap<>();
         newFields.forEach(k -> newFieldsByName.put(k.name(), k));
 
@@ -129,14 +135,11 @@ public class AvroUtil {
             }
         }
         allFields.addAll(newFieldsByName.values());
-        return schemaCache.computeIfAbsent(
-                avroSchema,
-                schema ->
-                        Schema.createRecord(
-                                avroSchema.getName(),
-                                avroSchema.getDoc(),
-                                avroSchema.getNamespace(),
-                                avroSchema.isError(),
-                                allFields));
+        return Schema.createRecord(
+                avroSchema.getName(),
+                avroSchema.getDoc(),
+                avroSchema.getNamespace(),
+                avroSchema.isError(),
+                allFields);
     }
 }
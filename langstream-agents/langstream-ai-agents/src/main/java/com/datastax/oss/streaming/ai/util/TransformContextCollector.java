@@ -0,0 +1,186 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.util;
+
+import com.datastax.oss.streaming.ai.TransformContext;
+import com.datastax.oss.streaming.ai.model.TransformSchemaType;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.samskivert.mustache.DefaultCollector;
+import com.samskivert.mustache.Mustache;
+import com.samskivert.mustache.Template;
+import java.util.Map;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+
+/**
+ * A Mustache collector that renders a template directly from a {@link TransformContext}.
+ *
+ * <p>The template sees the same model as {@link TransformContext#toJsonRecord()} but the AVRO and
+ * JSON key and value are not converted to a Map upfront: only the fields used by the template are
+ * converted, when they are read.
+ */
+public class TransformContextCollector extends DefaultCollector {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {};
+
+    // the fetchers are cached by class and name, so they must not hold the instance they read
+    private static final Mustache.VariableFetcher KEY_FETCHER =
+            (ctx, name) -> {
+                TransformContext context = (TransformContext) ctx;
+                if (context.getKeySchemaType() == null) {
+                    return context.getKey();
+                }
+                return toTemplateValue(context.getKeySchemaType(), context.getKeyObject());
+            };
+    private static final Mustache.VariableFetcher VALUE_FETCHER =
+            (ctx, name) -> {
+                TransformContext context = (TransformContext) ctx;
+                return toTemplateValue(context.getValueSchemaType(), context.getValueObject());
+            };
+    private static final Mustache.VariableFetcher DESTINATION_TOPIC_FETCHER =
+            (ctx, name) -> ((TransformContext) ctx).getOutputTopic();
+    private static final Mustache.VariableFetcher TOPIC_NAME_FETCHER =
+            (ctx, name) -> ((TransformContext) ctx).getInputTopic();
+    private static final Mustache.VariableFetcher PROPERTIES_FETCHER =
+            (ctx, name) -> ((TransformContext) ctx).getProperties();
+    private static final Mustache.VariableFetcher EVENT_TIME_FETCHER =
+            (ctx, name) -> ((TransformContext) ctx).getEventTime();
+    private static final Mustache.VariableFetcher AVRO_FIELD_FETCHER =
+            (ctx, name) -> ((AvroRecordView) ctx).get(name);
+    private static final Mustache.VariableFetcher JSON_FIELD_FETCHER =
+            (ctx, name) -> ((JsonObjectView) ctx).get(name);
+
+    private static final Mustache.Compiler COMPILER =
+            Mustache.compiler().withCollector(new TransformContextCollector());
+
+    /** Compile a template that is executed with a {@link TransformContext} as context. */
+    public static Template compile(String template) {
+        return COMPILER.compile(template);
+    }
+
+    @Override
+    public Mustache.VariableFetcher createFetcher(Object ctx, String name) {
+        if (ctx instanceof TransformContext) {
+            return switch (name) {
+                case "key" -> KEY_FETCHER;
+                case "value" -> VALUE_FETCHER;
+                case "destinationTopic" -> DESTINATION_TOPIC_FETCHER;
+                case "topicName" -> TOPIC_NAME_FETCHER;
+                case "properties" -> PROPERTIES_FETCHER;
+                case "eventTime" -> EVENT_TIME_FETCHER;
+                default -> null;
+            };
+        }
+        if (ctx instanceof AvroRecordView) {
+            return AVRO_FIELD_FETCHER;
+        }
+        if (ctx instanceof JsonObjectView) {
+            return JSON_FIELD_FETCHER;
+        }
+        return super.createFetcher(ctx, name);
+    }
+
+    private static Object toTemplateValue(TransformSchemaType schemaType, Object value) {
+        if (schemaType == null || schemaType.isPrimitive() || value == null) {
+            return value;
+        }
+        switch (schemaType) {
+            case AVRO:
+                return new AvroRecordView((GenericRecord) value);
+            case JSON:
+                if (value instanceof ObjectNode objectNode) {
+                    return new JsonObjectView(objectNode);
+                }
+                if (value instanceof Map) {
+                    return value;
+                }
+                return OBJECT_MAPPER.convertValue(value, MAP_TYPE);
+            default:
+                throw new UnsupportedOperationException("Unsupported schemaType " + schemaType);
+        }
+    }
+
+    /** A read-only view of an AVRO record, the fields are converted when they are read. */
+    private static final class AvroRecordView {
+        private final GenericRecord record;
+
+        AvroRecordView(GenericRecord record) {
+            this.record = record;
+        }
+
+        Object get(String name) throws Exception {
+            Schema.Field field = record.getSchema().getField(name);
+            if (field == null) {
+                return Template.NO_FETCHER_FOUND;
+            }
+            Object value = record.get(field.pos());
+            if (value instanceof GenericRecord nested && isRecord(field.schema())) {
+                return new AvroRecordView(nested);
+            }
+            return OBJECT_MAPPER.treeToValue(
+                    JsonConverter.toJson(field.schema(), value), Object.class);
+        }
+
+        private static boolean isRecord(Schema schema) {
+            if (schema.getLogicalType() != null) {
+                return false;
+            }
+            if (schema.getType() == Schema.Type.UNION) {
+                // JsonConverter uses the first non-null type of the union
+                return schema.getTypes().stream()
+                        .filter(type -> type.getType() != Schema.Type.NULL)
+                        .findFirst()
+                        .map(AvroRecordView::isRecord)
+                        .orElse(false);
+            }
+            return schema.getType() == Schema.Type.RECORD;
+        }
+
+        @Override
+        public String toString() {
+            return OBJECT_MAPPER.convertValue(JsonConverter.toJson(record), MAP_TYPE).toString();
+        }
+    }
+
+    /** A read-only view of a JSON object, the fields are converted when they are read. */
+    private static final class JsonObjectView {
+        private final ObjectNode node;
+
+        JsonObjectView(ObjectNode node) {
+            this.node = node;
+        }
+
+        Object get(String name) throws Exception {
+            JsonNode child = node.get(name);
+            if (child == null) {
+                return Template.NO_FETCHER_FOUND;
+            }
+            if (child instanceof ObjectNode objectNode) {
+                return new JsonObjectView(objectNode);
+            }
+            return OBJECT_MAPPER.treeToValue(child, Object.class);
+        }
+
+        @Override
+        public String toString() {
+            return OBJECT_MAPPER.convertValue(node, MAP_TYPE).toString();
+        }
+    }
+}
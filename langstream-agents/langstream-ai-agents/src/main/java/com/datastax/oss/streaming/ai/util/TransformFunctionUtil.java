@@ -37,6 +37,7 @@ import com.datastax.oss.streaming.ai.QueryStep;
 import com.datastax.oss.streaming.ai.TransformContext;
 import com.datastax.oss.streaming.ai.TransformStep;
 import com.datastax.oss.streaming.ai.UnwrapKeyValueStep;
+import com.datastax.oss.streaming.ai.completions.ChatCompletionsCache;
 import com.datastax.oss.streaming.ai.completions.CompletionsService;
 import com.datastax.oss.streaming.ai.datasource.CassandraDataSource;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
@@ -306,7 +307,42 @@ public class TransformFunctionUtil {
             throws Exception {
         CompletionsService completionsService =
                 serviceProvider.getCompletionsService(convertToMap(config));
-        return new ChatCompletionsStep(completionsService, streamingAnswersConsumerFactory, config);
+        return new ChatCompletionsStep(
+                completionsService,
+                streamingAnswersConsumerFactory,
+                config,
+                newChatCompletionsCache(config, serviceProvider));
+    }
+
+    private static ChatCompletionsCache newChatCompletionsCache(
+            ChatCompletionsConfig config, ServiceProvider serviceProvider) throws Exception {
+        String cacheMode = config.getCacheMode() == null ? "none" : config.getCacheMode();
+        EmbeddingsService embeddingsService;
+        switch (cacheMode) {
+            case "none":
+                return null;
+            case "exact":
+                embeddingsService = null;
+                break;
+            case "semantic":
+                if (config.getCacheEmbeddingsModel() == null
+                        || config.getCacheEmbeddingsModel().isBlank()) {
+                    throw new IllegalArgumentException(
+                            "cache-embeddings-model is required with cache-mode semantic, it must"
+                                    + " be an embeddings model of the configured AI service");
+                }
+                embeddingsService =
+                        serviceProvider.getEmbeddingsService(
+                                Map.of("model", config.getCacheEmbeddingsModel()));
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid cache-mode: " + cacheMode);
+        }
+        return new ChatCompletionsCache(
+                TimeUnit.SECONDS.toMillis(config.getCacheTtlSeconds()),
+                config.getCacheMaxSize(),
+                embeddingsService,
+                config.getCacheSimilarityThreshold());
     }
 
     public static TransformStep newQuery(QueryConfig config, QueryStepDataSource dataSource) {
@@ -326,6 +362,9 @@ public class TransformFunctionUtil {
                 .outputFieldName(config.getOutputField())
                 .query(config.getQuery())
                 .onlyFirst(config.isOnlyFirst())
+                .typedResults(config.isTypedResults())
+                .batchSize(config.getBatchSize())
+                .flushInterval(config.getFlushInterval())
                 .fields(config.getFields())
                 .dataSource(dataSource)
                 .build();
@@ -56,6 +56,45 @@ class GenAIToolKitAgentTest {
                         Map.class));
     }
 
+    @Test
+    void testStructuredValueIsPassedToTheNextAgent() throws Exception {
+        GenAIToolKitAgent first = computeAgent("value.upper", "fn:uppercase(value.text)");
+        GenAIToolKitAgent second = computeAgent("value.both", "fn:concat(value.text, value.upper)");
+        SimpleRecord record =
+                SimpleRecord.builder()
+                        .value(MAPPER.writeValueAsString(Map.of("text", "abc")))
+                        .build();
+
+        Record intermediate = first.processRecord(record).get().get(0);
+        Record result = second.processRecord(intermediate).get().get(0);
+
+        assertTrue(result.value() instanceof String);
+        assertEquals(
+                Map.of("text", "abc", "upper", "ABC", "both", "abcABC"),
+                MAPPER.readValue(result.value().toString(), Map.class));
+        // the intermediate record can still be serialized
+        assertEquals(
+                Map.of("text", "abc", "upper", "ABC"),
+                MAPPER.readValue(intermediate.value().toString(), Map.class));
+        first.close();
+        second.close();
+    }
+
+    private static GenAIToolKitAgent computeAgent(String name, String expression) throws Exception {
+        GenAIToolKitAgent agent = new GenAIToolKitAgent();
+        agent.init(
+                Map.of(
+                        "steps",
+                        List.of(
+                                Map.of(
+                                        "type",
+                                        "compute",
+                                        "fields",
+                                        List.of(Map.of("name", name, "expression", expression))))));
+        agent.start();
+        return agent;
+    }
+
     Object compute(String expression, Object value) throws Exception {
         GenAIToolKitAgent agent = new GenAIToolKitAgent();
         agent.init(
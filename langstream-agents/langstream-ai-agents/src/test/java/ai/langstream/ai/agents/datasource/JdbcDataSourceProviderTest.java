@@ -15,13 +15,16 @@
  */
 package ai.langstream.ai.agents.datasource;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import ai.langstream.ai.agents.datasource.impl.JdbcDataSourceProvider;
+import com.datastax.oss.streaming.ai.datasource.QueryResult;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
@@ -64,4 +67,99 @@ public class JdbcDataSourceProviderTest {
 
         implementation.close();
     }
+
+    @Test
+    public void testTypedQuery() throws Exception {
+        JdbcDataSourceProvider jdbcDataSourceProvider = new JdbcDataSourceProvider();
+        QueryStepDataSource implementation =
+                jdbcDataSourceProvider.createDataSourceImplementation(
+                        Map.of(
+                                "url",
+                                "jdbc:h2:mem:typed",
+                                "user",
+                                "sa",
+                                "password",
+                                "sa",
+                                "driverClass",
+                                "org.h2.Driver"));
+
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:typed", "sa", "sa");
+                Statement statement = conn.createStatement()) {
+            statement.execute(
+                    "CREATE TABLE documents (id INT PRIMARY KEY, text VARCHAR(255), "
+                            + "score DOUBLE, published BOOLEAN, embeddings REAL ARRAY)");
+            statement.execute(
+                    "INSERT INTO documents VALUES (1, 'doc1', 0.5, true, ARRAY[0.1, 0.2])");
+        }
+
+        QueryResult result =
+                implementation
+                        .fetchResultAsync("SELECT * from DOCUMENTS where id = ?", List.of(1))
+                        .get();
+        assertEquals(
+                List.of(
+                        new QueryResult.Column("ID", QueryResult.ColumnType.LONG),
+                        new QueryResult.Column("TEXT", QueryResult.ColumnType.STRING),
+                        new QueryResult.Column("SCORE", QueryResult.ColumnType.DOUBLE),
+                        new QueryResult.Column("PUBLISHED", QueryResult.ColumnType.BOOLEAN),
+                        new QueryResult.Column("EMBEDDINGS", QueryResult.ColumnType.FLOAT_VECTOR)),
+                result.getColumns());
+        Object[] row = result.getRows().get(0);
+        assertEquals(1L, row[0]);
+        assertEquals("doc1", row[1]);
+        assertEquals(0.5, row[2]);
+        assertEquals(true, row[3]);
+        assertArrayEquals(new float[] {0.1f, 0.2f}, (float[]) row[4]);
+
+        implementation.close();
+    }
+
+    @Test
+    public void testBatchQuery() throws Exception {
+        JdbcDataSourceProvider jdbcDataSourceProvider = new JdbcDataSourceProvider();
+        QueryStepDataSource implementation =
+                jdbcDataSourceProvider.createDataSourceImplementation(
+                        Map.of(
+                                "url",
+                                "jdbc:h2:mem:batch;DB_CLOSE_DELAY=-1",
+                                "user",
+                                "sa",
+                                "password",
+                                "sa",
+                                "driverClass",
+                                "org.h2.Driver",
+                                "pool-size",
+                                3));
+
+        try (Connection conn =
+                        DriverManager.getConnection(
+                                "jdbc:h2:mem:batch;DB_CLOSE_DELAY=-1", "sa", "sa");
+                Statement statement = conn.createStatement()) {
+            statement.execute("CREATE TABLE items (id INT PRIMARY KEY, name VARCHAR(255))");
+            for (int i = 0; i < 10; i++) {
+                statement.execute("INSERT INTO items VALUES (" + i + ", 'item" + i + "')");
+            }
+        }
+
+        // the batch is split across the 3 connections, the results keep the order of the queries
+        List<List<Object>> params = new ArrayList<>();
+        for (int i = 9; i >= 0; i--) {
+            params.add(List.of(i));
+        }
+        List<List<Map<String, String>>> results =
+                implementation
+                        .fetchDataBatchAsync("SELECT name FROM items WHERE id = ?", params)
+                        .get();
+        assertEquals(10, results.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(List.of(Map.of("NAME", "item" + (9 - i))), results.get(i));
+        }
+        assertEquals(
+                List.of(),
+                implementation
+                        .fetchResultBatchAsync("SELECT name FROM items WHERE id = ?", List.of())
+                        .get());
+
+        implementation.close();
+    }
 }
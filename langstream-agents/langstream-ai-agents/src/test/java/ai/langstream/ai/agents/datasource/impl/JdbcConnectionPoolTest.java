@@ -0,0 +1,120 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.ai.agents.datasource.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class JdbcConnectionPoolTest {
+
+    private static JdbcConnectionPool createPool(String name, int poolSize) {
+        Properties properties = new Properties();
+        properties.put("user", "sa");
+        properties.put("password", "sa");
+        return new JdbcConnectionPool(
+                "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", properties, poolSize, 2);
+    }
+
+    @Test
+    void testPreparedStatementsAreReused() throws Exception {
+        try (JdbcConnectionPool pool = createPool("reuse", 1)) {
+            PreparedStatement first = pool.execute(c -> c.prepareStatement("SELECT 1"));
+            PreparedStatement second = pool.execute(c -> c.prepareStatement("SELECT 1"));
+            assertSame(first, second);
+            assertEquals(1, pool.getIdleConnections());
+
+            // the least recently used statement is closed when the cache is full
+            pool.execute(c -> c.prepareStatement("SELECT 2"));
+            pool.execute(c -> c.prepareStatement("SELECT 3"));
+            assertTrue(first.isClosed());
+        }
+    }
+
+    @Test
+    void testReconnectWhenTheConnectionIsBroken() throws Exception {
+        try (JdbcConnectionPool pool = createPool("reconnect", 1)) {
+            pool.execute(c -> c.prepareStatement("SELECT 1").getConnection()).close();
+
+            int result =
+                    pool.execute(
+                            c -> {
+                                try (ResultSet resultSet =
+                                        c.prepareStatement("SELECT 1").executeQuery()) {
+                                    resultSet.next();
+                                    return resultSet.getInt(1);
+                                }
+                            });
+            assertEquals(1, result);
+            assertEquals(1, pool.getIdleConnections());
+        }
+    }
+
+    @Test
+    void testPoolSizeIsEnforced() throws Exception {
+        int poolSize = 2;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (JdbcConnectionPool pool = createPool("concurrency", poolSize)) {
+            AtomicInteger inUse = new AtomicInteger();
+            AtomicInteger maxInUse = new AtomicInteger();
+            CountDownLatch started = new CountDownLatch(poolSize);
+            List<CompletableFuture<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(
+                        CompletableFuture.runAsync(
+                                () -> {
+                                    try {
+                                        pool.execute(
+                                                c -> {
+                                                    maxInUse.accumulateAndGet(
+                                                            inUse.incrementAndGet(), Math::max);
+                                                    started.countDown();
+                                                    try {
+                                                        started.await(10, TimeUnit.SECONDS);
+                                                    } catch (InterruptedException e) {
+                                                        Thread.currentThread().interrupt();
+                                                    }
+                                                    c.prepareStatement("SELECT 1").executeQuery();
+                                                    inUse.decrementAndGet();
+                                                    return null;
+                                                });
+                                    } catch (Exception e) {
+                                        throw new RuntimeException(e);
+                                    }
+                                },
+                                executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+            assertEquals(poolSize, maxInUse.get());
+            assertEquals(poolSize, pool.getIdleConnections());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -17,6 +17,8 @@ package com.datastax.oss.streaming.ai;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
@@ -28,8 +30,14 @@ import com.azure.ai.openai.OpenAIClient;
 import com.azure.ai.openai.models.ChatCompletions;
 import com.azure.ai.openai.models.ChatCompletionsOptions;
 import com.azure.core.util.IterableStream;
+import com.datastax.oss.streaming.ai.completions.ChatChoice;
+import com.datastax.oss.streaming.ai.completions.ChatCompletionsCache;
 import com.datastax.oss.streaming.ai.completions.ChatMessage;
+import com.datastax.oss.streaming.ai.completions.CompletionsService;
+import com.datastax.oss.streaming.ai.model.TransformSchemaType;
 import com.datastax.oss.streaming.ai.model.config.ChatCompletionsConfig;
+import com.datastax.oss.streaming.ai.services.ServiceProvider;
+import com.datastax.oss.streaming.ai.util.TransformFunctionUtil;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.nio.charset.StandardCharsets;
@@ -37,9 +45,13 @@ import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.util.Utf8;
 import org.apache.pulsar.client.api.Schema;
@@ -544,4 +556,123 @@ public class ChatCompletionsStepTest {
             assertEquals(messageValue.getKey(), expected);
         }
     }
+
+    @Test
+    void testStreamingChunksArePipelined() throws Exception {
+        CompletionsService streamingService =
+                (messages, consumer, options) -> {
+                    consumer.consumeChunk("answer-1", 1, chatChoice("a"), false);
+                    consumer.consumeChunk("answer-1", 2, chatChoice("b"), false);
+                    consumer.consumeChunk("answer-1", 3, chatChoice("c"), true);
+                    com.datastax.oss.streaming.ai.completions.ChatCompletions completions =
+                            new com.datastax.oss.streaming.ai.completions.ChatCompletions();
+                    completions.setChoices(List.of(chatChoice("abc")));
+                    return CompletableFuture.completedFuture(completions);
+                };
+        List<TransformContext> chunks = new ArrayList<>();
+        List<CompletableFuture<?>> writes = new ArrayList<>();
+        ChatCompletionsConfig config = new ChatCompletionsConfig();
+        config.setModel("test-model");
+        config.setMessages(List.of(new ChatMessage("user").setContent("content")));
+        config.setFieldName("value.answer");
+        config.setStreamToTopic("stream-topic");
+        config.setStreamResponseCompletionField("value");
+        ChatCompletionsStep step =
+                new ChatCompletionsStep(
+                        streamingService,
+                        topicName ->
+                                (index, message, last, outputMessage) -> {
+                                    chunks.add(outputMessage);
+                                    CompletableFuture<?> write = new CompletableFuture<>();
+                                    writes.add(write);
+                                    return write;
+                                },
+                        config);
+        step.start();
+
+        TransformContext context = new TransformContext();
+        context.setValueSchemaType(TransformSchemaType.STRING);
+        context.setValueObject(new HashMap<>(Map.of("question", "q")));
+        CompletableFuture<?> result = step.processAsync(context);
+
+        // all the chunks are sent without waiting for the previous writes
+        assertEquals(3, chunks.size());
+        assertFalse(result.isDone());
+        writes.get(2).complete(null);
+        writes.get(1).complete(null);
+        assertFalse(result.isDone());
+        writes.get(0).complete(null);
+        result.get();
+
+        for (int i = 0; i < chunks.size(); i++) {
+            TransformContext chunk = chunks.get(i);
+            assertEquals("answer-1", chunk.getProperties().get("stream-id"));
+            assertEquals((i + 1) + "", chunk.getProperties().get("stream-index"));
+            assertEquals(
+                    i == 2 ? "true" : "false", chunk.getProperties().get("stream-last-message"));
+        }
+        assertEquals("a", chunks.get(0).getValueObject());
+        assertEquals("c", chunks.get(2).getValueObject());
+        assertEquals(Map.of("question", "q", "answer", "abc"), context.getValueObject());
+    }
+
+    @Test
+    void testCachedAnswerIsReplayedAsChunks() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CompletionsService streamingService =
+                (messages, consumer, options) -> {
+                    calls.incrementAndGet();
+                    consumer.consumeChunk("answer-1", 1, chatChoice("a"), false);
+                    consumer.consumeChunk("answer-1", 2, chatChoice("bc"), true);
+                    com.datastax.oss.streaming.ai.completions.ChatCompletions completions =
+                            new com.datastax.oss.streaming.ai.completions.ChatCompletions();
+                    completions.setChoices(List.of(chatChoice("abc")));
+                    return CompletableFuture.completedFuture(completions);
+                };
+        List<String> chunks = new ArrayList<>();
+        ChatCompletionsConfig config = new ChatCompletionsConfig();
+        config.setModel("test-model");
+        config.setMessages(List.of(new ChatMessage("user").setContent("{{ value }}")));
+        config.setFieldName("value");
+        config.setStreamToTopic("stream-topic");
+        ChatCompletionsStep step =
+                new ChatCompletionsStep(
+                        streamingService,
+                        topicName ->
+                                (index, message, last, outputMessage) -> {
+                                    chunks.add(message);
+                                    return CompletableFuture.completedFuture(null);
+                                },
+                        config,
+                        new ChatCompletionsCache(60_000, 10, null, 0.95));
+        step.start();
+
+        for (int i = 0; i < 2; i++) {
+            TransformContext context = new TransformContext();
+            context.setValueSchemaType(TransformSchemaType.STRING);
+            context.setValueObject("question");
+            step.processAsync(context).get();
+            assertEquals("abc", context.getValueObject());
+        }
+        assertEquals(1, calls.get());
+        assertEquals(List.of("a", "bc", "a", "bc"), chunks);
+    }
+
+    @Test
+    void testSemanticCacheRequiresEmbeddingsModel() {
+        ChatCompletionsConfig config = new ChatCompletionsConfig();
+        config.setModel("test-model");
+        config.setMessages(List.of(new ChatMessage("user").setContent("{{ value }}")));
+        config.setCacheMode("semantic");
+        ServiceProvider serviceProvider = mock(ServiceProvider.class);
+        assertThrows(
+                IllegalArgumentException.class,
+                () ->
+                        TransformFunctionUtil.newChatCompletionsFunction(
+                                config, serviceProvider, null));
+    }
+
+    private static ChatChoice chatChoice(String content) {
+        return new ChatChoice(new ChatMessage("assistant", content));
+    }
 }
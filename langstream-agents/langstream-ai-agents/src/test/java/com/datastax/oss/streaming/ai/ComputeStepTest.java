@@ -609,6 +609,86 @@ public class ComputeStepTest {
                 ByteBuffer.wrap("Hotaru".getBytes(StandardCharsets.UTF_8)));
     }
 
+    @Test
+    void testAvroInferredTypeChangesBetweenRecords() throws Exception {
+        RecordSchemaBuilder recordSchemaBuilder = SchemaBuilder.record("record");
+        recordSchemaBuilder.field("firstName").type(SchemaType.STRING);
+        GenericSchema<GenericRecord> genericSchema =
+                Schema.generic(recordSchemaBuilder.build(SchemaType.AVRO));
+
+        ComputeStep step =
+                ComputeStep.builder()
+                        .fields(
+                                List.of(
+                                        ComputeField.builder()
+                                                .scopedName("value.newField")
+                                                .expression("messageKey == 'long' ? 1 : 'one'")
+                                                .build(),
+                                        ComputeField.builder()
+                                                .scopedName("value.firstName")
+                                                .expression("fn:uppercase(value.firstName)")
+                                                .build()))
+                        .build();
+
+        for (String key : List.of("long", "string", "long")) {
+            GenericRecord genericRecord =
+                    genericSchema.newRecordBuilder().set("firstName", "Jane").build();
+            Record<?> outputRecord =
+                    Utils.process(new Utils.TestRecord<>(genericSchema, genericRecord, key), step);
+
+            GenericData.Record read =
+                    Utils.getRecord(outputRecord.getSchema(), (byte[]) outputRecord.getValue());
+            assertEquals(new Utf8("JANE"), read.get("firstName"));
+            assertEquals(List.of("firstName", "newField"), fieldNames(read));
+            if (key.equals("long")) {
+                assertEquals(LONG_SCHEMA, read.getSchema().getField("newField").schema());
+                assertEquals(1L, read.get("newField"));
+            } else {
+                assertEquals(STRING_SCHEMA, read.getSchema().getField("newField").schema());
+                assertEquals(new Utf8("one"), read.get("newField"));
+            }
+        }
+    }
+
+    @Test
+    void testDecimalSchemasAreBounded() throws Exception {
+        RecordSchemaBuilder recordSchemaBuilder = SchemaBuilder.record("record");
+        recordSchemaBuilder.field("firstName").type(SchemaType.STRING);
+        GenericSchema<GenericRecord> genericSchema =
+                Schema.generic(recordSchemaBuilder.build(SchemaType.AVRO));
+
+        ComputeStep step =
+                ComputeStep.builder()
+                        .fields(
+                                List.of(
+                                        ComputeField.builder()
+                                                .scopedName("value.decimalField")
+                                                .expression("fn:decimalFromUnscaled(messageKey, 2)")
+                                                .type(ComputeFieldType.DECIMAL)
+                                                .build()))
+                        .build();
+
+        // each value has a different precision
+        for (int i = 2; i < ComputeStep.MAX_CACHED_SCHEMAS * 2; i++) {
+            String key = "1".repeat(i);
+            GenericRecord genericRecord =
+                    genericSchema.newRecordBuilder().set("firstName", "Jane").build();
+            Record<?> outputRecord =
+                    Utils.process(new Utils.TestRecord<>(genericSchema, genericRecord, key), step);
+
+            GenericData.Record read =
+                    Utils.getRecord(outputRecord.getSchema(), (byte[]) outputRecord.getValue());
+            assertEquals(new BigDecimal(new BigInteger(key), 2), read.get("decimalField"));
+        }
+        assertEquals(ComputeStep.MAX_CACHED_SCHEMAS, step.cachedSchemas());
+    }
+
+    private static List<String> fieldNames(GenericData.Record record) {
+        return record.getSchema().getFields().stream()
+                .map(org.apache.avro.Schema.Field::name)
+                .toList();
+    }
+
     @Test
     void testAvroNullsNotAllowed() throws Exception {
         assertThrows(
@@ -16,19 +16,30 @@
 package com.datastax.oss.streaming.ai;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 
+import com.datastax.oss.streaming.ai.datasource.CachingQueryStepDataSource;
+import com.datastax.oss.streaming.ai.datasource.QueryResult;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
+import com.datastax.oss.streaming.ai.model.TransformSchemaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.io.EncoderFactory;
 import org.apache.pulsar.client.api.Schema;
 import org.apache.pulsar.client.api.schema.GenericObject;
 import org.apache.pulsar.client.api.schema.GenericRecord;
@@ -355,4 +366,222 @@ public class QueryStepTest {
                         "result",
                         Map.of()));
     }
+
+    @Test
+    void testProcessAsyncDoesNotBlock() throws Exception {
+        CompletableFuture<List<Map<String, String>>> pending = new CompletableFuture<>();
+        QueryStepDataSource dataSource =
+                new QueryStepDataSource() {
+                    @Override
+                    public CompletableFuture<List<Map<String, String>>> fetchDataAsync(
+                            String query, List<Object> params) {
+                        assertEquals(List.of("test-message"), params);
+                        return pending;
+                    }
+                };
+        QueryStep queryStep =
+                QueryStep.builder()
+                        .dataSource(dataSource)
+                        .outputFieldName("value")
+                        .query("select 1")
+                        .fields(List.of("value"))
+                        .onlyFirst(true)
+                        .build();
+        TransformContext context =
+                Utils.createContextWithPrimitiveRecord(Schema.STRING, "test-message", "test-key");
+
+        CompletableFuture<?> result = queryStep.processAsync(context);
+        assertFalse(result.isDone());
+
+        pending.complete(List.of(Map.of("a", "10")));
+        result.get();
+        assertEquals(Map.of("a", "10"), context.getValueObject());
+    }
+
+    private static QueryStepDataSource typedDataSource() {
+        return new QueryStepDataSource() {
+            @Override
+            public CompletableFuture<QueryResult> fetchResultAsync(
+                    String query, List<Object> params) {
+                return CompletableFuture.completedFuture(
+                        QueryResult.builder()
+                                .column("name", QueryResult.ColumnType.STRING)
+                                .column("count", QueryResult.ColumnType.LONG)
+                                .column("score", QueryResult.ColumnType.DOUBLE)
+                                .column("enabled", QueryResult.ColumnType.BOOLEAN)
+                                .column("embeddings", QueryResult.ColumnType.FLOAT_VECTOR)
+                                .column("created", QueryResult.ColumnType.OBJECT)
+                                .addRow(
+                                        "foo",
+                                        10,
+                                        0.5f,
+                                        true,
+                                        new float[] {1f, 2f},
+                                        LocalDate.of(2023, 1, 2))
+                                .addRow("bar", 20L, null, false, null, null)
+                                .build());
+            }
+        };
+    }
+
+    @Test
+    void testTypedResultsJson() throws Exception {
+        QueryStep queryStep =
+                QueryStep.builder()
+                        .dataSource(typedDataSource())
+                        .outputFieldName("value.result")
+                        .query("select 1")
+                        .typedResults(true)
+                        .build();
+        TransformContext context = new TransformContext();
+        context.setValueSchemaType(TransformSchemaType.STRING);
+        context.setValueObject(new HashMap<>(Map.of("field", "value")));
+
+        queryStep.processAsync(context).get();
+        context.convertMapToStringOrBytes();
+
+        Map<String, Object> value =
+                OBJECT_MAPPER.readValue((String) context.getValueObject(), Map.class);
+        Map<String, Object> first = new HashMap<>();
+        first.put("name", "foo");
+        first.put("count", 10);
+        first.put("score", 0.5);
+        first.put("enabled", true);
+        first.put("embeddings", List.of(1.0, 2.0));
+        first.put("created", "2023-01-02");
+        Map<String, Object> second = new HashMap<>();
+        second.put("name", "bar");
+        second.put("count", 20);
+        second.put("score", null);
+        second.put("enabled", false);
+        second.put("embeddings", null);
+        second.put("created", null);
+        assertEquals(Map.of("field", "value", "result", List.of(first, second)), value);
+    }
+
+    @Test
+    void testTypedResultsAvro() throws Exception {
+        org.apache.avro.Schema schema =
+                org.apache.avro.SchemaBuilder.record("record")
+                        .fields()
+                        .requiredString("field")
+                        .endRecord();
+        org.apache.avro.generic.GenericRecord avroRecord = new GenericData.Record(schema);
+        avroRecord.put("field", "value");
+        TransformContext context = new TransformContext();
+        context.setValueSchemaType(TransformSchemaType.AVRO);
+        context.setValueObject(avroRecord);
+        QueryStep queryStep =
+                QueryStep.builder()
+                        .dataSource(typedDataSource())
+                        .outputFieldName("value.result")
+                        .query("select 1")
+                        .onlyFirst(true)
+                        .typedResults(true)
+                        .build();
+
+        queryStep.processAsync(context).get();
+
+        org.apache.avro.generic.GenericRecord result =
+                (org.apache.avro.generic.GenericRecord) context.getValueObject();
+        Map<String, Object> first = (Map<String, Object>) result.get("result");
+        assertEquals("foo", first.get("name"));
+        assertEquals(10L, first.get("count"));
+        assertEquals(0.5D, first.get("score"));
+        assertEquals(true, first.get("enabled"));
+        assertEquals(List.of(1f, 2f), first.get("embeddings"));
+        assertEquals("2023-01-02", first.get("created"));
+
+        // the record can be serialized with its schema
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new GenericDatumWriter<>(result.getSchema())
+                .write(result, EncoderFactory.get().directBinaryEncoder(out, null));
+        assertFalse(out.toByteArray().length == 0);
+    }
+
+    @Test
+    void testBatchedLookups() throws Exception {
+        List<List<List<Object>>> batches = new ArrayList<>();
+        QueryStepDataSource dataSource =
+                new QueryStepDataSource() {
+                    @Override
+                    public CompletableFuture<List<List<Map<String, String>>>> fetchDataBatchAsync(
+                            String query, List<List<Object>> params) {
+                        batches.add(params);
+                        return CompletableFuture.completedFuture(
+                                params.stream()
+                                        .map(p -> List.of(Map.of("id", p.get(0) + "-result")))
+                                        .toList());
+                    }
+
+                    @Override
+                    public List<Map<String, String>> fetchData(String query, List<Object> params) {
+                        batches.add(List.of(params));
+                        return List.of(Map.of("id", params.get(0) + "-single"));
+                    }
+                };
+        QueryStep queryStep =
+                QueryStep.builder()
+                        .dataSource(dataSource)
+                        .outputFieldName("value")
+                        .query("select 1")
+                        .fields(List.of("value"))
+                        .onlyFirst(true)
+                        .batchSize(3)
+                        .flushInterval(60_000)
+                        .build();
+
+        List<TransformContext> contexts = new ArrayList<>();
+        List<CompletableFuture<?>> handles = new ArrayList<>();
+        for (String value : List.of("a", "b", "c", "d")) {
+            TransformContext context =
+                    Utils.createContextWithPrimitiveRecord(Schema.STRING, value, "key");
+            contexts.add(context);
+            handles.add(queryStep.processAsync(context));
+        }
+        // the first 3 records are a full batch
+        for (int i = 0; i < 3; i++) {
+            handles.get(i).get();
+        }
+        assertEquals(List.of(List.of(List.of("a"), List.of("b"), List.of("c"))), batches);
+        assertEquals(Map.of("id", "b-result"), contexts.get(1).getValueObject());
+        assertFalse(handles.get(3).isDone());
+
+        // the pending records are flushed on close
+        queryStep.close();
+        handles.get(3).get();
+        assertEquals(Map.of("id", "d-single"), contexts.get(3).getValueObject());
+        assertEquals(2, batches.size());
+    }
+
+    @Test
+    void testCacheMetrics() throws Exception {
+        QueryStepDataSource dataSource =
+                new QueryStepDataSource() {
+                    @Override
+                    public List<Map<String, String>> fetchData(String query, List<Object> params) {
+                        return List.of(Map.of("id", params.get(0) + "-result"));
+                    }
+                };
+        assertEquals(
+                Map.of(), QueryStep.builder().dataSource(dataSource).build().buildAdditionalInfo());
+
+        QueryStep queryStep =
+                QueryStep.builder()
+                        .dataSource(
+                                new CachingQueryStepDataSource(dataSource, 60_000, 10, 0, false))
+                        .outputFieldName("value")
+                        .query("select 1")
+                        .fields(List.of("value"))
+                        .onlyFirst(true)
+                        .build();
+        for (String value : List.of("a", "b", "a")) {
+            queryStep.process(Utils.createContextWithPrimitiveRecord(Schema.STRING, value, "key"));
+        }
+        Map<String, Object> metrics =
+                (Map<String, Object>) queryStep.buildAdditionalInfo().get("query-cache");
+        assertEquals(1L, metrics.get("hits"));
+        assertEquals(2L, metrics.get("misses"));
+        assertEquals(2, metrics.get("entries"));
+    }
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.completions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.datastax.oss.streaming.ai.embeddings.EmbeddingsService;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+
+class ChatCompletionsCacheTest {
+
+    private static final Map<String, Object> OPTIONS = Map.of("model", "test-model");
+
+    @Test
+    void testExactMatch() throws Exception {
+        ChatCompletionsCache cache = new ChatCompletionsCache(60_000, 10, null, 0.9);
+        ChatCompletionsCache.Lookup lookup = cache.lookup(messages("question"), OPTIONS).get();
+        assertFalse(lookup.isHit());
+        cache.put(lookup, new ChatMessage("assistant", "answer"), List.of("ans", "wer"));
+
+        lookup = cache.lookup(messages("question"), OPTIONS).get();
+        assertTrue(lookup.isHit());
+        assertEquals("answer", lookup.getAnswer().message().getContent());
+        assertEquals(List.of("ans", "wer"), lookup.getAnswer().chunks());
+
+        assertFalse(cache.lookup(messages("other question"), OPTIONS).get().isHit());
+        assertFalse(
+                cache.lookup(messages("question"), Map.of("model", "other-model")).get().isHit());
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    void testTtl() throws Exception {
+        MutableClock clock = new MutableClock();
+        ChatCompletionsCache cache = new ChatCompletionsCache(1000, 10, null, 0.9, clock);
+        ChatCompletionsCache.Lookup lookup = cache.lookup(messages("question"), OPTIONS).get();
+        cache.put(lookup, new ChatMessage("assistant", "answer"), List.of());
+        clock.advance(Duration.ofMillis(999));
+        assertTrue(cache.lookup(messages("question"), OPTIONS).get().isHit());
+        clock.advance(Duration.ofMillis(1));
+        assertFalse(cache.lookup(messages("question"), OPTIONS).get().isHit());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testMaxSize() throws Exception {
+        ChatCompletionsCache cache = new ChatCompletionsCache(60_000, 2, null, 0.9);
+        for (String question : List.of("q1", "q2", "q3")) {
+            ChatCompletionsCache.Lookup lookup = cache.lookup(messages(question), OPTIONS).get();
+            cache.put(lookup, new ChatMessage("assistant", "a-" + question), List.of());
+        }
+        assertEquals(2, cache.size());
+        assertFalse(cache.lookup(messages("q1"), OPTIONS).get().isHit());
+        assertTrue(cache.lookup(messages("q2"), OPTIONS).get().isHit());
+        assertTrue(cache.lookup(messages("q3"), OPTIONS).get().isHit());
+    }
+
+    @Test
+    void testSemanticMatch() throws Exception {
+        Map<String, List<Double>> embeddings =
+                Map.of(
+                        "what is langstream?", List.of(1.0, 0.0, 0.0),
+                        "what's langstream?", List.of(0.99, 0.1, 0.0),
+                        "how is the weather?", List.of(0.0, 1.0, 0.0));
+        EmbeddingsService embeddingsService =
+                texts ->
+                        CompletableFuture.completedFuture(
+                                texts.stream().map(embeddings::get).toList());
+        ChatCompletionsCache cache = new ChatCompletionsCache(60_000, 10, embeddingsService, 0.95);
+        ChatCompletionsCache.Lookup lookup =
+                cache.lookup(messages("what is langstream?"), OPTIONS).get();
+        assertFalse(lookup.isHit());
+        cache.put(lookup, new ChatMessage("assistant", "a streaming platform"), List.of());
+
+        lookup = cache.lookup(messages("what's langstream?"), OPTIONS).get();
+        assertTrue(lookup.isHit());
+        assertEquals("a streaming platform", lookup.getAnswer().message().getContent());
+        assertEquals(1, cache.getSemanticHits());
+
+        assertFalse(cache.lookup(messages("how is the weather?"), OPTIONS).get().isHit());
+        // the semantic lookup never crosses models
+        assertFalse(
+                cache.lookup(messages("what's langstream?"), Map.of("model", "other-model"))
+                        .get()
+                        .isHit());
+    }
+
+    @Test
+    void testConversationContext() throws Exception {
+        EmbeddingsService embeddingsService =
+                texts ->
+                        CompletableFuture.completedFuture(
+                                texts.stream().map(text -> List.of(1.0, 0.0)).toList());
+        ChatCompletionsCache cache = new ChatCompletionsCache(60_000, 10, embeddingsService, 0.95);
+        List<ChatMessage> conversation =
+                List.of(
+                        new ChatMessage("system", "You are a helpful assistant"),
+                        new ChatMessage("user", "Tell me about Paris"),
+                        new ChatMessage("assistant", "Paris is the capital of France"),
+                        new ChatMessage("user", "How many people live there?"));
+        ChatCompletionsCache.Lookup lookup = cache.lookup(conversation, OPTIONS).get();
+        cache.put(lookup, new ChatMessage("assistant", "About 2 million"), List.of());
+        assertTrue(cache.lookup(conversation, OPTIONS).get().isHit());
+
+        // the same question in another conversation is another question
+        List<ChatMessage> otherConversation =
+                List.of(
+                        new ChatMessage("system", "You are a helpful assistant"),
+                        new ChatMessage("user", "Tell me about Rome"),
+                        new ChatMessage("assistant", "Rome is the capital of Italy"),
+                        new ChatMessage("user", "How many people live there?"));
+        assertFalse(cache.lookup(otherConversation, OPTIONS).get().isHit());
+        assertEquals(1, cache.getHits());
+        assertEquals(0, cache.getSemanticHits());
+    }
+
+    @Test
+    void testSemanticIndexEviction() throws Exception {
+        EmbeddingsService embeddingsService =
+                texts ->
+                        CompletableFuture.completedFuture(
+                                texts.stream().map(text -> List.of(1.0, 0.0)).toList());
+        ChatCompletionsCache cache = new ChatCompletionsCache(60_000, 1, embeddingsService, 0.95);
+        ChatCompletionsCache.Lookup lookup = cache.lookup(messages("q1"), OPTIONS).get();
+        cache.put(lookup, new ChatMessage("assistant", "a1"), List.of());
+        lookup = cache.lookup(messages("q2"), Map.of("model", "other-model")).get();
+        cache.put(lookup, new ChatMessage("assistant", "a2"), List.of());
+        // the evicted answer is not found by the semantic lookup
+        assertFalse(cache.lookup(messages("q3"), OPTIONS).get().isHit());
+        assertTrue(cache.lookup(messages("q3"), Map.of("model", "other-model")).get().isHit());
+    }
+
+    private static List<ChatMessage> messages(String question) {
+        return List.of(
+                new ChatMessage("system", "You are a helpful assistant"),
+                new ChatMessage("user", question));
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant = Instant.now();
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
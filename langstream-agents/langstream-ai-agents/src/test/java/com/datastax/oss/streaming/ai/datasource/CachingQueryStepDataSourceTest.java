@@ -0,0 +1,241 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.datasource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class CachingQueryStepDataSourceTest {
+
+    private static class CountingDataSource implements QueryStepDataSource {
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public List<Map<String, String>> fetchData(String query, List<Object> params) {
+            calls.incrementAndGet();
+            if (params.contains("missing")) {
+                return List.of();
+            }
+            return List.of(Map.of("query", query, "param", params.get(0) + ""));
+        }
+    }
+
+    @Test
+    void testCacheByQueryAndParams() throws Exception {
+        CountingDataSource dataSource = new CountingDataSource();
+        CachingQueryStepDataSource cache =
+                new CachingQueryStepDataSource(dataSource, 60_000, 10, 0, false);
+
+        List<Map<String, String>> first = cache.fetchData("select 1", List.of("a"));
+        assertEquals(List.of(Map.of("query", "select 1", "param", "a")), first);
+        assertEquals(first, cache.fetchData("select 1", List.of("a")));
+        assertEquals(first, cache.fetchDataAsync("select 1", List.of("a")).get());
+        assertEquals(1, dataSource.calls.get());
+
+        cache.fetchData("select 1", List.of("b"));
+        cache.fetchData("select 2", List.of("a"));
+        assertEquals(3, dataSource.calls.get());
+        assertEquals(2, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(0.4, cache.getHitRate(), 0.0001);
+        assertEquals(2L, cache.getMetrics().get("hits"));
+        assertEquals(3, cache.getMetrics().get("entries"));
+    }
+
+    @Test
+    void testCachedRowsAreCopied() {
+        CachingQueryStepDataSource cache =
+                new CachingQueryStepDataSource(new CountingDataSource(), 60_000, 10, 0, false);
+        cache.fetchData("select 1", List.of("a"));
+        cache.fetchData("select 1", List.of("a")).get(0).put("param", "changed");
+        assertEquals("a", cache.fetchData("select 1", List.of("a")).get(0).get("param"));
+    }
+
+    @Test
+    void testTtl() {
+        MutableClock clock = new MutableClock();
+        CountingDataSource dataSource = new CountingDataSource();
+        CachingQueryStepDataSource cache =
+                new CachingQueryStepDataSource(dataSource, 1000, 10, 0, false, clock);
+        cache.fetchData("select 1", List.of("a"));
+        clock.advance(Duration.ofMillis(999));
+        cache.fetchData("select 1", List.of("a"));
+        assertEquals(1, dataSource.calls.get());
+        clock.advance(Duration.ofMillis(1));
+        cache.fetchData("select 1", List.of("a"));
+        assertEquals(2, dataSource.calls.get());
+    }
+
+    @Test
+    void testNegativeCaching() {
+        CountingDataSource dataSource = new CountingDataSource();
+        CachingQueryStepDataSource cache =
+                new CachingQueryStepDataSource(dataSource, 60_000, 10, 0, false);
+        cache.fetchData("select 1", List.of("missing"));
+        cache.fetchData("select 1", List.of("missing"));
+        assertEquals(2, dataSource.calls.get());
+
+        CachingQueryStepDataSource negativeCache =
+                new CachingQueryStepDataSource(dataSource, 60_000, 10, 0, true);
+        negativeCache.fetchData("select 1", List.of("missing"));
+        assertEquals(List.of(), negativeCache.fetchData("select 1", List.of("missing")));
+        assertEquals(3, dataSource.calls.get());
+    }
+
+    @Test
+    void testEviction() {
+        CachingQueryStepDataSource cache =
+                new CachingQueryStepDataSource(new CountingDataSource(), 60_000, 2, 0, false);
+        cache.fetchData("select 1", List.of("a"));
+        cache.fetchData("select 1", List.of("b"));
+        cache.fetchData("select 1", List.of("a"));
+        cache.fetchData("select 1", List.of("c"));
+        assertEquals(2, cache.size());
+        // b is the least recently used
+        cache.fetchData("select 1", List.of("a"));
+        cache.fetchData("select 1", List.of("c"));
+        assertEquals(3, cache.getHits());
+
+        CachingQueryStepDataSource bytesCache =
+                new CachingQueryStepDataSource(new CountingDataSource(), 60_000, 100, 400, false);
+        for (String param : List.of("a", "b", "c", "d", "e")) {
+            bytesCache.fetchData("select 1", List.of(param));
+        }
+        assertEquals(2, bytesCache.size());
+        assertTrue(bytesCache.getEstimatedBytes() <= 400);
+    }
+
+    @Test
+    void testConcurrentLookupsShareTheQuery() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<List<Map<String, String>>> pending = new CompletableFuture<>();
+        QueryStepDataSource dataSource =
+                new QueryStepDataSource() {
+                    @Override
+                    public CompletableFuture<List<Map<String, String>>> fetchDataAsync(
+                            String query, List<Object> params) {
+                        calls.incrementAndGet();
+                        return pending;
+                    }
+                };
+        CachingQueryStepDataSource cache =
+                new CachingQueryStepDataSource(dataSource, 60_000, 10, 0, false);
+        CompletableFuture<List<Map<String, String>>> first =
+                cache.fetchDataAsync("select 1", List.of("a"));
+        CompletableFuture<List<Map<String, String>>> second =
+                cache.fetchDataAsync("select 1", List.of("a"));
+        pending.complete(List.of(Map.of("a", "1")));
+        assertEquals(first.get(), second.get());
+        assertEquals(1, calls.get());
+        assertEquals(
+                List.of(Map.of("a", "1")), cache.fetchDataAsync("select 1", List.of("a")).get());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void testTypedResultsAreCachedSeparately() throws Exception {
+        CountingDataSource dataSource = new CountingDataSource();
+        CachingQueryStepDataSource cache =
+                new CachingQueryStepDataSource(dataSource, 60_000, 10, 0, false);
+        QueryResult first = cache.fetchResultAsync("select 1", List.of("a")).get();
+        assertEquals(
+                List.of(Map.of("query", "select 1", "param", "a")), List.copyOf(first.toMaps()));
+        assertSame(first, cache.fetchResultAsync("select 1", List.of("a")).get());
+        assertEquals(1, dataSource.calls.get());
+
+        cache.fetchData("select 1", List.of("a"));
+        assertEquals(2, dataSource.calls.get());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void testBatchOnlyFetchesTheMisses() throws Exception {
+        List<List<List<Object>>> batches = new ArrayList<>();
+        CountingDataSource dataSource =
+                new CountingDataSource() {
+                    @Override
+                    public CompletableFuture<List<List<Map<String, String>>>> fetchDataBatchAsync(
+                            String query, List<List<Object>> params) {
+                        batches.add(params);
+                        return super.fetchDataBatchAsync(query, params);
+                    }
+                };
+        CachingQueryStepDataSource cache =
+                new CachingQueryStepDataSource(dataSource, 60_000, 10, 0, false);
+        cache.fetchData("select 1", List.of("a"));
+
+        List<List<Map<String, String>>> results =
+                cache.fetchDataBatchAsync(
+                                "select 1",
+                                List.of(List.of("a"), List.of("b"), List.of("a"), List.of("c")))
+                        .get();
+        assertEquals(List.of(List.of(List.of("b"), List.of("c"))), batches);
+        assertEquals(
+                List.of("a", "b", "a", "c"),
+                results.stream().map(r -> r.get(0).get("param")).toList());
+        assertEquals(3, dataSource.calls.get());
+        assertEquals(
+                results.get(1),
+                cache.fetchDataBatchAsync("select 1", List.of(List.of("b"))).get().get(0));
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    void testWrap() {
+        QueryStepDataSource dataSource = new CountingDataSource();
+        assertSame(dataSource, CachingQueryStepDataSource.wrap(dataSource, Map.of()));
+        assertInstanceOf(
+                CachingQueryStepDataSource.class,
+                CachingQueryStepDataSource.wrap(dataSource, Map.of("cache-ttl-seconds", 60)));
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant = Instant.now();
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
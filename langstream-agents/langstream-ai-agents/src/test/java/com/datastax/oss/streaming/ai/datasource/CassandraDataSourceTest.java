@@ -15,10 +15,29 @@
  */
 package com.datastax.oss.streaming.ai.datasource;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
@@ -52,6 +71,69 @@ public class CassandraDataSourceTest {
         log.info("maps {}", maps);
     }
 
+    @Test
+    void testFanOutLimitsTheConcurrentQueries() throws Exception {
+        List<CompletableFuture<String>> pending = new ArrayList<>();
+        List<List<Object>> params = List.of(List.of(1), List.of(2), List.of(3), List.of(4));
+        CompletableFuture<List<String>> result =
+                new CassandraDataSource.FanOut<String>(
+                                params,
+                                p -> {
+                                    CompletableFuture<String> future = new CompletableFuture<>();
+                                    pending.add(future);
+                                    return future;
+                                })
+                        .start(2);
+        assertEquals(2, pending.size());
+        // complete out of order
+        pending.get(1).complete("2");
+        assertEquals(3, pending.size());
+        pending.get(0).complete("1");
+        pending.get(2).complete("3");
+        assertEquals(4, pending.size());
+        assertFalse(result.isDone());
+        pending.get(3).complete("4");
+        assertEquals(List.of("1", "2", "3", "4"), result.get());
+    }
+
+    @Test
+    void testPrepareAsyncOnce() throws Exception {
+        CqlSession session = mock(CqlSession.class);
+        CompletableFuture<PreparedStatement> failed = new CompletableFuture<>();
+        CompletableFuture<PreparedStatement> prepared = new CompletableFuture<>();
+        when(session.prepareAsync(anyString())).thenReturn(failed, prepared);
+        CassandraDataSource source = new CassandraDataSource();
+        source.session = session;
+
+        String query = "select * from ks.table";
+        CompletableFuture<List<Map<String, String>>> first =
+                source.fetchDataAsync(query, List.of());
+        failed.completeExceptionally(new IllegalStateException("cannot prepare"));
+        ExecutionException error = assertThrows(ExecutionException.class, first::get);
+        assertTrue(error.getCause() instanceof IllegalStateException);
+
+        // the failure is not cached, the records wait for the same preparation
+        CompletableFuture<List<Map<String, String>>> second =
+                source.fetchDataAsync(query, List.of());
+        CompletableFuture<List<Map<String, String>>> third =
+                source.fetchDataAsync(query, List.of());
+        assertFalse(second.isDone());
+        verify(session, times(2)).prepareAsync(query);
+        verify(session, never()).prepare(anyString());
+
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(statement.getVariableDefinitions()).thenReturn(mock(ColumnDefinitions.class));
+        when(statement.bind()).thenReturn(mock(BoundStatement.class));
+        AsyncResultSet resultSet = mock(AsyncResultSet.class);
+        when(resultSet.currentPage()).thenReturn(List.of());
+        when(session.executeAsync(any(BoundStatement.class)))
+                .thenReturn(CompletableFuture.completedFuture(resultSet));
+        prepared.complete(statement);
+        assertEquals(List.of(), second.get());
+        assertEquals(List.of(), third.get());
+        verify(session, times(2)).prepareAsync(query);
+    }
+
     private static Map<String, Object> buildDataSourceConfig() {
         return Map.of(
                 "service",
@@ -0,0 +1,84 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.datasource;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class QueryResultTest {
+
+    @Test
+    void testDeclaredColumns() {
+        QueryResult result =
+                QueryResult.builder()
+                        .column("id", QueryResult.ColumnType.LONG)
+                        .column("price", QueryResult.ColumnType.DOUBLE)
+                        .column("vector", QueryResult.ColumnType.FLOAT_VECTOR)
+                        .addRow(1, new BigDecimal("9.99"), List.of(0.1f, 0.2f))
+                        .addRow(2, 0.1f, "[0.3, 0.4]")
+                        .build();
+        assertEquals(
+                List.of(
+                        new QueryResult.Column("id", QueryResult.ColumnType.LONG),
+                        new QueryResult.Column("price", QueryResult.ColumnType.DOUBLE),
+                        new QueryResult.Column("vector", QueryResult.ColumnType.FLOAT_VECTOR)),
+                result.getColumns());
+        Object[] first = result.getRows().get(0);
+        assertEquals(1L, first[0]);
+        assertEquals(9.99, first[1]);
+        assertArrayEquals(new float[] {0.1f, 0.2f}, (float[]) first[2]);
+        Object[] second = result.getRows().get(1);
+        assertEquals(0.1, second[1]);
+        assertArrayEquals(new float[] {0.3f, 0.4f}, (float[]) second[2]);
+    }
+
+    @Test
+    void testColumnsFromMaps() {
+        QueryResult result =
+                QueryResult.fromMaps(
+                        List.of(
+                                Map.of("id", "a", "score", 1, "flag", true),
+                                Map.of("id", "b", "score", 0.5, "tags", List.of("x"))));
+        Map<String, QueryResult.ColumnType> types =
+                Map.of(
+                        "id", QueryResult.ColumnType.STRING,
+                        "score", QueryResult.ColumnType.DOUBLE,
+                        "flag", QueryResult.ColumnType.BOOLEAN,
+                        "tags", QueryResult.ColumnType.OBJECT);
+        assertEquals(4, result.getColumns().size());
+        result.getColumns().forEach(c -> assertEquals(types.get(c.name()), c.type(), c.name()));
+
+        List<Map<String, Object>> rows = result.toMaps();
+        assertEquals(1.0, rows.get(0).get("score"));
+        assertNull(rows.get(0).get("tags"));
+        assertEquals(0.5, rows.get(1).get("score"));
+        assertNull(rows.get(1).get("flag"));
+        assertEquals(List.of("x"), rows.get(1).get("tags"));
+    }
+
+    @Test
+    void testEmpty() {
+        assertSame(QueryResult.empty(), QueryResult.fromMaps(List.of()));
+        assertSame(QueryResult.empty(), QueryResult.builder().build());
+    }
+}
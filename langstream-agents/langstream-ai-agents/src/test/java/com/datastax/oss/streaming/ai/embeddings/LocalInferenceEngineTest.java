@@ -0,0 +1,265 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.embeddings;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class LocalInferenceEngineTest {
+
+    private static class LengthPredictor
+            implements LocalInferenceEngine.BatchPredictor<String, Integer> {
+        final List<List<String>> batches;
+        final CountDownLatch started;
+        final CountDownLatch release;
+
+        LengthPredictor(
+                List<List<String>> batches, CountDownLatch started, CountDownLatch release) {
+            this.batches = batches;
+            this.started = started;
+            this.release = release;
+        }
+
+        @Override
+        public List<Integer> batchPredict(List<String> inputs) throws Exception {
+            batches.add(inputs);
+            started.countDown();
+            release.await();
+            return inputs.stream().map(String::length).toList();
+        }
+    }
+
+    @Test
+    void testQueuedRequestsAreMergedUpToTheMaxBatchSize() throws Exception {
+        List<List<String>> batches = new CopyOnWriteArrayList<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try (LocalInferenceEngine<String, Integer> engine =
+                new LocalInferenceEngine<>(
+                        "test", 1, 4, 0, () -> new LengthPredictor(batches, started, release))) {
+            CompletableFuture<List<Integer>> first = engine.predict(List.of("a"));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            // the predictor is busy, these requests are queued
+            CompletableFuture<List<Integer>> second = engine.predict(List.of("bb"));
+            CompletableFuture<List<Integer>> third = engine.predict(List.of("ccc", "dddd"));
+            CompletableFuture<List<Integer>> fourth = engine.predict(List.of("e", "ff"));
+            release.countDown();
+
+            assertEquals(List.of(1), first.get());
+            assertEquals(List.of(2), second.get());
+            assertEquals(List.of(3, 4), third.get());
+            assertEquals(List.of(1, 2), fourth.get());
+            // a request is never split
+            assertEquals(
+                    List.of(List.of("a"), List.of("bb", "ccc", "dddd"), List.of("e", "ff")),
+                    batches);
+            assertEquals(3, engine.getBatchCount());
+            assertEquals(2, engine.getAverageBatchSize(), 0.0001);
+            assertTrue(engine.getMaxQueueTimeMillis() >= engine.getAverageQueueTimeMillis());
+            Map<String, Object> metrics = engine.getMetrics();
+            assertEquals(3L, metrics.get("batches"));
+            assertEquals(2.0, metrics.get("average-batch-size"));
+            assertEquals(0, metrics.get("queued-requests"));
+        }
+    }
+
+    @Test
+    void testCloseFailsTheBatchBeingFilled() throws Exception {
+        List<List<String>> batches = new CopyOnWriteArrayList<>();
+        LocalInferenceEngine<String, Integer> engine =
+                new LocalInferenceEngine<>(
+                        "test",
+                        1,
+                        10,
+                        TimeUnit.MINUTES.toMillis(1),
+                        () ->
+                                new LengthPredictor(
+                                        batches, new CountDownLatch(1), new CountDownLatch(0)));
+        CompletableFuture<List<Integer>> request = engine.predict(List.of("a"));
+        // the worker waits for more requests to fill up the batch
+        while (engine.getMetrics().get("queued-requests").equals(1)) {
+            Thread.sleep(10);
+        }
+        engine.close();
+        ExecutionException error =
+                assertThrows(ExecutionException.class, () -> request.get(10, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof IllegalStateException);
+        assertEquals(List.of(), batches);
+    }
+
+    @Test
+    void testPredictRacingClose() throws Exception {
+        LocalInferenceEngine<String, Integer> engine =
+                new LocalInferenceEngine<>(
+                        "test",
+                        2,
+                        4,
+                        0,
+                        () -> inputs -> inputs.stream().map(String::length).toList());
+        List<CompletableFuture<List<Integer>>> results = new CopyOnWriteArrayList<>();
+        ExecutorService producers = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 4; i++) {
+                producers.execute(
+                        () -> {
+                            for (int j = 0; j < 1000; j++) {
+                                results.add(engine.predict(List.of("a")));
+                            }
+                        });
+            }
+            engine.close();
+        } finally {
+            producers.shutdown();
+            assertTrue(producers.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        // every request is either run or failed, none is left in the queue
+        for (CompletableFuture<List<Integer>> result : results) {
+            try {
+                assertEquals(List.of(1), result.get(10, TimeUnit.SECONDS));
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+    }
+
+    @Test
+    void testLatencyBudget() throws Exception {
+        List<List<String>> batches = new CopyOnWriteArrayList<>();
+        CountDownLatch release = new CountDownLatch(0);
+        try (LocalInferenceEngine<String, Integer> engine =
+                new LocalInferenceEngine<>(
+                        "test",
+                        1,
+                        10,
+                        500,
+                        () -> new LengthPredictor(batches, new CountDownLatch(1), release))) {
+            CompletableFuture<List<Integer>> first = engine.predict(List.of("a", "bb"));
+            CompletableFuture<List<Integer>> second = engine.predict(List.of("ccc"));
+            assertEquals(List.of(1, 2), first.get());
+            assertEquals(List.of(3), second.get());
+            assertEquals(List.of(List.of("a", "bb", "ccc")), batches);
+        }
+    }
+
+    @Test
+    void testPool() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger closed = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        List<List<String>> batches = new CopyOnWriteArrayList<>();
+        LocalInferenceEngine<String, Integer> engine =
+                new LocalInferenceEngine<>(
+                        "test",
+                        2,
+                        1,
+                        0,
+                        () -> {
+                            created.incrementAndGet();
+                            return new LengthPredictor(batches, started, release) {
+                                @Override
+                                public void close() {
+                                    closed.incrementAndGet();
+                                }
+                            };
+                        });
+        assertEquals(2, created.get());
+        CompletableFuture<List<Integer>> first = engine.predict(List.of("a"));
+        CompletableFuture<List<Integer>> second = engine.predict(List.of("bb"));
+        // the two predictors run at the same time
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        release.countDown();
+        assertEquals(List.of(1), first.get());
+        assertEquals(List.of(2), second.get());
+
+        engine.close();
+        assertEquals(2, closed.get());
+        ExecutionException error =
+                assertThrows(ExecutionException.class, () -> engine.predict(List.of("c")).get());
+        assertTrue(error.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    void testErrors() throws Exception {
+        RuntimeException failure = new RuntimeException("failed");
+        try (LocalInferenceEngine<String, Integer> engine =
+                new LocalInferenceEngine<>(
+                        "test",
+                        1,
+                        10,
+                        0,
+                        () ->
+                                inputs -> {
+                                    if (inputs.contains("fail")) {
+                                        throw failure;
+                                    }
+                                    return List.of();
+                                })) {
+            ExecutionException error =
+                    assertThrows(
+                            ExecutionException.class, () -> engine.predict(List.of("fail")).get());
+            assertSame(failure, error.getCause());
+            // the outputs must match the inputs
+            error =
+                    assertThrows(
+                            ExecutionException.class, () -> engine.predict(List.of("a")).get());
+            assertTrue(error.getCause() instanceof IllegalStateException);
+            assertEquals(List.of(), engine.predict(List.of()).get());
+        }
+
+        AtomicInteger closed = new AtomicInteger();
+        AtomicInteger created = new AtomicInteger();
+        assertThrows(
+                IllegalStateException.class,
+                () ->
+                        new LocalInferenceEngine<String, Integer>(
+                                "test",
+                                3,
+                                10,
+                                0,
+                                () -> {
+                                    if (created.incrementAndGet() == 2) {
+                                        throw new IllegalStateException("no more predictors");
+                                    }
+                                    return new LocalInferenceEngine.BatchPredictor<>() {
+                                        @Override
+                                        public List<Integer> batchPredict(List<String> inputs) {
+                                            return List.of();
+                                        }
+
+                                        @Override
+                                        public void close() {
+                                            closed.incrementAndGet();
+                                        }
+                                    };
+                                }));
+        assertEquals(1, closed.get());
+    }
+}
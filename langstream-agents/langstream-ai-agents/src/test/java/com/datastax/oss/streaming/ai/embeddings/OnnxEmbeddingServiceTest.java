@@ -0,0 +1,114 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.embeddings;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledIf;
+import org.junit.jupiter.api.condition.EnabledIf;
+
+class OnnxEmbeddingServiceTest {
+
+    @Test
+    void testConfig() {
+        AbstractHuggingFaceEmbeddingService.HuggingFaceConfig config =
+                OnnxEmbeddingService.OnnxConfig.builder()
+                        .modelUrl("file:///models/all-MiniLM-L6-v2")
+                        .intraOpThreads(4)
+                        .options(Map.of("optLevel", "ALL_OPT"))
+                        .arguments(Map.of("pooling", "cls"))
+                        .maxBatchSize(16)
+                        .build()
+                        .toHuggingFaceConfig();
+        assertEquals("OnnxRuntime", config.getEngine());
+        assertEquals("file:///models/all-MiniLM-L6-v2", config.getModelUrl());
+        assertEquals("model", config.getModelName());
+        assertEquals(
+                Map.of(
+                        "intraOpNumThreads", "4",
+                        "interOpNumThreads", "1",
+                        "optLevel", "ALL_OPT"),
+                config.getOptions());
+        assertEquals(Map.of("pooling", "cls"), config.getArguments());
+        assertEquals(1, config.getPredictorPoolSize());
+        assertEquals(16, config.getMaxBatchSize());
+    }
+
+    @Test
+    void testQuantizedModel() {
+        assertEquals(
+                "model_quantized",
+                OnnxEmbeddingService.OnnxConfig.builder()
+                        .quantized(true)
+                        .build()
+                        .toHuggingFaceConfig()
+                        .getModelName());
+        assertEquals(
+                "model_qint8_avx512",
+                OnnxEmbeddingService.OnnxConfig.builder()
+                        .quantized(true)
+                        .modelFile("model_qint8_avx512")
+                        .build()
+                        .toHuggingFaceConfig()
+                        .getModelName());
+        assertThrows(
+                IllegalArgumentException.class,
+                () ->
+                        OnnxEmbeddingService.OnnxConfig.builder()
+                                .intraOpThreads(0)
+                                .build()
+                                .toHuggingFaceConfig());
+    }
+
+    @Test
+    @DisabledIf("engineAvailable")
+    void testEngineRequired() {
+        OnnxEmbeddingService.OnnxConfig config =
+                OnnxEmbeddingService.OnnxConfig.builder()
+                        .modelUrl("file:///models/all-MiniLM-L6-v2")
+                        .build();
+        assertThrows(IllegalStateException.class, () -> new OnnxEmbeddingService(config));
+    }
+
+    /** Downloads the model from the DJL model zoo, it runs in the -Donnxruntime build. */
+    @Test
+    @EnabledIf("engineAvailable")
+    void testComputeEmbeddings() throws Exception {
+        OnnxEmbeddingService.OnnxConfig config =
+                OnnxEmbeddingService.OnnxConfig.builder()
+                        .modelUrl(
+                                "djl://ai.djl.huggingface.onnxruntime/sentence-transformers/all-MiniLM-L6-v2")
+                        .intraOpThreads(1)
+                        .build();
+        try (EmbeddingsService service = new OnnxEmbeddingService(config)) {
+            List<List<Double>> result =
+                    service.computeEmbeddings(List.of("hello world", "stranger things")).get();
+            assertEquals(2, result.size());
+            assertEquals(384, result.get(0).size());
+            assertEquals(384, result.get(1).size());
+            assertNotEquals(result.get(0), result.get(1));
+        }
+    }
+
+    static boolean engineAvailable() {
+        return OnnxEmbeddingService.isEngineAvailable();
+    }
+}
@@ -25,6 +25,11 @@ import java.nio.charset.StandardCharsets;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.pulsar.client.api.Schema;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -63,6 +68,32 @@ public class JstlEvaluatorTest {
         assertEquals("test-message", value);
     }
 
+    @Test
+    void testEvaluatorIsReusable() throws Exception {
+        JstlEvaluator<String> evaluator =
+                new JstlEvaluator<>("${fn:concat(value, messageKey)}", String.class);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                String value = "message-" + i;
+                futures.add(
+                        executor.submit(
+                                () -> {
+                                    TransformContext context =
+                                            Utils.createContextWithPrimitiveRecord(
+                                                    Schema.STRING, value, "-key");
+                                    assertEquals(value + "-key", evaluator.evaluate(context));
+                                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     void testNowFunction() {
         TransformContext primitiveStringContext =
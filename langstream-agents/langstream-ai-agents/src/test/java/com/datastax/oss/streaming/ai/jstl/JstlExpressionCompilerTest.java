@@ -0,0 +1,217 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.jstl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.datastax.oss.streaming.ai.TransformContext;
+import com.datastax.oss.streaming.ai.Utils;
+import jakarta.el.ELException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.schema.GenericObject;
+import org.apache.pulsar.functions.api.Record;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class JstlExpressionCompilerTest {
+
+    private static final List<String> EXPRESSIONS =
+            List.of(
+                    "value",
+                    "key",
+                    "value.valueField1",
+                    "value.valueField4",
+                    "value['valueField2']",
+                    "key.keyField1",
+                    "key.keyField1.missing",
+                    "value.level1String",
+                    "value.level1Record",
+                    "value.level1Record.level2String",
+                    "value.level1Record.level2Integer",
+                    "value.level1Record.level2Integer > 5",
+                    "value.level1Record.level2Integer le '9'",
+                    "value.level1Record.level2Double == 8.8",
+                    "value.level1Record.level2Missing.level3String",
+                    "value.level1Record.level2Null",
+                    "value.valueField1 == 'value1'",
+                    "value.valueField1 != \"value1\"",
+                    "value.valueField1 == 'value1' && key.keyField2 eq 'key2'",
+                    "value.valueField1 == 'other' or not (key.keyField2 == 'key2')",
+                    "!(value == 'test-message')",
+                    "value.missing.field",
+                    "messageKey",
+                    "messageKey == 'test-key'",
+                    "topicName",
+                    "destinationTopic",
+                    "eventTime",
+                    "properties",
+                    "properties.p1 == 'v1'",
+                    "properties['p2']",
+                    "properties.missing",
+                    "fn:uppercase(value.valueField1)",
+                    "fn:concat(value.level1String, messageKey)",
+                    "fn:coalesce(value.valueField4, 'default')",
+                    "fn:toInt('42') + 1",
+                    "true",
+                    "null",
+                    "'it\\'s'",
+                    "12 < 3",
+                    "null <= null",
+                    "null >= null",
+                    "null < null",
+                    "null > 1",
+                    "value.missing le value.level1Record.level2Null",
+                    "value.missing ge null",
+                    "value.missing lt null",
+                    "value.valueField1 >= value.valueField1",
+                    "fn:toInt(value.valueField1)",
+                    "fn:toInt(value.level1String) > 1");
+
+    private static final List<Class<?>> TYPES =
+            List.of(Object.class, String.class, Boolean.class, boolean.class);
+
+    public static Object[][] contexts() {
+        Record<GenericObject> avroKeyValue = Utils.createTestAvroKeyValueRecord();
+        Record<GenericObject> jsonKeyValue = Utils.createTestJsonKeyValueRecord();
+        Record<GenericObject> nestedAvro = Utils.createNestedAvroRecord(3, "test-key");
+        Record<GenericObject> nestedJson = Utils.createNestedJSONRecord(3, "test-key");
+        return new Object[][] {
+            {toContext(avroKeyValue)},
+            {toContext(jsonKeyValue)},
+            {toContext(nestedAvro)},
+            {toContext(nestedJson)},
+            {Utils.createContextWithPrimitiveRecord(Schema.STRING, "test-message", "test-key")},
+        };
+    }
+
+    private static TransformContext toContext(Record<GenericObject> record) {
+        TransformContext context =
+                Utils.newTransformContext(
+                        new Utils.TestContext(record, Map.of()),
+                        record.getValue().getNativeObject());
+        context.setProperties(Map.of("p1", "v1", "p2", "v2"));
+        return context;
+    }
+
+    public static List<Arguments> expressionsAndContexts() {
+        List<Arguments> arguments = new ArrayList<>();
+        for (Object[] context : contexts()) {
+            for (String expression : EXPRESSIONS) {
+                arguments.add(Arguments.of(expression, context[0]));
+            }
+        }
+        return arguments;
+    }
+
+    @ParameterizedTest
+    @MethodSource("expressionsAndContexts")
+    void testCompiledExpressionsEvaluateLikeEl(String expression, TransformContext context) {
+        for (Class<?> type : TYPES) {
+            // deferred expressions are never compiled
+            Object expected = evaluate("#{" + expression + "}", type, context);
+            Object actual = evaluate("${" + expression + "}", type, context);
+            assertEquals(expected, actual, expression + " as " + type);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(
+            strings = {
+                "${value.field}",
+                "${properties['lang'] == 'en'}",
+                "${key.id != null and eventTime >= 1000}",
+                "${fn:concat(value.a, fn:lowercase(messageKey))}",
+                "${fn:now()}",
+                "${'it\\'s'}"
+            })
+    void testSimpleExpressionsAreCompiled(String expression) {
+        assertNotNull(JstlExpressionCompiler.compile(expression, JstlEvaluator.FUNCTIONS));
+    }
+
+    @ParameterizedTest
+    @ValueSource(
+            strings = {
+                "#{value.field}",
+                "${value.field} and ${key.field}",
+                "prefix ${value.field}",
+                " ${value.field} ",
+                "${value.items[0]}",
+                "${value.count + 1}",
+                "${empty value.field}",
+                "${value.field ? 'a' : 'b'}",
+                "${value.price > 1.5}",
+                "${fn:unknown(value)}",
+                "${fn:uppercase(value, key)}",
+                "${x -> x.field}",
+                "${value.field.toString()}",
+                "${unknown.field}"
+            })
+    void testComplexExpressionsAreNotCompiled(String expression) {
+        assertNull(JstlExpressionCompiler.compile(expression, JstlEvaluator.FUNCTIONS));
+    }
+
+    @ParameterizedTest
+    @ValueSource(
+            strings = {"${null <= null}", "${null >= null}", "${properties.a le properties.b}"})
+    void testNullsAreEqualInComparisons(String expression) {
+        TransformContext context =
+                Utils.createContextWithPrimitiveRecord(Schema.STRING, "test-message", "test-key");
+        assertEquals(
+                Boolean.TRUE, new JstlEvaluator<>(expression, Boolean.class).evaluate(context));
+    }
+
+    @Test
+    void testErrorsAreNotEvaluatedAgainByEl() {
+        TransformContext context =
+                Utils.createContextWithPrimitiveRecord(Schema.STRING, "test-message", "test-key");
+        String expression = "${fn:toInt(value)}";
+        assertNotNull(JstlExpressionCompiler.compile(expression, JstlEvaluator.FUNCTIONS));
+        ELException error =
+                assertThrows(
+                        ELException.class,
+                        () -> new JstlEvaluator<>(expression, Object.class).evaluate(context));
+        // the error comes from the compiled expression, EL didn't run it again
+        assertTrue(
+                Arrays.stream(error.getStackTrace())
+                        .anyMatch(
+                                frame ->
+                                        frame.getClassName()
+                                                .startsWith(
+                                                        JstlExpressionCompiler.class.getName())));
+        assertTrue(
+                Arrays.stream(error.getStackTrace())
+                        .noneMatch(frame -> frame.getClassName().startsWith("org.apache.el.")));
+    }
+
+    private static Object evaluate(String expression, Class<?> type, TransformContext context) {
+        try {
+            return new JstlEvaluator<>(expression, type).evaluate(context);
+        } catch (Exception e) {
+            return e.getClass();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.datastax.oss.streaming.ai.TransformContext;
+import com.datastax.oss.streaming.ai.Utils;
+import com.datastax.oss.streaming.ai.model.TransformSchemaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.samskivert.mustache.Mustache;
+import com.samskivert.mustache.Template;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.schema.GenericObject;
+import org.apache.pulsar.functions.api.Record;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+class TransformContextCollectorTest {
+
+    private static final List<String> TEMPLATES =
+            List.of(
+                    "{{value}}",
+                    "{{key}}",
+                    "{{value.valueField1}} and {{key.keyField2}}",
+                    "{{value.name}} {{value.score}} {{value.ratio}} {{value.count}}",
+                    "{{value.address}}",
+                    "{{value.address.city}} {{value.address.zip}}",
+                    "{{value.tags}}",
+                    "{{#value.tags}}[{{.}}]{{/value.tags}}",
+                    "{{#value.address}}{{city}}-{{zip}}{{/value.address}}",
+                    "{{value.nickname}}",
+                    "{{^value.nickname}}none{{/value.nickname}}",
+                    "{{value.previousAddress}}",
+                    "{{value.missing}}",
+                    "{{value.address.missing.field}}",
+                    "{{topicName}} {{destinationTopic}} {{eventTime}}",
+                    "{{properties.p1}} {{properties}}",
+                    "{{unknown}}");
+
+    public static List<Arguments> templatesAndContexts() throws Exception {
+        List<TransformContext> contexts =
+                List.of(
+                        toContext(Utils.createTestAvroKeyValueRecord()),
+                        toContext(Utils.createTestJsonKeyValueRecord()),
+                        withValue(TransformSchemaType.AVRO, createAvroRecord()),
+                        withValue(TransformSchemaType.JSON, createJsonObject()),
+                        Utils.createContextWithPrimitiveRecord(
+                                Schema.STRING, "test-message", "test-key"));
+        List<Arguments> arguments = new ArrayList<>();
+        for (TransformContext context : contexts) {
+            for (String template : TEMPLATES) {
+                arguments.add(Arguments.of(template, context));
+            }
+        }
+        return arguments;
+    }
+
+    private static GenericRecord createAvroRecord() {
+        org.apache.avro.Schema address =
+                SchemaBuilder.record("address")
+                        .fields()
+                        .requiredString("city")
+                        .optionalString("zip")
+                        .endRecord();
+        org.apache.avro.Schema schema =
+                SchemaBuilder.record("person")
+                        .fields()
+                        .requiredString("name")
+                        .requiredDouble("score")
+                        .requiredFloat("ratio")
+                        .requiredLong("count")
+                        .name("tags")
+                        .type()
+                        .array()
+                        .items()
+                        .stringType()
+                        .noDefault()
+                        .name("address")
+                        .type(address)
+                        .noDefault()
+                        .name("previousAddress")
+                        .type()
+                        .optional()
+                        .type(address)
+                        .optionalString("nickname")
+                        .endRecord();
+        GenericRecord addressRecord = new GenericData.Record(address);
+        addressRecord.put("city", "Paris");
+        addressRecord.put("zip", "75001");
+        GenericRecord record = new GenericData.Record(schema);
+        record.put("name", "Jane");
+        record.put("score", 8.8D);
+        record.put("ratio", 0.5F);
+        record.put("count", 42L);
+        record.put(
+                "tags",
+                new GenericData.Array<>(schema.getField("tags").schema(), List.of("a", "b")));
+        record.put("address", addressRecord);
+        return record;
+    }
+
+    private static JsonNode createJsonObject() throws Exception {
+        return new ObjectMapper()
+                .readTree(
+                        """
+                        {"name": "Jane", "score": 8.8, "count": 42, "tags": ["a", "b"],
+                         "address": {"city": "Paris", "zip": null}, "nickname": null}
+                        """);
+    }
+
+    private static TransformContext withValue(TransformSchemaType schemaType, Object value) {
+        TransformContext context = new TransformContext();
+        context.setKey("test-key");
+        context.setValueSchemaType(schemaType);
+        context.setValueObject(value);
+        context.setProperties(Map.of("p1", "v1"));
+        context.setInputTopic("input-topic");
+        context.setOutputTopic("output-topic");
+        context.setEventTime(42L);
+        return context;
+    }
+
+    private static TransformContext toContext(Record<GenericObject> record) {
+        TransformContext context =
+                Utils.newTransformContext(
+                        new Utils.TestContext(record, Map.of()),
+                        record.getValue().getNativeObject());
+        context.setProperties(Map.of("p1", "v1"));
+        context.setInputTopic("input-topic");
+        context.setOutputTopic("output-topic");
+        context.setEventTime(42L);
+        return context;
+    }
+
+    @ParameterizedTest
+    @MethodSource("templatesAndContexts")
+    void testRendersLikeJsonRecord(String template, TransformContext context) {
+        Object expected = render(Mustache.compiler().compile(template), context.toJsonRecord());
+        Object actual = render(TransformContextCollector.compile(template), context);
+        assertEquals(expected, actual, template);
+    }
+
+    @Test
+    void testRendersAvroFields() {
+        TransformContext context = withValue(TransformSchemaType.AVRO, createAvroRecord());
+        assertEquals(
+                "Jane lives in Paris (a,b,)",
+                TransformContextCollector.compile(
+                                "{{value.name}} lives in {{value.address.city}} "
+                                        + "({{#value.tags}}{{.}},{{/value.tags}})")
+                        .execute(context));
+    }
+
+    private static Object render(Template template, Object model) {
+        try {
+            return template.execute(model);
+        } catch (Exception e) {
+            return e.getClass();
+        }
+    }
+}
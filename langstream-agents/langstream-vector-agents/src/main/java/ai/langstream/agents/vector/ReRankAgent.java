@@ -0,0 +1,200 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector;
+
+import static ai.langstream.api.util.ConfigurationUtils.getInt;
+import static ai.langstream.api.util.ConfigurationUtils.getString;
+import static ai.langstream.api.util.ConfigurationUtils.requiredNonEmptyField;
+
+import ai.langstream.agents.vector.exact.ExactVectorSearch;
+import ai.langstream.ai.agents.GenAIToolKitAgent;
+import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import com.datastax.oss.streaming.ai.TransformContext;
+import com.datastax.oss.streaming.ai.jstl.JstlEvaluator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.avro.Schema;
+
+/**
+ * Re-ranks the results of a query by the exact similarity of their vectors with the query vector,
+ * for instance the top candidates returned by a vector database. The results are sorted by
+ * decreasing score, the score is added to each result and only the first "max" are kept.
+ */
+public class ReRankAgent extends SingleRecordAgentProcessor {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final Schema RESULT_SCHEMA =
+            Schema.createArray(
+                    Schema.createMap(
+                            Schema.createUnion(
+                                    Schema.create(Schema.Type.NULL),
+                                    Schema.create(Schema.Type.STRING),
+                                    Schema.create(Schema.Type.LONG),
+                                    Schema.create(Schema.Type.DOUBLE),
+                                    Schema.create(Schema.Type.BOOLEAN),
+                                    Schema.createArray(Schema.create(Schema.Type.FLOAT)))));
+
+    private final Map<Schema, Schema> avroValueSchemaCache = new ConcurrentHashMap<>();
+    private final Map<Schema, Schema> avroKeySchemaCache = new ConcurrentHashMap<>();
+
+    private JstlEvaluator<Object> resultsFunction;
+    private JstlEvaluator<Object> queryVectorFunction;
+    private String outputField;
+    private String vectorField;
+    private String scoreField;
+    private Similarity similarity;
+    private int max;
+
+    @Override
+    public void init(Map<String, Object> configuration) {
+        String field = requiredNonEmptyField(configuration, "field", () -> "re-rank agent");
+        resultsFunction = new JstlEvaluator<>("${" + field + "}", Object.class);
+        queryVectorFunction =
+                new JstlEvaluator<>(
+                        "${"
+                                + requiredNonEmptyField(
+                                        configuration, "query-vector", () -> "re-rank agent")
+                                + "}",
+                        Object.class);
+        outputField = getString("output-field", field, configuration);
+        vectorField = getString("vector-field", "vector", configuration);
+        scoreField = getString("score-field", "similarity", configuration);
+        similarity = Similarity.of(getString("similarity", "cosine", configuration));
+        max = getInt("max", 0, configuration);
+    }
+
+    @Override
+    public List<Record> processRecord(Record record) throws Exception {
+        TransformContext context = GenAIToolKitAgent.recordToTransformContext(record, true);
+        List<Map<String, Object>> results = toRows(resultsFunction.evaluate(context));
+        float[] queryVector = toFloatArray(queryVectorFunction.evaluate(context));
+        if (queryVector == null) {
+            throw new IllegalArgumentException("The query vector is null");
+        }
+        context.setResultField(
+                reRank(queryVector, results),
+                outputField,
+                RESULT_SCHEMA,
+                avroKeySchemaCache,
+                avroValueSchemaCache);
+        context.convertMapToStringOrBytes();
+        Optional<Record> recordResult = GenAIToolKitAgent.transformContextToRecord(context);
+        return recordResult.map(List::of).orElseGet(List::of);
+    }
+
+    List<Map<String, Object>> reRank(float[] queryVector, List<Map<String, Object>> results)
+            throws Exception {
+        // the results without vector are kept at the end, in their order
+        List<Map<String, Object>> withVector = new ArrayList<>(results.size());
+        List<Map<String, Object>> withoutVector = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>(results.size());
+        for (Map<String, Object> result : results) {
+            float[] vector = toFloatArray(result.get(vectorField));
+            if (vector == null) {
+                withoutVector.add(result);
+            } else {
+                withVector.add(result);
+                vectors.add(vector);
+            }
+        }
+        ExactVectorSearch search = ExactVectorSearch.of(vectors, similarity);
+        int k = max > 0 ? max : results.size();
+        List<Map<String, Object>> reRanked = new ArrayList<>(Math.min(k, results.size()));
+        for (ExactVectorSearch.Match match : search.search(queryVector, k)) {
+            Map<String, Object> result = new HashMap<>(withVector.get(match.index()));
+            result.put(scoreField, (double) match.score());
+            reRanked.add(result);
+        }
+        for (int i = 0; i < withoutVector.size() && reRanked.size() < k; i++) {
+            reRanked.add(withoutVector.get(i));
+        }
+        return reRanked;
+    }
+
+    private static List<Map<String, Object>> toRows(Object value) throws Exception {
+        if (value == null) {
+            return List.of();
+        }
+        if (value instanceof String json) {
+            value = MAPPER.readValue(json, Object.class);
+        }
+        if (value instanceof Map<?, ?> single) {
+            return List.of((Map<String, Object>) single);
+        }
+        if (value instanceof Collection<?> collection) {
+            List<Map<String, Object>> rows = new ArrayList<>(collection.size());
+            for (Object row : collection) {
+                if (row instanceof Map<?, ?> map) {
+                    rows.add((Map<String, Object>) map);
+                } else {
+                    rows.add(MAPPER.convertValue(row, new TypeReference<Map<String, Object>>() {}));
+                }
+            }
+            return rows;
+        }
+        throw new IllegalArgumentException(
+                "The results to re-rank must be a list, got a " + value.getClass().getName());
+    }
+
+    /**
+     * Accepts float arrays, lists of numbers and JSON arrays, like the string results of a query.
+     */
+    static float[] toFloatArray(Object value) throws Exception {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof float[] vector) {
+            return vector;
+        }
+        if (value instanceof String json) {
+            if (json.isBlank()) {
+                return null;
+            }
+            value = MAPPER.readValue(json, List.class);
+        }
+        if (value instanceof List<?> list) {
+            float[] vector = new float[list.size()];
+            for (int i = 0; i < vector.length; i++) {
+                Object item = list.get(i);
+                if (item instanceof Number number) {
+                    vector[i] = number.floatValue();
+                } else if (item instanceof String s) {
+                    vector[i] = Float.parseFloat(s);
+                } else {
+                    throw new IllegalArgumentException("only vectors of floats are supported");
+                }
+            }
+            return vector;
+        }
+        throw new IllegalArgumentException(
+                "Cannot convert a " + value.getClass().getName() + " to a vector");
+    }
+
+    @Override
+    public void start() {}
+
+    @Override
+    public void close() {}
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector;
+
+/**
+ * The similarity functions of the vectors, shared by the vector search implementations and the
+ * re-rank agent. The configuration uses the lower case names with dashes, like "dot-product".
+ */
+public enum Similarity {
+    COSINE,
+    DOT_PRODUCT,
+    /** The score is 1 / (1 + squared distance). */
+    EUCLIDEAN;
+
+    public static Similarity of(String name) {
+        return valueOf(name.toUpperCase().replace('-', '_'));
+    }
+}
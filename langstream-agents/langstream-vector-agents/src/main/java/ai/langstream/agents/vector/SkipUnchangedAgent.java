@@ -0,0 +1,87 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector;
+
+import ai.langstream.agents.vector.changes.ChangeDetector;
+import ai.langstream.api.runner.code.Header;
+import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.SimpleRecord;
+import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import ai.langstream.api.util.ConfigurationUtils;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reports the records whose content is already in the vector database, before the expensive steps
+ * like the computation of the embeddings. It reads the content hashes stored by a vector-db-sink of
+ * the same pod, configured with "skip-unchanged" and the same store, id and content.
+ *
+ * <p>With action "drop" (the default) the unchanged records are dropped, with action "mark" they
+ * get the property "langstream-unchanged" so that the next steps can skip them with a "when"
+ * condition.
+ */
+public class SkipUnchangedAgent extends SingleRecordAgentProcessor {
+
+    static final String UNCHANGED_PROPERTY = "langstream-unchanged";
+
+    private ChangeDetector changeDetector;
+    private boolean drop;
+    private final AtomicLong unchangedCount = new AtomicLong();
+
+    @Override
+    public void init(Map<String, Object> configuration) throws Exception {
+        String action = ConfigurationUtils.getString("action", "drop", configuration);
+        drop =
+                switch (action) {
+                    case "drop" -> true;
+                    case "mark" -> false;
+                    default -> throw new IllegalArgumentException(
+                            "Unsupported action " + action + ", only drop and mark are supported");
+                };
+        changeDetector = ChangeDetector.create(configuration, false);
+    }
+
+    @Override
+    public List<Record> processRecord(Record record) throws Exception {
+        if (!changeDetector.detect(record).unchanged()) {
+            return List.of(record);
+        }
+        unchangedCount.incrementAndGet();
+        if (drop) {
+            return List.of();
+        }
+        List<Header> headers = new ArrayList<>(record.headers());
+        headers.add(SimpleRecord.SimpleHeader.of(UNCHANGED_PROPERTY, "true"));
+        return List.of(SimpleRecord.copyFrom(record).headers(headers).build());
+    }
+
+    @Override
+    protected Map<String, Object> buildAdditionalInfo() {
+        Map<String, Object> info = new HashMap<>(super.buildAdditionalInfo());
+        info.put("unchanged-records", unchangedCount.get());
+        return info;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (changeDetector != null) {
+            changeDetector.close();
+        }
+    }
+}
@@ -22,7 +22,7 @@ public class VectorAgentsCodeProvider implements AgentCodeProvider {
     @Override
     public boolean supports(String agentType) {
         return switch (agentType) {
-            case "query-vector-db", "vector-db-sink" -> true;
+            case "query-vector-db", "vector-db-sink", "re-rank", "skip-unchanged" -> true;
             default -> false;
         };
     }
@@ -32,6 +32,8 @@ public class VectorAgentsCodeProvider implements AgentCodeProvider {
         return switch (agentType) {
             case "query-vector-db" -> new QueryVectorDBAgent();
             case "vector-db-sink" -> new VectorDBSinkAgent();
+            case "re-rank" -> new ReRankAgent();
+            case "skip-unchanged" -> new SkipUnchangedAgent();
             default -> throw new IllegalStateException();
         };
     }
@@ -15,42 +15,162 @@
  */
 package ai.langstream.agents.vector;
 
+import ai.langstream.agents.vector.changes.ChangeDetector;
 import ai.langstream.api.database.VectorDatabaseWriter;
 import ai.langstream.api.database.VectorDatabaseWriterProviderRegistry;
 import ai.langstream.api.runner.code.AbstractAgentCode;
 import ai.langstream.api.runner.code.AgentSink;
 import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.util.ConfigurationUtils;
+import com.datastax.oss.streaming.ai.util.TransformFunctionUtil;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class VectorDBSinkAgent extends AbstractAgentCode implements AgentSink {
 
     private VectorDatabaseWriter writer;
+    private TransformFunctionUtil.BatchExecutor<RecordHolder> batchExecutor;
+    private ScheduledExecutorService executorService;
+
+    private ChangeDetector changeDetector;
+    private final AtomicLong unchangedCount = new AtomicLong();
+
+    private record RecordHolder(Record record, CompletableFuture<Object> handle) {}
 
     @Override
     public void init(Map<String, Object> configuration) throws Exception {
+        configuration = new HashMap<>(configuration);
+        Map<String, Object> skipUnchanged =
+                ConfigurationUtils.getMap("skip-unchanged", null, configuration);
+        configuration.remove("skip-unchanged");
+        if (skipUnchanged != null) {
+            changeDetector = ChangeDetector.create(skipUnchanged, true);
+        }
+
         Map<String, Object> datasourceConfiguration =
                 (Map<String, Object>) configuration.get("datasource");
         writer = VectorDatabaseWriterProviderRegistry.createWriter(datasourceConfiguration);
         writer.initialise(configuration);
+
+        // the records are sent one by one unless a flush interval is set
+        int batchSize = ConfigurationUtils.getInt("batch-size", 10, configuration);
+        int flushInterval = ConfigurationUtils.getInt("flush-interval", 0, configuration);
+        if (flushInterval > 0) {
+            executorService = Executors.newSingleThreadScheduledExecutor();
+        }
+        batchExecutor =
+                new TransformFunctionUtil.BatchExecutor<>(
+                        batchSize, this::upsertBatch, flushInterval, executorService);
     }
 
     @Override
-    public void start() {}
+    public void start() {
+        batchExecutor.start();
+    }
 
     @Override
     public void close() throws Exception {
+        if (batchExecutor != null) {
+            batchExecutor.stop();
+        }
+        if (executorService != null) {
+            executorService.shutdown();
+        }
         if (writer != null) {
             writer.close();
         }
+        if (changeDetector != null) {
+            changeDetector.close();
+        }
+    }
+
+    @Override
+    protected Map<String, Object> buildAdditionalInfo() {
+        if (changeDetector == null) {
+            return Map.of();
+        }
+        return Map.of("unchanged-records", unchangedCount.get());
     }
 
     @Override
     public CompletableFuture<?> write(Record record) {
-        // naive implementation, no batching
+        CompletableFuture<Object> handle = new CompletableFuture<>();
+        batchExecutor.add(new RecordHolder(record, handle));
+        return handle;
+    }
+
+    private void upsertBatch(List<RecordHolder> holders) {
+        if (changeDetector != null) {
+            holders = skipUnchanged(holders);
+            if (holders.isEmpty()) {
+                return;
+            }
+        }
         Map<String, Object> context = Map.of();
-        return writer.upsert(record, context);
+        List<Record> records = new ArrayList<>(holders.size());
+        for (RecordHolder holder : holders) {
+            records.add(holder.record());
+        }
+        List<CompletableFuture<?>> results;
+        try {
+            results = writer.upsertBatch(records, context);
+        } catch (Throwable error) {
+            holders.forEach(holder -> holder.handle().completeExceptionally(error));
+            return;
+        }
+        for (int i = 0; i < holders.size(); i++) {
+            CompletableFuture<Object> handle = holders.get(i).handle();
+            results.get(i)
+                    .whenComplete(
+                            (result, error) -> {
+                                if (error != null) {
+                                    handle.completeExceptionally(error);
+                                } else {
+                                    handle.complete(result);
+                                }
+                            });
+        }
+    }
+
+    /**
+     * Completes the handles of the records whose content is already in the database, the hashes of
+     * the other records are stored once they are written.
+     */
+    private List<RecordHolder> skipUnchanged(List<RecordHolder> holders) {
+        List<RecordHolder> changed = new ArrayList<>(holders.size());
+        for (RecordHolder holder : holders) {
+            ChangeDetector.Change change;
+            try {
+                change = changeDetector.detect(holder.record());
+            } catch (Throwable error) {
+                holder.handle().completeExceptionally(error);
+                continue;
+            }
+            if (change.unchanged()) {
+                unchangedCount.incrementAndGet();
+                holder.handle().complete(null);
+                continue;
+            }
+            CompletableFuture<Object> handle = new CompletableFuture<>();
+            handle.whenComplete(
+                    (result, error) -> {
+                        if (error == null) {
+                            changeDetector.written(change);
+                            holder.handle().complete(result);
+                        } else {
+                            holder.handle().completeExceptionally(error);
+                        }
+                    });
+            changed.add(new RecordHolder(holder.record(), handle));
+        }
+        return changed;
     }
 }
@@ -29,12 +29,12 @@ import com.datastax.oss.common.sink.util.SinkUtil;
 import com.datastax.oss.streaming.ai.datasource.CassandraDataSource;
 import com.dtsx.astra.sdk.db.DatabaseClient;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -55,10 +55,10 @@ public class CassandraWriter implements VectorDatabaseWriterProvider {
         return new CassandraVectorDatabaseWriter(datasourceConfig);
     }
 
-    private static class CassandraVectorDatabaseWriter implements VectorDatabaseWriter {
+    static class CassandraVectorDatabaseWriter implements VectorDatabaseWriter {
 
         private final Map<String, Object> datasourceConfig;
-        private final AbstractSinkTask processor = new SinkTaskProcessorImpl();
+        final SinkTaskProcessorImpl processor = new SinkTaskProcessorImpl();
 
         public CassandraVectorDatabaseWriter(Map<String, Object> datasourceConfig) {
             log.debug(
@@ -175,17 +175,31 @@ public class CassandraWriter implements VectorDatabaseWriterProvider {
             processor.start(configuration);
         }
 
-        private final AtomicReference<CompletableFuture<?>> currentRecordStatus =
-                new AtomicReference<>();
-
         @Override
         public CompletableFuture<?> upsert(Record record, Map<String, Object> context) {
-            // we must handle one record at a time
-            // so we block until the record is processed
-            CompletableFuture<?> handle = new CompletableFuture();
-            currentRecordStatus.set(handle);
-            processor.put(List.of(new LangStreamSinkRecordAdapter(record)));
-            return handle;
+            return upsertBatch(List.of(record), context).get(0);
+        }
+
+        /**
+         * Executes the statements of the records concurrently, the records of the same partition
+         * are grouped into unlogged batches by the sink (see maxNumberOfRecordsInBatch).
+         */
+        @Override
+        public List<CompletableFuture<?>> upsertBatch(
+                List<Record> records, Map<String, Object> context) {
+            List<LangStreamSinkRecordAdapter> adapters =
+                    records.stream()
+                            .map(LangStreamSinkRecordAdapter::new)
+                            .collect(Collectors.toList());
+            try {
+                // this blocks until all the records are processed
+                processor.put(new ArrayList<>(adapters));
+            } catch (Throwable error) {
+                adapters.forEach(adapter -> adapter.getHandle().completeExceptionally(error));
+            }
+            return adapters.stream()
+                    .<CompletableFuture<?>>map(LangStreamSinkRecordAdapter::getHandle)
+                    .collect(Collectors.toList());
         }
 
         @Override
@@ -193,7 +207,7 @@ public class CassandraWriter implements VectorDatabaseWriterProvider {
             processor.stop();
         }
 
-        private class SinkTaskProcessorImpl extends AbstractSinkTask {
+        class SinkTaskProcessorImpl extends AbstractSinkTask {
             @Override
             public String version() {
                 return "";
@@ -206,8 +220,7 @@ public class CassandraWriter implements VectorDatabaseWriterProvider {
 
             @Override
             protected void handleSuccess(AbstractSinkRecord abstractRecord) {
-                Record record = ((LangStreamSinkRecordAdapter) abstractRecord).getRecord();
-                currentRecordStatus.get().complete(null);
+                ((LangStreamSinkRecordAdapter) abstractRecord).getHandle().complete(null);
             }
 
             @Override
@@ -227,7 +240,8 @@ public class CassandraWriter implements VectorDatabaseWriterProvider {
                 // This can happen in multiple invocations of this callback concurrently, so
                 // we perform these checks/updates in a synchronized block. Presumably failures
                 // don't occur that often, so we don't have to be very fancy here.
-                Record record = ((LangStreamSinkRecordAdapter) abstractRecord).getRecord();
+                LangStreamSinkRecordAdapter adapter = (LangStreamSinkRecordAdapter) abstractRecord;
+                Record record = adapter.getRecord();
                 CassandraSinkConfig.IgnoreErrorsPolicy ignoreErrors =
                         processor.getInstanceState().getConfig().getIgnoreErrors();
                 boolean driverFailure = cql != null;
@@ -241,21 +255,31 @@ public class CassandraWriter implements VectorDatabaseWriterProvider {
                     log.warn("Error decoding/mapping Kafka record {}: {}", record, e.getMessage());
                 }
 
-                if (ignoreErrors == CassandraSinkConfig.IgnoreErrorsPolicy.NONE
-                        || (ignoreErrors == CassandraSinkConfig.IgnoreErrorsPolicy.DRIVER
-                                && !driverFailure)) {
-                    currentRecordStatus.get().completeExceptionally(e);
-                } else {
-                    currentRecordStatus.get().complete(null);
-                }
+                completeOnFailure(adapter, e, ignoreErrors, driverFailure);
 
                 failCounter.run();
             }
         }
 
-        private static class LangStreamSinkRecordAdapter implements AbstractSinkRecord {
+        /** Fails the handle of the record, unless the errors of this kind are ignored. */
+        static void completeOnFailure(
+                LangStreamSinkRecordAdapter adapter,
+                Throwable e,
+                CassandraSinkConfig.IgnoreErrorsPolicy ignoreErrors,
+                boolean driverFailure) {
+            if (ignoreErrors == CassandraSinkConfig.IgnoreErrorsPolicy.NONE
+                    || (ignoreErrors == CassandraSinkConfig.IgnoreErrorsPolicy.DRIVER
+                            && !driverFailure)) {
+                adapter.getHandle().completeExceptionally(e);
+            } else {
+                adapter.getHandle().complete(null);
+            }
+        }
+
+        static class LangStreamSinkRecordAdapter implements AbstractSinkRecord {
 
             @Getter private final Record record;
+            @Getter private final CompletableFuture<Object> handle = new CompletableFuture<>();
 
             public LangStreamSinkRecordAdapter(Record record) {
                 this.record = record;
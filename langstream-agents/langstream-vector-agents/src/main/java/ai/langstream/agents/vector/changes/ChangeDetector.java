@@ -0,0 +1,233 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.changes;
+
+import static ai.langstream.api.util.ConfigurationUtils.getInt;
+import static ai.langstream.api.util.ConfigurationUtils.getString;
+
+import ai.langstream.ai.agents.GenAIToolKitAgent;
+import ai.langstream.api.runner.code.Record;
+import com.datastax.oss.streaming.ai.TransformContext;
+import com.datastax.oss.streaming.ai.jstl.JstlEvaluator;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Detects the records whose content did not change since they were written to the vector database,
+ * with a {@link ContentHashStore}. The configuration is:
+ *
+ * <ul>
+ *   <li>store: the name of the store, the agents of the same pod with the same name share it, they
+ *       must have the same directory and snapshot-interval-seconds
+ *   <li>directory: where the hashes are saved, they are only kept in memory if not set
+ *   <li>id: the expression of the id of the document, "key" by default
+ *   <li>content: the expression of the content that is hashed, required. The sink and the processor
+ *       see different values (the processor runs before the embeddings are added), so it must
+ *       select fields that both of them see, like "value.text"
+ *   <li>snapshot-interval-seconds: how often the hashes are saved, 60 by default
+ * </ul>
+ */
+@Slf4j
+public final class ChangeDetector implements AutoCloseable {
+
+    private static final Map<String, SharedStore> STORES = new HashMap<>();
+
+    /** The id and the hash of the content of a record, the hash is null for a deletion. */
+    public record Change(String id, Long hash, boolean unchanged) {}
+
+    private final JstlEvaluator<Object> idFunction;
+    private final JstlEvaluator<Object> contentFunction;
+    private final boolean writer;
+    private boolean checked;
+    private SharedStore shared;
+
+    private ChangeDetector(Map<String, Object> configuration, boolean writer) throws Exception {
+        this.idFunction =
+                new JstlEvaluator<>(
+                        "${" + getString("id", "key", configuration) + "}", Object.class);
+        String content = getString("content", null, configuration);
+        if (content == null || content.isBlank()) {
+            throw new IllegalArgumentException(
+                    "The content expression of skip-unchanged is required, it must select the"
+                            + " fields of the value that the sink and the processor both see");
+        }
+        this.contentFunction = new JstlEvaluator<>("${" + content + "}", Object.class);
+        this.writer = writer;
+        this.shared = acquire(configuration, writer);
+    }
+
+    /**
+     * @param writer whether the changes are written to the vector database by this agent, and
+     *     stored with {@link #written(Change)}
+     */
+    public static ChangeDetector create(Map<String, Object> configuration, boolean writer)
+            throws Exception {
+        return new ChangeDetector(configuration, writer);
+    }
+
+    public Change detect(Record record) throws Exception {
+        if (!checked) {
+            checked = true;
+            // the other agents of the pod are started when the first record comes
+            if (!writer && shared.directory == null && shared.writers() == 0) {
+                log.warn(
+                        "The store {} of skip-unchanged has no directory and no vector-db-sink of"
+                                + " this pod writes to it, no record can be skipped",
+                        shared.name);
+            }
+        }
+        TransformContext context = GenAIToolKitAgent.recordToTransformContext(record, true);
+        Object id = idFunction.evaluate(context);
+        if (id == null) {
+            throw new IllegalArgumentException("The id of the record " + record + " is null");
+        }
+        if (record.value() == null) {
+            return new Change(id.toString(), null, false);
+        }
+        long hash = ContentHashStore.hash(contentFunction.evaluate(context));
+        return new Change(id.toString(), hash, shared.store.isUnchanged(id.toString(), hash));
+    }
+
+    /** Records that the change is now in the vector database. */
+    public void written(Change change) {
+        if (change.hash() == null) {
+            shared.store.remove(change.id());
+        } else {
+            shared.store.put(change.id(), change.hash());
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (shared != null) {
+            release(shared);
+            shared = null;
+        }
+    }
+
+    private static final class SharedStore {
+        private final String name;
+        private final String directory;
+        private final int snapshotIntervalSeconds;
+        private final ContentHashStore store;
+        private final ScheduledExecutorService snapshotExecutor;
+        private int references;
+        private int writers;
+
+        private SharedStore(String name, String directory, int snapshotIntervalSeconds)
+                throws Exception {
+            this.name = name;
+            this.directory = directory;
+            this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+            this.store = new ContentHashStore(directory == null ? null : Path.of(directory));
+            if (directory != null && snapshotIntervalSeconds > 0) {
+                snapshotExecutor = Executors.newSingleThreadScheduledExecutor();
+                snapshotExecutor.scheduleWithFixedDelay(
+                        () -> {
+                            try {
+                                store.save();
+                            } catch (Exception e) {
+                                log.error("Cannot save the content hashes {}", name, e);
+                            }
+                        },
+                        snapshotIntervalSeconds,
+                        snapshotIntervalSeconds,
+                        TimeUnit.SECONDS);
+            } else {
+                snapshotExecutor = null;
+            }
+        }
+
+        private int writers() {
+            synchronized (STORES) {
+                return writers;
+            }
+        }
+
+        private void close() throws Exception {
+            if (snapshotExecutor != null) {
+                snapshotExecutor.shutdown();
+                snapshotExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            store.save();
+        }
+    }
+
+    private static SharedStore acquire(Map<String, Object> configuration, boolean writer)
+            throws Exception {
+        String name = getString("store", "default", configuration);
+        String directory = getString("directory", null, configuration);
+        if (directory != null && directory.isBlank()) {
+            directory = null;
+        }
+        int snapshotIntervalSeconds = getInt("snapshot-interval-seconds", 60, configuration);
+        synchronized (STORES) {
+            SharedStore shared = STORES.get(name);
+            if (shared == null) {
+                shared = new SharedStore(name, directory, snapshotIntervalSeconds);
+                STORES.put(name, shared);
+            } else {
+                checkCompatible(shared, directory, snapshotIntervalSeconds);
+            }
+            shared.references++;
+            if (writer) {
+                shared.writers++;
+            }
+            return shared;
+        }
+    }
+
+    private static void checkCompatible(
+            SharedStore shared, String directory, int snapshotIntervalSeconds) {
+        if (!Objects.equals(directory, shared.directory)) {
+            throw new IllegalArgumentException(
+                    "The store "
+                            + shared.name
+                            + " of skip-unchanged is already open with directory "
+                            + shared.directory
+                            + ", not "
+                            + directory);
+        }
+        if (snapshotIntervalSeconds != shared.snapshotIntervalSeconds) {
+            throw new IllegalArgumentException(
+                    "The store "
+                            + shared.name
+                            + " of skip-unchanged is already open with snapshot-interval-seconds "
+                            + shared.snapshotIntervalSeconds
+                            + ", not "
+                            + snapshotIntervalSeconds);
+        }
+    }
+
+    private void release(SharedStore shared) throws Exception {
+        synchronized (STORES) {
+            if (writer) {
+                shared.writers--;
+            }
+            if (--shared.references > 0) {
+                return;
+            }
+            STORES.remove(shared.name);
+        }
+        shared.close();
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.changes;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Maps the ids of the documents (or chunks) written to a vector database to the hash of their
+ * content, to skip the writes of the documents that did not change.
+ *
+ * <p>The hashes are the first 64 bits of the SHA-256 of the content, kept in memory and saved to a
+ * single file of the directory, if any.
+ */
+@Slf4j
+public final class ContentHashStore {
+
+    static final String FILE = "content-hashes.bin";
+
+    private static final int MAGIC = 0x43485348;
+    private static final int VERSION = 1;
+    private static final ObjectMapper MAPPER =
+            new ObjectMapper().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    private final Path directory;
+    private final Map<String, Long> hashes = new HashMap<>();
+    private boolean dirty;
+
+    /**
+     * @param directory the directory of the snapshots, or null to keep the hashes in memory only
+     */
+    public ContentHashStore(Path directory) throws IOException {
+        this.directory = directory;
+        if (directory != null) {
+            Files.createDirectories(directory);
+            if (Files.exists(directory.resolve(FILE))) {
+                load();
+            }
+        }
+    }
+
+    /** The hash of a content, strings and byte arrays are hashed as is, the rest as JSON. */
+    public static long hash(Object content) {
+        byte[] bytes;
+        try {
+            if (content == null) {
+                bytes = new byte[0];
+            } else if (content instanceof byte[] b) {
+                bytes = b;
+            } else if (content instanceof String s) {
+                bytes = s.getBytes(StandardCharsets.UTF_8);
+            } else {
+                // the keys of the maps are sorted, the hash does not depend on their order
+                bytes = MAPPER.writeValueAsBytes(content);
+            }
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(bytes)).getLong();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Cannot hash " + content, e);
+        }
+    }
+
+    public synchronized boolean isUnchanged(String id, long hash) {
+        Long current = hashes.get(id);
+        return current != null && current == hash;
+    }
+
+    public synchronized void put(String id, long hash) {
+        Long previous = hashes.put(id, hash);
+        if (previous == null || previous != hash) {
+            dirty = true;
+        }
+    }
+
+    public synchronized void remove(String id) {
+        if (hashes.remove(id) != null) {
+            dirty = true;
+        }
+    }
+
+    public synchronized int size() {
+        return hashes.size();
+    }
+
+    /**
+     * Writes the hashes to the directory if they changed since the last save. The hashes are copied
+     * under the lock and written outside it, the writes of the records are not blocked by the I/O.
+     */
+    public void save() throws IOException {
+        if (directory == null) {
+            return;
+        }
+        Map<String, Long> snapshot;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            snapshot = new HashMap<>(hashes);
+            dirty = false;
+        }
+        try {
+            write(snapshot);
+        } catch (IOException | RuntimeException e) {
+            // the next save retries
+            markDirty();
+            throw e;
+        }
+        log.info("Saved {} content hashes to {}", snapshot.size(), directory);
+    }
+
+    private synchronized void markDirty() {
+        dirty = true;
+    }
+
+    private void write(Map<String, Long> snapshot) throws IOException {
+        Path temporary = directory.resolve(FILE + ".tmp");
+        try (DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Long> entry : snapshot.entrySet()) {
+                byte[] id = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(id.length);
+                out.write(id);
+                out.writeLong(entry.getValue());
+            }
+        }
+        Files.move(
+                temporary,
+                directory.resolve(FILE),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in =
+                new DataInputStream(
+                        new BufferedInputStream(Files.newInputStream(directory.resolve(FILE))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unsupported content hashes file in " + directory);
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                byte[] id = new byte[in.readInt()];
+                in.readFully(id);
+                hashes.put(new String(id, StandardCharsets.UTF_8), in.readLong());
+            }
+        }
+        log.info("Loaded {} content hashes from {}", hashes.size(), directory);
+    }
+}
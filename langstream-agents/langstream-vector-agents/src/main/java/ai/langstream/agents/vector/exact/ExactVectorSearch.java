@@ -0,0 +1,131 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.exact;
+
+import ai.langstream.agents.vector.Similarity;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Exact k-NN over a small set of vectors, like the candidates returned by a vector database or a
+ * per-tenant corpus of a few thousand vectors. The vectors are copied to a single float array so
+ * that the scan reads the memory sequentially.
+ */
+public final class ExactVectorSearch {
+
+    public record Match(int index, float score) {}
+
+    private static final Comparator<Match> BY_SCORE = Comparator.comparingDouble(Match::score);
+
+    private final float[] vectors;
+    private final int dimension;
+    private final int count;
+    private final Similarity similarity;
+
+    /**
+     * @param vectors the vectors, one after the other
+     * @param dimension the number of floats of each vector
+     */
+    public ExactVectorSearch(float[] vectors, int dimension, Similarity similarity) {
+        if (dimension <= 0 || vectors.length % dimension != 0) {
+            throw new IllegalArgumentException(
+                    "The length of the vectors "
+                            + vectors.length
+                            + " is not a multiple of the dimension "
+                            + dimension);
+        }
+        this.vectors = vectors;
+        this.dimension = dimension;
+        this.count = vectors.length / dimension;
+        this.similarity = similarity;
+    }
+
+    public static ExactVectorSearch of(List<float[]> vectors, Similarity similarity) {
+        if (vectors.isEmpty()) {
+            return new ExactVectorSearch(new float[0], 1, similarity);
+        }
+        int dimension = vectors.get(0).length;
+        float[] contiguous = new float[vectors.size() * dimension];
+        for (int i = 0; i < vectors.size(); i++) {
+            float[] vector = vectors.get(i);
+            if (vector.length != dimension) {
+                throw new IllegalArgumentException(
+                        "The vector "
+                                + i
+                                + " has dimension "
+                                + vector.length
+                                + ", expected "
+                                + dimension);
+            }
+            System.arraycopy(vector, 0, contiguous, i * dimension, dimension);
+        }
+        return new ExactVectorSearch(contiguous, dimension, similarity);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    /** The similarity of the query with the vector at the given index, higher is closer. */
+    public float score(float[] query, int index) {
+        int offset = index * dimension;
+        return switch (similarity) {
+            case COSINE -> VectorKernels.cosine(query, 0, vectors, offset, dimension);
+            case DOT_PRODUCT -> VectorKernels.dot(query, 0, vectors, offset, dimension);
+            case EUCLIDEAN -> 1
+                    / (1 + VectorKernels.squareDistance(query, 0, vectors, offset, dimension));
+        };
+    }
+
+    /**
+     * The k closest vectors, by decreasing score. The vectors with the same score keep their order.
+     */
+    public List<Match> search(float[] query, int k) {
+        if (query.length != dimension && count > 0) {
+            throw new IllegalArgumentException(
+                    "The query has dimension " + query.length + ", expected " + dimension);
+        }
+        if (k <= 0) {
+            return List.of();
+        }
+        // min-heap of the best k, the first of the ties is kept
+        PriorityQueue<Match> best =
+                new PriorityQueue<>(
+                        Math.min(k, Math.max(count, 1)),
+                        BY_SCORE.thenComparing(Comparator.comparingInt(Match::index).reversed()));
+        for (int i = 0; i < count; i++) {
+            float score = score(query, i);
+            if (best.size() < k) {
+                best.add(new Match(i, score));
+            } else if (score > best.peek().score()) {
+                best.poll();
+                best.add(new Match(i, score));
+            }
+        }
+        List<Match> result = new ArrayList<>(best);
+        result.sort(
+                Collections.reverseOrder(
+                        BY_SCORE.thenComparing(Comparator.comparingInt(Match::index).reversed())));
+        return result;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.exact;
+
+/**
+ * The similarity functions over vectors stored contiguously in float arrays. The loops keep four
+ * independent sums, so that the additions do not wait for each other and the JIT can schedule them
+ * in parallel.
+ */
+final class VectorKernels {
+
+    private VectorKernels() {}
+
+    /** The dot product of a[aOffset..aOffset+length] and b[bOffset..bOffset+length]. */
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum0 = 0;
+        float sum1 = 0;
+        float sum2 = 0;
+        float sum3 = 0;
+        int i = 0;
+        for (int bound = length & ~3; i < bound; i += 4) {
+            sum0 += a[aOffset + i] * b[bOffset + i];
+            sum1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            sum2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            sum3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            sum0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    /** The cosine similarity, in a single pass over the two vectors. */
+    static float cosine(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float dot0 = 0;
+        float dot1 = 0;
+        float normA0 = 0;
+        float normA1 = 0;
+        float normB0 = 0;
+        float normB1 = 0;
+        int i = 0;
+        for (int bound = length & ~1; i < bound; i += 2) {
+            float x0 = a[aOffset + i];
+            float y0 = b[bOffset + i];
+            float x1 = a[aOffset + i + 1];
+            float y1 = b[bOffset + i + 1];
+            dot0 += x0 * y0;
+            dot1 += x1 * y1;
+            normA0 += x0 * x0;
+            normA1 += x1 * x1;
+            normB0 += y0 * y0;
+            normB1 += y1 * y1;
+        }
+        if (i < length) {
+            float x = a[aOffset + i];
+            float y = b[bOffset + i];
+            dot0 += x * y;
+            normA0 += x * x;
+            normB0 += y * y;
+        }
+        return cosine(dot0 + dot1, normA0 + normA1, normB0 + normB1);
+    }
+
+    /** The square of the euclidean distance. */
+    static float squareDistance(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum0 = 0;
+        float sum1 = 0;
+        float sum2 = 0;
+        float sum3 = 0;
+        int i = 0;
+        for (int bound = length & ~3; i < bound; i += 4) {
+            float d0 = a[aOffset + i] - b[bOffset + i];
+            float d1 = a[aOffset + i + 1] - b[bOffset + i + 1];
+            float d2 = a[aOffset + i + 2] - b[bOffset + i + 2];
+            float d3 = a[aOffset + i + 3] - b[bOffset + i + 3];
+            sum0 += d0 * d0;
+            sum1 += d1 * d1;
+            sum2 += d2 * d2;
+            sum3 += d3 * d3;
+        }
+        for (; i < length; i++) {
+            float difference = a[aOffset + i] - b[bOffset + i];
+            sum0 += difference * difference;
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    static float cosine(float dot, float normA, float normB) {
+        if (normA == 0 || normB == 0) {
+            return 0;
+        }
+        return (float) (dot / Math.sqrt((double) normA * normB));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.hnsw;
+
+import ai.langstream.agents.vector.Similarity;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+/**
+ * The configuration of an HNSW index. The index lives in the JVM: the data sources and the writers
+ * of the same pod share it, the agents of other pods don't see its writes. A query-vector-db agent
+ * in another pod than the vector-db-sink only sees the snapshots that the sink uploads to S3, every
+ * snapshot-interval-seconds, and only if it reloads them every reload-interval-seconds.
+ */
+@Data
+public final class HnswConfig {
+    @JsonProperty(value = "index-name")
+    private String indexName = "default";
+
+    /** The directory of the index files, if not set the index is kept in memory. */
+    @JsonProperty(value = "directory")
+    private String directory;
+
+    /** The dimension of the vectors, if not set it is the dimension of the first vector. */
+    @JsonProperty(value = "dimension")
+    private int dimension;
+
+    @JsonProperty(value = "similarity")
+    private String similarity = "cosine";
+
+    /** The max number of links of a node on the upper layers, twice on the bottom layer. */
+    @JsonProperty(value = "m")
+    private int m = 16;
+
+    @JsonProperty(value = "ef-construction")
+    private int efConstruction = 100;
+
+    /** The default number of candidates explored by a query. */
+    @JsonProperty(value = "ef-search")
+    private int efSearch = 64;
+
+    /** Save the index to the directory (and to S3) periodically, 0 only saves it on close. */
+    @JsonProperty(value = "snapshot-interval-seconds")
+    private int snapshotIntervalSeconds;
+
+    /**
+     * Reload the last S3 snapshot periodically if it is newer than the one loaded, 0 only restores
+     * it at startup. The index is never reloaded when a writer of the same pod uses it.
+     */
+    @JsonProperty(value = "reload-interval-seconds")
+    private int reloadIntervalSeconds;
+
+    /** The bucket of the S3 snapshots, if not set the snapshots are only on the local disk. */
+    @JsonProperty(value = "snapshot-bucket")
+    private String snapshotBucket;
+
+    /** The prefix of the S3 snapshots, the index name by default. */
+    @JsonProperty(value = "snapshot-prefix")
+    private String snapshotPrefix;
+
+    @JsonProperty(value = "snapshot-endpoint")
+    private String snapshotEndpoint = "https://s3.amazonaws.com";
+
+    @JsonProperty(value = "snapshot-access-key")
+    private String snapshotAccessKey;
+
+    @JsonProperty(value = "snapshot-secret-key")
+    private String snapshotSecretKey;
+
+    @JsonProperty(value = "snapshot-region")
+    private String snapshotRegion = "";
+
+    Similarity getSimilarityType() {
+        return Similarity.of(similarity);
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.hnsw;
+
+import ai.langstream.ai.agents.datasource.DataSourceProvider;
+import com.datastax.oss.streaming.ai.datasource.QueryResult;
+import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import lombok.Data;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Queries an {@link HnswIndex} of this JVM.
+ *
+ * <p>The query is a JSON document, like {"vector": ?, "topK": 5, "filter": {"genre": "comedy"}}.
+ * The rows contain the id, the similarity and the metadata of the vectors.
+ */
+@Slf4j
+public class HnswDataSource implements DataSourceProvider {
+
+    static final ObjectMapper MAPPER =
+            new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @Override
+    public boolean supports(Map<String, Object> dataSourceConfig) {
+        return "hnsw".equals(dataSourceConfig.get("service"));
+    }
+
+    @Override
+    public QueryStepDataSource createDataSourceImplementation(
+            Map<String, Object> dataSourceConfig) {
+        return new HnswQueryStepDataSource(MAPPER.convertValue(dataSourceConfig, HnswConfig.class));
+    }
+
+    private static class HnswQueryStepDataSource implements QueryStepDataSource {
+
+        private final HnswConfig config;
+        private HnswIndexes.SharedIndex shared;
+
+        HnswQueryStepDataSource(HnswConfig config) {
+            this.config = config;
+        }
+
+        @Override
+        @SneakyThrows
+        public void initialize(Map<String, Object> dataSourceConfig) {
+            shared = HnswIndexes.acquire(config, false);
+        }
+
+        @Override
+        public List<Map<String, String>> fetchData(String query, List<Object> params) {
+            return search(query, params).stream()
+                    .map(HnswQueryStepDataSource::toStringMap)
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public CompletableFuture<QueryResult> fetchResultAsync(String query, List<Object> params) {
+            try {
+                return CompletableFuture.completedFuture(
+                        QueryResult.fromMaps(search(query, params)));
+            } catch (Throwable error) {
+                return CompletableFuture.failedFuture(error);
+            }
+        }
+
+        private List<Map<String, Object>> search(String query, List<Object> params) {
+            Query parsedQuery = parse(query, params);
+            if (parsedQuery.vector == null) {
+                throw new IllegalArgumentException("The query vector is required");
+            }
+            float[] vector = new float[parsedQuery.vector.size()];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = parsedQuery.vector.get(i);
+            }
+            Predicate<Map<String, Object>> filter =
+                    parsedQuery.filter == null || parsedQuery.filter.isEmpty()
+                            ? null
+                            : metadata -> matches(metadata, parsedQuery.filter);
+            int ef = parsedQuery.ef > 0 ? parsedQuery.ef : config.getEfSearch();
+            List<HnswIndex.SearchResult> results =
+                    shared.index()
+                            .search(
+                                    vector,
+                                    parsedQuery.topK,
+                                    ef,
+                                    filter,
+                                    parsedQuery.includeValues);
+            List<Map<String, Object>> rows = new ArrayList<>(results.size());
+            for (HnswIndex.SearchResult result : results) {
+                Map<String, Object> row = new HashMap<>();
+                if (parsedQuery.includeMetadata) {
+                    row.putAll(result.metadata());
+                }
+                row.put("id", result.id());
+                row.put("similarity", result.score());
+                if (result.vector() != null) {
+                    row.put("vector", result.vector());
+                }
+                rows.add(row);
+            }
+            return rows;
+        }
+
+        private static Map<String, String> toStringMap(Map<String, Object> row) {
+            Map<String, String> result = new HashMap<>();
+            row.forEach(
+                    (key, value) -> {
+                        if (value instanceof float[] vector) {
+                            List<Float> values = new ArrayList<>(vector.length);
+                            for (float v : vector) {
+                                values.add(v);
+                            }
+                            value = values;
+                        }
+                        result.put(key, value != null ? value.toString() : null);
+                    });
+            return result;
+        }
+
+        @Override
+        @SneakyThrows
+        public void close() {
+            if (shared != null) {
+                HnswIndexes.release(shared);
+                shared = null;
+            }
+        }
+    }
+
+    /**
+     * Replaces the question marks of the query with the parameters, as JSON. The question marks
+     * inside the JSON strings of the query are kept.
+     */
+    @SneakyThrows
+    static Query parse(String query, List<Object> params) {
+        if (query != null && !params.isEmpty()) {
+            StringBuilder result = new StringBuilder(query.length());
+            int next = 0;
+            boolean inString = false;
+            for (int i = 0; i < query.length(); i++) {
+                char c = query.charAt(i);
+                if (inString) {
+                    if (c == '\\' && i + 1 < query.length()) {
+                        result.append(c);
+                        c = query.charAt(++i);
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                } else if (c == '"') {
+                    inString = true;
+                } else if (c == '?' && next < params.size()) {
+                    result.append(MAPPER.writeValueAsString(params.get(next++)));
+                    continue;
+                }
+                result.append(c);
+            }
+            query = result.toString();
+        }
+        return MAPPER.readValue(query, Query.class);
+    }
+
+    /**
+     * Evaluates a filter on the metadata. A field is compared to a value, or to the operators $eq,
+     * $ne, $gt, $gte, $lt, $lte, $in and $nin. The filters in $and and $or are combined.
+     */
+    static boolean matches(Map<String, Object> metadata, Map<String, Object> filter) {
+        for (Map.Entry<String, Object> entry : filter.entrySet()) {
+            String key = entry.getKey();
+            Object condition = entry.getValue();
+            boolean result;
+            if (key.equals("$and")) {
+                result =
+                        asFilters(condition).stream().allMatch(nested -> matches(metadata, nested));
+            } else if (key.equals("$or")) {
+                result =
+                        asFilters(condition).stream().anyMatch(nested -> matches(metadata, nested));
+            } else if (condition instanceof Map<?, ?> operators) {
+                result = true;
+                for (Map.Entry<?, ?> operator : operators.entrySet()) {
+                    if (!evaluate(
+                            operator.getKey().toString(), metadata.get(key), operator.getValue())) {
+                        result = false;
+                        break;
+                    }
+                }
+            } else {
+                result = equal(metadata.get(key), condition);
+            }
+            if (!result) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Map<String, Object>> asFilters(Object condition) {
+        if (!(condition instanceof List<?> list)) {
+            throw new IllegalArgumentException("$and and $or require a list of filters");
+        }
+        return (List<Map<String, Object>>) list;
+    }
+
+    private static boolean evaluate(String operator, Object value, Object operand) {
+        return switch (operator) {
+            case "$eq" -> equal(value, operand);
+            case "$ne" -> !equal(value, operand);
+            case "$gt" -> compare(value, operand, result -> result > 0);
+            case "$gte" -> compare(value, operand, result -> result >= 0);
+            case "$lt" -> compare(value, operand, result -> result < 0);
+            case "$lte" -> compare(value, operand, result -> result <= 0);
+            case "$in" -> asCollection(operand).stream().anyMatch(item -> equal(value, item));
+            case "$nin" -> asCollection(operand).stream().noneMatch(item -> equal(value, item));
+            default -> throw new IllegalArgumentException("Unsupported operator " + operator);
+        };
+    }
+
+    private static Collection<?> asCollection(Object operand) {
+        if (operand instanceof Collection<?> collection) {
+            return collection;
+        }
+        throw new IllegalArgumentException("$in and $nin require a list of values");
+    }
+
+    private static boolean equal(Object value, Object operand) {
+        if (value instanceof Number a && operand instanceof Number b) {
+            return a.doubleValue() == b.doubleValue();
+        }
+        return Objects.equals(value, operand);
+    }
+
+    /** Compares numbers and strings, the other values never match. */
+    private static boolean compare(Object value, Object operand, IntPredicate test) {
+        if (value instanceof Number a && operand instanceof Number b) {
+            return test.test(Double.compare(a.doubleValue(), b.doubleValue()));
+        }
+        if (value instanceof String a && operand instanceof String b) {
+            return test.test(a.compareTo(b));
+        }
+        return false;
+    }
+
+    @Data
+    public static final class Query {
+        @JsonProperty("vector")
+        private List<Float> vector;
+
+        @JsonProperty("filter")
+        private Map<String, Object> filter;
+
+        @JsonProperty("topK")
+        private int topK = 1;
+
+        @JsonProperty("includeMetadata")
+        private boolean includeMetadata = true;
+
+        @JsonProperty("includeValues")
+        private boolean includeValues = false;
+
+        /** The number of candidates explored, the ef-search of the datasource by default. */
+        @JsonProperty("ef")
+        private int ef;
+    }
+}
@@ -0,0 +1,598 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.hnsw;
+
+import ai.langstream.agents.vector.Similarity;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hierarchical Navigable Small World graph (https://arxiv.org/abs/1603.09320) over the vectors of a
+ * {@link VectorStorage}.
+ *
+ * <p>Each vector has an id and metadata. Upserting an existing id, or deleting it, marks the old
+ * node as deleted: it is still used to navigate the graph but it is not returned anymore. The
+ * searches run in parallel, the writes are serialized.
+ */
+@Slf4j
+public final class HnswIndex implements AutoCloseable {
+
+    static final String VECTORS_FILE = "vectors.bin";
+    static final String GRAPH_FILE = "graph.bin";
+
+    private static final int MAGIC = 0x484E5357;
+    private static final int VERSION = 1;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public record SearchResult(
+            String id, float score, Map<String, Object> metadata, float[] vector) {}
+
+    private static final class Node {
+        final String id;
+        final Map<String, Object> metadata;
+        final int[][] neighbors;
+        final int[] neighborCounts;
+        boolean deleted;
+
+        Node(String id, Map<String, Object> metadata, int level, int m, int m0) {
+            this.id = id;
+            this.metadata = metadata;
+            this.neighbors = new int[level + 1][];
+            this.neighborCounts = new int[level + 1];
+            for (int l = 0; l <= level; l++) {
+                // one more slot, the list is pruned after adding a neighbor
+                neighbors[l] = new int[(l == 0 ? m0 : m) + 1];
+            }
+        }
+
+        int level() {
+            return neighbors.length - 1;
+        }
+    }
+
+    private record Candidate(int node, float score) {}
+
+    private static final Comparator<Candidate> BEST_FIRST =
+            Comparator.comparingDouble(Candidate::score).reversed();
+    private static final Comparator<Candidate> WORST_FIRST =
+            Comparator.comparingDouble(Candidate::score);
+
+    private final Similarity similarity;
+    private final int m;
+    private final int m0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Path directory;
+    private final Random random;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final List<Node> nodes = new ArrayList<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private float[] norms = new float[16];
+    private VectorStorage storage;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private int deletedCount;
+
+    /**
+     * @param directory the directory of the files of the index, null to keep the index in memory
+     * @param dimension the dimension of the vectors, 0 to take it from the first vector
+     */
+    public HnswIndex(
+            Path directory,
+            int dimension,
+            Similarity similarity,
+            int m,
+            int efConstruction,
+            long seed)
+            throws IOException {
+        if (m < 2) {
+            throw new IllegalArgumentException("m must be at least 2");
+        }
+        if (efConstruction < 1) {
+            throw new IllegalArgumentException("ef-construction must be greater than 0");
+        }
+        this.directory = directory;
+        this.similarity = similarity;
+        this.m = m;
+        this.m0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.random = new Random(seed);
+        if (directory != null) {
+            Files.createDirectories(directory);
+            if (Files.exists(directory.resolve(GRAPH_FILE))) {
+                load(dimension);
+                return;
+            }
+        }
+        if (dimension > 0) {
+            storage = createStorage(dimension, 0);
+        }
+    }
+
+    private VectorStorage createStorage(int dimension, int size) throws IOException {
+        if (directory == null) {
+            return VectorStorage.inMemory(dimension);
+        }
+        return VectorStorage.mapped(directory.resolve(VECTORS_FILE), dimension, size);
+    }
+
+    public Similarity getSimilarity() {
+        return similarity;
+    }
+
+    public int getDimension() {
+        lock.readLock().lock();
+        try {
+            return storage == null ? 0 : storage.dimension();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** The number of vectors that can be found. */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodes.size() - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void upsert(String id, float[] vector, Map<String, Object> metadata) throws IOException {
+        if (id == null) {
+            throw new IllegalArgumentException("The id is required");
+        }
+        lock.writeLock().lock();
+        try {
+            if (storage == null) {
+                storage = createStorage(vector.length, 0);
+            }
+            int node = storage.add(vector);
+            markDeleted(id);
+            if (node == norms.length) {
+                norms = Arrays.copyOf(norms, norms.length * 2);
+            }
+            norms[node] = norm(vector);
+            int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+            // the metadata can contain null values
+            Map<String, Object> nodeMetadata =
+                    metadata == null
+                            ? Map.of()
+                            : Collections.unmodifiableMap(new HashMap<>(metadata));
+            nodes.add(new Node(id, nodeMetadata, level, m, m0));
+            ids.put(id, node);
+            insert(node, vector, level);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean delete(String id) {
+        lock.writeLock().lock();
+        try {
+            return markDeleted(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean markDeleted(String id) {
+        Integer previous = ids.remove(id);
+        if (previous == null) {
+            return false;
+        }
+        nodes.get(previous).deleted = true;
+        deletedCount++;
+        return true;
+    }
+
+    private void insert(int node, float[] vector, int level) {
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+        Candidate entry = new Candidate(entryPoint, score(entryPoint, vector, norms[node]));
+        for (int l = maxLevel; l > level; l--) {
+            entry = greedySearch(vector, norms[node], entry, l);
+        }
+        List<Candidate> entries = List.of(entry);
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> candidates =
+                    searchLayer(vector, norms[node], entries, efConstruction, l);
+            int maxConnections = l == 0 ? m0 : m;
+            List<Candidate> selected = selectNeighbors(candidates, maxConnections);
+            Node current = nodes.get(node);
+            for (Candidate neighbor : selected) {
+                current.neighbors[l][current.neighborCounts[l]++] = neighbor.node();
+                connect(neighbor.node(), node, neighbor.score(), l, maxConnections);
+            }
+            entries = candidates;
+        }
+        if (level > maxLevel) {
+            entryPoint = node;
+            maxLevel = level;
+        }
+    }
+
+    /** Adds the link from the node to the new neighbor, pruning the list when it is full. */
+    private void connect(int node, int neighbor, float score, int level, int maxConnections) {
+        Node current = nodes.get(node);
+        int[] links = current.neighbors[level];
+        links[current.neighborCounts[level]++] = neighbor;
+        if (current.neighborCounts[level] <= maxConnections) {
+            return;
+        }
+        float[] vector = storage.get(node);
+        List<Candidate> candidates = new ArrayList<>(current.neighborCounts[level]);
+        for (int i = 0; i < current.neighborCounts[level]; i++) {
+            int link = links[i];
+            candidates.add(
+                    new Candidate(
+                            link, link == neighbor ? score : score(link, vector, norms[node])));
+        }
+        candidates.sort(BEST_FIRST);
+        List<Candidate> selected = selectNeighbors(candidates, maxConnections);
+        for (int i = 0; i < selected.size(); i++) {
+            links[i] = selected.get(i).node();
+        }
+        current.neighborCounts[level] = selected.size();
+    }
+
+    /**
+     * The heuristic of the paper: a candidate is kept if it is closer to the base node than to the
+     * neighbors already selected, so that the links go in different directions. The list is filled
+     * up with the closest discarded candidates.
+     */
+    private List<Candidate> selectNeighbors(List<Candidate> candidates, int maxConnections) {
+        if (candidates.size() <= maxConnections) {
+            return candidates;
+        }
+        List<Candidate> selected = new ArrayList<>(maxConnections);
+        List<Candidate> discarded = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (selected.size() >= maxConnections) {
+                break;
+            }
+            float[] vector = storage.get(candidate.node());
+            float norm = norms[candidate.node()];
+            boolean keep = true;
+            for (int i = 0; i < selected.size(); i++) {
+                if (score(selected.get(i).node(), vector, norm) > candidate.score()) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected.add(candidate);
+            } else {
+                discarded.add(candidate);
+            }
+        }
+        for (int i = 0; i < discarded.size() && selected.size() < maxConnections; i++) {
+            selected.add(discarded.get(i));
+        }
+        return selected;
+    }
+
+    private Candidate greedySearch(float[] query, float queryNorm, Candidate entry, int level) {
+        Candidate best = entry;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Node node = nodes.get(best.node());
+            int[] links = node.neighbors[level];
+            for (int i = 0; i < node.neighborCounts[level]; i++) {
+                float score = score(links[i], query, queryNorm);
+                if (score > best.score()) {
+                    best = new Candidate(links[i], score);
+                    changed = true;
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Returns the ef nodes closest to the query found from the entries, best first. */
+    private List<Candidate> searchLayer(
+            float[] query, float queryNorm, List<Candidate> entries, int ef, int level) {
+        BitSet visited = new BitSet(nodes.size());
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(BEST_FIRST);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(WORST_FIRST);
+        for (Candidate entry : entries) {
+            if (!visited.get(entry.node())) {
+                visited.set(entry.node());
+                candidates.add(entry);
+                results.add(entry);
+            }
+        }
+        while (results.size() > ef) {
+            results.poll();
+        }
+        while (!candidates.isEmpty()) {
+            Candidate current = candidates.poll();
+            if (results.size() >= ef && current.score() < results.peek().score()) {
+                break;
+            }
+            Node node = nodes.get(current.node());
+            int[] links = node.neighbors[level];
+            for (int i = 0; i < node.neighborCounts[level]; i++) {
+                int link = links[i];
+                if (visited.get(link)) {
+                    continue;
+                }
+                visited.set(link);
+                float score = score(link, query, queryNorm);
+                if (results.size() < ef || score > results.peek().score()) {
+                    Candidate candidate = new Candidate(link, score);
+                    candidates.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(BEST_FIRST);
+        return sorted;
+    }
+
+    /**
+     * Returns the k vectors most similar to the query, that are accepted by the filter, best first.
+     *
+     * @param ef the number of candidates explored, it is increased if not enough vectors are
+     *     accepted by the filter
+     */
+    public List<SearchResult> search(
+            float[] query,
+            int k,
+            int ef,
+            Predicate<Map<String, Object>> filter,
+            boolean includeVectors) {
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || k <= 0) {
+                return List.of();
+            }
+            if (query.length != storage.dimension()) {
+                throw new IllegalArgumentException(
+                        "Expected a vector of dimension "
+                                + storage.dimension()
+                                + ", got "
+                                + query.length);
+            }
+            float queryNorm = norm(query);
+            Candidate entry = new Candidate(entryPoint, score(entryPoint, query, queryNorm));
+            for (int l = maxLevel; l > 0; l--) {
+                entry = greedySearch(query, queryNorm, entry, l);
+            }
+            int currentEf = Math.max(ef, k);
+            while (true) {
+                List<Candidate> candidates =
+                        searchLayer(query, queryNorm, List.of(entry), currentEf, 0);
+                List<SearchResult> results = new ArrayList<>(k);
+                for (Candidate candidate : candidates) {
+                    Node node = nodes.get(candidate.node());
+                    if (node.deleted || (filter != null && !filter.test(node.metadata))) {
+                        continue;
+                    }
+                    results.add(
+                            new SearchResult(
+                                    node.id,
+                                    candidate.score(),
+                                    node.metadata,
+                                    includeVectors ? storage.get(candidate.node()) : null));
+                    if (results.size() == k) {
+                        break;
+                    }
+                }
+                if (results.size() == k || currentEf >= nodes.size()) {
+                    return results;
+                }
+                currentEf = Math.min(currentEf * 4, nodes.size());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private float score(int node, float[] query, float queryNorm) {
+        return switch (similarity) {
+            case COSINE -> {
+                float norms = this.norms[node] * queryNorm;
+                yield norms == 0 ? 0 : storage.dot(node, query) / norms;
+            }
+            case DOT_PRODUCT -> storage.dot(node, query);
+            case EUCLIDEAN -> 1 / (1 + storage.squareDistance(node, query));
+        };
+    }
+
+    private static float norm(float[] vector) {
+        double sum = 0;
+        for (float v : vector) {
+            sum += v * v;
+        }
+        return (float) Math.sqrt(sum);
+    }
+
+    /**
+     * Writes the graph to the directory. The vectors are already in the directory, they are
+     * flushed.
+     *
+     * @return the number of bytes of the vectors file used by the saved graph, the file is larger
+     *     because its segments are mapped in advance. 0 if the index is empty and nothing is saved.
+     */
+    public long save() throws IOException {
+        if (directory == null) {
+            throw new IllegalStateException("The index is in memory");
+        }
+        // the read lock is enough to block the writes
+        lock.readLock().lock();
+        try {
+            if (storage == null) {
+                return 0;
+            }
+            storage.flush();
+            Path temporary = directory.resolve(GRAPH_FILE + ".tmp");
+            try (DataOutputStream out =
+                    new DataOutputStream(
+                            new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(storage.dimension());
+                out.writeUTF(similarity.name());
+                out.writeInt(m);
+                out.writeInt(nodes.size());
+                out.writeInt(entryPoint);
+                out.writeInt(maxLevel);
+                for (Node node : nodes) {
+                    writeBytes(out, node.id.getBytes(StandardCharsets.UTF_8));
+                    out.writeBoolean(node.deleted);
+                    writeBytes(out, MAPPER.writeValueAsBytes(node.metadata));
+                    out.writeInt(node.level());
+                    for (int l = 0; l <= node.level(); l++) {
+                        out.writeInt(node.neighborCounts[l]);
+                        for (int i = 0; i < node.neighborCounts[l]; i++) {
+                            out.writeInt(node.neighbors[l][i]);
+                        }
+                    }
+                }
+            }
+            Files.move(
+                    temporary,
+                    directory.resolve(GRAPH_FILE),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            log.info("Saved {} vectors to {}", nodes.size(), directory);
+            return (long) storage.size() * storage.dimension() * Float.BYTES;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void load(int dimension) throws IOException {
+        try (DataInputStream in =
+                new DataInputStream(
+                        new BufferedInputStream(
+                                Files.newInputStream(directory.resolve(GRAPH_FILE))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unsupported index file in " + directory);
+            }
+            int savedDimension = in.readInt();
+            if (dimension > 0 && dimension != savedDimension) {
+                throw new IOException(
+                        "The index in "
+                                + directory
+                                + " has dimension "
+                                + savedDimension
+                                + ", expected "
+                                + dimension);
+            }
+            Similarity savedSimilarity = Similarity.valueOf(in.readUTF());
+            int savedM = in.readInt();
+            if (savedSimilarity != similarity || savedM != m) {
+                throw new IOException(
+                        "The index in "
+                                + directory
+                                + " was built with similarity "
+                                + savedSimilarity
+                                + " and m "
+                                + savedM);
+            }
+            int count = in.readInt();
+            entryPoint = in.readInt();
+            maxLevel = in.readInt();
+            storage = createStorage(savedDimension, count);
+            norms = new float[Math.max(16, count)];
+            for (int n = 0; n < count; n++) {
+                String id = new String(readBytes(in), StandardCharsets.UTF_8);
+                boolean deleted = in.readBoolean();
+                Map<String, Object> metadata =
+                        MAPPER.readValue(
+                                readBytes(in), new TypeReference<Map<String, Object>>() {});
+                int level = in.readInt();
+                Node node = new Node(id, metadata, level, m, m0);
+                for (int l = 0; l <= level; l++) {
+                    int neighborCount = in.readInt();
+                    for (int i = 0; i < neighborCount; i++) {
+                        node.neighbors[l][i] = in.readInt();
+                    }
+                    node.neighborCounts[l] = neighborCount;
+                }
+                node.deleted = deleted;
+                nodes.add(node);
+                norms[n] = norm(storage.get(n));
+                if (deleted) {
+                    deletedCount++;
+                } else {
+                    ids.put(id, n);
+                }
+            }
+        }
+        log.info("Loaded {} vectors from {}", nodes.size(), directory);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (storage != null) {
+                storage.close();
+                storage = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
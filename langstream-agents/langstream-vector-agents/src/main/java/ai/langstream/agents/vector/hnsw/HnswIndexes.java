@@ -0,0 +1,283 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.hnsw;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The indexes opened in this JVM. The data sources and the writers with the same index name share
+ * the same index, that is closed when the last one is released.
+ *
+ * <p>An index that no writer of this JVM uses can reload the snapshots uploaded to S3 by the writer
+ * of another pod, see {@link HnswConfig#getReloadIntervalSeconds()}.
+ */
+@Slf4j
+final class HnswIndexes {
+
+    private static final Map<String, SharedIndex> INDEXES = new HashMap<>();
+
+    private HnswIndexes() {}
+
+    static final class SharedIndex {
+        private final HnswConfig config;
+        private final SnapshotStore snapshotStore;
+        private final ScheduledExecutorService executor;
+        private volatile HnswIndex index;
+        private Path directory;
+        private boolean temporaryDirectory;
+        private String snapshotVersion;
+        private int references;
+
+        /** Whether a writer of this JVM uses the index, it is saved and never reloaded. */
+        private boolean written;
+
+        /**
+         * The index replaced by the last reload, it is closed by the next one so that the queries
+         * in progress can complete.
+         */
+        private HnswIndex retired;
+
+        private Path retiredDirectory;
+
+        SharedIndex(HnswConfig config, SnapshotStore snapshotStore) throws Exception {
+            this.config = config;
+            this.snapshotStore = snapshotStore;
+            if (config.getDirectory() != null && !config.getDirectory().isBlank()) {
+                directory = Path.of(config.getDirectory());
+            } else if (snapshotStore != null) {
+                directory = Files.createTempDirectory("hnsw-" + config.getIndexName());
+                temporaryDirectory = true;
+            } else {
+                directory = null;
+            }
+            if (snapshotStore != null && !Files.exists(directory.resolve(HnswIndex.GRAPH_FILE))) {
+                snapshotVersion = snapshotStore.restore(directory);
+            }
+            this.index = open(directory);
+            boolean snapshots = directory != null && config.getSnapshotIntervalSeconds() > 0;
+            boolean reloads = snapshotStore != null && config.getReloadIntervalSeconds() > 0;
+            executor = snapshots || reloads ? Executors.newSingleThreadScheduledExecutor() : null;
+            if (snapshots) {
+                executor.scheduleWithFixedDelay(
+                        () -> {
+                            try {
+                                snapshot();
+                            } catch (Exception e) {
+                                log.error("Cannot save the index {}", config.getIndexName(), e);
+                            }
+                        },
+                        config.getSnapshotIntervalSeconds(),
+                        config.getSnapshotIntervalSeconds(),
+                        TimeUnit.SECONDS);
+            }
+            if (reloads) {
+                executor.scheduleWithFixedDelay(
+                        () -> {
+                            try {
+                                reload();
+                            } catch (Exception e) {
+                                log.error("Cannot reload the index {}", config.getIndexName(), e);
+                            }
+                        },
+                        config.getReloadIntervalSeconds(),
+                        config.getReloadIntervalSeconds(),
+                        TimeUnit.SECONDS);
+            }
+        }
+
+        private HnswIndex open(Path directory) throws IOException {
+            return new HnswIndex(
+                    directory,
+                    config.getDimension(),
+                    config.getSimilarityType(),
+                    config.getM(),
+                    config.getEfConstruction(),
+                    config.getIndexName().hashCode());
+        }
+
+        HnswIndex index() {
+            return index;
+        }
+
+        HnswConfig config() {
+            return config;
+        }
+
+        /**
+         * Saves the index to the directory and uploads it to S3. An index that is only read in this
+         * JVM is not saved, it would replace the snapshots of the writer.
+         */
+        synchronized void snapshot() throws Exception {
+            if (directory == null || !written) {
+                return;
+            }
+            long vectorsBytes = index.save();
+            if (snapshotStore != null && vectorsBytes > 0) {
+                snapshotStore.upload(directory, vectorsBytes);
+            }
+        }
+
+        /**
+         * Replaces the index with the last snapshot, if it is newer than the one loaded. The
+         * snapshot is downloaded to a new temporary directory while the queries use the current
+         * index.
+         *
+         * @return whether the index was replaced
+         */
+        synchronized boolean reload() throws Exception {
+            if (written) {
+                return false;
+            }
+            closeRetired();
+            String version = snapshotStore.version();
+            if (version == null || version.equals(snapshotVersion)) {
+                return false;
+            }
+            Path newDirectory = Files.createTempDirectory("hnsw-" + config.getIndexName());
+            String restored = snapshotStore.restore(newDirectory);
+            if (restored == null) {
+                // the snapshot is being replaced, it is restored by the next reload
+                deleteDirectory(newDirectory);
+                return false;
+            }
+            retired = index;
+            retiredDirectory = temporaryDirectory ? directory : null;
+            index = open(newDirectory);
+            directory = newDirectory;
+            temporaryDirectory = true;
+            snapshotVersion = restored;
+            log.info("Reloaded the index {} with {} vectors", config.getIndexName(), index.size());
+            return true;
+        }
+
+        private void closeRetired() throws IOException {
+            if (retired == null) {
+                return;
+            }
+            retired.close();
+            retired = null;
+            if (retiredDirectory != null) {
+                deleteDirectory(retiredDirectory);
+                retiredDirectory = null;
+            }
+        }
+
+        private void close() throws Exception {
+            if (executor != null) {
+                executor.shutdown();
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            try {
+                snapshot();
+            } finally {
+                synchronized (this) {
+                    closeRetired();
+                    index.close();
+                }
+            }
+        }
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder())
+                    .forEach(
+                            file -> {
+                                try {
+                                    Files.delete(file);
+                                } catch (IOException e) {
+                                    throw new UncheckedIOException(e);
+                                }
+                            });
+        }
+    }
+
+    /**
+     * Opens the index, or shares the one already open with the same name. The configuration must
+     * have the same similarity and dimension as the open index.
+     *
+     * @param writer whether the index is written, an index written in this JVM is never reloaded
+     */
+    static SharedIndex acquire(HnswConfig config, boolean writer) throws Exception {
+        synchronized (INDEXES) {
+            SharedIndex shared = INDEXES.get(config.getIndexName());
+            if (shared == null) {
+                SnapshotStore snapshotStore =
+                        config.getSnapshotBucket() != null && !config.getSnapshotBucket().isBlank()
+                                ? new S3SnapshotStore(config)
+                                : null;
+                shared = new SharedIndex(config, snapshotStore);
+                INDEXES.put(config.getIndexName(), shared);
+            } else {
+                checkCompatible(shared, config);
+            }
+            shared.references++;
+            if (writer) {
+                synchronized (shared) {
+                    shared.written = true;
+                }
+            }
+            return shared;
+        }
+    }
+
+    private static void checkCompatible(SharedIndex shared, HnswConfig config) {
+        if (config.getSimilarityType() != shared.index.getSimilarity()) {
+            throw new IllegalArgumentException(
+                    "The index "
+                            + config.getIndexName()
+                            + " is already open with similarity "
+                            + shared.index.getSimilarity()
+                            + ", not "
+                            + config.getSimilarityType());
+        }
+        // without a dimension, the index takes the one of the first vector
+        int dimension =
+                shared.index.getDimension() > 0
+                        ? shared.index.getDimension()
+                        : shared.config.getDimension();
+        if (config.getDimension() > 0 && dimension > 0 && config.getDimension() != dimension) {
+            throw new IllegalArgumentException(
+                    "The index "
+                            + config.getIndexName()
+                            + " is already open with dimension "
+                            + dimension
+                            + ", not "
+                            + config.getDimension());
+        }
+    }
+
+    static void release(SharedIndex shared) throws Exception {
+        synchronized (INDEXES) {
+            if (--shared.references > 0) {
+                return;
+            }
+            INDEXES.remove(shared.config.getIndexName());
+        }
+        shared.close();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.hnsw;
+
+import ai.langstream.ai.agents.GenAIToolKitAgent;
+import ai.langstream.api.database.VectorDatabaseWriter;
+import ai.langstream.api.database.VectorDatabaseWriterProvider;
+import ai.langstream.api.runner.code.Record;
+import com.datastax.oss.streaming.ai.TransformContext;
+import com.datastax.oss.streaming.ai.jstl.JstlEvaluator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import lombok.extern.slf4j.Slf4j;
+
+/** Writes the vectors to an {@link HnswIndex} of this JVM, a record without value is deleted. */
+@Slf4j
+public class HnswWriter implements VectorDatabaseWriterProvider {
+
+    @Override
+    public boolean supports(Map<String, Object> dataSourceConfig) {
+        return "hnsw".equals(dataSourceConfig.get("service"));
+    }
+
+    @Override
+    public VectorDatabaseWriter createImplementation(Map<String, Object> datasourceConfig) {
+        return new HnswVectorDatabaseWriter(
+                HnswDataSource.MAPPER.convertValue(datasourceConfig, HnswConfig.class));
+    }
+
+    private static class HnswVectorDatabaseWriter implements VectorDatabaseWriter {
+
+        private final HnswConfig config;
+        private HnswIndexes.SharedIndex shared;
+        private JstlEvaluator idFunction;
+        private JstlEvaluator vectorFunction;
+        private Map<String, JstlEvaluator> metadataFunctions;
+
+        HnswVectorDatabaseWriter(HnswConfig config) {
+            this.config = config;
+        }
+
+        @Override
+        public void initialise(Map<String, Object> agentConfiguration) throws Exception {
+            this.idFunction = buildEvaluator(agentConfiguration, "vector.id", String.class);
+            this.vectorFunction = buildEvaluator(agentConfiguration, "vector.vector", List.class);
+            if (idFunction == null || vectorFunction == null) {
+                throw new IllegalArgumentException("vector.id and vector.vector are required");
+            }
+            this.metadataFunctions = new HashMap<>();
+            agentConfiguration.forEach(
+                    (key, value) -> {
+                        if (key.startsWith("vector.metadata.")) {
+                            String metadataKey = key.substring("vector.metadata.".length());
+                            metadataFunctions.put(
+                                    metadataKey,
+                                    buildEvaluator(agentConfiguration, key, Object.class));
+                        }
+                    });
+            shared = HnswIndexes.acquire(config, true);
+        }
+
+        @Override
+        public CompletableFuture<?> upsert(Record record, Map<String, Object> context) {
+            try {
+                TransformContext transformContext =
+                        GenAIToolKitAgent.recordToTransformContext(record, true);
+                String id = (String) idFunction.evaluate(transformContext);
+                if (record.value() == null) {
+                    shared.index().delete(id);
+                    return CompletableFuture.completedFuture(null);
+                }
+                List<Object> vector = (List<Object>) vectorFunction.evaluate(transformContext);
+                if (vector == null) {
+                    throw new IllegalArgumentException("The vector of " + id + " is null");
+                }
+                Map<String, Object> metadata = new HashMap<>();
+                metadataFunctions.forEach(
+                        (key, function) -> metadata.put(key, function.evaluate(transformContext)));
+                shared.index().upsert(id, toFloatArray(vector), metadata);
+                return CompletableFuture.completedFuture(null);
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        private static float[] toFloatArray(List<Object> vector) {
+            float[] result = new float[vector.size()];
+            for (int i = 0; i < result.length; i++) {
+                Object n = vector.get(i);
+                if (n instanceof String s) {
+                    result[i] = Float.parseFloat(s);
+                } else if (n instanceof Number u) {
+                    result[i] = u.floatValue();
+                } else {
+                    throw new IllegalArgumentException("only vectors of floats are supported");
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public void close() throws Exception {
+            if (shared != null) {
+                HnswIndexes.release(shared);
+                shared = null;
+            }
+        }
+    }
+
+    private static JstlEvaluator buildEvaluator(
+            Map<String, Object> agentConfiguration, String param, Class type) {
+        String expression = agentConfiguration.getOrDefault(param, "").toString();
+        if (expression == null || expression.isEmpty()) {
+            return null;
+        }
+        return new JstlEvaluator("${" + expression + "}", type);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.hnsw;
+
+import io.minio.DownloadObjectArgs;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import io.minio.StatObjectArgs;
+import io.minio.UploadObjectArgs;
+import io.minio.errors.ErrorResponseException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import lombok.extern.slf4j.Slf4j;
+
+/** Copies the files of an index to and from an S3 bucket. */
+@Slf4j
+final class S3SnapshotStore implements SnapshotStore {
+
+    private final MinioClient client;
+    private final String bucket;
+    private final String prefix;
+
+    S3SnapshotStore(HnswConfig config) {
+        MinioClient.Builder builder =
+                MinioClient.builder()
+                        .endpoint(config.getSnapshotEndpoint())
+                        .credentials(config.getSnapshotAccessKey(), config.getSnapshotSecretKey());
+        if (config.getSnapshotRegion() != null && !config.getSnapshotRegion().isBlank()) {
+            builder.region(config.getSnapshotRegion());
+        }
+        this.client = builder.build();
+        this.bucket = config.getSnapshotBucket();
+        String snapshotPrefix =
+                config.getSnapshotPrefix() != null
+                        ? config.getSnapshotPrefix()
+                        : config.getIndexName();
+        this.prefix = snapshotPrefix.endsWith("/") ? snapshotPrefix : snapshotPrefix + "/";
+    }
+
+    /** The etag of the graph, that is uploaded last. */
+    @Override
+    public String version() throws Exception {
+        try {
+            return client.statObject(
+                            StatObjectArgs.builder()
+                                    .bucket(bucket)
+                                    .object(prefix + HnswIndex.GRAPH_FILE)
+                                    .build())
+                    .etag();
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public String restore(Path directory) throws Exception {
+        String version = version();
+        if (version == null) {
+            return null;
+        }
+        Files.createDirectories(directory);
+        for (String file : new String[] {HnswIndex.VECTORS_FILE, HnswIndex.GRAPH_FILE}) {
+            Path target = directory.resolve(file);
+            Files.deleteIfExists(target);
+            client.downloadObject(
+                    DownloadObjectArgs.builder()
+                            .bucket(bucket)
+                            .object(prefix + file)
+                            .filename(target.toString())
+                            .build());
+        }
+        // the vectors are only appended, a newer vectors file still matches the graph. A newer
+        // graph may not match the vectors
+        if (!version.equals(version())) {
+            log.info("The snapshot s3://{}/{} was replaced while it was restored", bucket, prefix);
+            return null;
+        }
+        log.info("Restored the snapshot s3://{}/{} to {}", bucket, prefix, directory);
+        return version;
+    }
+
+    /** The graph is uploaded last. */
+    @Override
+    public void upload(Path directory, long vectorsBytes) throws Exception {
+        try (InputStream vectors =
+                Files.newInputStream(directory.resolve(HnswIndex.VECTORS_FILE))) {
+            client.putObject(
+                    PutObjectArgs.builder()
+                            .bucket(bucket)
+                            .object(prefix + HnswIndex.VECTORS_FILE)
+                            .stream(vectors, vectorsBytes, -1)
+                            .build());
+        }
+        client.uploadObject(
+                UploadObjectArgs.builder()
+                        .bucket(bucket)
+                        .object(prefix + HnswIndex.GRAPH_FILE)
+                        .filename(directory.resolve(HnswIndex.GRAPH_FILE).toString())
+                        .build());
+        log.info(
+                "Uploaded the snapshot of {} to s3://{}/{}, {} bytes of vectors",
+                directory,
+                bucket,
+                prefix,
+                vectorsBytes);
+    }
+}
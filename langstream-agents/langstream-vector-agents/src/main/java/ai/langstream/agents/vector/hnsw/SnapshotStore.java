@@ -0,0 +1,39 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.hnsw;
+
+import java.nio.file.Path;
+
+/** Where the snapshots of an index are copied, so that another pod can restore them. */
+interface SnapshotStore {
+
+    /** The version of the last snapshot, null if there is no snapshot. */
+    String version() throws Exception;
+
+    /**
+     * Downloads the last snapshot to the directory.
+     *
+     * @return the version of the snapshot, null if there is no snapshot or if it was replaced while
+     *     it was downloaded
+     */
+    String restore(Path directory) throws Exception;
+
+    /**
+     * Uploads the files of the directory. Only the first vectorsBytes of the vectors file are
+     * uploaded, the rest is the unused space of the last mapped segment.
+     */
+    void upload(Path directory, long vectorsBytes) throws Exception;
+}
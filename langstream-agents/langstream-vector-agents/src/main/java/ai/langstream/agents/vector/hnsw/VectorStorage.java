@@ -0,0 +1,174 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.hnsw;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Vectors of the same dimension, stored one after the other in fixed size segments. The segments
+ * are memory-mapped regions of a file, or heap buffers when there is no file.
+ */
+final class VectorStorage implements AutoCloseable {
+
+    private static final int MAPPED_SEGMENT_BYTES = 64 * 1024 * 1024;
+    private static final int HEAP_SEGMENT_BYTES = 1024 * 1024;
+
+    private final int dimension;
+    private final int vectorsPerSegment;
+    private final FileChannel channel;
+    private final List<ByteBuffer> buffers = new ArrayList<>();
+    private final List<FloatBuffer> segments = new ArrayList<>();
+    private int size;
+
+    private VectorStorage(int dimension, FileChannel channel, int segmentBytes) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("The dimension must be greater than 0");
+        }
+        this.dimension = dimension;
+        this.channel = channel;
+        this.vectorsPerSegment = Math.max(1, segmentBytes / (dimension * Float.BYTES));
+    }
+
+    static VectorStorage inMemory(int dimension) {
+        return new VectorStorage(dimension, null, HEAP_SEGMENT_BYTES);
+    }
+
+    /** Opens the file, that already contains size vectors if it exists. */
+    static VectorStorage mapped(Path file, int dimension, int size) throws IOException {
+        FileChannel channel =
+                FileChannel.open(
+                        file,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+        VectorStorage storage = new VectorStorage(dimension, channel, MAPPED_SEGMENT_BYTES);
+        long available = channel.size() / ((long) dimension * Float.BYTES);
+        if (available < size) {
+            channel.close();
+            throw new IOException(
+                    "The file " + file + " contains " + available + " vectors, expected " + size);
+        }
+        storage.ensureCapacity(size);
+        storage.size = size;
+        return storage;
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Appends the vector and returns its position. */
+    int add(float[] vector) throws IOException {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException(
+                    "Expected a vector of dimension " + dimension + ", got " + vector.length);
+        }
+        ensureCapacity(size + 1);
+        FloatBuffer segment = segments.get(size / vectorsPerSegment);
+        segment.put((size % vectorsPerSegment) * dimension, vector);
+        return size++;
+    }
+
+    float[] get(int index) {
+        float[] vector = new float[dimension];
+        segment(index).get(offset(index), vector);
+        return vector;
+    }
+
+    float dot(int index, float[] query) {
+        FloatBuffer segment = segment(index);
+        int offset = offset(index);
+        float result = 0;
+        for (int i = 0; i < dimension; i++) {
+            result += segment.get(offset + i) * query[i];
+        }
+        return result;
+    }
+
+    float squareDistance(int index, float[] query) {
+        FloatBuffer segment = segment(index);
+        int offset = offset(index);
+        float result = 0;
+        for (int i = 0; i < dimension; i++) {
+            float diff = segment.get(offset + i) - query[i];
+            result += diff * diff;
+        }
+        return result;
+    }
+
+    private FloatBuffer segment(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return segments.get(index / vectorsPerSegment);
+    }
+
+    private int offset(int index) {
+        return (index % vectorsPerSegment) * dimension;
+    }
+
+    private void ensureCapacity(int capacity) throws IOException {
+        long segmentBytes = (long) vectorsPerSegment * dimension * Float.BYTES;
+        while ((long) segments.size() * vectorsPerSegment < capacity) {
+            ByteBuffer buffer;
+            if (channel != null) {
+                // mapping past the end of the file makes it grow
+                buffer =
+                        channel.map(
+                                FileChannel.MapMode.READ_WRITE,
+                                segments.size() * segmentBytes,
+                                segmentBytes);
+            } else {
+                buffer = ByteBuffer.allocate((int) segmentBytes);
+            }
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffers.add(buffer);
+            segments.add(buffer.asFloatBuffer());
+        }
+    }
+
+    /** Writes the changes of the mapped segments to the file. */
+    void flush() {
+        for (ByteBuffer buffer : buffers) {
+            if (buffer instanceof MappedByteBuffer mapped) {
+                mapped.force();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        buffers.clear();
+        segments.clear();
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
@@ -37,4 +37,8 @@ public final class PineconeConfig {
 
     @JsonProperty("server-side-timeout-sec")
     private int serverSideTimeoutSec = 10;
+
+    /** The maximum number of upsert requests waiting for a response, the writer blocks. */
+    @JsonProperty("max-in-flight-requests")
+    private int maxInFlightRequests = 16;
 }
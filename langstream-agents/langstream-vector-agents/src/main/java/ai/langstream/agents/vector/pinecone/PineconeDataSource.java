@@ -16,6 +16,7 @@
 package ai.langstream.agents.vector.pinecone;
 
 import ai.langstream.ai.agents.datasource.DataSourceProvider;
+import com.datastax.oss.streaming.ai.datasource.QueryResult;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.type.TypeReference;
@@ -24,7 +25,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.protobuf.ListValue;
 import com.google.protobuf.Struct;
 import com.google.protobuf.Value;
-import io.grpc.StatusRuntimeException;
+import io.grpc.Metadata;
+import io.grpc.stub.MetadataUtils;
+import io.grpc.stub.StreamObserver;
 import io.pinecone.PineconeClient;
 import io.pinecone.PineconeClientConfig;
 import io.pinecone.PineconeConnection;
@@ -32,8 +35,11 @@ import io.pinecone.PineconeConnectionConfig;
 import io.pinecone.proto.QueryRequest;
 import io.pinecone.proto.QueryResponse;
 import io.pinecone.proto.QueryVector;
+import io.pinecone.proto.SingleQueryResults;
 import io.pinecone.proto.SparseValues;
+import io.pinecone.proto.VectorServiceGrpc;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
@@ -42,6 +48,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 import lombok.Data;
 import lombok.SneakyThrows;
@@ -53,6 +62,23 @@ public class PineconeDataSource implements DataSourceProvider {
     private static final ObjectMapper MAPPER =
             new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
 
+    /** The limit of the messages of the blocking stub of the Pinecone client. */
+    private static final int MAX_MESSAGE_SIZE = 64_000_000;
+
+    /**
+     * An async stub configured like the blocking stub of the connection: the API key header and the
+     * maximum size of the messages.
+     */
+    static VectorServiceGrpc.VectorServiceStub newAsyncStub(
+            PineconeConnection connection, String apiKey) {
+        Metadata headers = new Metadata();
+        headers.put(Metadata.Key.of("api-key", Metadata.ASCII_STRING_MARSHALLER), apiKey);
+        return VectorServiceGrpc.newStub(connection.getChannel())
+                .withInterceptors(MetadataUtils.newAttachHeadersInterceptor(headers))
+                .withMaxInboundMessageSize(MAX_MESSAGE_SIZE)
+                .withMaxOutboundMessageSize(MAX_MESSAGE_SIZE);
+    }
+
     @Override
     public boolean supports(Map<String, Object> dataSourceConfig) {
         return "pinecone".equals(dataSourceConfig.get("service"));
@@ -92,6 +118,8 @@ public class PineconeDataSource implements DataSourceProvider {
 
         private final PineconeConfig clientConfig;
         private PineconeConnection connection;
+        private VectorServiceGrpc.VectorServiceStub asyncStub;
+        private HttpClient httpClient;
 
         public PinecodeQueryStepDataSource(PineconeConfig clientConfig) {
             this.clientConfig = clientConfig;
@@ -110,147 +138,304 @@ public class PineconeDataSource implements DataSourceProvider {
                     new PineconeConnectionConfig().withIndexName(clientConfig.getIndexName());
             if (clientConfig.getEndpoint() == null) {
                 connection = pineconeClient.connect(connectionConfig);
+                asyncStub = newAsyncStub(connection, clientConfig.getApiKey());
+            } else {
+                httpClient = HttpClient.newHttpClient();
             }
         }
 
         @Override
         public List<Map<String, String>> fetchData(String query, List<Object> params) {
             try {
-                Query parsedQuery;
-                try {
-                    log.info("Query {}", query);
-                    params.forEach(
-                            param ->
-                                    log.info(
-                                            "Param {} {}",
-                                            param,
-                                            param != null ? param.getClass() : null));
-                    // interpolate the query
-                    query = interpolate(query, params);
-                    log.info("Interpolated query {}", query);
-
-                    parsedQuery = MAPPER.readValue(query, Query.class);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+                return fetchDataAsync(query, params).get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
                 }
-                log.info("Parsed query: {}", parsedQuery);
+                throw new RuntimeException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
 
-                QueryVector.Builder builder = QueryVector.newBuilder();
+        @Override
+        public CompletableFuture<List<Map<String, String>>> fetchDataAsync(
+                String query, List<Object> params) {
+            return search(query, params)
+                    .thenApply(
+                            rows ->
+                                    rows.stream()
+                                            .map(PinecodeQueryStepDataSource::toStringMap)
+                                            .collect(Collectors.toList()));
+        }
 
-                if (parsedQuery.vector != null) {
-                    builder.addAllValues(parsedQuery.vector);
-                }
+        @Override
+        public CompletableFuture<QueryResult> fetchResultAsync(String query, List<Object> params) {
+            return search(query, params).thenApply(QueryResult::fromMaps);
+        }
 
-                if (parsedQuery.sparseVector != null) {
-                    builder.setSparseValues(
-                            SparseValues.newBuilder()
-                                    .addAllValues(parsedQuery.sparseVector.getValues())
-                                    .addAllIndices(parsedQuery.sparseVector.getIndices())
-                                    .build());
-                }
+        private static Map<String, String> toStringMap(Map<String, Object> row) {
+            Map<String, String> result = new HashMap<>();
+            row.forEach((key, value) -> result.put(key, value != null ? value.toString() : null));
+            return result;
+        }
 
-                if (parsedQuery.filter != null && !parsedQuery.filter.isEmpty()) {
-                    builder.setFilter(buildFilter(parsedQuery.filter));
-                }
+        @Override
+        public CompletableFuture<List<List<Map<String, String>>>> fetchDataBatchAsync(
+                String query, List<List<Object>> params) {
+            return searchBatch(query, params)
+                    .thenApply(
+                            results ->
+                                    results.stream()
+                                            .map(
+                                                    rows ->
+                                                            rows.stream()
+                                                                    .map(
+                                                                            PinecodeQueryStepDataSource
+                                                                                    ::toStringMap)
+                                                                    .collect(Collectors.toList()))
+                                            .toList());
+        }
 
-                if (parsedQuery.namespace != null) {
-                    builder.setNamespace(parsedQuery.namespace);
-                }
+        @Override
+        public CompletableFuture<List<QueryResult>> fetchResultBatchAsync(
+                String query, List<List<Object>> params) {
+            return searchBatch(query, params)
+                    .thenApply(results -> results.stream().map(QueryResult::fromMaps).toList());
+        }
 
-                QueryVector queryVector = builder.build();
-                QueryRequest.Builder requestBuilder = QueryRequest.newBuilder();
+        private static Query parse(String query, List<Object> params) throws IOException {
+            if (log.isDebugEnabled()) {
+                log.debug("Query {}", query);
+                params.forEach(
+                        param ->
+                                log.debug(
+                                        "Param {} {}",
+                                        param,
+                                        param != null ? param.getClass() : null));
+            }
+            // interpolate the query
+            query = interpolate(query, params);
+            Query parsedQuery = MAPPER.readValue(query, Query.class);
+            if (log.isDebugEnabled()) {
+                log.debug("Interpolated query {}", query);
+                log.debug("Parsed query: {}", parsedQuery);
+            }
+            return parsedQuery;
+        }
 
-                if (parsedQuery.namespace != null) {
-                    requestBuilder.setNamespace(parsedQuery.namespace);
+        /**
+         * Sends the queries in one request when they only differ by the vector and the filter,
+         * otherwise sends one request for each query.
+         */
+        private CompletableFuture<List<List<Map<String, Object>>>> searchBatch(
+                String query, List<List<Object>> params) {
+            List<Query> parsedQueries = new ArrayList<>(params.size());
+            try {
+                for (List<Object> p : params) {
+                    parsedQueries.add(parse(query, p));
                 }
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(new RuntimeException(e));
+            }
+            Query first = parsedQueries.isEmpty() ? null : parsedQueries.get(0);
+            boolean sameOptions =
+                    parsedQueries.stream()
+                            .allMatch(
+                                    q ->
+                                            q.topK == first.topK
+                                                    && q.includeMetadata == first.includeMetadata
+                                                    && q.includeValues == first.includeValues
+                                                    && Objects.equals(
+                                                            q.namespace, first.namespace));
+            if (parsedQueries.size() <= 1 || !sameOptions || clientConfig.getEndpoint() != null) {
+                return QueryStepDataSource.allOf(parsedQueries.stream().map(this::search).toList());
+            }
+            QueryRequest.Builder requestBuilder = QueryRequest.newBuilder();
+            if (first.namespace != null) {
+                requestBuilder.setNamespace(first.namespace);
+            }
+            parsedQueries.forEach(q -> requestBuilder.addQueries(buildQueryVector(q)));
+            QueryRequest request =
+                    requestBuilder
+                            .setTopK(first.topK)
+                            .setIncludeMetadata(first.includeMetadata)
+                            .setIncludeValues(first.includeValues)
+                            .build();
+            return query(request)
+                    .thenApply(
+                            queryResponse -> {
+                                if (queryResponse.getResultsCount() != parsedQueries.size()) {
+                                    throw new IllegalStateException(
+                                            "Expected "
+                                                    + parsedQueries.size()
+                                                    + " results, got "
+                                                    + queryResponse.getResultsCount());
+                                }
+                                List<List<Map<String, Object>>> results = new ArrayList<>();
+                                for (int i = 0; i < parsedQueries.size(); i++) {
+                                    results.add(
+                                            toRows(
+                                                    queryResponse.getResults(i),
+                                                    parsedQueries.get(i)));
+                                }
+                                return results;
+                            });
+        }
+
+        private CompletableFuture<List<Map<String, Object>>> search(
+                String query, List<Object> params) {
+            Query parsedQuery;
+            try {
+                parsedQuery = parse(query, params);
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(new RuntimeException(e));
+            }
+            return search(parsedQuery);
+        }
+
+        private CompletableFuture<List<Map<String, Object>>> search(Query parsedQuery) {
+            QueryRequest batchQueryRequest = buildQueryRequest(parsedQuery);
 
-                QueryRequest batchQueryRequest =
-                        requestBuilder
-                                .addQueries(queryVector)
-                                .setTopK(parsedQuery.topK)
-                                .setIncludeMetadata(parsedQuery.includeMetadata)
-                                .setIncludeValues(parsedQuery.includeValues)
+            if (clientConfig.getEndpoint() == null) {
+                return query(batchQueryRequest)
+                        .thenApply(
+                                queryResponse -> {
+                                    if (log.isDebugEnabled()) {
+                                        log.debug("Query response: {}", queryResponse);
+                                    }
+                                    List<Map<String, Object>> rows = new ArrayList<>();
+                                    queryResponse
+                                            .getResultsList()
+                                            .forEach(res -> rows.addAll(toRows(res, parsedQuery)));
+                                    return rows;
+                                });
+            } else {
+                HttpRequest request =
+                        HttpRequest.newBuilder(URI.create(clientConfig.getEndpoint()))
+                                .POST(
+                                        HttpRequest.BodyPublishers.ofString(
+                                                batchQueryRequest.toString()))
                                 .build();
+                return httpClient
+                        .sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                        .thenApply(
+                                response -> {
+                                    String body = response.body();
+                                    if (log.isDebugEnabled()) {
+                                        log.debug("Mock result {}", body);
+                                    }
+                                    try {
+                                        return MAPPER.readValue(
+                                                body,
+                                                new TypeReference<List<Map<String, Object>>>() {});
+                                    } catch (IOException e) {
+                                        throw new UncheckedIOException(e);
+                                    }
+                                });
+            }
+        }
 
-                List<Map<String, String>> results;
-
-                if (clientConfig.getEndpoint() == null) {
-
-                    QueryResponse queryResponse =
-                            connection.getBlockingStub().query(batchQueryRequest);
-
-                    if (log.isDebugEnabled()) {
-                        log.debug("Query response: {}", queryResponse);
-                    }
-                    log.info("Query response: {}", queryResponse);
-
-                    results = new ArrayList<>();
-                    queryResponse
-                            .getResultsList()
-                            .forEach(
-                                    res ->
-                                            res.getMatchesList()
-                                                    .forEach(
-                                                            match -> {
-                                                                String id = match.getId();
-                                                                Map<String, String> row =
-                                                                        new HashMap<>();
-
-                                                                if (parsedQuery.includeMetadata) {
-                                                                    // put all the metadata
-                                                                    if (match.getMetadata()
-                                                                            != null) {
-                                                                        match.getMetadata()
-                                                                                .getFieldsMap()
-                                                                                .forEach(
-                                                                                        (key,
-                                                                                                value) -> {
-                                                                                            if (log
-                                                                                                    .isDebugEnabled()) {
-                                                                                                log
-                                                                                                        .debug(
-                                                                                                                "Key: {}, value: {} {}",
-                                                                                                                key,
-                                                                                                                value,
-                                                                                                                value
-                                                                                                                                != null
-                                                                                                                        ? value
-                                                                                                                                .getClass()
-                                                                                                                        : null);
-                                                                                            }
-                                                                                            Object
-                                                                                                    converted =
-                                                                                                            valueToObject(
-                                                                                                                    value);
-                                                                                            row.put(
-                                                                                                    key,
-                                                                                                    converted
-                                                                                                                    != null
-                                                                                                            ? converted
-                                                                                                                    .toString()
-                                                                                                            : null);
-                                                                                        });
-                                                                    }
-                                                                }
-                                                                row.put("id", id);
-                                                                results.add(row);
-                                                            }));
-                } else {
-                    HttpClient client = HttpClient.newHttpClient();
-                    HttpRequest request =
-                            HttpRequest.newBuilder(URI.create(clientConfig.getEndpoint()))
-                                    .POST(
-                                            HttpRequest.BodyPublishers.ofString(
-                                                    batchQueryRequest.toString()))
-                                    .build();
-                    String body = client.send(request, HttpResponse.BodyHandlers.ofString()).body();
-                    log.info("Mock result {}", body);
-                    results = MAPPER.readValue(body, new TypeReference<>() {});
-                }
-                return results;
-            } catch (IOException | StatusRuntimeException | InterruptedException e) {
-                throw new RuntimeException(e);
+        private CompletableFuture<QueryResponse> query(QueryRequest request) {
+            CompletableFuture<QueryResponse> result = new CompletableFuture<>();
+            asyncStub.query(
+                    request,
+                    new StreamObserver<>() {
+                        @Override
+                        public void onNext(QueryResponse response) {
+                            result.complete(response);
+                        }
+
+                        @Override
+                        public void onError(Throwable error) {
+                            result.completeExceptionally(new RuntimeException(error));
+                        }
+
+                        @Override
+                        public void onCompleted() {
+                            result.completeExceptionally(
+                                    new IllegalStateException("No query response"));
+                        }
+                    });
+            return result;
+        }
+
+        private QueryVector buildQueryVector(Query parsedQuery) {
+            QueryVector.Builder builder = QueryVector.newBuilder();
+
+            if (parsedQuery.vector != null) {
+                builder.addAllValues(parsedQuery.vector);
+            }
+
+            if (parsedQuery.sparseVector != null) {
+                builder.setSparseValues(
+                        SparseValues.newBuilder()
+                                .addAllValues(parsedQuery.sparseVector.getValues())
+                                .addAllIndices(parsedQuery.sparseVector.getIndices())
+                                .build());
+            }
+
+            if (parsedQuery.filter != null && !parsedQuery.filter.isEmpty()) {
+                builder.setFilter(buildFilter(parsedQuery.filter));
+            }
+
+            if (parsedQuery.namespace != null) {
+                builder.setNamespace(parsedQuery.namespace);
+            }
+
+            return builder.build();
+        }
+
+        private QueryRequest buildQueryRequest(Query parsedQuery) {
+            QueryVector queryVector = buildQueryVector(parsedQuery);
+            QueryRequest.Builder requestBuilder = QueryRequest.newBuilder();
+
+            if (parsedQuery.namespace != null) {
+                requestBuilder.setNamespace(parsedQuery.namespace);
+            }
+
+            return requestBuilder
+                    .addQueries(queryVector)
+                    .setTopK(parsedQuery.topK)
+                    .setIncludeMetadata(parsedQuery.includeMetadata)
+                    .setIncludeValues(parsedQuery.includeValues)
+                    .build();
+        }
+
+        private static List<Map<String, Object>> toRows(
+                SingleQueryResults queryResults, Query parsedQuery) {
+            List<Map<String, Object>> results = new ArrayList<>();
+            queryResults
+                    .getMatchesList()
+                    .forEach(
+                            match -> {
+                                Map<String, Object> row = new HashMap<>();
+                                if (parsedQuery.includeMetadata && match.getMetadata() != null) {
+                                    // put all the metadata
+                                    match.getMetadata()
+                                            .getFieldsMap()
+                                            .forEach(
+                                                    (key, value) ->
+                                                            row.put(
+                                                                    key,
+                                                                    metadataToObject(key, value)));
+                                }
+                                row.put("id", match.getId());
+                                results.add(row);
+                            });
+            return results;
+        }
+
+        private static Object metadataToObject(String key, Value value) {
+            if (log.isDebugEnabled()) {
+                log.debug(
+                        "Key: {}, value: {} {}",
+                        key,
+                        value,
+                        value != null ? value.getClass() : null);
             }
+            return valueToObject(value);
         }
 
         static String interpolate(String query, List<Object> array) {
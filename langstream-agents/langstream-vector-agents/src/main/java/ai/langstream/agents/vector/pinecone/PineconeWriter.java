@@ -24,6 +24,7 @@ import com.datastax.oss.streaming.ai.jstl.JstlEvaluator;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.protobuf.Struct;
+import io.grpc.stub.StreamObserver;
 import io.pinecone.PineconeClient;
 import io.pinecone.PineconeClientConfig;
 import io.pinecone.PineconeConnection;
@@ -31,10 +32,15 @@ import io.pinecone.PineconeConnectionConfig;
 import io.pinecone.proto.UpsertRequest;
 import io.pinecone.proto.UpsertResponse;
 import io.pinecone.proto.Vector;
+import io.pinecone.proto.VectorServiceGrpc;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 
@@ -44,6 +50,9 @@ public class PineconeWriter implements VectorDatabaseWriterProvider {
     private static final ObjectMapper MAPPER =
             new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
 
+    /** The maximum number of vectors of an upsert request recommended by Pinecone. */
+    static final int MAX_VECTORS_PER_REQUEST = 100;
+
     @Override
     public boolean supports(Map<String, Object> dataSourceConfig) {
         return "pinecone".equals(dataSourceConfig.get("service"));
@@ -54,9 +63,18 @@ public class PineconeWriter implements VectorDatabaseWriterProvider {
         return new PineconeVectorDatabaseWriter(datasourceConfig);
     }
 
-    private static class PineconeVectorDatabaseWriter implements VectorDatabaseWriter {
+    static class PineconeVectorDatabaseWriter implements VectorDatabaseWriter {
 
         private PineconeConnection connection;
+        private VectorServiceGrpc.VectorServiceStub asyncStub;
+        private Semaphore inFlightRequests;
+
+        /**
+         * The last request sent for each vector, a request waits for the earlier requests of its
+         * vectors so that two updates of the same vector are applied in order.
+         */
+        private final Map<VectorKey, CompletableFuture<Void>> pendingVectors = new HashMap<>();
+
         private JstlEvaluator idFunction;
         private JstlEvaluator namespaceFunction;
         private JstlEvaluator vectorFunction;
@@ -69,7 +87,27 @@ public class PineconeWriter implements VectorDatabaseWriterProvider {
 
         @Override
         public void initialise(Map<String, Object> agentConfiguration) {
+            PineconeClientConfig pineconeClientConfig =
+                    new PineconeClientConfig()
+                            .withApiKey(clientConfig.getApiKey())
+                            .withEnvironment(clientConfig.getEnvironment())
+                            .withProjectName(clientConfig.getProjectName())
+                            .withServerSideTimeoutSec(clientConfig.getServerSideTimeoutSec());
+            PineconeClient pineconeClient = new PineconeClient(pineconeClientConfig);
+            PineconeConnectionConfig connectionConfig =
+                    new PineconeConnectionConfig().withIndexName(clientConfig.getIndexName());
+            connection = pineconeClient.connect(connectionConfig);
+            initialise(
+                    agentConfiguration,
+                    PineconeDataSource.newAsyncStub(connection, clientConfig.getApiKey()));
+        }
 
+        void initialise(
+                Map<String, Object> agentConfiguration,
+                VectorServiceGrpc.VectorServiceStub asyncStub) {
+            this.asyncStub = asyncStub;
+            this.inFlightRequests =
+                    new Semaphore(Math.max(1, clientConfig.getMaxInFlightRequests()));
             this.idFunction = buildEvaluator(agentConfiguration, "vector.id", String.class);
             this.vectorFunction = buildEvaluator(agentConfiguration, "vector.vector", List.class);
             this.namespaceFunction =
@@ -85,98 +123,207 @@ public class PineconeWriter implements VectorDatabaseWriterProvider {
                                     buildEvaluator(agentConfiguration, key, Object.class));
                         }
                     });
-
-            PineconeClientConfig pineconeClientConfig =
-                    new PineconeClientConfig()
-                            .withApiKey(clientConfig.getApiKey())
-                            .withEnvironment(clientConfig.getEnvironment())
-                            .withProjectName(clientConfig.getProjectName())
-                            .withServerSideTimeoutSec(clientConfig.getServerSideTimeoutSec());
-            PineconeClient pineconeClient = new PineconeClient(pineconeClientConfig);
-            PineconeConnectionConfig connectionConfig =
-                    new PineconeConnectionConfig().withIndexName(clientConfig.getIndexName());
-            connection = pineconeClient.connect(connectionConfig);
         }
 
         @Override
         public CompletableFuture<?> upsert(Record record, Map<String, Object> context) {
-            CompletableFuture<?> handle = new CompletableFuture<>();
-            try {
-                TransformContext transformContext =
-                        GenAIToolKitAgent.recordToTransformContext(record, true);
-                String id =
-                        idFunction != null ? (String) idFunction.evaluate(transformContext) : null;
-                String namespace =
-                        namespaceFunction != null
-                                ? (String) namespaceFunction.evaluate(transformContext)
-                                : null;
-                List<Object> vector =
-                        vectorFunction != null
-                                ? (List<Object>) vectorFunction.evaluate(transformContext)
-                                : null;
-                Map<String, Object> metadata =
-                        metadataFunctions.entrySet().stream()
-                                .collect(
-                                        Collectors.toMap(
-                                                Map.Entry::getKey,
-                                                e -> e.getValue().evaluate(transformContext)));
-                Struct metadataStruct =
-                        Struct.newBuilder()
-                                .putAllFields(
-                                        metadata.entrySet().stream()
-                                                .collect(
-                                                        Collectors.toMap(
-                                                                Map.Entry::getKey,
-                                                                e ->
-                                                                        PineconeDataSource
-                                                                                .convertToValue(
-                                                                                        e
-                                                                                                .getValue()))))
-                                .build();
-
-                List<Float> vectorFloat = null;
-                if (vector != null) {
-                    vectorFloat =
-                            vector.stream()
-                                    .map(
-                                            n -> {
-                                                if (n instanceof String s) {
-                                                    return Float.parseFloat(s);
-                                                } else if (n instanceof Number u) {
-                                                    return u.floatValue();
-                                                } else {
-                                                    throw new IllegalArgumentException(
-                                                            "only vectors of floats are supported");
-                                                }
-                                            })
-                                    .collect(Collectors.toList());
+            return upsertBatch(List.of(record), context).get(0);
+        }
+
+        /**
+         * Sends the vectors of the same namespace together, up to {@link #MAX_VECTORS_PER_REQUEST}
+         * per request, without waiting for the responses. Only the last vector of each id is sent.
+         * The caller blocks when the maximum number of requests in flight is reached.
+         */
+        @Override
+        public List<CompletableFuture<?>> upsertBatch(
+                List<Record> records, Map<String, Object> context) {
+            List<CompletableFuture<?>> handles = new ArrayList<>(records.size());
+            // the namespace may be null
+            Map<String, Map<String, PendingVector>> byNamespace = new LinkedHashMap<>();
+            for (Record record : records) {
+                CompletableFuture<Object> handle = new CompletableFuture<>();
+                handles.add(handle);
+                try {
+                    TransformContext transformContext =
+                            GenAIToolKitAgent.recordToTransformContext(record, true);
+                    String namespace =
+                            namespaceFunction != null
+                                    ? (String) namespaceFunction.evaluate(transformContext)
+                                    : null;
+                    Vector vector = toVector(transformContext);
+                    // a later record of the same id replaces the vector, both records are
+                    // acknowledged by the request that writes it
+                    byNamespace
+                            .computeIfAbsent(namespace, n -> new LinkedHashMap<>())
+                            .merge(
+                                    vector.getId(),
+                                    new PendingVector(vector, List.of(handle)),
+                                    PendingVector::replacedBy);
+                } catch (Exception e) {
+                    handle.completeExceptionally(e);
                 }
+            }
+            byNamespace.forEach(
+                    (namespace, byId) -> {
+                        List<PendingVector> vectors = new ArrayList<>(byId.values());
+                        for (int i = 0; i < vectors.size(); i += MAX_VECTORS_PER_REQUEST) {
+                            send(
+                                    namespace,
+                                    vectors.subList(
+                                            i,
+                                            Math.min(i + MAX_VECTORS_PER_REQUEST, vectors.size())));
+                        }
+                    });
+            return handles;
+        }
 
-                Vector v1 =
-                        Vector.newBuilder()
-                                .setId(id)
-                                .addAllValues(vectorFloat)
-                                .setMetadata(metadataStruct)
-                                .build();
+        private Vector toVector(TransformContext transformContext) {
+            String id = idFunction != null ? (String) idFunction.evaluate(transformContext) : null;
+            List<Object> vector =
+                    vectorFunction != null
+                            ? (List<Object>) vectorFunction.evaluate(transformContext)
+                            : null;
+            Map<String, Object> metadata =
+                    metadataFunctions.entrySet().stream()
+                            .collect(
+                                    Collectors.toMap(
+                                            Map.Entry::getKey,
+                                            e -> e.getValue().evaluate(transformContext)));
+            Struct metadataStruct =
+                    Struct.newBuilder()
+                            .putAllFields(
+                                    metadata.entrySet().stream()
+                                            .collect(
+                                                    Collectors.toMap(
+                                                            Map.Entry::getKey,
+                                                            e ->
+                                                                    PineconeDataSource
+                                                                            .convertToValue(
+                                                                                    e.getValue()))))
+                            .build();
 
-                UpsertRequest.Builder builder = UpsertRequest.newBuilder().addVectors(v1);
+            List<Float> vectorFloat = null;
+            if (vector != null) {
+                vectorFloat =
+                        vector.stream()
+                                .map(
+                                        n -> {
+                                            if (n instanceof String s) {
+                                                return Float.parseFloat(s);
+                                            } else if (n instanceof Number u) {
+                                                return u.floatValue();
+                                            } else {
+                                                throw new IllegalArgumentException(
+                                                        "only vectors of floats are supported");
+                                            }
+                                        })
+                                .collect(Collectors.toList());
+            }
+
+            return Vector.newBuilder()
+                    .setId(id)
+                    .addAllValues(vectorFloat)
+                    .setMetadata(metadataStruct)
+                    .build();
+        }
+
+        private void send(String namespace, List<PendingVector> vectors) {
+            try {
+                inFlightRequests.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                vectors.forEach(v -> v.handles().forEach(h -> h.completeExceptionally(e)));
+                return;
+            }
+            UpsertRequest.Builder builder = UpsertRequest.newBuilder();
+            vectors.forEach(v -> builder.addVectors(v.vector()));
+            if (namespace != null) {
+                builder.setNamespace(namespace);
+            }
+            UpsertRequest request = builder.build();
 
-                if (namespace != null) {
-                    builder.setNamespace(namespace);
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            List<VectorKey> keys = new ArrayList<>(vectors.size());
+            List<CompletableFuture<Void>> previous = new ArrayList<>();
+            synchronized (pendingVectors) {
+                for (PendingVector vector : vectors) {
+                    VectorKey key = new VectorKey(namespace, vector.vector().getId());
+                    keys.add(key);
+                    CompletableFuture<Void> earlier = pendingVectors.put(key, done);
+                    if (earlier != null) {
+                        previous.add(earlier);
+                    }
                 }
-                UpsertRequest upsertRequest = builder.build();
+            }
+            Runnable onDone =
+                    () -> {
+                        inFlightRequests.release();
+                        synchronized (pendingVectors) {
+                            keys.forEach(key -> pendingVectors.remove(key, done));
+                        }
+                        done.complete(null);
+                    };
+            if (previous.isEmpty()) {
+                upsert(request, vectors, onDone);
+            } else {
+                // the earlier requests complete normally even when they fail
+                CompletableFuture.allOf(previous.toArray(new CompletableFuture[0]))
+                        .thenRun(() -> upsert(request, vectors, onDone));
+            }
+        }
 
-                UpsertResponse upsertResponse = connection.getBlockingStub().upsert(upsertRequest);
+        private void upsert(UpsertRequest request, List<PendingVector> vectors, Runnable onDone) {
+            asyncStub
+                    .withDeadlineAfter(clientConfig.getServerSideTimeoutSec(), TimeUnit.SECONDS)
+                    .upsert(
+                            request,
+                            new StreamObserver<>() {
+                                @Override
+                                public void onNext(UpsertResponse upsertResponse) {
+                                    log.debug("Result {}", upsertResponse);
+                                }
+
+                                @Override
+                                public void onError(Throwable error) {
+                                    onDone.run();
+                                    vectors.forEach(
+                                            v ->
+                                                    v.handles()
+                                                            .forEach(
+                                                                    h ->
+                                                                            h.completeExceptionally(
+                                                                                    error)));
+                                }
+
+                                @Override
+                                public void onCompleted() {
+                                    onDone.run();
+                                    vectors.forEach(
+                                            v -> v.handles().forEach(h -> h.complete(null)));
+                                }
+                            });
+        }
 
-                log.info("Result {}", upsertResponse);
-                handle.complete(null);
-            } catch (Exception e) {
-                handle.completeExceptionally(e);
+        @Override
+        public void close() {
+            if (connection != null) {
+                connection.close();
             }
-            return handle;
         }
     }
 
+    private record PendingVector(Vector vector, List<CompletableFuture<Object>> handles) {
+
+        PendingVector replacedBy(PendingVector later) {
+            List<CompletableFuture<Object>> all = new ArrayList<>(handles);
+            all.addAll(later.handles());
+            return new PendingVector(later.vector(), all);
+        }
+    }
+
+    private record VectorKey(String namespace, String id) {}
+
     private static JstlEvaluator buildEvaluator(
             Map<String, Object> agentConfiguration, String param, Class type) {
         String expression = agentConfiguration.getOrDefault(param, "").toString();
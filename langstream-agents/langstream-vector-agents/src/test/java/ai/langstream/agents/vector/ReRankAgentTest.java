@@ -0,0 +1,106 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import ai.langstream.api.runner.code.AgentCodeRegistry;
+import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.SimpleRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class ReRankAgentTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static ReRankAgent createAgent(Map<String, Object> configuration) throws Exception {
+        ReRankAgent agent =
+                (ReRankAgent) new AgentCodeRegistry().getAgentCode("re-rank").agentCode();
+        agent.init(new HashMap<>(configuration));
+        agent.start();
+        return agent;
+    }
+
+    @Test
+    void testReRank() throws Exception {
+        ReRankAgent agent =
+                createAgent(
+                        Map.of(
+                                "field", "value.related_documents",
+                                "output-field", "value.reranked",
+                                "query-vector", "value.question_embeddings",
+                                "max", 2));
+        Map<String, Object> value =
+                Map.of(
+                        "question_embeddings",
+                        List.of(1, 0, 0),
+                        "related_documents",
+                        List.of(
+                                // typed results
+                                Map.of("id", "a", "vector", List.of(0, 1, 0), "similarity", 0.9),
+                                // string results
+                                Map.of("id", "b", "vector", "[1.0, 0.0, 0.0]", "similarity", "0.8"),
+                                Map.of("id", "c", "vector", List.of(1, 1, 0), "similarity", 0.7),
+                                Map.of("id", "d")));
+        List<Record> records =
+                agent.processRecord(SimpleRecord.of(null, MAPPER.writeValueAsString(value)));
+        Map<String, Object> result = MAPPER.readValue((String) records.get(0).value(), Map.class);
+        List<Map<String, Object>> reRanked = (List<Map<String, Object>>) result.get("reranked");
+        assertEquals(2, reRanked.size());
+        assertEquals("b", reRanked.get(0).get("id"));
+        assertEquals(1.0, (Double) reRanked.get(0).get("similarity"), 1e-6);
+        assertEquals("c", reRanked.get(1).get("id"));
+        assertEquals(Math.sqrt(0.5), (Double) reRanked.get(1).get("similarity"), 1e-6);
+        agent.close();
+    }
+
+    @Test
+    void testResultsWithoutVectorAreKeptLast() throws Exception {
+        ReRankAgent agent =
+                createAgent(
+                        Map.of(
+                                "field",
+                                "value.results",
+                                "query-vector",
+                                "value.query",
+                                "vector-field",
+                                "embeddings",
+                                "similarity",
+                                "euclidean",
+                                "score-field",
+                                "score"));
+        Map<String, Object> value =
+                Map.of(
+                        "query",
+                        List.of(0, 0),
+                        "results",
+                        List.of(
+                                Map.of("id", "a"),
+                                Map.of("id", "b", "embeddings", List.of(3, 0)),
+                                Map.of("id", "c", "embeddings", List.of(1, 0))));
+        List<Record> records =
+                agent.processRecord(SimpleRecord.of(null, MAPPER.writeValueAsString(value)));
+        Map<String, Object> result = MAPPER.readValue((String) records.get(0).value(), Map.class);
+        List<Map<String, Object>> reRanked = (List<Map<String, Object>>) result.get("results");
+        assertEquals(List.of("c", "b", "a"), reRanked.stream().map(row -> row.get("id")).toList());
+        assertEquals(0.5, (Double) reRanked.get(0).get("score"), 1e-6);
+        agent.close();
+    }
+}
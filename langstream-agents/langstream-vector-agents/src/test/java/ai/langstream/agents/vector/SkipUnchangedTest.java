@@ -0,0 +1,168 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ai.langstream.agents.vector.changes.ContentHashStore;
+import ai.langstream.api.runner.code.AgentCodeRegistry;
+import ai.langstream.api.runner.code.Header;
+import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.SimpleRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SkipUnchangedTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static Record record(String id, String text) throws Exception {
+        Map<String, Object> value = Map.of("text", text, "vector", List.of(1f, 0f));
+        return SimpleRecord.of(id, MAPPER.writeValueAsString(value));
+    }
+
+    private static VectorDBSinkAgent createSink(Map<String, Object> skipUnchanged)
+            throws Exception {
+        VectorDBSinkAgent sink =
+                (VectorDBSinkAgent)
+                        new AgentCodeRegistry().getAgentCode("vector-db-sink").agentCode();
+        Map<String, Object> configuration = new HashMap<>();
+        configuration.put("datasource", Map.of("service", "hnsw", "index-name", "skip-unchanged"));
+        configuration.put("vector.id", "key");
+        configuration.put("vector.vector", "value.vector");
+        configuration.put("skip-unchanged", skipUnchanged);
+        sink.init(configuration);
+        sink.start();
+        return sink;
+    }
+
+    @Test
+    void testHash() {
+        Map<String, Object> a = new LinkedHashMap<>();
+        a.put("x", 1);
+        a.put("y", "text");
+        Map<String, Object> b = new LinkedHashMap<>();
+        b.put("y", "text");
+        b.put("x", 1);
+        assertEquals(ContentHashStore.hash(a), ContentHashStore.hash(b));
+        assertNotEquals(ContentHashStore.hash(a), ContentHashStore.hash(Map.of("x", 2)));
+        assertEquals(ContentHashStore.hash("text"), ContentHashStore.hash("text".getBytes()));
+    }
+
+    @Test
+    void testContentRequired() {
+        // the default value would hash the vector in the sink but not in the processor
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> createSink(Map.of("store", "test-content-required")));
+    }
+
+    @Test
+    void testIncompatibleStore(@TempDir Path directory) throws Exception {
+        VectorDBSinkAgent sink =
+                createSink(
+                        Map.of(
+                                "store",
+                                "test-incompatible",
+                                "directory",
+                                directory.toString(),
+                                "content",
+                                "value.text"));
+        SkipUnchangedAgent processor =
+                (SkipUnchangedAgent)
+                        new AgentCodeRegistry().getAgentCode("skip-unchanged").agentCode();
+        // the processor would never see the hashes saved in the directory of the sink
+        assertThrows(
+                IllegalArgumentException.class,
+                () ->
+                        processor.init(
+                                new HashMap<>(
+                                        Map.of(
+                                                "store",
+                                                "test-incompatible",
+                                                "content",
+                                                "value.text"))));
+        sink.close();
+    }
+
+    @Test
+    void testSaveSnapshot(@TempDir Path directory) throws Exception {
+        ContentHashStore store = new ContentHashStore(directory);
+        store.put("a", 1L);
+        store.save();
+        store.put("b", 2L);
+        store.save();
+        ContentHashStore reloaded = new ContentHashStore(directory);
+        assertEquals(2, reloaded.size());
+        assertTrue(reloaded.isUnchanged("b", 2L));
+    }
+
+    @Test
+    void testSkipUnchanged(@TempDir Path directory) throws Exception {
+        Map<String, Object> skipUnchanged =
+                Map.of("store", "test", "directory", directory.toString(), "content", "value.text");
+        VectorDBSinkAgent sink = createSink(skipUnchanged);
+        sink.write(record("a", "first")).get();
+        sink.write(record("b", "second")).get();
+        sink.write(record("a", "first")).get();
+        assertEquals(1L, sink.buildAdditionalInfo().get("unchanged-records"));
+        sink.write(record("a", "changed")).get();
+        assertEquals(1L, sink.buildAdditionalInfo().get("unchanged-records"));
+        // the deletion forgets the hash
+        sink.write(SimpleRecord.of("b", null)).get();
+        sink.write(record("b", "second")).get();
+        assertEquals(1L, sink.buildAdditionalInfo().get("unchanged-records"));
+        sink.close();
+
+        // the hashes are reloaded, and shared with the processor
+        sink = createSink(skipUnchanged);
+        SkipUnchangedAgent processor =
+                (SkipUnchangedAgent)
+                        new AgentCodeRegistry().getAgentCode("skip-unchanged").agentCode();
+        processor.init(new HashMap<>(skipUnchanged));
+        processor.start();
+        assertEquals(List.of(), processor.processRecord(record("a", "changed")));
+        assertEquals(1, processor.processRecord(record("a", "new")).size());
+        assertEquals(1, processor.processRecord(record("c", "new")).size());
+        sink.write(record("c", "new")).get();
+        assertEquals(List.of(), processor.processRecord(record("c", "new")));
+        assertEquals(2L, processor.buildAdditionalInfo().get("unchanged-records"));
+        processor.close();
+
+        SkipUnchangedAgent marker =
+                (SkipUnchangedAgent)
+                        new AgentCodeRegistry().getAgentCode("skip-unchanged").agentCode();
+        Map<String, Object> markConfiguration = new HashMap<>(skipUnchanged);
+        markConfiguration.put("action", "mark");
+        marker.init(markConfiguration);
+        Record marked = marker.processRecord(record("c", "new")).get(0);
+        assertTrue(
+                marked.headers().stream()
+                        .map(Header::key)
+                        .anyMatch(SkipUnchangedAgent.UNCHANGED_PROPERTY::equals));
+        marker.close();
+        sink.close();
+    }
+}
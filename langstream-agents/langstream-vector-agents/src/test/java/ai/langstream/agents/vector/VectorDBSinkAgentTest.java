@@ -0,0 +1,82 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import ai.langstream.agents.vector.hnsw.HnswDataSource;
+import ai.langstream.api.runner.code.AgentCodeRegistry;
+import ai.langstream.api.runner.code.SimpleRecord;
+import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+
+class VectorDBSinkAgentTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static VectorDBSinkAgent createSink(
+            Map<String, Object> datasourceConfig, Map<String, Object> agentConfig)
+            throws Exception {
+        VectorDBSinkAgent agent =
+                (VectorDBSinkAgent)
+                        new AgentCodeRegistry().getAgentCode("vector-db-sink").agentCode();
+        Map<String, Object> configuration = new HashMap<>();
+        configuration.put("datasource", datasourceConfig);
+        configuration.put("vector.id", "key");
+        configuration.put("vector.vector", "value.vector");
+        configuration.put("vector.metadata.genre", "value.genre");
+        configuration.putAll(agentConfig);
+        agent.init(configuration);
+        agent.start();
+        return agent;
+    }
+
+    @Test
+    void testBatchedWrites() throws Exception {
+        Map<String, Object> datasourceConfig =
+                Map.of("service", "hnsw", "index-name", "test-batched-writes");
+        VectorDBSinkAgent agent =
+                createSink(datasourceConfig, Map.of("batch-size", 2, "flush-interval", 60000));
+        QueryStepDataSource dataSource =
+                new HnswDataSource().createDataSourceImplementation(datasourceConfig);
+        dataSource.initialize(null);
+
+        List<CompletableFuture<?>> handles = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Map<String, Object> value = Map.of("vector", List.of(1f, i, 0f), "genre", "comedy");
+            handles.add(agent.write(SimpleRecord.of("v" + i, MAPPER.writeValueAsString(value))));
+        }
+        // the first batch is full, the last record waits for the flush
+        handles.get(0).get();
+        handles.get(1).get();
+        assertFalse(handles.get(2).isDone());
+        String query = "{\"vector\": ?, \"topK\": 10}";
+        assertEquals(2, dataSource.fetchData(query, List.of(List.of(1f, 0f, 0f))).size());
+
+        // closing the sink flushes the pending records
+        agent.close();
+        handles.get(2).get();
+        assertEquals(3, dataSource.fetchData(query, List.of(List.of(1f, 0f, 0f))).size());
+        dataSource.close();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.cassandra;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.SimpleRecord;
+import com.datastax.oss.common.sink.AbstractSinkRecordHeader;
+import com.datastax.oss.common.sink.config.CassandraSinkConfig.IgnoreErrorsPolicy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+
+/** Tests the handles of the records without a Cassandra cluster. */
+class CassandraVectorDatabaseWriterTest {
+
+    private static CassandraWriter.CassandraVectorDatabaseWriter createWriter() {
+        return (CassandraWriter.CassandraVectorDatabaseWriter)
+                new CassandraWriter().createImplementation(Map.of("service", "cassandra"));
+    }
+
+    @Test
+    void testAdapter() {
+        Record record =
+                SimpleRecord.builder()
+                        .key("key")
+                        .value("value")
+                        .timestamp(42L)
+                        .headers(
+                                List.of(
+                                        SimpleRecord.SimpleHeader.of("text", "a"),
+                                        SimpleRecord.SimpleHeader.of("bytes", new byte[] {1, 2}),
+                                        SimpleRecord.SimpleHeader.of("number", 3),
+                                        SimpleRecord.SimpleHeader.of("null", null)))
+                        .build();
+        CassandraWriter.CassandraVectorDatabaseWriter.LangStreamSinkRecordAdapter adapter =
+                new CassandraWriter.CassandraVectorDatabaseWriter.LangStreamSinkRecordAdapter(
+                        record);
+        assertEquals("key", adapter.key());
+        assertEquals("value", adapter.value());
+        assertEquals(42L, adapter.timestamp());
+        List<AbstractSinkRecordHeader> headers = new ArrayList<>();
+        adapter.headers().forEach(headers::add);
+        assertEquals(4, headers.size());
+        assertArrayEquals("a".getBytes(StandardCharsets.UTF_8), (byte[]) headers.get(0).value());
+        assertArrayEquals(new byte[] {1, 2}, (byte[]) headers.get(1).value());
+        assertArrayEquals("3".getBytes(StandardCharsets.UTF_8), (byte[]) headers.get(2).value());
+        assertNull(headers.get(3).value());
+        assertTrue(!adapter.getHandle().isDone());
+    }
+
+    @Test
+    void testHandleSuccess() throws Exception {
+        CassandraWriter.CassandraVectorDatabaseWriter writer = createWriter();
+        CassandraWriter.CassandraVectorDatabaseWriter.LangStreamSinkRecordAdapter adapter =
+                new CassandraWriter.CassandraVectorDatabaseWriter.LangStreamSinkRecordAdapter(
+                        SimpleRecord.of("key", "value"));
+        writer.processor.handleSuccess(adapter);
+        assertNull(adapter.getHandle().get());
+    }
+
+    @Test
+    void testHandleFailure() {
+        RuntimeException error = new RuntimeException("failed");
+        assertTrue(failed(error, IgnoreErrorsPolicy.NONE, true));
+        assertTrue(failed(error, IgnoreErrorsPolicy.NONE, false));
+        // only the errors of the driver are ignored
+        assertTrue(!failed(error, IgnoreErrorsPolicy.DRIVER, true));
+        assertTrue(failed(error, IgnoreErrorsPolicy.DRIVER, false));
+        assertTrue(!failed(error, IgnoreErrorsPolicy.ALL, true));
+        assertTrue(!failed(error, IgnoreErrorsPolicy.ALL, false));
+    }
+
+    private static boolean failed(
+            Throwable error, IgnoreErrorsPolicy ignoreErrors, boolean driverFailure) {
+        CassandraWriter.CassandraVectorDatabaseWriter.LangStreamSinkRecordAdapter adapter =
+                new CassandraWriter.CassandraVectorDatabaseWriter.LangStreamSinkRecordAdapter(
+                        SimpleRecord.of("key", "value"));
+        CassandraWriter.CassandraVectorDatabaseWriter.completeOnFailure(
+                adapter, error, ignoreErrors, driverFailure);
+        assertTrue(adapter.getHandle().isDone());
+        return adapter.getHandle().isCompletedExceptionally();
+    }
+
+    @Test
+    void testBatchFailure() {
+        // the processor is not started, the batch fails
+        CassandraWriter.CassandraVectorDatabaseWriter writer = createWriter();
+        List<Record> records = List.of(SimpleRecord.of("a", "1"), SimpleRecord.of("b", "2"));
+        List<CompletableFuture<?>> handles = writer.upsertBatch(records, Map.of());
+        assertEquals(2, handles.size());
+        handles.forEach(handle -> assertTrue(handle.isCompletedExceptionally()));
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.datasource.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ai.langstream.agents.vector.VectorDBSinkAgent;
+import ai.langstream.agents.vector.hnsw.HnswDataSource;
+import ai.langstream.api.runner.code.AgentCodeRegistry;
+import ai.langstream.api.runner.code.SimpleRecord;
+import com.datastax.oss.streaming.ai.datasource.QueryResult;
+import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HnswDataSourceTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static VectorDBSinkAgent createSink(Map<String, Object> datasourceConfig)
+            throws Exception {
+        VectorDBSinkAgent agent =
+                (VectorDBSinkAgent)
+                        new AgentCodeRegistry().getAgentCode("vector-db-sink").agentCode();
+        Map<String, Object> configuration = new HashMap<>();
+        configuration.put("datasource", datasourceConfig);
+        configuration.put("vector.id", "key");
+        configuration.put("vector.vector", "value.vector");
+        configuration.put("vector.metadata.genre", "value.genre");
+        agent.init(configuration);
+        agent.start();
+        return agent;
+    }
+
+    private static void write(VectorDBSinkAgent agent, String id, List<Float> vector, String genre)
+            throws Exception {
+        Map<String, Object> value = Map.of("vector", vector, "genre", genre);
+        agent.write(SimpleRecord.of(id, MAPPER.writeValueAsString(value))).get();
+    }
+
+    @Test
+    void testQuestionMarksInStrings() throws Exception {
+        Map<String, Object> datasourceConfig =
+                Map.of("service", "hnsw", "index-name", "test-question-marks");
+        VectorDBSinkAgent agent = createSink(datasourceConfig);
+        QueryStepDataSource dataSource =
+                new HnswDataSource().createDataSourceImplementation(datasourceConfig);
+        dataSource.initialize(null);
+        write(agent, "1", List.of(1f, 0f), "what?");
+        write(agent, "2", List.of(0.9f, 0.1f), "other");
+
+        // the question mark of the string is not a parameter
+        String query =
+                """
+                {"filter": {"genre": "what?"}, "vector": ?, "topK": 2}
+                """;
+        List<Map<String, String>> results = dataSource.fetchData(query, List.of(List.of(1f, 0f)));
+        assertEquals(1, results.size());
+        assertEquals("1", results.get(0).get("id"));
+        agent.close();
+        dataSource.close();
+    }
+
+    @Test
+    void testIncompatibleConfiguration() throws Exception {
+        Map<String, Object> datasourceConfig =
+                Map.of("service", "hnsw", "index-name", "test-incompatible", "dimension", 2);
+        QueryStepDataSource dataSource =
+                new HnswDataSource().createDataSourceImplementation(datasourceConfig);
+        dataSource.initialize(null);
+        Map<String, Object> otherSimilarity = new HashMap<>(datasourceConfig);
+        otherSimilarity.put("similarity", "euclidean");
+        assertThrows(
+                IllegalArgumentException.class,
+                () ->
+                        new HnswDataSource()
+                                .createDataSourceImplementation(otherSimilarity)
+                                .initialize(null));
+        Map<String, Object> otherDimension = new HashMap<>(datasourceConfig);
+        otherDimension.put("dimension", 3);
+        assertThrows(
+                IllegalArgumentException.class,
+                () ->
+                        new HnswDataSource()
+                                .createDataSourceImplementation(otherDimension)
+                                .initialize(null));
+        // the same configuration shares the index
+        QueryStepDataSource same =
+                new HnswDataSource().createDataSourceImplementation(datasourceConfig);
+        same.initialize(null);
+        same.close();
+        dataSource.close();
+    }
+
+    @Test
+    void testWriteAndQuery(@TempDir Path directory) throws Exception {
+        Map<String, Object> datasourceConfig =
+                Map.of(
+                        "service",
+                        "hnsw",
+                        "index-name",
+                        "test-write-and-query",
+                        "directory",
+                        directory.toString());
+        VectorDBSinkAgent agent = createSink(datasourceConfig);
+        QueryStepDataSource dataSource =
+                new HnswDataSource().createDataSourceImplementation(datasourceConfig);
+        dataSource.initialize(null);
+
+        write(agent, "1", List.of(1f, 0f, 0f), "comedy");
+        write(agent, "2", List.of(0.9f, 0.1f, 0f), "drama");
+        write(agent, "3", List.of(0f, 0f, 1f), "comedy");
+
+        String query =
+                """
+                {"vector": ?, "topK": 2, "filter": {"genre": {"$in": ?}}}
+                """;
+        List<Map<String, String>> results =
+                dataSource.fetchData(query, List.of(List.of(1f, 0f, 0f), List.of("comedy")));
+        assertEquals(2, results.size());
+        assertEquals("1", results.get(0).get("id"));
+        assertEquals("comedy", results.get(0).get("genre"));
+        assertEquals("1.0", results.get(0).get("similarity"));
+        assertEquals("3", results.get(1).get("id"));
+
+        QueryResult typed =
+                dataSource
+                        .fetchResultAsync(
+                                """
+                                {"vector": ?, "topK": 1, "includeValues": true}
+                                """,
+                                List.of(List.of(0f, 1f, 0f)))
+                        .get();
+        Map<String, Object> row = typed.toMaps().get(0);
+        assertEquals("2", row.get("id"));
+        assertEquals(
+                new QueryResult.Column("vector", QueryResult.ColumnType.FLOAT_VECTOR),
+                typed.getColumns().stream()
+                        .filter(c -> c.name().equals("vector"))
+                        .findFirst()
+                        .orElseThrow());
+
+        // a record without value deletes the vector
+        agent.write(SimpleRecord.of("2", null)).get();
+        assertEquals(
+                "1",
+                dataSource
+                        .fetchData("{\"vector\": ?, \"topK\": 1}", List.of(List.of(0f, 1f, 0f)))
+                        .get(0)
+                        .get("id"));
+
+        agent.close();
+        dataSource.close();
+        // the index is saved when the last user closes it
+        assertTrue(Files.exists(directory.resolve("graph.bin")));
+
+        QueryStepDataSource reopened =
+                new HnswDataSource().createDataSourceImplementation(datasourceConfig);
+        reopened.initialize(null);
+        assertEquals(
+                "1",
+                reopened.fetchData("{\"vector\": ?, \"topK\": 1}", List.of(List.of(1f, 0f, 0f)))
+                        .get(0)
+                        .get("id"));
+        reopened.close();
+    }
+}
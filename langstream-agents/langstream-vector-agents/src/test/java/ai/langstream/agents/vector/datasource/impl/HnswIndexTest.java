@@ -0,0 +1,172 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.datasource.impl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ai.langstream.agents.vector.Similarity;
+import ai.langstream.agents.vector.hnsw.HnswIndex;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HnswIndexTest {
+
+    private static float[] randomVector(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = random.nextFloat() * 2 - 1;
+        }
+        return vector;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+
+    private static List<String> ids(List<HnswIndex.SearchResult> results) {
+        return results.stream().map(HnswIndex.SearchResult::id).toList();
+    }
+
+    @Test
+    void testRecall() throws Exception {
+        Random random = new Random(42);
+        List<float[]> vectors = new ArrayList<>();
+        try (HnswIndex index = new HnswIndex(null, 0, Similarity.COSINE, 16, 100, 42)) {
+            for (int i = 0; i < 2000; i++) {
+                float[] vector = randomVector(random, 32);
+                vectors.add(vector);
+                index.upsert("v" + i, vector, Map.of("position", i));
+            }
+            assertEquals(2000, index.size());
+            assertEquals(32, index.getDimension());
+
+            int found = 0;
+            int queries = 50;
+            for (int q = 0; q < queries; q++) {
+                float[] query = randomVector(random, 32);
+                Set<String> expected = new HashSet<>();
+                IntStream.range(0, vectors.size())
+                        .boxed()
+                        .sorted(
+                                Comparator.comparingDouble(
+                                        (Integer i) -> -cosine(vectors.get(i), query)))
+                        .limit(10)
+                        .forEach(i -> expected.add("v" + i));
+                List<HnswIndex.SearchResult> results = index.search(query, 10, 64, null, false);
+                assertEquals(10, results.size());
+                for (int i = 1; i < results.size(); i++) {
+                    assertTrue(results.get(i - 1).score() >= results.get(i).score());
+                }
+                found += (int) ids(results).stream().filter(expected::contains).count();
+            }
+            double recall = found / (queries * 10.0);
+            assertTrue(recall >= 0.9, "recall " + recall);
+        }
+    }
+
+    @Test
+    void testUpsertDeleteAndFilter() throws Exception {
+        try (HnswIndex index = new HnswIndex(null, 2, Similarity.EUCLIDEAN, 4, 10, 42)) {
+            index.upsert("a", new float[] {0, 0}, Map.of("genre", "comedy"));
+            index.upsert("b", new float[] {1, 0}, Map.of("genre", "drama"));
+            index.upsert("c", new float[] {5, 5}, Map.of("genre", "comedy"));
+            assertEquals(
+                    List.of("a", "b"), ids(index.search(new float[] {0, 0}, 2, 10, null, false)));
+            assertEquals(1f, index.search(new float[] {0, 0}, 1, 10, null, false).get(0).score());
+
+            // the vector of a moves
+            index.upsert("a", new float[] {6, 6}, Map.of("genre", "comedy"));
+            assertEquals(3, index.size());
+            assertEquals(
+                    List.of("b", "c", "a"),
+                    ids(index.search(new float[] {0, 0}, 5, 10, null, false)));
+            assertEquals(
+                    List.of("c", "a"),
+                    ids(
+                            index.search(
+                                    new float[] {0, 0},
+                                    5,
+                                    1,
+                                    metadata -> "comedy".equals(metadata.get("genre")),
+                                    false)));
+
+            assertTrue(index.delete("c"));
+            assertEquals(
+                    List.of("b", "a"), ids(index.search(new float[] {0, 0}, 5, 10, null, false)));
+            assertEquals(2, index.size());
+
+            assertThrows(
+                    IllegalArgumentException.class,
+                    () -> index.upsert("d", new float[] {1, 2, 3}, Map.of()));
+        }
+    }
+
+    @Test
+    void testPersistence(@TempDir Path directory) throws Exception {
+        Random random = new Random(7);
+        float[] query = randomVector(random, 16);
+        List<HnswIndex.SearchResult> expected;
+        try (HnswIndex index = new HnswIndex(directory, 16, Similarity.DOT_PRODUCT, 8, 50, 1)) {
+            for (int i = 0; i < 500; i++) {
+                index.upsert("v" + i, randomVector(random, 16), Map.of("position", i));
+            }
+            index.delete("v3");
+            expected = index.search(query, 5, 50, null, true);
+            // only the used part of the mapped file is uploaded to S3
+            assertEquals(500L * 16 * Float.BYTES, index.save());
+            assertTrue(Files.size(directory.resolve("vectors.bin")) > 500L * 16 * Float.BYTES);
+        }
+
+        try (HnswIndex index = new HnswIndex(directory, 0, Similarity.DOT_PRODUCT, 8, 50, 1)) {
+            assertEquals(499, index.size());
+            List<HnswIndex.SearchResult> results = index.search(query, 5, 50, null, true);
+            assertEquals(ids(expected), ids(results));
+            for (int i = 0; i < results.size(); i++) {
+                assertArrayEquals(expected.get(i).vector(), results.get(i).vector());
+                assertEquals(expected.get(i).metadata(), results.get(i).metadata());
+            }
+            // the loaded index can be updated
+            float[] scaled = new float[query.length];
+            for (int i = 0; i < query.length; i++) {
+                scaled[i] = query[i] * 100;
+            }
+            index.upsert("query", scaled, Map.of());
+            assertEquals("query", index.search(query, 1, 50, null, false).get(0).id());
+        }
+
+        assertThrows(
+                Exception.class, () -> new HnswIndex(directory, 0, Similarity.COSINE, 8, 50, 1));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.exact;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import ai.langstream.agents.vector.Similarity;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class ExactVectorSearchTest {
+
+    private static float[] randomVectors(Random random, int count) {
+        float[] vectors = new float[count];
+        for (int i = 0; i < count; i++) {
+            vectors[i] = random.nextFloat() * 2 - 1;
+        }
+        return vectors;
+    }
+
+    @Test
+    void testKernels() {
+        Random random = new Random(42);
+        // lengths that are not multiple of the unrolling exercise the tails
+        for (int length : new int[] {0, 1, 3, 7, 8, 15, 16, 33, 384, 1537}) {
+            float[] a = randomVectors(random, length + 5);
+            float[] b = randomVectors(random, length + 2);
+            double dot = 0, normA = 0, normB = 0, distance = 0;
+            for (int i = 0; i < length; i++) {
+                double x = a[5 + i];
+                double y = b[2 + i];
+                dot += x * y;
+                normA += x * x;
+                normB += y * y;
+                distance += (x - y) * (x - y);
+            }
+            float delta = 1e-4f * Math.max(length, 1);
+            assertEquals(dot, VectorKernels.dot(a, 5, b, 2, length), delta);
+            assertEquals(
+                    length == 0 ? 0 : dot / Math.sqrt(normA * normB),
+                    VectorKernels.cosine(a, 5, b, 2, length),
+                    1e-4f);
+            assertEquals(distance, VectorKernels.squareDistance(a, 5, b, 2, length), delta);
+        }
+        assertEquals(0f, VectorKernels.cosine(new float[4], 0, new float[] {1, 2, 3, 4}, 0, 4));
+    }
+
+    @Test
+    void testSearch() {
+        Random random = new Random(7);
+        int dimension = 24;
+        int count = 200;
+        float[] vectors = randomVectors(random, dimension * count);
+        float[] query = randomVectors(random, dimension);
+        for (Similarity similarity : Similarity.values()) {
+            ExactVectorSearch search = new ExactVectorSearch(vectors, dimension, similarity);
+            assertEquals(count, search.size());
+            List<Integer> expected =
+                    IntStream.range(0, count)
+                            .boxed()
+                            .sorted(
+                                    Comparator.comparingDouble(
+                                            (Integer i) ->
+                                                    -new ScalarSearch(vectors, dimension)
+                                                            .score(query, i, similarity)))
+                            .limit(10)
+                            .toList();
+            List<ExactVectorSearch.Match> matches = search.search(query, 10);
+            assertEquals(expected, matches.stream().map(ExactVectorSearch.Match::index).toList());
+        }
+    }
+
+    @Test
+    void testTiesAndEdgeCases() {
+        ExactVectorSearch search =
+                ExactVectorSearch.of(
+                        List.of(
+                                new float[] {1, 0},
+                                new float[] {0, 1},
+                                new float[] {2, 0},
+                                new float[] {0, 1}),
+                        Similarity.COSINE);
+        assertEquals(
+                List.of(
+                        new ExactVectorSearch.Match(0, 1f),
+                        new ExactVectorSearch.Match(2, 1f),
+                        new ExactVectorSearch.Match(1, 0f)),
+                search.search(new float[] {1, 0}, 3));
+        assertEquals(List.of(), search.search(new float[] {1, 0}, 0));
+        assertEquals(4, search.search(new float[] {1, 0}, 100).size());
+        assertEquals(
+                0,
+                ExactVectorSearch.of(List.of(), Similarity.COSINE)
+                        .search(new float[] {1}, 3)
+                        .size());
+        assertThrows(IllegalArgumentException.class, () -> search.search(new float[] {1}, 3));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> ExactVectorSearch.of(List.of(new float[2], new float[3]), Similarity.COSINE));
+    }
+
+    /** The reference scores, in double precision. */
+    private record ScalarSearch(float[] vectors, int dimension) {
+        double score(float[] query, int index, Similarity similarity) {
+            double dot = 0, normA = 0, normB = 0, distance = 0;
+            for (int i = 0; i < dimension; i++) {
+                double x = query[i];
+                double y = vectors[index * dimension + i];
+                dot += x * y;
+                normA += x * x;
+                normB += y * y;
+                distance += (x - y) * (x - y);
+            }
+            return switch (similarity) {
+                case COSINE -> dot / Math.sqrt(normA * normB);
+                case DOT_PRODUCT -> dot;
+                case EUCLIDEAN -> 1 / (1 + distance);
+            };
+        }
+    }
+}
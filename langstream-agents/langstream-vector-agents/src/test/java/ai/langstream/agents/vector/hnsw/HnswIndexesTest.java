@@ -0,0 +1,107 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.hnsw;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ai.langstream.agents.vector.Similarity;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HnswIndexesTest {
+
+    /** Keeps the snapshots in a local directory, like the S3 bucket. */
+    private static class DirectorySnapshotStore implements SnapshotStore {
+        private final Path bucket;
+        private int version;
+
+        DirectorySnapshotStore(Path bucket) {
+            this.bucket = bucket;
+        }
+
+        @Override
+        public synchronized String version() {
+            return version == 0 ? null : String.valueOf(version);
+        }
+
+        @Override
+        public synchronized String restore(Path directory) throws Exception {
+            if (version == 0) {
+                return null;
+            }
+            for (String file : new String[] {HnswIndex.VECTORS_FILE, HnswIndex.GRAPH_FILE}) {
+                Files.copy(
+                        bucket.resolve(file),
+                        directory.resolve(file),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            return version();
+        }
+
+        @Override
+        public synchronized void upload(Path directory, long vectorsBytes) throws Exception {
+            try (InputStream in = Files.newInputStream(directory.resolve(HnswIndex.VECTORS_FILE));
+                    OutputStream out =
+                            Files.newOutputStream(bucket.resolve(HnswIndex.VECTORS_FILE))) {
+                out.write(in.readNBytes((int) vectorsBytes));
+            }
+            Files.copy(
+                    directory.resolve(HnswIndex.GRAPH_FILE),
+                    bucket.resolve(HnswIndex.GRAPH_FILE),
+                    StandardCopyOption.REPLACE_EXISTING);
+            version++;
+        }
+    }
+
+    @Test
+    void testReloadTheSnapshotsOfAnotherPod(@TempDir Path bucket, @TempDir Path writerDirectory)
+            throws Exception {
+        SnapshotStore store = new DirectorySnapshotStore(bucket);
+        HnswConfig config = new HnswConfig();
+        config.setIndexName("test-reload");
+
+        // the writer of the other pod
+        HnswIndex written = new HnswIndex(writerDirectory, 2, Similarity.COSINE, 16, 100, 42);
+        written.upsert("1", new float[] {1, 0}, Map.of());
+        store.upload(writerDirectory, written.save());
+
+        HnswIndexes.SharedIndex reader = new HnswIndexes.SharedIndex(config, store);
+        assertEquals(1, reader.index().size());
+        // nothing new
+        assertFalse(reader.reload());
+
+        written.upsert("2", new float[] {0, 1}, Map.of());
+        store.upload(writerDirectory, written.save());
+        HnswIndex before = reader.index();
+        assertTrue(reader.reload());
+        assertEquals(2, reader.index().size());
+        assertEquals(
+                "2", reader.index().search(new float[] {0, 1}, 1, 10, null, false).get(0).id());
+        // the replaced index is still usable by the queries in progress
+        assertEquals(1, before.size());
+
+        HnswIndexes.release(reader);
+        written.close();
+    }
+}
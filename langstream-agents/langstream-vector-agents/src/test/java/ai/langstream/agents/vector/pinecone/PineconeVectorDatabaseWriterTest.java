@@ -0,0 +1,226 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.pinecone;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.SimpleRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.pinecone.proto.UpsertRequest;
+import io.pinecone.proto.UpsertResponse;
+import io.pinecone.proto.VectorServiceGrpc;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/** Tests the batching of the upserts on an in-process gRPC server. */
+class PineconeVectorDatabaseWriterTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final List<UpsertRequest> requests = new CopyOnWriteArrayList<>();
+    private final List<StreamObserver<UpsertResponse>> pendingResponses =
+            new CopyOnWriteArrayList<>();
+    private volatile boolean completeImmediately = true;
+    private Server server;
+    private ManagedChannel channel;
+
+    private PineconeWriter.PineconeVectorDatabaseWriter createWriter(
+            Map<String, Object> datasourceConfig) throws Exception {
+        String name = InProcessServerBuilder.generateName();
+        server =
+                InProcessServerBuilder.forName(name)
+                        .directExecutor()
+                        .addService(
+                                new VectorServiceGrpc.VectorServiceImplBase() {
+                                    @Override
+                                    public void upsert(
+                                            UpsertRequest request,
+                                            StreamObserver<UpsertResponse> responseObserver) {
+                                        requests.add(request);
+                                        if (request.getVectorsList().stream()
+                                                .anyMatch(v -> v.getId().equals("fail"))) {
+                                            responseObserver.onError(
+                                                    Status.INVALID_ARGUMENT.asException());
+                                        } else if (completeImmediately) {
+                                            complete(responseObserver);
+                                        } else {
+                                            pendingResponses.add(responseObserver);
+                                        }
+                                    }
+                                })
+                        .build()
+                        .start();
+        channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+        PineconeWriter.PineconeVectorDatabaseWriter writer =
+                (PineconeWriter.PineconeVectorDatabaseWriter)
+                        new PineconeWriter().createImplementation(datasourceConfig);
+        writer.initialise(
+                Map.of(
+                        "vector.id", "key",
+                        "vector.vector", "value.vector",
+                        "vector.namespace", "value.namespace",
+                        "vector.metadata.genre", "value.genre"),
+                VectorServiceGrpc.newStub(channel));
+        return writer;
+    }
+
+    private static void complete(StreamObserver<UpsertResponse> responseObserver) {
+        responseObserver.onNext(UpsertResponse.newBuilder().build());
+        responseObserver.onCompleted();
+    }
+
+    @AfterEach
+    void shutdown() {
+        if (channel != null) {
+            channel.shutdownNow();
+        }
+        if (server != null) {
+            server.shutdownNow();
+        }
+    }
+
+    private static Record record(String id, String namespace) throws Exception {
+        Map<String, Object> value =
+                Map.of("vector", List.of(1f, 0f), "namespace", namespace, "genre", "comedy");
+        return SimpleRecord.of(id, MAPPER.writeValueAsString(value));
+    }
+
+    @Test
+    void testBatchesByNamespace() throws Exception {
+        PineconeWriter.PineconeVectorDatabaseWriter writer = createWriter(Map.of());
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            records.add(record("a" + i, "ns-a"));
+        }
+        records.add(record("b0", "ns-b"));
+
+        List<CompletableFuture<?>> handles = writer.upsertBatch(records, Map.of());
+        assertEquals(records.size(), handles.size());
+        CompletableFuture.allOf(handles.toArray(new CompletableFuture[0])).get();
+
+        // the vectors of each namespace are sent by 100 at most
+        assertEquals(
+                List.of("ns-a/100", "ns-a/100", "ns-a/50", "ns-b/1"),
+                requests.stream().map(r -> r.getNamespace() + "/" + r.getVectorsCount()).toList());
+        assertEquals("a0", requests.get(0).getVectors(0).getId());
+        assertEquals("a100", requests.get(1).getVectors(0).getId());
+        assertEquals(
+                "comedy",
+                requests.get(3)
+                        .getVectors(0)
+                        .getMetadata()
+                        .getFieldsOrThrow("genre")
+                        .getStringValue());
+        writer.close();
+    }
+
+    @Test
+    void testFailuresOfARequest() throws Exception {
+        PineconeWriter.PineconeVectorDatabaseWriter writer = createWriter(Map.of());
+        List<CompletableFuture<?>> handles =
+                writer.upsertBatch(
+                        List.of(record("fail", "ns-a"), record("ok", "ns-b"), record("x", "ns-a")),
+                        Map.of());
+
+        // only the records of the failed request fail
+        assertThrows(ExecutionException.class, () -> handles.get(0).get());
+        assertThrows(ExecutionException.class, () -> handles.get(2).get());
+        handles.get(1).get();
+        writer.close();
+    }
+
+    @Test
+    void testMaxInFlightRequests() throws Exception {
+        completeImmediately = false;
+        PineconeWriter.PineconeVectorDatabaseWriter writer =
+                createWriter(Map.of("max-in-flight-requests", 1));
+        CompletableFuture<List<CompletableFuture<?>>> second = new CompletableFuture<>();
+        List<CompletableFuture<?>> first =
+                writer.upsertBatch(List.of(record("a", "ns-a")), Map.of());
+        Thread writerThread =
+                new Thread(
+                        () -> {
+                            try {
+                                second.complete(
+                                        writer.upsertBatch(List.of(record("b", "ns-a")), Map.of()));
+                            } catch (Exception e) {
+                                second.completeExceptionally(e);
+                            }
+                        });
+        writerThread.start();
+
+        // the second request waits for the response of the first one
+        Thread.sleep(200);
+        assertFalse(second.isDone());
+        assertEquals(1, requests.size());
+
+        complete(pendingResponses.get(0));
+        first.get(0).get();
+        List<CompletableFuture<?>> handles = second.get(10, TimeUnit.SECONDS);
+        assertEquals(2, requests.size());
+        complete(pendingResponses.get(1));
+        handles.get(0).get();
+        writer.close();
+    }
+
+    @Test
+    void testLastVectorOfAnId() throws Exception {
+        completeImmediately = false;
+        PineconeWriter.PineconeVectorDatabaseWriter writer = createWriter(Map.of());
+        Map<String, Object> value =
+                Map.of("vector", List.of(0f, 1f), "namespace", "ns-a", "genre", "drama");
+        Record update = SimpleRecord.of("a", MAPPER.writeValueAsString(value));
+
+        // the first vector of "a" is replaced in the batch
+        List<CompletableFuture<?>> first =
+                writer.upsertBatch(List.of(record("a", "ns-a"), update), Map.of());
+        assertEquals(1, requests.size());
+        assertEquals(1, requests.get(0).getVectorsCount());
+        assertEquals(List.of(0f, 1f), requests.get(0).getVectors(0).getValuesList());
+
+        // a new update of "a" waits for the first request, another id is sent right away
+        List<CompletableFuture<?>> second =
+                writer.upsertBatch(List.of(record("a", "ns-a"), record("b", "ns-b")), Map.of());
+        assertEquals(2, requests.size());
+        assertEquals("b", requests.get(1).getVectors(0).getId());
+
+        complete(pendingResponses.get(0));
+        first.get(0).get();
+        first.get(1).get();
+        assertEquals(3, requests.size());
+        assertEquals("a", requests.get(2).getVectors(0).getId());
+        complete(pendingResponses.get(1));
+        complete(pendingResponses.get(2));
+        CompletableFuture.allOf(second.toArray(new CompletableFuture[0])).get();
+        writer.close();
+    }
+}
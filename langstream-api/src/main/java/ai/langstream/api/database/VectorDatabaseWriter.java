@@ -16,6 +16,8 @@
 package ai.langstream.api.database;
 
 import ai.langstream.api.runner.code.Record;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
@@ -35,5 +37,22 @@ public interface VectorDatabaseWriter {
      */
     CompletableFuture<?> upsert(Record record, Map<String, Object> context);
 
+    /**
+     * Update or delete a batch of records. The default implementation calls {@link #upsert} for
+     * each record, the writers that can send multiple records in one request override it.
+     *
+     * @param records the records
+     * @param context additional context
+     * @return one handle for each record, in the same order as the records
+     */
+    default List<CompletableFuture<?>> upsertBatch(
+            List<Record> records, Map<String, Object> context) {
+        List<CompletableFuture<?>> handles = new ArrayList<>(records.size());
+        for (Record record : records) {
+            handles.add(upsert(record, context));
+        }
+        return handles;
+    }
+
     default void close() throws Exception {}
 }
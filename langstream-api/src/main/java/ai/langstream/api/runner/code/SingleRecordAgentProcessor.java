@@ -29,20 +29,28 @@ public abstract class SingleRecordAgentProcessor extends AbstractAgentCode
     public abstract List<Record> processRecord(Record record) throws Exception;
 
     @Override
-    public final void process(List<Record> records, RecordSink recordSink) {
+    public void process(List<Record> records, RecordSink recordSink) {
         if (records == null || records.isEmpty()) {
             throw new IllegalStateException("Records cannot be null or empty");
         }
         for (Record record : records) {
-            try {
-                List<Record> process = processRecord(record);
-                processed(1, process.size());
-                recordSink.emit(new SourceRecordAndResult(record, process, null));
-            } catch (Throwable error) {
-                log.error("Error processing record: {}", record, error);
-                errors.incrementAndGet();
-                recordSink.emit(new SourceRecordAndResult(record, null, error));
-            }
+            processAndEmit(record, recordSink);
+        }
+    }
+
+    /**
+     * Process one record and emit the result (or the error) to the sink. The agents that process
+     * the records concurrently call this method from their own threads.
+     */
+    protected final void processAndEmit(Record record, RecordSink recordSink) {
+        try {
+            List<Record> process = processRecord(record);
+            processed(1, process.size());
+            recordSink.emit(new SourceRecordAndResult(record, process, null));
+        } catch (Throwable error) {
+            log.error("Error processing record: {}", record, error);
+            errors.incrementAndGet();
+            recordSink.emit(new SourceRecordAndResult(record, null, error));
         }
     }
 
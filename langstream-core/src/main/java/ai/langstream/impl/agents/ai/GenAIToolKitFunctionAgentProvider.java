@@ -234,6 +234,24 @@ public class GenAIToolKitFunctionAgentProvider extends AbstractAgentProvider {
                                             originalConfiguration,
                                             "only-first",
                                             null);
+                                    optionalField(
+                                            step,
+                                            agentConfiguration,
+                                            originalConfiguration,
+                                            "typed-results",
+                                            null);
+                                    optionalField(
+                                            step,
+                                            agentConfiguration,
+                                            originalConfiguration,
+                                            "batch-size",
+                                            null);
+                                    optionalField(
+                                            step,
+                                            agentConfiguration,
+                                            originalConfiguration,
+                                            "flush-interval",
+                                            null);
                                 }
                             },
                     "ai-chat-completions",
@@ -361,6 +379,36 @@ public class GenAIToolKitFunctionAgentProvider extends AbstractAgentProvider {
                                             newConfiguration,
                                             "user",
                                             null);
+                                    optionalField(
+                                            step,
+                                            agentConfiguration,
+                                            newConfiguration,
+                                            "cache-mode",
+                                            null);
+                                    optionalField(
+                                            step,
+                                            agentConfiguration,
+                                            newConfiguration,
+                                            "cache-ttl-seconds",
+                                            null);
+                                    optionalField(
+                                            step,
+                                            agentConfiguration,
+                                            newConfiguration,
+                                            "cache-max-size",
+                                            null);
+                                    optionalField(
+                                            step,
+                                            agentConfiguration,
+                                            newConfiguration,
+                                            "cache-similarity-threshold",
+                                            null);
+                                    optionalField(
+                                            step,
+                                            agentConfiguration,
+                                            newConfiguration,
+                                            "cache-embeddings-model",
+                                            null);
                                 }
                             });
 
@@ -88,7 +88,8 @@ public class AIProvidersResourceProvider implements ResourceNodeProvider {
 
     private void validateHuggingFaceConfigurationResource(Resource resource) {
         Map<String, Object> configuration = resource.configuration();
-        validateEnumField(configuration, "provider", Set.of("local", "api"), describe(resource));
+        validateEnumField(
+                configuration, "provider", Set.of("local", "api", "onnx"), describe(resource));
         requiredField(configuration, "model", describe(resource));
         getMap("options", Map.of(), configuration);
         getMap("arguments", Map.of(), configuration);
@@ -44,7 +44,7 @@ public class VectorDatabaseResourceProvider extends DataSourceResourceProvider
         validateEnumField(
                 configuration,
                 "service",
-                Set.of("astra", "cassandra", "pinecone"),
+                Set.of("astra", "cassandra", "pinecone", "hnsw"),
                 describe(resource));
 
         switch (service) {
@@ -57,6 +57,9 @@ public class VectorDatabaseResourceProvider extends DataSourceResourceProvider
             case "pinecone":
                 validatePineconeDatabaseResource(resource);
                 break;
+            case "hnsw":
+                validateHnswDatabaseResource(resource);
+                break;
             default:
                 throw new IllegalStateException();
         }
@@ -73,6 +76,29 @@ public class VectorDatabaseResourceProvider extends DataSourceResourceProvider
         requiredNonEmptyField(configuration, "index-name", describe(resource));
         ConfigurationUtils.validateInteger(
                 configuration, "server-side-timeout-sec", 1, 300000, describe(resource));
+        ConfigurationUtils.validateInteger(
+                configuration, "max-in-flight-requests", 1, 10000, describe(resource));
+    }
+
+    protected void validateHnswDatabaseResource(Resource resource) {
+        Map<String, Object> configuration = resource.configuration();
+
+        validateEnumField(
+                configuration,
+                "similarity",
+                Set.of("cosine", "dot-product", "euclidean"),
+                describe(resource));
+        ConfigurationUtils.validateInteger(
+                configuration, "dimension", 1, 100000, describe(resource));
+        ConfigurationUtils.validateInteger(configuration, "m", 2, 512, describe(resource));
+        ConfigurationUtils.validateInteger(
+                configuration, "ef-construction", 1, 100000, describe(resource));
+        ConfigurationUtils.validateInteger(
+                configuration, "ef-search", 1, 100000, describe(resource));
+        ConfigurationUtils.validateInteger(
+                configuration, "snapshot-interval-seconds", 0, 86400, describe(resource));
+        ConfigurationUtils.validateInteger(
+                configuration, "reload-interval-seconds", 0, 86400, describe(resource));
     }
 
     @Override
@@ -36,14 +36,14 @@ public class QueryVectorDBAgentProvider extends AbstractComposableAgentProvider
 
     public QueryVectorDBAgentProvider() {
         super(
-                Set.of("query-vector-db", "vector-db-sink"),
+                Set.of("query-vector-db", "vector-db-sink", "re-rank", "skip-unchanged"),
                 List.of(KubernetesClusterRuntime.CLUSTER_TYPE));
     }
 
     @Override
     protected ComponentType getComponentType(AgentConfiguration agentConfiguration) {
         return switch (agentConfiguration.getType()) {
-            case "query-vector-db" -> ComponentType.PROCESSOR;
+            case "query-vector-db", "re-rank", "skip-unchanged" -> ComponentType.PROCESSOR;
             case "vector-db-sink" -> ComponentType.SINK;
             default -> throw new IllegalStateException();
         };
@@ -65,6 +65,11 @@ public class QueryVectorDBAgentProvider extends AbstractComposableAgentProvider
                         executionPlan,
                         clusterRuntime,
                         pluginsRegistry);
+        if (agentConfiguration.getType().equals("re-rank")
+                || agentConfiguration.getType().equals("skip-unchanged")) {
+            // these agents do not use a datasource
+            return originalConfiguration;
+        }
 
         // get the datasource configuration and inject it into the agent configuration
         String resourceId = (String) originalConfiguration.remove("datasource");
@@ -33,7 +33,8 @@ public class TextProcessingAgentsProvider extends AbstractComposableAgentProvide
                     "language-detector",
                     "text-splitter",
                     "text-normaliser",
-                    "document-to-json");
+                    "document-to-json",
+                    "dedupe-chunks");
 
     public TextProcessingAgentsProvider() {
         super(SUPPORTED_AGENT_TYPES, List.of(KubernetesClusterRuntime.CLUSTER_TYPE, "none"));
@@ -198,7 +198,8 @@ public class CompositeAgentProcessor extends AbstractAgentCode implements AgentP
                                     new SourceRecordAndResult(
                                             initialSourceRecord, finalRecords, null));
                         } else {
-                            // next processor
+                            // next processor, the records are passed as they are, so the
+                            // processors can exchange structured values without parsing them
                             invokeProcessor(
                                     index + 1, finalRecords, initialSourceRecord, finalStep);
                         }